@@ -0,0 +1,137 @@
+/*
+ * Copyright 2016 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.fundament;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares {@link PersistentList} and {@link PersistentMap} with copying an
+ * <code>ArrayList</code> or <code>HashMap</code>. The snapshot benchmarks take
+ * an immutable snapshot and then mutate the original, which is the workload
+ * persistent collections are designed for; the get benchmarks measure the
+ * cost of reads against the same collections.
+ *
+ * @author Tom Gibara
+ */
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PersistentCollectionsBenchmark {
+
+	@Param({ "100", "10000", "1000000" })
+	int size;
+
+	private PersistentList<Integer> persistentList;
+	private ArrayList<Integer> arrayList;
+	private PersistentMap<Integer, Integer> persistentMap;
+	private HashMap<Integer, Integer> hashMap;
+	private int index;
+
+	@Setup
+	public void setup() {
+		persistentList = PersistentList.<Integer>empty().mutableCopy();
+		arrayList = new ArrayList<>(size);
+		persistentMap = PersistentMap.<Integer, Integer>empty().mutableCopy();
+		hashMap = new HashMap<>();
+		for (int i = 0; i < size; i++) {
+			persistentList.add(i);
+			arrayList.add(i);
+			persistentMap.put(i, i);
+			hashMap.put(i, i);
+		}
+		index = 0;
+	}
+
+	private int next() {
+		// stride through the collection so successive operations touch different nodes
+		index = (index + 7919) % size;
+		return index;
+	}
+
+	@Benchmark
+	public List<Integer> persistentListSnapshot() {
+		PersistentList<Integer> snapshot = persistentList.immutableCopy();
+		int i = next();
+		persistentList.set(i, i);
+		return snapshot;
+	}
+
+	@Benchmark
+	public List<Integer> arrayListSnapshot() {
+		List<Integer> snapshot = new ArrayList<>(arrayList);
+		int i = next();
+		arrayList.set(i, i);
+		return snapshot;
+	}
+
+	@Benchmark
+	public Map<Integer, Integer> persistentMapSnapshot() {
+		PersistentMap<Integer, Integer> snapshot = persistentMap.immutableCopy();
+		int i = next();
+		persistentMap.put(i, i);
+		return snapshot;
+	}
+
+	@Benchmark
+	public Map<Integer, Integer> hashMapSnapshot() {
+		Map<Integer, Integer> snapshot = new HashMap<>(hashMap);
+		int i = next();
+		hashMap.put(i, i);
+		return snapshot;
+	}
+
+	@Benchmark
+	public Integer persistentListGet() {
+		return persistentList.get(next());
+	}
+
+	@Benchmark
+	public Integer arrayListGet() {
+		return arrayList.get(next());
+	}
+
+	@Benchmark
+	public Integer persistentMapGet() {
+		return persistentMap.get(next());
+	}
+
+	@Benchmark
+	public Integer hashMapGet() {
+		return hashMap.get(next());
+	}
+
+}
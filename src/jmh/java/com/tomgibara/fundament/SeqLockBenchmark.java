@@ -0,0 +1,139 @@
+/*
+ * Copyright 2016 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.fundament;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares reads through a {@link SeqLock} with reads under the read lock of a
+ * <code>ReentrantReadWriteLock</code>. A background thread writes to the
+ * state guarded by each lock, pausing for the configured number of
+ * microseconds between writes; an interval of zero disables the writer. Run
+ * the {@link #main(String[])} method to measure readers at 1 to 64 threads.
+ *
+ * @author Tom Gibara
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SeqLockBenchmark {
+
+	private static final int[] THREADS = { 1, 2, 4, 8, 16, 32, 64 };
+
+	public static void main(String... args) throws RunnerException {
+		for (int threads : THREADS) {
+			Options options = new OptionsBuilder()
+					.include(SeqLockBenchmark.class.getSimpleName())
+					.threads(threads)
+					.build();
+			new Runner(options).run();
+		}
+	}
+
+	private static long sum(long[] values) {
+		long sum = 0L;
+		for (long value : values) {
+			sum += value;
+		}
+		return sum;
+	}
+
+	private static void fill(long[] values, long value) {
+		for (int i = 0; i < values.length; i++) {
+			values[i] = value;
+		}
+	}
+
+	@Param({ "0", "10", "1000" })
+	int writeInterval;
+
+	private final SeqLock seqLock = SeqLock.create();
+	private final ReentrantReadWriteLock rwLock = new ReentrantReadWriteLock();
+	private final long[] seqValues = new long[8];
+	private final long[] rwValues = new long[8];
+	private volatile boolean running;
+	private Thread writer;
+
+	@Setup
+	public void startWriter() {
+		if (writeInterval == 0) return;
+		running = true;
+		writer = new Thread(() -> {
+			long nanos = TimeUnit.MICROSECONDS.toNanos(writeInterval);
+			for (long value = 0L; running; value++) {
+				long v = value;
+				seqLock.write(() -> fill(seqValues, v));
+				rwLock.writeLock().lock();
+				try {
+					fill(rwValues, v);
+				} finally {
+					rwLock.writeLock().unlock();
+				}
+				LockSupport.parkNanos(nanos);
+			}
+		}, "seqlock-benchmark-writer");
+		writer.setDaemon(true);
+		writer.start();
+	}
+
+	@TearDown
+	public void stopWriter() throws InterruptedException {
+		if (writer == null) return;
+		running = false;
+		writer.join();
+		writer = null;
+	}
+
+	@Benchmark
+	public Long seqLockRead() {
+		return seqLock.read(() -> sum(seqValues));
+	}
+
+	@Benchmark
+	public Long readWriteLockRead() {
+		rwLock.readLock().lock();
+		try {
+			return sum(rwValues);
+		} finally {
+			rwLock.readLock().unlock();
+		}
+	}
+
+}
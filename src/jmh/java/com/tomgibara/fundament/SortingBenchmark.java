@@ -0,0 +1,149 @@
+/*
+ * Copyright 2016 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.fundament;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares {@link Sorting} with <code>Arrays.sort</code> on equivalent data.
+ * Each benchmark sorts a fresh copy of the same random keys. The co-sorting
+ * benchmarks reorder a parallel array of payloads alongside the keys; the
+ * baseline for these sorts a boxed index array and then gathers both arrays,
+ * which is what co-sorting costs without {@link Transposable}.
+ *
+ * @author Tom Gibara
+ */
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SortingBenchmark {
+
+	private static Transposable swapper(int[] keys) {
+		return (i, j) -> {
+			int k = keys[i];
+			keys[i] = keys[j];
+			keys[j] = k;
+		};
+	}
+
+	private static Transposable swapper(int[] keys, long[] payloads) {
+		return (i, j) -> {
+			int k = keys[i];
+			keys[i] = keys[j];
+			keys[j] = k;
+			long p = payloads[i];
+			payloads[i] = payloads[j];
+			payloads[j] = p;
+		};
+	}
+
+	@Param({ "1000", "100000", "1000000" })
+	int size;
+
+	private int[] keys;
+	private long[] payloads;
+
+	@Setup
+	public void setup() {
+		Random random = new Random(0L);
+		keys = new int[size];
+		payloads = new long[size];
+		for (int i = 0; i < size; i++) {
+			keys[i] = random.nextInt();
+			payloads[i] = random.nextLong();
+		}
+	}
+
+	@Benchmark
+	public int[] arraysSort() {
+		int[] a = keys.clone();
+		Arrays.sort(a);
+		return a;
+	}
+
+	@Benchmark
+	public int[] introsort() {
+		int[] a = keys.clone();
+		Sorting.sort(swapper(a), 0, a.length, (i, j) -> Integer.compare(a[i], a[j]));
+		return a;
+	}
+
+	@Benchmark
+	public int[] stableSort() {
+		int[] a = keys.clone();
+		Sorting.stableSort(swapper(a), 0, a.length, (i, j) -> Integer.compare(a[i], a[j]));
+		return a;
+	}
+
+	@Benchmark
+	public int[] arraysParallelSort() {
+		int[] a = keys.clone();
+		Arrays.parallelSort(a);
+		return a;
+	}
+
+	@Benchmark
+	public int[] parallelSort() {
+		int[] a = keys.clone();
+		Sorting.parallelSort(swapper(a), 0, a.length, (i, j) -> Integer.compare(a[i], a[j]), 8192);
+		return a;
+	}
+
+	@Benchmark
+	public long[] arraysCoSort() {
+		int[] a = keys;
+		Integer[] indices = new Integer[a.length];
+		for (int i = 0; i < indices.length; i++) {
+			indices[i] = i;
+		}
+		Arrays.sort(indices, (i, j) -> Integer.compare(a[i], a[j]));
+		int[] sortedKeys = new int[a.length];
+		long[] sortedPayloads = new long[a.length];
+		for (int i = 0; i < indices.length; i++) {
+			sortedKeys[i] = a[indices[i]];
+			sortedPayloads[i] = payloads[indices[i]];
+		}
+		return sortedPayloads;
+	}
+
+	@Benchmark
+	public long[] coSort() {
+		int[] a = keys.clone();
+		long[] p = payloads.clone();
+		Sorting.sort(swapper(a, p), 0, a.length, (i, j) -> Integer.compare(a[i], a[j]));
+		return p;
+	}
+
+}
@@ -50,4 +50,48 @@ public interface Alignable<T> {
 	default T aligned() {
 		return isAligned() ? (T) this : this.alignedCopy();
 	}
+
+	/**
+	 * Performs a bounded amount of the work needed to align the object's data
+	 * without copying the object. The object must remain usable, with an
+	 * unchanged state, between calls. This allows large data structures to be
+	 * aligned across many calls, for example from a periodic background task,
+	 * without the memory and pause costs of {@link #alignedCopy()}.
+	 *
+	 * Implementations that cannot align their data in place do no work and
+	 * return false while unaligned; this is the default behaviour.
+	 *
+	 * @param budget
+	 *            a positive bound on the work performed, in units chosen by
+	 *            the implementation, typically elements or bits
+	 * @return true if the object is aligned on return, false otherwise
+	 * @see ArrayAligner
+	 */
+	default boolean alignIncrementally(long budget) {
+		if (budget < 1L) throw new IllegalArgumentException("non-positive budget");
+		return isAligned();
+	}
+
+	/**
+	 * Aligns the object's data without copying the object, if this is
+	 * supported. The default implementation completes incremental alignment
+	 * in a single call.
+	 *
+	 * @return true if the object is aligned on return, false if it cannot be
+	 *         aligned in place
+	 */
+	default boolean alignInPlace() {
+		return alignIncrementally(Long.MAX_VALUE);
+	}
+
+	/**
+	 * The fraction of the work required to align the object in place that has
+	 * been completed. The default implementation reports 1 for aligned
+	 * objects and 0 otherwise.
+	 *
+	 * @return the progress toward alignment, between 0 and 1 inclusive
+	 */
+	default double alignmentProgress() {
+		return isAligned() ? 1.0 : 0.0;
+	}
 }
@@ -0,0 +1,210 @@
+/*
+ * Copyright 2016 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.fundament;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Allocates aligned blocks of direct memory. Blocks are carved from large
+ * slabs, each of which is allocated once, and blocks that are released are
+ * reused by subsequent allocations of the same size. The start address and
+ * the size of every block is a multiple of the allocator's alignment.
+ *
+ * Allocators are safe for concurrent use. Since the memory of a slab is only
+ * reclaimed when every block carved from it is unreachable, allocators are
+ * best suited to long-lived pools of buffers with a small number of distinct
+ * sizes.
+ *
+ * @author Tom Gibara
+ * @see AlignedBuffer
+ */
+
+public final class AlignedAllocator {
+
+	/**
+	 * The size of a cache line on common processors, in bytes.
+	 */
+
+	public static final int CACHE_LINE = 64;
+
+	/**
+	 * The size of a memory page on common operating systems, in bytes.
+	 */
+
+	public static final int PAGE = 4096;
+
+	private static final int DEFAULT_SLAB_SIZE = 1 << 20;
+
+	private static final ConcurrentMap<Integer, AlignedAllocator> shared = new ConcurrentHashMap<>();
+
+	/**
+	 * Creates a new allocator.
+	 *
+	 * @param alignment
+	 *            the alignment of the allocated blocks, a power of two
+	 * @param slabSize
+	 *            the number of bytes allocated from the system at a time;
+	 *            larger blocks are allocated individually
+	 * @return a new allocator
+	 */
+
+	public static AlignedAllocator create(int alignment, int slabSize) {
+		checkAlignment(alignment);
+		if (slabSize < alignment) throw new IllegalArgumentException("slabSize less than alignment");
+		if (slabSize > Integer.MAX_VALUE - alignment) throw new IllegalArgumentException("slabSize too large");
+		return new AlignedAllocator(alignment, slabSize);
+	}
+
+	/**
+	 * An allocator shared by all callers requiring the specified alignment.
+	 *
+	 * @param alignment
+	 *            the alignment of the allocated blocks, a power of two
+	 * @return a shared allocator
+	 */
+
+	public static AlignedAllocator shared(int alignment) {
+		checkAlignment(alignment);
+		return shared.computeIfAbsent(alignment, a -> new AlignedAllocator(a, Math.max(a, DEFAULT_SLAB_SIZE)));
+	}
+
+	static void checkAlignment(int alignment) {
+		if (alignment < 1) throw new IllegalArgumentException("non-positive alignment");
+		if (Integer.bitCount(alignment) != 1) throw new IllegalArgumentException("alignment not a power of two");
+	}
+
+	private final int alignment;
+	private final int slabSize;
+	// free blocks keyed by size
+	private final ConcurrentMap<Integer, Queue<ByteBuffer>> free = new ConcurrentHashMap<>();
+	private final AtomicInteger slabs = new AtomicInteger();
+	private final LongAdder reuses = new LongAdder();
+	// the unallocated remainder of the current slab, guarded by this
+	private ByteBuffer slab = null;
+
+	private AlignedAllocator(int alignment, int slabSize) {
+		this.alignment = alignment;
+		this.slabSize = slabSize;
+	}
+
+	/**
+	 * The alignment of the blocks allocated.
+	 *
+	 * @return the alignment in bytes
+	 */
+
+	public int alignment() {
+		return alignment;
+	}
+
+	/**
+	 * The number of bytes allocated from the system at a time.
+	 *
+	 * @return the slab size in bytes
+	 */
+
+	public int slabSize() {
+		return slabSize;
+	}
+
+	/**
+	 * Allocates a block of memory. The size of the block is rounded up to a
+	 * multiple of the alignment. The contents of the block are undefined: they
+	 * may contain data written before a reused block was released.
+	 *
+	 * @param size
+	 *            the minimum number of bytes required
+	 * @return an aligned buffer over the block
+	 * @throws IllegalStateException
+	 *             if the platform does not expose the addresses of direct
+	 *             buffers, so that alignment cannot be established
+	 */
+
+	public AlignedBuffer allocate(int size) {
+		if (size < 0) throw new IllegalArgumentException("negative size");
+		if (size > Integer.MAX_VALUE - alignment) throw new IllegalArgumentException("size too large");
+		int blockSize = size == 0 ? alignment : (size + alignment - 1) & -alignment;
+		Queue<ByteBuffer> queue = free.get(blockSize);
+		ByteBuffer block = queue == null ? null : queue.poll();
+		if (block == null) {
+			block = blockSize > slabSize ? allocateAligned(blockSize) : carve(blockSize);
+		} else {
+			reuses.increment();
+			((Buffer) block).clear();
+		}
+		return new AlignedBuffer(block, alignment, this);
+	}
+
+	/**
+	 * The number of slabs (including individually allocated large blocks)
+	 * that have been allocated from the system.
+	 *
+	 * @return the number of slabs
+	 */
+
+	public int slabCount() {
+		return slabs.get();
+	}
+
+	/**
+	 * The number of allocations that were satisfied by reusing a released
+	 * block.
+	 *
+	 * @return the number of reused blocks
+	 */
+
+	public long reuseCount() {
+		return reuses.sum();
+	}
+
+	// package scoped methods
+
+	void release(ByteBuffer block) {
+		free.computeIfAbsent(block.capacity(), s -> new ConcurrentLinkedQueue<>()).offer(block);
+	}
+
+	// private helper methods
+
+	private synchronized ByteBuffer carve(int blockSize) {
+		if (slab == null || slab.remaining() < blockSize) {
+			slab = allocateAligned(slabSize);
+		}
+		int position = slab.position();
+		((Buffer) slab).limit(position + blockSize);
+		ByteBuffer block = slab.slice();
+		((Buffer) slab).limit(slab.capacity()).position(position + blockSize);
+		return block;
+	}
+
+	private ByteBuffer allocateAligned(int size) {
+		ByteBuffer raw = ByteBuffer.allocateDirect(size + alignment);
+		long offset = AlignedBuffer.alignmentOffset(raw, alignment);
+		if (offset < 0L) throw new IllegalStateException("buffer addresses unavailable");
+		int start = offset == 0L ? 0 : alignment - (int) offset;
+		((Buffer) raw).position(start).limit(start + size);
+		slabs.incrementAndGet();
+		return raw.slice();
+	}
+
+}
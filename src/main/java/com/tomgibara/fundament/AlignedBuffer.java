@@ -0,0 +1,278 @@
+/*
+ * Copyright 2016 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.fundament;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A direct memory buffer with a required alignment, typically
+ * {@link AlignedAllocator#CACHE_LINE} to avoid false sharing, or
+ * {@link AlignedAllocator#PAGE} for direct and memory-mapped I/O. A buffer is
+ * aligned when both its address and its size are multiples of its alignment.
+ *
+ * Buffers are obtained from an {@link AlignedAllocator}, by wrapping an
+ * existing direct buffer, or by mapping a region of a file. Buffers obtained
+ * from an allocator should be released once they are no longer required so
+ * that their memory can be reused. Aligned copies are allocated from the
+ * buffer's allocator or, if it has none, from the allocator shared by all
+ * buffers with the same alignment.
+ *
+ * @author Tom Gibara
+ */
+
+public final class AlignedBuffer implements Alignable<AlignedBuffer> {
+
+	// one of these is used to determine buffer addresses
+	private static final Method ALIGNMENT_OFFSET;
+	private static final Field ADDRESS;
+
+	static {
+		Method method;
+		try {
+			// available from Java 9
+			method = ByteBuffer.class.getMethod("alignmentOffset", int.class, int.class);
+		} catch (NoSuchMethodException | SecurityException e) {
+			method = null;
+		}
+		ALIGNMENT_OFFSET = method;
+		Field field = null;
+		if (method == null) {
+			try {
+				field = Buffer.class.getDeclaredField("address");
+				field.setAccessible(true);
+			} catch (ReflectiveOperationException | RuntimeException e) {
+				field = null;
+			}
+		}
+		ADDRESS = field;
+	}
+
+	/**
+	 * Wraps an existing direct buffer. The buffer's content between its
+	 * position and limit is used; the returned buffer may or may not be
+	 * aligned.
+	 *
+	 * @param buffer
+	 *            a direct buffer
+	 * @param alignment
+	 *            the required alignment, a power of two
+	 * @return an aligned buffer over the supplied buffer
+	 */
+
+	public static AlignedBuffer wrap(ByteBuffer buffer, int alignment) {
+		if (buffer == null) throw new IllegalArgumentException("null buffer");
+		if (!buffer.isDirect()) throw new IllegalArgumentException("buffer not direct");
+		AlignedAllocator.checkAlignment(alignment);
+		return new AlignedBuffer(buffer.slice(), alignment, null);
+	}
+
+	/**
+	 * Maps a region of a file into memory. Since mappings start on page
+	 * boundaries, the returned buffer has page alignment and is aligned
+	 * whenever its size is a multiple of {@link AlignedAllocator#PAGE}.
+	 *
+	 * @param channel
+	 *            the file channel to map
+	 * @param mode
+	 *            the mode in which the region is mapped
+	 * @param position
+	 *            the file position at which the region starts, a multiple of
+	 *            the page size
+	 * @param size
+	 *            the size of the region in bytes
+	 * @return a buffer over the mapped region
+	 * @throws IOException
+	 *             if the region could not be mapped
+	 */
+
+	public static AlignedBuffer map(FileChannel channel, MapMode mode, long position, int size) throws IOException {
+		if (channel == null) throw new IllegalArgumentException("null channel");
+		if (mode == null) throw new IllegalArgumentException("null mode");
+		if (position < 0L) throw new IllegalArgumentException("negative position");
+		if ((position & (AlignedAllocator.PAGE - 1)) != 0L) throw new IllegalArgumentException("position not page aligned");
+		if (size < 0) throw new IllegalArgumentException("negative size");
+		return new AlignedBuffer(channel.map(mode, position, size), AlignedAllocator.PAGE, null);
+	}
+
+	// the offset of the buffer's position from the previous aligned address, or -1 if unknown
+	static long alignmentOffset(ByteBuffer buffer, int alignment) {
+		try {
+			if (ALIGNMENT_OFFSET != null) return (Integer) ALIGNMENT_OFFSET.invoke(buffer, buffer.position(), alignment);
+			if (ADDRESS != null) return (ADDRESS.getLong(buffer) + buffer.position()) & (alignment - 1);
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			/* fall through */
+		}
+		return -1L;
+	}
+
+	private final ByteBuffer buffer;
+	private final int alignment;
+	private final AlignedAllocator allocator;
+	private final AtomicBoolean released = new AtomicBoolean();
+
+	AlignedBuffer(ByteBuffer buffer, int alignment, AlignedAllocator allocator) {
+		this.buffer = buffer;
+		this.alignment = alignment;
+		this.allocator = allocator;
+	}
+
+	/**
+	 * The alignment required of the buffer.
+	 *
+	 * @return the alignment in bytes
+	 */
+
+	public int alignment() {
+		return alignment;
+	}
+
+	/**
+	 * The size of the buffer.
+	 *
+	 * @return the size in bytes
+	 */
+
+	public int size() {
+		return buffer.capacity();
+	}
+
+	/**
+	 * A new byte buffer over the memory of this buffer, with a position of
+	 * zero and a limit equal to the size. Changes to the position and limit
+	 * of the returned buffer do not affect this buffer.
+	 *
+	 * @return a byte buffer over the memory
+	 * @throws IllegalStateException
+	 *             if the buffer has been released
+	 */
+
+	public ByteBuffer buffer() {
+		checkNotReleased();
+		return buffer.duplicate();
+	}
+
+	/**
+	 * Returns the buffer's memory to the allocator from which it was
+	 * obtained. The buffer may not be used after it is released. Releasing a
+	 * buffer that was not obtained from an allocator has no effect other
+	 * than preventing its further use through this object.
+	 *
+	 * @throws IllegalStateException
+	 *             if the buffer has already been released
+	 */
+
+	public void release() {
+		if (!released.compareAndSet(false, true)) throw new IllegalStateException("released");
+		if (allocator != null) allocator.release(buffer);
+	}
+
+	/**
+	 * Fills the buffer with data read from a file channel, starting at the
+	 * supplied position in the file. Reading stops when the buffer is full or
+	 * the end of the file is reached. When the buffer is aligned and the
+	 * position is a multiple of the alignment, the read is suitable for
+	 * channels that perform direct I/O.
+	 *
+	 * @param channel
+	 *            the channel from which data is read
+	 * @param position
+	 *            the file position at which reading starts
+	 * @return the number of bytes read
+	 * @throws IOException
+	 *             if the read fails
+	 */
+
+	public int readFrom(FileChannel channel, long position) throws IOException {
+		if (channel == null) throw new IllegalArgumentException("null channel");
+		if (position < 0L) throw new IllegalArgumentException("negative position");
+		ByteBuffer b = buffer();
+		while (b.hasRemaining()) {
+			int count = channel.read(b, position + b.position());
+			if (count < 0) break;
+		}
+		return b.position();
+	}
+
+	/**
+	 * Writes the entire buffer to a file channel, starting at the supplied
+	 * position in the file. When the buffer is aligned and the position is a
+	 * multiple of the alignment, the write is suitable for channels that
+	 * perform direct I/O.
+	 *
+	 * @param channel
+	 *            the channel to which data is written
+	 * @param position
+	 *            the file position at which writing starts
+	 * @throws IOException
+	 *             if the write fails
+	 */
+
+	public void writeTo(FileChannel channel, long position) throws IOException {
+		if (channel == null) throw new IllegalArgumentException("null channel");
+		if (position < 0L) throw new IllegalArgumentException("negative position");
+		ByteBuffer b = buffer();
+		while (b.hasRemaining()) {
+			channel.write(b, position + b.position());
+		}
+	}
+
+	// alignable
+
+	/**
+	 * Whether the address and the size of the buffer are both multiples of
+	 * the alignment. Buffers are reported as unaligned if their address
+	 * cannot be determined.
+	 */
+
+	@Override
+	public boolean isAligned() {
+		return (buffer.capacity() & (alignment - 1)) == 0 && alignmentOffset(buffer, alignment) == 0L;
+	}
+
+	@Override
+	public AlignedBuffer alignedCopy() {
+		checkNotReleased();
+		AlignedAllocator a = allocator == null ? AlignedAllocator.shared(alignment) : allocator;
+		AlignedBuffer copy = a.allocate(buffer.capacity());
+		ByteBuffer b = copy.buffer.duplicate();
+		b.put(buffer.duplicate());
+		// clear any trailing bytes of a reused block
+		while (b.hasRemaining()) b.put((byte) 0);
+		return copy;
+	}
+
+	// object methods
+
+	@Override
+	public String toString() {
+		return "AlignedBuffer(size: " + buffer.capacity() + ", alignment: " + alignment + ")";
+	}
+
+	// private helper methods
+
+	private void checkNotReleased() {
+		if (released.get()) throw new IllegalStateException("released");
+	}
+
+}
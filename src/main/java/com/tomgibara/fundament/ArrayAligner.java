@@ -0,0 +1,178 @@
+/*
+ * Copyright 2016 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.fundament;
+
+import java.lang.reflect.Array;
+
+/**
+ * Aligns the data of an array-backed structure in place, a chunk at a time.
+ * The data initially occupy a contiguous range of the array that starts at
+ * some offset; alignment moves the data so that they start at index zero.
+ * Implementations of {@link Alignable} can delegate
+ * {@link Alignable#alignIncrementally(long)} to {@link #step(long)} and
+ * {@link Alignable#alignmentProgress()} to {@link #progress()}.
+ *
+ * While alignment is in progress, the structure remains readable: the
+ * current location of any element is given by {@link #index(long)}. Once
+ * alignment is complete, the structure should record that its data start at
+ * zero and discard the aligner. Steps modify the array and must be performed
+ * under the same synchronization as other mutations of the structure, for
+ * example within a {@link SeqLock#write(Runnable)}.
+ *
+ * Two kinds of data are supported: elements of any array type, which are
+ * moved with <code>System.arraycopy</code>, and bits packed into the words
+ * of a long array, which are shifted a word at a time.
+ *
+ * @author Tom Gibara
+ */
+
+public final class ArrayAligner {
+
+	/**
+	 * An aligner for elements stored in an array.
+	 *
+	 * @param array
+	 *            an array of any component type
+	 * @param offset
+	 *            the index of the first element
+	 * @param length
+	 *            the number of elements
+	 * @return an aligner that moves the elements to the start of the array
+	 */
+
+	public static ArrayAligner forElements(Object array, int offset, int length) {
+		if (array == null) throw new IllegalArgumentException("null array");
+		if (!array.getClass().isArray()) throw new IllegalArgumentException("not an array");
+		if (offset < 0) throw new IllegalArgumentException("negative offset");
+		if (length < 0) throw new IllegalArgumentException("negative length");
+		if (offset + length > Array.getLength(array)) throw new IllegalArgumentException("range exceeds array");
+		return new ArrayAligner(array, null, offset, length);
+	}
+
+	/**
+	 * An aligner for bits packed into an array of longs. Bit <i>i</i> is
+	 * stored in word <i>i</i>/64 at bit position <i>i</i>%64.
+	 *
+	 * @param words
+	 *            the words containing the bits
+	 * @param offset
+	 *            the index of the first bit
+	 * @param length
+	 *            the number of bits
+	 * @return an aligner that shifts the bits to the start of the array
+	 */
+
+	public static ArrayAligner forBits(long[] words, long offset, long length) {
+		if (words == null) throw new IllegalArgumentException("null words");
+		if (offset < 0L) throw new IllegalArgumentException("negative offset");
+		if (length < 0L) throw new IllegalArgumentException("negative length");
+		if (offset + length > (long) words.length << 6) throw new IllegalArgumentException("range exceeds array");
+		return new ArrayAligner(null, words, offset, length);
+	}
+
+	private final Object array;
+	private final long[] words;
+	private final long offset;
+	private final long length;
+	// the number of leading elements or bits that have been moved
+	private volatile long done;
+
+	private ArrayAligner(Object array, long[] words, long offset, long length) {
+		this.array = array;
+		this.words = words;
+		this.offset = offset;
+		this.length = length;
+		done = offset == 0L ? length : 0L;
+	}
+
+	/**
+	 * The current index of an element or bit in the array.
+	 *
+	 * @param index
+	 *            the index of the element or bit relative to the start of
+	 *            the data
+	 * @return the index at which the element or bit is currently stored
+	 */
+
+	public long index(long index) {
+		if (index < 0L) throw new IllegalArgumentException("negative index");
+		if (index >= length) throw new IllegalArgumentException("index too large");
+		return index < done ? index : index + offset;
+	}
+
+	/**
+	 * Moves up to a bounded number of elements or bits to their aligned
+	 * positions. Bits are moved a whole word at a time, so at least 64 bits
+	 * are moved by any step which does not complete alignment.
+	 *
+	 * @param budget
+	 *            the maximum number of elements or bits to move
+	 * @return true if alignment is complete, false otherwise
+	 */
+
+	public boolean step(long budget) {
+		if (budget < 1L) throw new IllegalArgumentException("non-positive budget");
+		long d = done;
+		if (d == length) return true;
+		long n = Math.min(budget, length - d);
+		if (words == null) {
+			System.arraycopy(array, (int) (offset + d), array, (int) d, (int) n);
+			d += n;
+		} else {
+			long from = d >> 6;
+			long to = Math.min((length + 63) >> 6, from + Math.max(1L, n >> 6));
+			for (long i = from; i < to; i++) {
+				words[(int) i] = shiftedWord(i);
+			}
+			d = Math.min(to << 6, length);
+		}
+		done = d;
+		return d == length;
+	}
+
+	/**
+	 * Whether every element or bit has been moved to its aligned position.
+	 *
+	 * @return true if alignment is complete
+	 */
+
+	public boolean isComplete() {
+		return done == length;
+	}
+
+	/**
+	 * The fraction of the elements or bits that have been moved.
+	 *
+	 * @return the progress toward alignment, between 0 and 1 inclusive
+	 */
+
+	public double progress() {
+		return length == 0L ? 1.0 : (double) done / length;
+	}
+
+	// the aligned word at the specified index, with any bits beyond the data cleared
+	private long shiftedWord(long index) {
+		long position = (index << 6) + offset;
+		int w = (int) (position >> 6);
+		int b = (int) (position & 63);
+		long word = words[w] >>> b;
+		if (b != 0 && w + 1 < words.length) word |= words[w + 1] << (64 - b);
+		long end = length - (index << 6);
+		return end >= 64 ? word : word & ((1L << end) - 1L);
+	}
+
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright 2016 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.fundament;
+
+import java.lang.reflect.Method;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Supports the asynchronous application of mappings.
+ *
+ * @author Tom Gibara
+ */
+
+final class Async {
+
+	static Executor defaultExecutor() {
+		return DefaultExecutor.INSTANCE;
+	}
+
+	// holder class so that threads are only created if the default executor is used
+	private static final class DefaultExecutor {
+
+		static final ExecutorService INSTANCE = create();
+
+		private static ExecutorService create() {
+			try {
+				// available from Java 21
+				Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+				return (ExecutorService) method.invoke(null);
+			} catch (ReflectiveOperationException | SecurityException e) {
+				AtomicInteger count = new AtomicInteger();
+				ThreadFactory factory = r -> {
+					Thread thread = new Thread(r, "fundament-async-" + count.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				};
+				// bounded so that blocking mappings cannot create threads without limit
+				return Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), factory);
+			}
+		}
+
+	}
+
+	// limits the number of concurrent applications without blocking any thread
+	static final class Limited<T, R> implements AsyncMapping<T, R> {
+
+		private final Mapping<T, R> mapping;
+		private final Executor executor;
+		private final int maxConcurrency;
+		private final AtomicInteger active = new AtomicInteger();
+		private final Queue<Pending> pending = new ConcurrentLinkedQueue<>();
+
+		Limited(Mapping<T, R> mapping, Executor executor, int maxConcurrency) {
+			this.mapping = mapping;
+			this.executor = executor;
+			this.maxConcurrency = maxConcurrency;
+		}
+
+		@Override public Class<T> domainType()          { return mapping.domainType();    }
+		@Override public Class<R> rangeType()           { return mapping.rangeType();     }
+		@Override public boolean isInDomain(Object obj) { return mapping.isInDomain(obj); }
+
+		@Override
+		public CompletionStage<R> applyAsync(T t) {
+			Pending task = new Pending(t);
+			pending.add(task);
+			drain();
+			return task.future;
+		}
+
+		// submits pending tasks for as long as there is capacity
+		private void drain() {
+			while (!pending.isEmpty()) {
+				int count = active.get();
+				if (count >= maxConcurrency) return;
+				if (!active.compareAndSet(count, count + 1)) continue;
+				Pending task = pending.poll();
+				if (task == null) {
+					// another thread took the task, release the capacity and check again
+					active.decrementAndGet();
+					continue;
+				}
+				try {
+					executor.execute(task);
+				} catch (RejectedExecutionException e) {
+					active.decrementAndGet();
+					task.future.completeExceptionally(e);
+				}
+			}
+		}
+
+		private final class Pending implements Runnable {
+
+			final CompletableFuture<R> future = new CompletableFuture<>();
+			private final T t;
+
+			Pending(T t) {
+				this.t = t;
+			}
+
+			@Override
+			public void run() {
+				try {
+					future.complete(mapping.apply(t));
+				} catch (Throwable e) {
+					future.completeExceptionally(e);
+				} finally {
+					active.decrementAndGet();
+					drain();
+				}
+			}
+
+		}
+
+	}
+
+}
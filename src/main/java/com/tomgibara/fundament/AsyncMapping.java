@@ -0,0 +1,225 @@
+/*
+ * Copyright 2016 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.fundament;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+
+/**
+ * A mapping that produces its results asynchronously. Asynchronous mappings
+ * are typically obtained by lifting a {@link Mapping} that performs blocking
+ * work onto an executor, see {@link #fromMapping(Mapping, Executor, int)}.
+ * As with mappings, the domain and range of an asynchronous mapping are
+ * reported by {@link #domainType()} and {@link #rangeType()}.
+ *
+ * @author Tom Gibara
+ *
+ * @param <T>
+ *            the type of the input to the function
+ * @param <R>
+ *            the type of the result of the function
+ */
+
+public interface AsyncMapping<T, R> {
+
+	/**
+	 * Lifts a mapping onto a default executor. Where the runtime supports
+	 * virtual threads, each application of the mapping runs in its own
+	 * virtual thread; otherwise applications run on a shared, fixed-size pool
+	 * of daemon threads, one for each available processor, and applications
+	 * that cannot be started immediately are queued. Mappings that block for
+	 * long periods on such runtimes may be better served by an executor sized
+	 * for their workload, see {@link #fromMapping(Mapping, Executor)}.
+	 *
+	 * @param <T>
+	 *            the domain type
+	 * @param <R>
+	 *            the range type
+	 * @param mapping
+	 *            a possibly blocking mapping
+	 * @return an asynchronous mapping with the same domain and range
+	 */
+
+	static <T, R> AsyncMapping<T, R> fromMapping(Mapping<T, R> mapping) {
+		return fromMapping(mapping, Async.defaultExecutor());
+	}
+
+	/**
+	 * Lifts a mapping onto an executor. There is no limit on the number of
+	 * concurrent applications of the mapping beyond any imposed by the
+	 * executor.
+	 *
+	 * @param <T>
+	 *            the domain type
+	 * @param <R>
+	 *            the range type
+	 * @param mapping
+	 *            a possibly blocking mapping
+	 * @param executor
+	 *            the executor on which the mapping will be applied
+	 * @return an asynchronous mapping with the same domain and range
+	 */
+
+	static <T, R> AsyncMapping<T, R> fromMapping(Mapping<T, R> mapping, Executor executor) {
+		if (mapping == null) throw new IllegalArgumentException("null mapping");
+		if (executor == null) throw new IllegalArgumentException("null executor");
+		return new AsyncMapping<T, R>() {
+			@Override public Class<T> domainType()          { return mapping.domainType();    }
+			@Override public Class<R> rangeType()           { return mapping.rangeType();     }
+			@Override public boolean isInDomain(Object obj) { return mapping.isInDomain(obj); }
+
+			@Override
+			public CompletionStage<R> applyAsync(T t) {
+				return CompletableFuture.supplyAsync(() -> mapping.apply(t), executor);
+			}
+		};
+	}
+
+	/**
+	 * Lifts a mapping onto an executor, limiting the number of concurrent
+	 * applications of the mapping. Applications in excess of the limit are
+	 * queued and submitted to the executor as earlier applications complete;
+	 * no thread ever blocks waiting for capacity.
+	 *
+	 * @param <T>
+	 *            the domain type
+	 * @param <R>
+	 *            the range type
+	 * @param mapping
+	 *            a possibly blocking mapping
+	 * @param executor
+	 *            the executor on which the mapping will be applied
+	 * @param maxConcurrency
+	 *            the maximum number of concurrent applications of the mapping
+	 * @return an asynchronous mapping with the same domain and range
+	 * @throws IllegalArgumentException
+	 *             if the maximum concurrency is not positive
+	 */
+
+	static <T, R> AsyncMapping<T, R> fromMapping(Mapping<T, R> mapping, Executor executor, int maxConcurrency) {
+		if (mapping == null) throw new IllegalArgumentException("null mapping");
+		if (executor == null) throw new IllegalArgumentException("null executor");
+		if (maxConcurrency < 1) throw new IllegalArgumentException("non-positive maxConcurrency");
+		return new Async.Limited<>(mapping, executor, maxConcurrency);
+	}
+
+	/**
+	 * The type of object passed into the {@link #applyAsync(Object)} method.
+	 *
+	 * @return the type of the function variable, never null
+	 */
+
+	Class<T> domainType();
+
+	/**
+	 * The type of object with which stages returned by the
+	 * {@link #applyAsync(Object)} method complete.
+	 *
+	 * @return the type of the function result, never null
+	 */
+
+	Class<R> rangeType();
+
+	/**
+	 * Evaluates whether the supplied object is a valid parameter for the
+	 * {@link #applyAsync(Object)} method. The default implementations returns
+	 * true exactly when the supplied object is an instance of the domain type.
+	 *
+	 * @param obj
+	 *            the value being tested, may be null
+	 * @return true if the function may be applied to the value
+	 */
+
+	default boolean isInDomain(Object obj) { return domainType().isInstance(obj); }
+
+	/**
+	 * Applies the function to a value. The returned stage completes
+	 * exceptionally if the function cannot be applied.
+	 *
+	 * @param t
+	 *            a value in the domain
+	 * @return a stage that completes with the result of the function
+	 */
+
+	CompletionStage<R> applyAsync(T t);
+
+	/**
+	 * Composes an asynchronous mapping with this mapping. The result of the
+	 * supplied mapping is passed to this mapping as soon as it is available;
+	 * no thread blocks between the stages.
+	 *
+	 * @param <S>
+	 *            the domain of the supplied mapping
+	 * @param before
+	 *            the mapping applied before this mapping
+	 * @return an asynchronous mapping from the domain of the supplied mapping
+	 *         to the range of this mapping
+	 */
+
+	default <S> AsyncMapping<S, R> compose(AsyncMapping<S, T> before) {
+		if (before == null) throw new IllegalArgumentException("null before");
+		AsyncMapping<T, R> after = this;
+		return new AsyncMapping<S, R>() {
+			@Override public Class<S> domainType()          { return before.domainType();    }
+			@Override public Class<R> rangeType()           { return after.rangeType();      }
+			@Override public boolean isInDomain(Object obj) { return before.isInDomain(obj); }
+
+			@Override
+			public CompletionStage<R> applyAsync(S s) {
+				return before.applyAsync(s).thenCompose(after::applyAsync);
+			}
+		};
+	}
+
+	/**
+	 * Composes a synchronous mapping with this mapping. The supplied mapping
+	 * is applied by the thread that calls {@link #applyAsync(Object)}; any
+	 * exception it raises completes the returned stage exceptionally.
+	 *
+	 * @param <S>
+	 *            the domain of the supplied mapping
+	 * @param before
+	 *            the mapping applied before this mapping
+	 * @return an asynchronous mapping from the domain of the supplied mapping
+	 *         to the range of this mapping
+	 */
+
+	default <S> AsyncMapping<S, R> compose(Mapping<S, T> before) {
+		if (before == null) throw new IllegalArgumentException("null before");
+		AsyncMapping<T, R> after = this;
+		return new AsyncMapping<S, R>() {
+			@Override public Class<S> domainType()          { return before.domainType();    }
+			@Override public Class<R> rangeType()           { return after.rangeType();      }
+			@Override public boolean isInDomain(Object obj) { return before.isInDomain(obj); }
+
+			@Override
+			public CompletionStage<R> applyAsync(S s) {
+				T t;
+				try {
+					t = before.apply(s);
+				} catch (RuntimeException e) {
+					CompletableFuture<R> failed = new CompletableFuture<>();
+					failed.completeExceptionally(e);
+					return failed;
+				}
+				return after.applyAsync(t);
+			}
+		};
+	}
+
+}
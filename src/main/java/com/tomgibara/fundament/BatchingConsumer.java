@@ -0,0 +1,477 @@
+/*
+ * Copyright 2016 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.fundament;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.ToLongFunction;
+
+/**
+ * A consumer that collects values into batches which are written to a
+ * {@link Sink}. A batch is written when it reaches a maximum number of
+ * values, an estimated size in bytes, or when its first value has waited for
+ * a maximum linger time, whichever occurs first; see {@link Limits}.
+ *
+ * In synchronous mode, batches are written by the thread that consumes the
+ * value which completes the batch. Since no timer is used, the linger time
+ * is only checked when values are consumed. In background mode, batches are
+ * written by a dedicated thread, which also writes batches whose linger time
+ * has expired. Consumers only wait if a batch is completed while the
+ * previous batch is still being written.
+ *
+ * In either mode, a failure to write a batch is not swallowed: it is raised
+ * from {@link #flush()} and {@link #close()}, and as an
+ * <code>UncheckedIOException</code> from {@link #consume(Object)}. Values
+ * in the failed batch are lost and no further values are accepted.
+ *
+ * Batches are written from arrays which are reused, so sinks must not retain
+ * references to them. Instances are safe for concurrent use.
+ *
+ * @author Tom Gibara
+ *
+ * @param <T>
+ *            the type of value consumed
+ */
+
+public final class BatchingConsumer<T> implements Consumer<T>, AutoCloseable {
+
+	/**
+	 * Creates a batching consumer that writes batches on the threads that
+	 * consume values.
+	 *
+	 * @param <T>
+	 *            the type of value consumed
+	 * @param type
+	 *            the type of value consumed, used to create batch arrays
+	 * @param limits
+	 *            the limits at which batches are written
+	 * @param sink
+	 *            the sink to which batches are written
+	 * @return a synchronous batching consumer
+	 */
+
+	public static <T> BatchingConsumer<T> synchronous(Class<T> type, Limits<? super T> limits, Sink<? super T> sink) {
+		return new BatchingConsumer<>(type, limits, sink, null);
+	}
+
+	/**
+	 * Creates a batching consumer that writes batches on a background thread.
+	 *
+	 * @param <T>
+	 *            the type of value consumed
+	 * @param type
+	 *            the type of value consumed, used to create batch arrays
+	 * @param limits
+	 *            the limits at which batches are written
+	 * @param sink
+	 *            the sink to which batches are written
+	 * @param factory
+	 *            creates the thread on which batches are written
+	 * @return a background batching consumer
+	 */
+
+	public static <T> BatchingConsumer<T> background(Class<T> type, Limits<? super T> limits, Sink<? super T> sink, ThreadFactory factory) {
+		if (factory == null) throw new IllegalArgumentException("null factory");
+		return new BatchingConsumer<>(type, limits, sink, factory);
+	}
+
+	private final Limits<? super T> limits;
+	private final Sink<? super T> sink;
+	private final Thread thread;
+
+	private final ReentrantLock lock = new ReentrantLock();
+	// signalled when the background thread has work
+	private final Condition work = lock.newCondition();
+	// signalled when the background thread has written a batch
+	private final Condition written = lock.newCondition();
+
+	private T[] current;
+	private int count = 0;
+	private long bytes = 0L;
+	private long first = 0L;
+	// used in background mode only
+	private T[] pending = null;
+	private int pendingCount = 0;
+	private T[] spare = null;
+	private boolean flushing = false;
+
+	private IOException failure = null;
+	private boolean closed = false;
+
+	private BatchingConsumer(Class<T> type, Limits<? super T> limits, Sink<? super T> sink, ThreadFactory factory) {
+		if (type == null) throw new IllegalArgumentException("null type");
+		if (limits == null) throw new IllegalArgumentException("null limits");
+		if (sink == null) throw new IllegalArgumentException("null sink");
+		this.limits = limits;
+		this.sink = sink;
+		current = Bulk.newArray(type, limits.maxCount);
+		if (factory == null) {
+			thread = null;
+		} else {
+			spare = Bulk.newArray(type, limits.maxCount);
+			thread = factory.newThread(this::run);
+			if (thread == null) throw new IllegalArgumentException("factory returned null thread");
+			thread.start();
+		}
+	}
+
+	/**
+	 * Adds a value to the current batch, writing the batch if a limit has been
+	 * reached.
+	 *
+	 * @throws UncheckedIOException
+	 *             if a batch could not be written
+	 * @throws IllegalStateException
+	 *             if the consumer has been closed
+	 */
+
+	@Override
+	public void consume(T value) {
+		lock.lock();
+		try {
+			checkOpen();
+			// a full batch is awaiting hand off to the background thread
+			while (count == limits.maxCount || bytes >= limits.maxBytes) {
+				written.awaitUninterruptibly();
+				checkOpen();
+			}
+			long now = count == 0 || limits.lingerNanos != Long.MAX_VALUE ? System.nanoTime() : 0L;
+			current[count++] = value;
+			if (limits.sizer != null) bytes += limits.sizer.applyAsLong(value);
+			if (count == 1) first = now;
+			boolean full = count == limits.maxCount || bytes >= limits.maxBytes;
+			if (thread == null) {
+				if (full || now - first >= limits.lingerNanos) writeCurrent();
+			} else if (full) {
+				handOff();
+			} else if (count == 1 && limits.lingerNanos != Long.MAX_VALUE) {
+				// the background thread needs to observe the linger deadline
+				work.signal();
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Writes any values that have been consumed but not yet written, and waits
+	 * for them to be written.
+	 *
+	 * @throws IOException
+	 *             if a batch could not be written
+	 * @throws IllegalStateException
+	 *             if the consumer has been closed
+	 */
+
+	public void flush() throws IOException {
+		lock.lock();
+		try {
+			checkOpen();
+			flushLocked();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Flushes the consumer, stops any background thread and closes the sink.
+	 * Closing a consumer that is already closed has no effect.
+	 *
+	 * @throws IOException
+	 *             if a batch could not be written or the sink could not be
+	 *             closed
+	 */
+
+	@Override
+	public void close() throws IOException {
+		lock.lock();
+		try {
+			if (closed) return;
+			try {
+				if (failure == null) flushLocked();
+			} finally {
+				closed = true;
+				if (thread != null) work.signal();
+			}
+		} finally {
+			lock.unlock();
+		}
+		if (thread != null && thread != Thread.currentThread()) {
+			boolean interrupted = false;
+			while (thread.isAlive()) {
+				try {
+					thread.join();
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+			if (interrupted) Thread.currentThread().interrupt();
+		}
+		sink.close();
+		if (failure != null) throw failure;
+	}
+
+	/**
+	 * The number of values consumed that are yet to be handed to the sink.
+	 *
+	 * @return the number of buffered values
+	 */
+
+	public int bufferedCount() {
+		lock.lock();
+		try {
+			return count + pendingCount;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	// called with lock held
+
+	private void checkOpen() throws IOException {
+		if (failure != null) throw failure;
+		if (closed) throw new IllegalStateException("closed");
+	}
+
+	private void flushLocked() throws IOException {
+		if (thread == null) {
+			if (count > 0) writeCurrent();
+			return;
+		}
+		if (count > 0) handOff();
+		// wait for the batch to be written
+		while ((pending != null || flushing) && failure == null) {
+			written.awaitUninterruptibly();
+		}
+		if (failure != null) throw failure;
+	}
+
+	// synchronous mode only
+	private void writeCurrent() throws IOException {
+		int len = count;
+		count = 0;
+		bytes = 0L;
+		try {
+			sink.write(current, 0, len);
+		} catch (IOException e) {
+			failure = e;
+			throw e;
+		} finally {
+			Arrays.fill(current, 0, len, null);
+		}
+	}
+
+	// background mode only
+	private void handOff() throws IOException {
+		// the spare is absent while the background thread writes the previous batch
+		while (pending != null || spare == null) {
+			if (failure != null) throw failure;
+			written.awaitUninterruptibly();
+		}
+		if (failure != null) throw failure;
+		// the batch may already have been handed off by another thread
+		if (count == 0) return;
+		pending = current;
+		pendingCount = count;
+		current = spare;
+		spare = null;
+		count = 0;
+		bytes = 0L;
+		work.signal();
+		// consumers may be waiting for space in the current batch
+		written.signalAll();
+	}
+
+	// the body of the background thread
+	private void run() {
+		lock.lock();
+		try {
+			while (failure == null) {
+				if (pending != null) {
+					T[] batch = pending;
+					int len = pendingCount;
+					flushing = true;
+					pending = null;
+					pendingCount = 0;
+					lock.unlock();
+					Throwable ex = null;
+					try {
+						try {
+							sink.write(batch, 0, len);
+						} finally {
+							Arrays.fill(batch, 0, len, null);
+						}
+					} catch (Throwable e) {
+						ex = e;
+					}
+					lock.lock();
+					spare = batch;
+					flushing = false;
+					if (ex != null) failure = ex instanceof IOException ? (IOException) ex : new IOException("sink failed", ex);
+					written.signalAll();
+				} else if (count > 0 && (closed || System.nanoTime() - first >= limits.lingerNanos)) {
+					handOff();
+				} else if (closed) {
+					break;
+				} else if (count > 0) {
+					work.awaitNanos(limits.lingerNanos - (System.nanoTime() - first));
+				} else {
+					work.await();
+				}
+			}
+		} catch (InterruptedException e) {
+			failure = new IOException("interrupted", e);
+		} catch (IOException e) {
+			// only possible if a failure has already been recorded
+		} catch (Throwable e) {
+			if (failure == null) failure = new IOException("background thread failed", e);
+		} finally {
+			// waiters must observe any failure, or that the thread has stopped
+			written.signalAll();
+			lock.unlock();
+		}
+	}
+
+	// inner classes
+
+	/**
+	 * Receives batches of values from a {@link BatchingConsumer}.
+	 *
+	 * @param <T>
+	 *            the type of value written
+	 */
+
+	@FunctionalInterface
+	public interface Sink<T> {
+
+		/**
+		 * Writes a batch of values. The array must not be retained after the
+		 * method returns.
+		 *
+		 * @param values
+		 *            an array containing the batch
+		 * @param off
+		 *            the index of the first value in the batch
+		 * @param len
+		 *            the number of values in the batch
+		 * @throws IOException
+		 *             if the values could not be written
+		 */
+
+		void write(T[] values, int off, int len) throws IOException;
+
+		/**
+		 * Called when the batching consumer is closed. The default
+		 * implementation does nothing.
+		 *
+		 * @throws IOException
+		 *             if the sink could not be closed
+		 */
+
+		default void close() throws IOException { }
+
+	}
+
+	/**
+	 * The limits at which a batch is written. Instances are immutable.
+	 *
+	 * @param <T>
+	 *            the type of value batched
+	 */
+
+	public static final class Limits<T> {
+
+		/**
+		 * Limits batches to a maximum number of values.
+		 *
+		 * @param <T>
+		 *            the type of value batched
+		 * @param maxCount
+		 *            the maximum number of values in a batch
+		 * @return limits on the number of values in a batch
+		 * @throws IllegalArgumentException
+		 *             if the count is not positive
+		 */
+
+		public static <T> Limits<T> ofCount(int maxCount) {
+			if (maxCount < 1) throw new IllegalArgumentException("non-positive maxCount");
+			return new Limits<>(maxCount, Long.MAX_VALUE, null, Long.MAX_VALUE);
+		}
+
+		final int maxCount;
+		final long maxBytes;
+		final ToLongFunction<? super T> sizer;
+		final long lingerNanos;
+
+		private Limits(int maxCount, long maxBytes, ToLongFunction<? super T> sizer, long lingerNanos) {
+			this.maxCount = maxCount;
+			this.maxBytes = maxBytes;
+			this.sizer = sizer;
+			this.lingerNanos = lingerNanos;
+		}
+
+		/**
+		 * Additionally limits batches to an estimated size in bytes. A batch is
+		 * written as soon as its estimated size reaches the limit. Any size
+		 * limit previously specified is replaced.
+		 *
+		 * @param <U>
+		 *            the type of value batched
+		 * @param maxBytes
+		 *            the maximum estimated size of a batch
+		 * @param sizer
+		 *            estimates the size of each value in bytes
+		 * @return limits that include a size limit
+		 * @throws IllegalArgumentException
+		 *             if the size is not positive
+		 */
+
+		public <U extends T> Limits<U> bytes(long maxBytes, ToLongFunction<? super U> sizer) {
+			if (maxBytes < 1L) throw new IllegalArgumentException("non-positive maxBytes");
+			if (sizer == null) throw new IllegalArgumentException("null sizer");
+			return new Limits<>(maxCount, maxBytes, sizer, lingerNanos);
+		}
+
+		/**
+		 * Additionally limits the time for which a value may wait before its
+		 * batch is written.
+		 *
+		 * @param time
+		 *            the maximum linger time
+		 * @param unit
+		 *            the unit of the time
+		 * @return limits that include a linger time
+		 * @throws IllegalArgumentException
+		 *             if the time is not positive
+		 */
+
+		public Limits<T> linger(long time, TimeUnit unit) {
+			if (time < 1L) throw new IllegalArgumentException("non-positive time");
+			if (unit == null) throw new IllegalArgumentException("null unit");
+			return new Limits<>(maxCount, maxBytes, sizer, unit.toNanos(time));
+		}
+
+	}
+
+}
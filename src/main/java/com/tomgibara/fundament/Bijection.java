@@ -47,16 +47,7 @@ public interface Bijection<T, R> extends Mapping<T, R> {
 
 	public static <T> Bijection<T, T> identity(Class<T> domainType) {
 		if (domainType == null) throw new IllegalArgumentException("null domainType");
-		return new Bijection<T, T>() {
-			@Override public Class<T> domainType()     { return domainType; }
-			@Override public Class<T> rangeType()      { return domainType; }
-			@Override public T apply(T t)              { return t;          }
-			@Override public T disapply(T t)           { return t;          }
-			@Override public Bijection<T, T> inverse() { return this;       }
-
-			@Override public <S> Bijection<S, T> compose(Bijection<S, T> before) { return before; }
-			@Override public <S> Mapping<S, T> compose(Mapping<S, T> before)     { return before; }
-		};
+		return new Composition.Identity<>(domainType);
 	}
 
 	/**
@@ -82,12 +73,7 @@ public interface Bijection<T, R> extends Mapping<T, R> {
 		if (rangeType == null) throw new IllegalArgumentException("null rangeType");
 		if (fn == null) throw new IllegalArgumentException("null fn");
 		if (inv == null) throw new IllegalArgumentException("null inv");
-		return new Bijection<T,R>() {
-			@Override public R apply(T t)          { return fn.apply(t);  }
-			@Override public T disapply(R r)       { return inv.apply(r); }
-			@Override public Class<T> domainType() { return domainType;   }
-			@Override public Class<R> rangeType()  { return rangeType;    }
-		};
+		return new Composition.FunctionBijection<>(domainType, rangeType, fn, inv);
 	}
 
 	/**
@@ -108,12 +94,7 @@ public interface Bijection<T, R> extends Mapping<T, R> {
 		if (domainType == null) throw new IllegalArgumentException("null domainType");
 		if (fn == null) throw new IllegalArgumentException("null fn");
 		if (inv == null) throw new IllegalArgumentException("null inv");
-		return new Bijection<T,T>() {
-			@Override public T apply(T t)          { return fn.apply(t);  }
-			@Override public T disapply(T r)       { return inv.apply(r); }
-			@Override public Class<T> domainType() { return domainType;   }
-			@Override public Class<T> rangeType()  { return domainType;   }
-		};
+		return new Composition.FunctionBijection<>(domainType, domainType, fn, inv);
 	}
 
 	/**
@@ -134,14 +115,205 @@ public interface Bijection<T, R> extends Mapping<T, R> {
 		if (mapping == null) throw new IllegalArgumentException("null mapping");
 		if (inv == null) throw new IllegalArgumentException("null inv");
 		return new Bijection<T,R>() {
+			private Bijection<R, T> inverse;
+
 			@Override public R apply(T t)                   { return mapping.apply(t);        }
 			@Override public T disapply(R r)                { return inv.apply(r);            }
 			@Override public Class<T> domainType()          { return mapping.domainType();    }
 			@Override public Class<R> rangeType()           { return mapping.rangeType();     }
 			@Override public boolean isInDomain(Object obj) { return mapping.isInDomain(obj); }
+
+			@Override
+			public Bijection<R, T> inverse() {
+				if (inverse == null) inverse = Bijection.super.inverse();
+				return inverse;
+			}
+		};
+	}
+
+	/**
+	 * A bijection between the constants of an enumeration and their ordinals.
+	 * Both directions are evaluated in constant time without boxing.
+	 *
+	 * @param <E>
+	 *            the enumeration type
+	 * @param enumType
+	 *            the class of the enumeration
+	 * @return a bijection from enumeration constants to ordinals
+	 */
+
+	static <E extends Enum<E>> ToIntBijection<E> ofEnum(Class<E> enumType) {
+		if (enumType == null) throw new IllegalArgumentException("null enumType");
+		E[] constants = enumType.getEnumConstants();
+		if (constants == null) throw new IllegalArgumentException("not an enum type");
+		return new ToIntBijection<E>() {
+			private Bijection<Integer, E> inverse;
+
+			@Override public int applyAsInt(E e)      { return e.ordinal();                    }
+			@Override public Class<E> domainType()    { return enumType;                       }
+			@Override public boolean isInRange(int i) { return i >= 0 && i < constants.length; }
+
+			@Override
+			public E disapply(int i) {
+				if (!isInRange(i)) throw new IllegalArgumentException("not in range");
+				return constants[i];
+			}
+
+			@Override
+			public Bijection<Integer, E> inverse() {
+				if (inverse == null) inverse = ToIntBijection.super.inverse();
+				return inverse;
+			}
+		};
+	}
+
+	/**
+	 * A bijection that maps each of the supplied values to its index in the
+	 * array. The values are indexed using a perfect hash so that both
+	 * directions are evaluated in constant time without boxing. The domain
+	 * type of the bijection is the component type of the array.
+	 *
+	 * @param <T>
+	 *            the domain type
+	 * @param values
+	 *            distinct values, possibly including null
+	 * @return a bijection from the values to their indices
+	 * @throws IllegalArgumentException
+	 *             if the array contains equal values
+	 */
+
+	static <T> ToIntBijection<T> ordinal(T[] values) {
+		if (values == null) throw new IllegalArgumentException("null values");
+		T[] domain = values.clone();
+		PerfectIndex index = new PerfectIndex(domain);
+		@SuppressWarnings("unchecked")
+		Class<T> domainType = (Class<T>) domain.getClass().getComponentType();
+		return new ToIntBijection<T>() {
+			private Bijection<Integer, T> inverse;
+
+			@Override public Class<T> domainType()          { return domainType;                  }
+			@Override public boolean isInDomain(Object obj) { return index.indexOf(obj) >= 0;     }
+			@Override public boolean isInRange(int i)       { return i >= 0 && i < domain.length; }
+
+			@Override
+			public int applyAsInt(T t) {
+				int i = index.indexOf(t);
+				if (i < 0) throw new IllegalArgumentException("not in domain");
+				return i;
+			}
+
+			@Override
+			public T disapply(int i) {
+				if (!isInRange(i)) throw new IllegalArgumentException("not in range");
+				return domain[i];
+			}
+
+			@Override
+			public Bijection<Integer, T> inverse() {
+				if (inverse == null) inverse = ToIntBijection.super.inverse();
+				return inverse;
+			}
+		};
+	}
+
+	/**
+	 * A bijection that maps each value in a domain array to the value at the
+	 * same index in a range array. Both arrays are indexed using a perfect hash
+	 * so that both directions are evaluated in constant time. The domain and
+	 * range types of the bijection are the component types of the arrays.
+	 *
+	 * @param <T>
+	 *            the domain type
+	 * @param <R>
+	 *            the range type
+	 * @param domain
+	 *            distinct values that form the domain of the bijection
+	 * @param range
+	 *            distinct values that form the range of the bijection
+	 * @return a bijection between the arrays
+	 * @throws IllegalArgumentException
+	 *             if the arrays differ in length, or if either array contains
+	 *             equal values
+	 */
+
+	static <T, R> Bijection<T, R> fromArrays(T[] domain, R[] range) {
+		if (domain == null) throw new IllegalArgumentException("null domain");
+		if (range == null) throw new IllegalArgumentException("null range");
+		if (domain.length != range.length) throw new IllegalArgumentException("mismatched domain and range lengths");
+		T[] ds = domain.clone();
+		R[] rs = range.clone();
+		PerfectIndex dIndex = new PerfectIndex(ds);
+		PerfectIndex rIndex = new PerfectIndex(rs);
+		@SuppressWarnings("unchecked")
+		Class<T> domainType = (Class<T>) ds.getClass().getComponentType();
+		@SuppressWarnings("unchecked")
+		Class<R> rangeType = (Class<R>) rs.getClass().getComponentType();
+		return new Bijection<T, R>() {
+			private Bijection<R, T> inverse;
+
+			@Override public Class<T> domainType()          { return domainType;               }
+			@Override public Class<R> rangeType()           { return rangeType;                }
+			@Override public boolean isInDomain(Object obj) { return dIndex.indexOf(obj) >= 0; }
+			@Override public boolean isInRange(Object obj)  { return rIndex.indexOf(obj) >= 0; }
+
+			@Override
+			public R apply(T t) {
+				int i = dIndex.indexOf(t);
+				if (i < 0) throw new IllegalArgumentException("not in domain");
+				return rs[i];
+			}
+
+			@Override
+			public T disapply(R r) {
+				int i = rIndex.indexOf(r);
+				if (i < 0) throw new IllegalArgumentException("not in range");
+				return ds[i];
+			}
+
+			@Override
+			public Bijection<R, T> inverse() {
+				if (inverse == null) inverse = Bijection.super.inverse();
+				return inverse;
+			}
 		};
 	}
 
+	/**
+	 * A bijection that assigns dense integer ids to values of the specified
+	 * type as they are first encountered.
+	 *
+	 * @param <T>
+	 *            the domain type
+	 * @param type
+	 *            the type of the values being encoded
+	 * @return a growable dictionary encoding
+	 */
+
+	static <T> DictionaryBijection<T> dictionary(Class<T> type) {
+		return dictionary(type, 0);
+	}
+
+	/**
+	 * A bijection that assigns dense integer ids to values of the specified
+	 * type as they are first encountered. The bijection is sized to hold the
+	 * expected number of values without resizing its index.
+	 *
+	 * @param <T>
+	 *            the domain type
+	 * @param type
+	 *            the type of the values being encoded
+	 * @param expectedSize
+	 *            the number of distinct values expected
+	 * @return a growable dictionary encoding
+	 * @throws IllegalArgumentException
+	 *             if the type is null or the expected size is negative
+	 */
+
+	static <T> DictionaryBijection<T> dictionary(Class<T> type, int expectedSize) {
+		if (type == null) throw new IllegalArgumentException("null type");
+		return new DictionaryBijection<>(type, expectedSize);
+	}
+
 	/**
 	 * Evaluates whether the supplied object is a valid parameter for the
 	 * {@link #disapply(Object)} method.
@@ -164,7 +336,9 @@ public interface Bijection<T, R> extends Mapping<T, R> {
 	T disapply(R r);
 
 	/**
-	 * Composes two bijections into a single bijection.
+	 * Composes two bijections into a single bijection. Composites are
+	 * flattened, identities are elided and adjacent bijections that invert each
+	 * other are cancelled. The inverse of a composite is computed only once.
 	 *
 	 * @param <S>
 	 *            the domain type
@@ -179,15 +353,7 @@ public interface Bijection<T, R> extends Mapping<T, R> {
 	public default <S> Bijection<S, R> compose(Bijection<S, T> before) {
 		if (before == null) throw new IllegalArgumentException("null before");
 		if (before.rangeType() != this.domainType()) throw new IllegalArgumentException("mismatched domain and range");
-		return new Bijection<S, R>() {
-			@Override public R apply(S s)                   { return Bijection.this.apply(before.apply(s));              }
-			@Override public S disapply(R r)                { return before.disapply(Bijection.this.disapply(r));        }
-			@Override public Bijection<R, S> inverse()      { return before.inverse().compose(Bijection.this.inverse()); }
-			@Override public Class<S> domainType()          { return before.domainType();                                }
-			@Override public Class<R> rangeType()           { return Bijection.this.rangeType();                         }
-			@Override public boolean isInDomain(Object obj) { return before.isInDomain(obj);                             }
-			@Override public boolean isInRange(Object obj)  { return Bijection.this.isInRange(obj);                      }
-		};
+		return Composition.compose(this, before);
 	}
 
 	/**
@@ -195,19 +361,94 @@ public interface Bijection<T, R> extends Mapping<T, R> {
 	 * with its inverse should be equivalent to the identity bijection on its
 	 * domain.
 	 *
+	 * The default implementation returns a new view on each call. Since
+	 * compositions cancel a bijection against its inverse by identity,
+	 * implementations should cache the inverse so that repeated calls return
+	 * the same object; the bijections provided by this package do so.
+	 *
 	 * @return a bijective inverse
 	 */
 
 	default Bijection<R, T> inverse() {
-		return new Bijection<R, T>() {
-			@Override public T apply(R t)                   { return Bijection.this.disapply(t);     }
-			@Override public R disapply(T t)                { return Bijection.this.apply(t);        }
-			@Override public Bijection<T,R> inverse()       { return Bijection.this;                 }
-			@Override public Class<R> domainType()          { return Bijection.this.rangeType();     }
-			@Override public Class<T> rangeType()           { return Bijection.this.domainType();    }
-			@Override public boolean isInDomain(Object obj) { return Bijection.this.isInRange(obj);  }
-			@Override public boolean isInRange(Object obj)  { return Bijection.this.isInDomain(obj); }
-		};
+		return new Composition.Inverse<>(this);
+	}
+
+	/**
+	 * A bijection that caches the values of this bijection in both directions.
+	 *
+	 * @param capacity
+	 *            the maximum number of values to cache in each direction
+	 * @return a caching bijection over the same domain and range
+	 * @throws IllegalArgumentException
+	 *             if the capacity is not positive
+	 * @see Mapping#cached(int)
+	 */
+
+	@Override
+	default CachingBijection<T, R> cached(int capacity) {
+		return new CachingBijection<>(this, capacity);
+	}
+
+	/**
+	 * Inverts the bijection over a range of values, storing the results at the
+	 * same indices in a destination array. The source and destination arrays
+	 * may be the same array. The default implementation simply disapplies the
+	 * bijection to each value in turn.
+	 *
+	 * @param src
+	 *            the values to which the inverse is applied
+	 * @param dst
+	 *            the array into which the results are written
+	 * @param off
+	 *            the index of the first value
+	 * @param len
+	 *            the number of values to be mapped
+	 * @throws IllegalArgumentException
+	 *             if either array is null or the range exceeds either array
+	 * @see #applyAll(Object[], Object[], int, int)
+	 */
+
+	default void disapplyAll(R[] src, T[] dst, int off, int len) {
+		Bulk.checkRange(src, src == null ? 0 : src.length, dst, dst == null ? 0 : dst.length, off, len);
+		for (int i = off, lim = off + len; i < lim; i++) {
+			dst[i] = disapply(src[i]);
+		}
+	}
+
+	/**
+	 * Inverts the bijection over every value in an array. The results are
+	 * returned in a new array having the domain type as its component type.
+	 *
+	 * @param src
+	 *            the values to which the inverse is applied
+	 * @return an array containing the mapped values
+	 */
+
+	default T[] disapplyAll(R[] src) {
+		if (src == null) throw new IllegalArgumentException("null src");
+		T[] dst = Bulk.newArray(domainType(), src.length);
+		disapplyAll(src, dst, 0, src.length);
+		return dst;
+	}
+
+	/**
+	 * Inverts the bijection over every value in an array, dividing the work
+	 * between the threads of the common fork-join pool.
+	 *
+	 * @param src
+	 *            the values to which the inverse is applied
+	 * @param threshold
+	 *            the number of values below which the work will not be split
+	 * @return an array containing the mapped values
+	 * @see #applyAllParallel(Object[], int)
+	 */
+
+	default T[] disapplyAllParallel(R[] src, int threshold) {
+		if (src == null) throw new IllegalArgumentException("null src");
+		Bulk.checkThreshold(threshold);
+		T[] dst = Bulk.newArray(domainType(), src.length);
+		Bulk.parallel(src.length, threshold, (off, len) -> disapplyAll(src, dst, off, len));
+		return dst;
 	}
 
 }
@@ -0,0 +1,371 @@
+/*
+ * Copyright 2016 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.fundament;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * Encodes values of a given type into byte buffers and decodes them again.
+ * Values are written at the current position of a caller-supplied buffer and
+ * read in place from it, so that values can be encoded directly into direct
+ * or memory-mapped buffers without intermediate copies. The number of bytes
+ * that will be written for any value can be computed before it is encoded,
+ * allowing a batch of values to be laid out in a single pass.
+ *
+ * Codecs for compound values are assembled from simpler codecs, either by
+ * composing a codec with a {@link Bijection}, or by using the
+ * {@link #list(BufferCodec)} and
+ * {@link #tuple(Class, Function, BufferCodec, Function, BufferCodec, BiFunction)}
+ * methods.
+ *
+ * @author Tom Gibara
+ *
+ * @param <T>
+ *            the type of value encoded
+ */
+
+public interface BufferCodec<T> {
+
+	/**
+	 * A codec that encodes ints in four bytes using the byte order of the
+	 * buffer.
+	 *
+	 * @return a fixed-width int codec
+	 */
+
+	static BufferCodec<Integer> ints() {
+		return Codecs.INTS;
+	}
+
+	/**
+	 * A codec that encodes longs in eight bytes using the byte order of the
+	 * buffer.
+	 *
+	 * @return a fixed-width long codec
+	 */
+
+	static BufferCodec<Long> longs() {
+		return Codecs.LONGS;
+	}
+
+	/**
+	 * A codec that encodes doubles in eight bytes using the byte order of the
+	 * buffer.
+	 *
+	 * @return a fixed-width double codec
+	 */
+
+	static BufferCodec<Double> doubles() {
+		return Codecs.DOUBLES;
+	}
+
+	/**
+	 * A codec that encodes ints in between one and five bytes. Values are
+	 * zig-zag encoded so that integers of small magnitude, whether positive
+	 * or negative, are encoded compactly.
+	 *
+	 * @return a variable-width int codec
+	 */
+
+	static BufferCodec<Integer> varInts() {
+		return Codecs.VAR_INTS;
+	}
+
+	/**
+	 * A codec that encodes longs in between one and ten bytes. Values are
+	 * zig-zag encoded so that integers of small magnitude, whether positive
+	 * or negative, are encoded compactly.
+	 *
+	 * @return a variable-width long codec
+	 */
+
+	static BufferCodec<Long> varLongs() {
+		return Codecs.VAR_LONGS;
+	}
+
+	/**
+	 * A codec that encodes strings as UTF-8 bytes, preceded by the number of
+	 * bytes as a variable-width integer. As with
+	 * <code>String.getBytes(UTF_8)</code>, unpaired surrogates are encoded as
+	 * '?'.
+	 *
+	 * @return a UTF-8 string codec
+	 */
+
+	static BufferCodec<String> utf8() {
+		return Codecs.UTF8;
+	}
+
+	/**
+	 * A codec that encodes lists of values. The list is preceded by its size
+	 * as a variable-width integer, and its elements are encoded in order.
+	 * Lists are decoded as modifiable lists.
+	 *
+	 * @param <E>
+	 *            the type of list element
+	 * @param codec
+	 *            the codec for the elements of the list
+	 * @return a list codec
+	 */
+
+	static <E> BufferCodec<List<E>> list(BufferCodec<E> codec) {
+		if (codec == null) throw new IllegalArgumentException("null codec");
+		return new Codecs.ListCodec<>(codec);
+	}
+
+	/**
+	 * A codec that encodes values as a pair of components. The components are
+	 * extracted with the supplied functions, encoded in order, and combined
+	 * into a new value on decoding.
+	 *
+	 * @param <T>
+	 *            the type of value encoded
+	 * @param <A>
+	 *            the type of the first component
+	 * @param <B>
+	 *            the type of the second component
+	 * @param type
+	 *            the type of value encoded
+	 * @param first
+	 *            extracts the first component of a value
+	 * @param firstCodec
+	 *            encodes the first component
+	 * @param second
+	 *            extracts the second component of a value
+	 * @param secondCodec
+	 *            encodes the second component
+	 * @param constructor
+	 *            constructs a value from its components
+	 * @return a tuple codec
+	 */
+
+	static <T, A, B> BufferCodec<T> tuple(Class<T> type,
+			Function<? super T, ? extends A> first, BufferCodec<A> firstCodec,
+			Function<? super T, ? extends B> second, BufferCodec<B> secondCodec,
+			BiFunction<? super A, ? super B, ? extends T> constructor) {
+		if (type == null) throw new IllegalArgumentException("null type");
+		if (first == null) throw new IllegalArgumentException("null first");
+		if (firstCodec == null) throw new IllegalArgumentException("null firstCodec");
+		if (second == null) throw new IllegalArgumentException("null second");
+		if (secondCodec == null) throw new IllegalArgumentException("null secondCodec");
+		if (constructor == null) throw new IllegalArgumentException("null constructor");
+		return new BufferCodec<T>() {
+			@Override public Class<T> type() { return type; }
+
+			@Override
+			public int encodedSize(T value) {
+				return firstCodec.encodedSize(first.apply(value)) + secondCodec.encodedSize(second.apply(value));
+			}
+
+			@Override
+			public void encode(T value, ByteBuffer buffer) {
+				firstCodec.encode(first.apply(value), buffer);
+				secondCodec.encode(second.apply(value), buffer);
+			}
+
+			@Override
+			public T decode(ByteBuffer buffer) {
+				A a = firstCodec.decode(buffer);
+				B b = secondCodec.decode(buffer);
+				return constructor.apply(a, b);
+			}
+		};
+	}
+
+	/**
+	 * The type of value encoded by this codec.
+	 *
+	 * @return the value type, never null
+	 */
+
+	Class<T> type();
+
+	/**
+	 * The number of bytes that {@link #encode(Object, ByteBuffer)} will write
+	 * for the supplied value.
+	 *
+	 * @param value
+	 *            a value to be encoded
+	 * @return the encoded size of the value in bytes
+	 */
+
+	int encodedSize(T value);
+
+	/**
+	 * Encodes a value at the current position of the buffer, advancing the
+	 * position by the encoded size of the value.
+	 *
+	 * @param value
+	 *            the value to encode
+	 * @param buffer
+	 *            the buffer into which the value is encoded
+	 * @throws java.nio.BufferOverflowException
+	 *             if the buffer has insufficient space remaining
+	 */
+
+	void encode(T value, ByteBuffer buffer);
+
+	/**
+	 * Decodes a value from the current position of the buffer, advancing the
+	 * position past the encoded value.
+	 *
+	 * @param buffer
+	 *            the buffer from which the value is decoded
+	 * @return the decoded value
+	 * @throws java.nio.BufferUnderflowException
+	 *             if the buffer ends before the value is fully decoded
+	 */
+
+	T decode(ByteBuffer buffer);
+
+	/**
+	 * The total number of bytes required to encode a range of values.
+	 *
+	 * @param values
+	 *            the values to be encoded
+	 * @param off
+	 *            the index of the first value
+	 * @param len
+	 *            the number of values
+	 * @return the combined encoded size of the values
+	 */
+
+	default long encodedSize(T[] values, int off, int len) {
+		if (values == null) throw new IllegalArgumentException("null values");
+		if (off < 0) throw new IllegalArgumentException("negative off");
+		if (len < 0) throw new IllegalArgumentException("negative len");
+		if (off + len > values.length) throw new IllegalArgumentException("range exceeds values");
+		long size = 0L;
+		for (int i = off, lim = off + len; i < lim; i++) {
+			size += encodedSize(values[i]);
+		}
+		return size;
+	}
+
+	/**
+	 * Encodes a range of values consecutively into a buffer. The encoded size
+	 * of the values is computed first so that the buffer is left unmodified if
+	 * it has insufficient space.
+	 *
+	 * @param values
+	 *            the values to be encoded
+	 * @param off
+	 *            the index of the first value
+	 * @param len
+	 *            the number of values
+	 * @param buffer
+	 *            the buffer into which the values are encoded
+	 * @return the number of bytes written
+	 * @throws IllegalArgumentException
+	 *             if the buffer has insufficient space remaining
+	 */
+
+	default int encodeAll(T[] values, int off, int len, ByteBuffer buffer) {
+		if (buffer == null) throw new IllegalArgumentException("null buffer");
+		long size = encodedSize(values, off, len);
+		if (size > buffer.remaining()) throw new IllegalArgumentException("insufficient buffer space");
+		for (int i = off, lim = off + len; i < lim; i++) {
+			encode(values[i], buffer);
+		}
+		return (int) size;
+	}
+
+	/**
+	 * Decodes consecutive values from a buffer into an array.
+	 *
+	 * @param buffer
+	 *            the buffer from which the values are decoded
+	 * @param values
+	 *            the array into which values are decoded
+	 * @param off
+	 *            the index at which the first value is stored
+	 * @param len
+	 *            the number of values to decode
+	 */
+
+	default void decodeAll(ByteBuffer buffer, T[] values, int off, int len) {
+		if (buffer == null) throw new IllegalArgumentException("null buffer");
+		Bulk.checkRange(values, values == null ? 0 : values.length, values, values == null ? 0 : values.length, off, len);
+		for (int i = off, lim = off + len; i < lim; i++) {
+			values[i] = decode(buffer);
+		}
+	}
+
+	/**
+	 * A codec for the domain of a bijection that encodes values by first
+	 * applying the bijection and then encoding the result with this codec.
+	 *
+	 * @param <U>
+	 *            the type of value encoded by the returned codec
+	 * @param bijection
+	 *            a bijection into values of this codec
+	 * @return a codec for the domain of the bijection
+	 */
+
+	default <U> BufferCodec<U> compose(Bijection<U, T> bijection) {
+		if (bijection == null) throw new IllegalArgumentException("null bijection");
+		return new BufferCodec<U>() {
+			@Override public Class<U> type()                         { return bijection.domainType();                               }
+			@Override public int encodedSize(U value)                { return BufferCodec.this.encodedSize(bijection.apply(value)); }
+			@Override public void encode(U value, ByteBuffer buffer) { BufferCodec.this.encode(bijection.apply(value), buffer);     }
+			@Override public U decode(ByteBuffer buffer)             { return bijection.disapply(BufferCodec.this.decode(buffer));  }
+		};
+	}
+
+	/**
+	 * Exposes this codec as a bijection. Applying the bijection encodes the
+	 * value into a newly allocated heap buffer that is ready to be read.
+	 * Disapplying the bijection decodes a value from the remaining bytes of a
+	 * buffer without changing its position.
+	 *
+	 * @return the codec as a bijection
+	 */
+
+	default Bijection<T, ByteBuffer> asBijection() {
+		return new Bijection<T, ByteBuffer>() {
+			private Bijection<ByteBuffer, T> inverse;
+
+			@Override public Class<T> domainType()         { return BufferCodec.this.type(); }
+			@Override public Class<ByteBuffer> rangeType() { return ByteBuffer.class;         }
+
+			@Override
+			public T disapply(ByteBuffer buffer) {
+				// duplicates are always big-endian, but codecs follow the order of the buffer
+				return BufferCodec.this.decode(buffer.duplicate().order(buffer.order()));
+			}
+
+			@Override
+			public ByteBuffer apply(T value) {
+				ByteBuffer buffer = ByteBuffer.allocate(BufferCodec.this.encodedSize(value));
+				BufferCodec.this.encode(value, buffer);
+				((Buffer) buffer).flip();
+				return buffer;
+			}
+
+			@Override
+			public Bijection<ByteBuffer, T> inverse() {
+				if (inverse == null) inverse = Bijection.super.inverse();
+				return inverse;
+			}
+		};
+	}
+
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright 2016 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.fundament;
+
+import java.lang.reflect.Array;
+import java.util.Spliterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Supports the bulk application of mappings.
+ *
+ * @author Tom Gibara
+ */
+
+final class Bulk {
+
+	// the number of values passed through each stage of a composite before the next stage is applied
+	static final int BLOCK_SIZE = 1024;
+
+	static void checkRange(Object src, int srcLength, Object dst, int dstLength, int off, int len) {
+		if (src == null) throw new IllegalArgumentException("null src");
+		if (dst == null) throw new IllegalArgumentException("null dst");
+		if (off < 0) throw new IllegalArgumentException("negative off");
+		if (len < 0) throw new IllegalArgumentException("negative len");
+		if (off + len > srcLength) throw new IllegalArgumentException("range exceeds src");
+		if (off + len > dstLength) throw new IllegalArgumentException("range exceeds dst");
+	}
+
+	static void checkThreshold(int threshold) {
+		if (threshold < 1) throw new IllegalArgumentException("non-positive threshold");
+	}
+
+	@SuppressWarnings("unchecked")
+	static <E> E[] newArray(Class<E> type, int length) {
+		return (E[]) Array.newInstance(type, length);
+	}
+
+	// applies the operation to the range, splitting it over the common fork-join pool
+	static void parallel(int length, int threshold, Range range) {
+		if (length <= threshold) {
+			range.apply(0, length);
+		} else {
+			ForkJoinPool.commonPool().invoke(new RangeTask(range, 0, length, threshold));
+		}
+	}
+
+	// feeds the spliterator through the operation one block at a time
+	@SuppressWarnings("unchecked")
+	static <R> void blocks(Spliterator<?> src, Consumer<? super R> dst, Block block) {
+		if (src == null) throw new IllegalArgumentException("null src");
+		if (dst == null) throw new IllegalArgumentException("null dst");
+		Buffer buffer = new Buffer();
+		Object[] values = buffer.values;
+		while (true) {
+			buffer.count = 0;
+			while (buffer.count < BLOCK_SIZE && src.tryAdvance(buffer));
+			int count = buffer.count;
+			if (count == 0) return;
+			block.apply(values, count);
+			for (int i = 0; i < count; i++) {
+				dst.consume((R) values[i]);
+			}
+			if (count < BLOCK_SIZE) return;
+		}
+	}
+
+	private Bulk() { }
+
+	// inner classes
+
+	interface Range {
+
+		void apply(int off, int len);
+
+	}
+
+	interface Block {
+
+		void apply(Object[] values, int count);
+
+	}
+
+	private static final class Buffer implements java.util.function.Consumer<Object> {
+
+		final Object[] values = new Object[BLOCK_SIZE];
+		int count;
+
+		@Override
+		public void accept(Object value) {
+			values[count++] = value;
+		}
+
+	}
+
+	private static final class RangeTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final Range range;
+		private final int from;
+		private final int to;
+		private final int threshold;
+
+		RangeTask(Range range, int from, int to, int threshold) {
+			this.range = range;
+			this.from = from;
+			this.to = to;
+			this.threshold = threshold;
+		}
+
+		@Override
+		protected void compute() {
+			int length = to - from;
+			if (length <= threshold) {
+				range.apply(from, length);
+			} else {
+				int mid = from + (length >>> 1);
+				invokeAll(new RangeTask(range, from, mid, threshold), new RangeTask(range, mid, to, threshold));
+			}
+		}
+
+	}
+}
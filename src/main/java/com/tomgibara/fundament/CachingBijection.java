@@ -0,0 +1,90 @@
+/*
+ * Copyright 2016 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.fundament;
+
+/**
+ * A bijection that memoizes the values of another bijection in both
+ * directions. Applying the bijection to a value also caches the inverse
+ * mapping, so that disapplying the result does not require the underlying
+ * bijection to be evaluated, and vice versa. The reported statistics combine
+ * the caches for both directions.
+ *
+ * Instances are obtained via {@link Bijection#cached(int)}.
+ *
+ * @author Tom Gibara
+ *
+ * @param <T>
+ *            the type of the input to the function
+ * @param <R>
+ *            the type of the result of the function
+ */
+
+public class CachingBijection<T, R> extends CachingMapping<T, R> implements Bijection<T, R> {
+
+	private final CachingMapping<R, T> inverse;
+	private Bijection<R, T> inverted;
+
+	CachingBijection(Bijection<T, R> bijection, int capacity) {
+		this(bijection, capacity, new Link<>());
+	}
+
+	// the link supplies the inverse cache to the forward computation, which must be created first
+	private CachingBijection(Bijection<T, R> bijection, int capacity, Link<R, T> link) {
+		super(bijection, capacity, t -> {
+			R r = bijection.apply(t);
+			link.inverse.cache(r, t);
+			return r;
+		});
+		inverse = new CachingMapping<>(bijection.inverse(), capacity, r -> {
+			T t = bijection.disapply(r);
+			cache(t, r);
+			return t;
+		});
+		link.inverse = inverse;
+	}
+
+	@Override
+	public T disapply(R r) {
+		return inverse.apply(r);
+	}
+
+	@Override
+	public Bijection<R, T> inverse() {
+		if (inverted == null) inverted = Bijection.super.inverse();
+		return inverted;
+	}
+
+	@Override
+	public boolean isInRange(Object obj) {
+		return ((Bijection<T, R>) mapping).isInRange(obj);
+	}
+
+	@Override public long hitCount()      { return super.hitCount() + inverse.hitCount();           }
+	@Override public long missCount()     { return super.missCount() + inverse.missCount();         }
+	@Override public long evictionCount() { return super.evictionCount() + inverse.evictionCount(); }
+	@Override public long size()          { return super.size() + inverse.size();                   }
+
+	// inner classes
+
+	private static final class Link<R, T> {
+
+		// volatile since it is assigned after the final fields of the forward cache are frozen
+		volatile CachingMapping<R, T> inverse;
+
+	}
+
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2016 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.fundament;
+
+import java.util.function.Function;
+
+/**
+ * A mapping that memoizes the values of another mapping in a bounded
+ * concurrent cache. The mapping retains the domain and range of the mapping
+ * it decorates. Instances are safe for concurrent use provided that the
+ * underlying mapping is, and for any value in the domain, only one thread at
+ * a time will apply the underlying mapping.
+ *
+ * Instances are obtained via {@link Mapping#cached(int)}.
+ *
+ * @author Tom Gibara
+ *
+ * @param <T>
+ *            the type of the input to the function
+ * @param <R>
+ *            the type of the result of the function
+ * @see CachingBijection
+ */
+
+public class CachingMapping<T, R> implements Mapping<T, R> {
+
+	final Mapping<T, R> mapping;
+	private final SegmentedCache<T, R> cache;
+	private final Function<T, R> fn;
+
+	CachingMapping(Mapping<T, R> mapping, int capacity) {
+		this(mapping, capacity, mapping::apply);
+	}
+
+	// the computation is the function used to populate the cache
+	CachingMapping(Mapping<T, R> mapping, int capacity, Function<T, R> computation) {
+		if (capacity < 1) throw new IllegalArgumentException("non-positive capacity");
+		this.mapping = mapping;
+		cache = new SegmentedCache<>(capacity);
+		fn = computation;
+	}
+
+	@Override
+	public R apply(T t) {
+		return cache.get(t, fn);
+	}
+
+	@Override public Class<T> domainType()          { return mapping.domainType();    }
+	@Override public Class<R> rangeType()           { return mapping.rangeType();     }
+	@Override public boolean isInDomain(Object obj) { return mapping.isInDomain(obj); }
+
+	/**
+	 * The number of times a value was obtained from the cache without applying
+	 * the underlying mapping.
+	 *
+	 * @return the number of cache hits
+	 */
+
+	public long hitCount() {
+		return cache.hits.sum();
+	}
+
+	/**
+	 * The number of times the underlying mapping was applied because the value
+	 * was not cached.
+	 *
+	 * @return the number of cache misses
+	 */
+
+	public long missCount() {
+		return cache.misses.sum();
+	}
+
+	/**
+	 * The number of values that have been evicted from the cache to keep it
+	 * within its capacity.
+	 *
+	 * @return the number of cache evictions
+	 */
+
+	public long evictionCount() {
+		return cache.evictions.sum();
+	}
+
+	/**
+	 * The number of values currently held in the cache.
+	 *
+	 * @return the size of the cache
+	 */
+
+	public long size() {
+		return cache.size();
+	}
+
+	// allows subclasses to populate the cache
+	void cache(T t, R r) {
+		cache.put(t, r);
+	}
+
+}
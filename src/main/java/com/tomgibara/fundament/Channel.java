@@ -0,0 +1,365 @@
+/*
+ * Copyright 2016 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.fundament;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A bounded channel for passing values between threads. Values are written
+ * to the channel via the {@link Consumer} returned by {@link #writer()} and
+ * read via the {@link Producer} returned by {@link #reader()}.
+ *
+ * Channels are backed by a preallocated ring buffer in which each slot
+ * carries a sequence number, so that neither writing nor reading takes a lock
+ * or allocates. Channels may be created for any number of writers and
+ * readers, see {@link #mpmc(int, WaitStrategy, Backpressure)}, or for any
+ * number of writers and a single reader, see
+ * {@link #mpsc(int, WaitStrategy, Backpressure)}, which avoids contention on
+ * the read index.
+ *
+ * How the writer behaves when the channel is full is determined by a
+ * {@link Backpressure} policy; how threads wait for space or values is
+ * determined by a {@link WaitStrategy}. Null values are not supported.
+ *
+ * @author Tom Gibara
+ *
+ * @param <T>
+ *            the type of value passed through the channel
+ */
+
+public final class Channel<T> {
+
+	/**
+	 * Determines how a thread waits for a channel to accept or supply a value.
+	 */
+
+	public enum WaitStrategy {
+
+		/**
+		 * Waits in a busy loop. Minimizes latency at the cost of occupying a
+		 * processor.
+		 */
+
+		SPIN,
+
+		/**
+		 * Yields the processor between attempts.
+		 */
+
+		YIELD,
+
+		/**
+		 * Parks the thread between attempts, for increasing periods of up to a
+		 * millisecond. Minimizes processor use at the cost of latency.
+		 */
+
+		PARK;
+
+		private static final int SPINS = 100;
+		private static final long MAX_PARK_NANOS = 1_000_000L;
+
+		// returns the number of attempts made
+		int idle(int attempts) {
+			if (Thread.currentThread().isInterrupted()) throw new IllegalStateException("interrupted");
+			switch (this) {
+			case YIELD:
+				Thread.yield();
+				break;
+			case PARK:
+				if (attempts < SPINS) {
+					Thread.yield();
+				} else {
+					LockSupport.parkNanos(Math.min(MAX_PARK_NANOS, 1L << Math.min(attempts - SPINS, 20)));
+				}
+				break;
+			default:
+				break;
+			}
+			return attempts + 1;
+		}
+
+	}
+
+	/**
+	 * Determines how a writer behaves when the channel is full.
+	 */
+
+	public enum Backpressure {
+
+		/**
+		 * The writer waits until the channel can accept the value.
+		 */
+
+		BLOCK,
+
+		/**
+		 * The value is discarded, see {@link Channel#droppedCount()}.
+		 */
+
+		DROP,
+
+		/**
+		 * The writer rejects the value with an
+		 * <code>IllegalArgumentException</code>.
+		 */
+
+		FAIL
+
+	}
+
+	/**
+	 * Creates a channel that supports any number of concurrent writers and
+	 * readers.
+	 *
+	 * @param <T>
+	 *            the type of value passed through the channel
+	 * @param capacity
+	 *            the minimum number of values the channel can hold, rounded up
+	 *            to a power of two
+	 * @param waitStrategy
+	 *            how threads wait on the channel
+	 * @param backpressure
+	 *            how writers behave when the channel is full
+	 * @return a new channel
+	 */
+
+	public static <T> Channel<T> mpmc(int capacity, WaitStrategy waitStrategy, Backpressure backpressure) {
+		return new Channel<>(capacity, waitStrategy, backpressure, false);
+	}
+
+	/**
+	 * Creates a channel that supports any number of concurrent writers but
+	 * only one reader. Reading from the channel from multiple threads
+	 * concurrently has unspecified results.
+	 *
+	 * @param <T>
+	 *            the type of value passed through the channel
+	 * @param capacity
+	 *            the minimum number of values the channel can hold, rounded up
+	 *            to a power of two
+	 * @param waitStrategy
+	 *            how threads wait on the channel
+	 * @param backpressure
+	 *            how writers behave when the channel is full
+	 * @return a new channel
+	 */
+
+	public static <T> Channel<T> mpsc(int capacity, WaitStrategy waitStrategy, Backpressure backpressure) {
+		return new Channel<>(capacity, waitStrategy, backpressure, true);
+	}
+
+	private final Object[] buffer;
+	// the sequence of each slot, indicating whether it is ready to be written or read
+	private final AtomicLongArray sequences;
+	private final int mask;
+	private final WaitStrategy waitStrategy;
+	private final Backpressure backpressure;
+	private final boolean singleReader;
+	private final PaddedAtomicLong writeIndex = new PaddedAtomicLong();
+	private final PaddedAtomicLong readIndex = new PaddedAtomicLong();
+	private final LongAdder dropped = new LongAdder();
+
+	private Channel(int capacity, WaitStrategy waitStrategy, Backpressure backpressure, boolean singleReader) {
+		if (capacity < 1) throw new IllegalArgumentException("non-positive capacity");
+		if (capacity > 1 << 30) throw new IllegalArgumentException("capacity too large");
+		if (waitStrategy == null) throw new IllegalArgumentException("null waitStrategy");
+		if (backpressure == null) throw new IllegalArgumentException("null backpressure");
+		int size = Math.max(2, Integer.highestOneBit(capacity * 2 - 1));
+		buffer = new Object[size];
+		sequences = new AtomicLongArray(size);
+		for (int i = 0; i < size; i++) {
+			sequences.lazySet(i, i);
+		}
+		mask = size - 1;
+		this.waitStrategy = waitStrategy;
+		this.backpressure = backpressure;
+		this.singleReader = singleReader;
+	}
+
+	/**
+	 * Writes a value to the channel if there is space for it.
+	 *
+	 * @param value
+	 *            a non-null value
+	 * @return true if the value was written, false if the channel is full
+	 */
+
+	public boolean offer(T value) {
+		if (value == null) throw new IllegalArgumentException("null value");
+		while (true) {
+			long index = writeIndex.get();
+			int slot = (int) index & mask;
+			long diff = sequences.get(slot) - index;
+			if (diff == 0L) {
+				if (writeIndex.compareAndSet(index, index + 1)) {
+					buffer[slot] = value;
+					// publishes the value
+					sequences.lazySet(slot, index + 1);
+					return true;
+				}
+			} else if (diff < 0L) {
+				return false;
+			}
+			// another writer claimed the slot, retry
+		}
+	}
+
+	/**
+	 * Reads a value from the channel if one is available.
+	 *
+	 * @return a value, or null if the channel is empty
+	 */
+
+	@SuppressWarnings("unchecked")
+	public T poll() {
+		while (true) {
+			long index = readIndex.get();
+			int slot = (int) index & mask;
+			long diff = sequences.get(slot) - (index + 1);
+			if (diff == 0L) {
+				if (singleReader) {
+					readIndex.lazySet(index + 1);
+				} else if (!readIndex.compareAndSet(index, index + 1)) {
+					continue;
+				}
+				Object value = buffer[slot];
+				buffer[slot] = null;
+				// releases the slot to writers
+				sequences.lazySet(slot, index + mask + 1);
+				return (T) value;
+			} else if (diff < 0L) {
+				return null;
+			}
+			// another reader took the value, retry
+		}
+	}
+
+	/**
+	 * Reads up to a maximum number of available values, passing each to the
+	 * supplied consumer. This method does not wait for values.
+	 *
+	 * @param consumer
+	 *            receives the values read
+	 * @param max
+	 *            the maximum number of values to read
+	 * @return the number of values read
+	 */
+
+	public int drain(Consumer<? super T> consumer, int max) {
+		if (consumer == null) throw new IllegalArgumentException("null consumer");
+		if (max < 0) throw new IllegalArgumentException("negative max");
+		int count = 0;
+		while (count < max) {
+			T value = poll();
+			if (value == null) break;
+			consumer.consume(value);
+			count++;
+		}
+		return count;
+	}
+
+	/**
+	 * A consumer that writes to the channel. If the channel is full, the
+	 * behaviour of the consumer is determined by the channel's
+	 * {@link Backpressure} policy.
+	 *
+	 * @return a consumer that writes values to the channel
+	 */
+
+	public Consumer<T> writer() {
+		return this::write;
+	}
+
+	/**
+	 * A producer that reads from the channel, waiting according to the
+	 * channel's {@link WaitStrategy} if no value is available.
+	 *
+	 * @return a producer that reads values from the channel
+	 */
+
+	public Producer<T> reader() {
+		return this::read;
+	}
+
+	/**
+	 * The number of values in the channel. The value is an estimate if the
+	 * channel is being concurrently modified.
+	 *
+	 * @return the number of values in the channel
+	 */
+
+	public int size() {
+		long size = writeIndex.get() - readIndex.get();
+		return (int) Math.max(0L, Math.min(size, buffer.length));
+	}
+
+	/**
+	 * The maximum number of values the channel can hold.
+	 *
+	 * @return the capacity of the channel
+	 */
+
+	public int capacity() {
+		return buffer.length;
+	}
+
+	/**
+	 * The number of values discarded because the channel was full. Only
+	 * channels with a {@link Backpressure#DROP} policy discard values.
+	 *
+	 * @return the number of discarded values
+	 */
+
+	public long droppedCount() {
+		return dropped.sum();
+	}
+
+	private void write(T value) {
+		if (offer(value)) return;
+		switch (backpressure) {
+		case DROP:
+			dropped.increment();
+			return;
+		case FAIL:
+			throw new IllegalArgumentException("channel full");
+		default:
+			for (int attempts = waitStrategy.idle(0); !offer(value); attempts = waitStrategy.idle(attempts));
+		}
+	}
+
+	private T read() {
+		T value = poll();
+		for (int attempts = 0; value == null; value = poll()) {
+			attempts = waitStrategy.idle(attempts);
+		}
+		return value;
+	}
+
+	// inner classes
+
+	// padding reduces false sharing between the read and write indices
+	@SuppressWarnings("serial")
+	private static final class PaddedAtomicLong extends AtomicLong {
+
+		long p1, p2, p3, p4, p5, p6, p7;
+
+	}
+
+}
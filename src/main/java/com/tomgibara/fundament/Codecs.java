@@ -0,0 +1,263 @@
+/*
+ * Copyright 2016 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.fundament;
+
+import java.nio.Buffer;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Provides the standard {@link BufferCodec} implementations.
+ *
+ * @author Tom Gibara
+ */
+
+final class Codecs {
+
+	static final BufferCodec<Integer> INTS = new BufferCodec<Integer>() {
+		@Override public Class<Integer> type()                         { return Integer.class;   }
+		@Override public int encodedSize(Integer value)                { return 4;               }
+		@Override public void encode(Integer value, ByteBuffer buffer) { buffer.putInt(value);   }
+		@Override public Integer decode(ByteBuffer buffer)             { return buffer.getInt(); }
+	};
+
+	static final BufferCodec<Long> LONGS = new BufferCodec<Long>() {
+		@Override public Class<Long> type()                         { return Long.class;       }
+		@Override public int encodedSize(Long value)                { return 8;                }
+		@Override public void encode(Long value, ByteBuffer buffer) { buffer.putLong(value);   }
+		@Override public Long decode(ByteBuffer buffer)             { return buffer.getLong(); }
+	};
+
+	static final BufferCodec<Double> DOUBLES = new BufferCodec<Double>() {
+		@Override public Class<Double> type()                         { return Double.class;       }
+		@Override public int encodedSize(Double value)                { return 8;                  }
+		@Override public void encode(Double value, ByteBuffer buffer) { buffer.putDouble(value);   }
+		@Override public Double decode(ByteBuffer buffer)             { return buffer.getDouble(); }
+	};
+
+	static final BufferCodec<Integer> VAR_INTS = new BufferCodec<Integer>() {
+		@Override public Class<Integer> type()                         { return Integer.class;               }
+		@Override public int encodedSize(Integer value)                { return varIntSize(zigZag(value));   }
+		@Override public void encode(Integer value, ByteBuffer buffer) { putVarInt(buffer, zigZag(value));   }
+		@Override public Integer decode(ByteBuffer buffer)             { return unZigZag(getVarInt(buffer)); }
+	};
+
+	static final BufferCodec<Long> VAR_LONGS = new BufferCodec<Long>() {
+		@Override public Class<Long> type()                         { return Long.class;                   }
+		@Override public int encodedSize(Long value)                { return varLongSize(zigZag(value));   }
+		@Override public void encode(Long value, ByteBuffer buffer) { putVarLong(buffer, zigZag(value));   }
+		@Override public Long decode(ByteBuffer buffer)             { return unZigZag(getVarLong(buffer)); }
+	};
+
+	static final BufferCodec<String> UTF8 = new BufferCodec<String>() {
+
+		@Override public Class<String> type() { return String.class; }
+
+		@Override
+		public int encodedSize(String value) {
+			int length = utf8Length(value);
+			return varIntSize(length) + length;
+		}
+
+		@Override
+		public void encode(String value, ByteBuffer buffer) {
+			putVarInt(buffer, utf8Length(value));
+			putUtf8(buffer, value);
+		}
+
+		@Override
+		public String decode(ByteBuffer buffer) {
+			int length = getVarInt(buffer);
+			if (length < 0) throw new IllegalArgumentException("invalid string length");
+			if (length > buffer.remaining()) throw new BufferUnderflowException();
+			String str;
+			if (buffer.hasArray()) {
+				str = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, StandardCharsets.UTF_8);
+				((Buffer) buffer).position(buffer.position() + length);
+			} else {
+				byte[] bytes = new byte[length];
+				buffer.get(bytes);
+				str = new String(bytes, StandardCharsets.UTF_8);
+			}
+			return str;
+		}
+
+	};
+
+	// zig-zag encoding
+
+	static int zigZag(int i)     { return (i << 1) ^ (i >> 31);  }
+	static long zigZag(long l)   { return (l << 1) ^ (l >> 63);  }
+	static int unZigZag(int i)   { return (i >>> 1) ^ -(i & 1);  }
+	static long unZigZag(long l) { return (l >>> 1) ^ -(l & 1L); }
+
+	// variable length encoding
+
+	static int varIntSize(int i) {
+		int size = 1;
+		while ((i & ~0x7f) != 0) {
+			i >>>= 7;
+			size++;
+		}
+		return size;
+	}
+
+	static int varLongSize(long l) {
+		int size = 1;
+		while ((l & ~0x7fL) != 0L) {
+			l >>>= 7;
+			size++;
+		}
+		return size;
+	}
+
+	static void putVarInt(ByteBuffer buffer, int i) {
+		while ((i & ~0x7f) != 0) {
+			buffer.put((byte) (i & 0x7f | 0x80));
+			i >>>= 7;
+		}
+		buffer.put((byte) i);
+	}
+
+	static void putVarLong(ByteBuffer buffer, long l) {
+		while ((l & ~0x7fL) != 0L) {
+			buffer.put((byte) (l & 0x7f | 0x80));
+			l >>>= 7;
+		}
+		buffer.put((byte) l);
+	}
+
+	static int getVarInt(ByteBuffer buffer) {
+		int i = 0;
+		for (int shift = 0; shift < 35; shift += 7) {
+			byte b = buffer.get();
+			i |= (b & 0x7f) << shift;
+			if (b >= 0) return i;
+		}
+		throw new IllegalArgumentException("malformed variable length int");
+	}
+
+	static long getVarLong(ByteBuffer buffer) {
+		long l = 0L;
+		for (int shift = 0; shift < 70; shift += 7) {
+			byte b = buffer.get();
+			l |= (b & 0x7fL) << shift;
+			if (b >= 0) return l;
+		}
+		throw new IllegalArgumentException("malformed variable length long");
+	}
+
+	// utf-8 encoding
+
+	static int utf8Length(String str) {
+		int length = str.length();
+		int size = length;
+		for (int i = 0; i < length; i++) {
+			char c = str.charAt(i);
+			if (c < 0x80) continue;
+			if (c < 0x800) {
+				size += 1;
+			} else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(str.charAt(i + 1))) {
+				// the pair of chars is encoded in four bytes
+				size += 2;
+				i++;
+			} else if (Character.isSurrogate(c)) {
+				// unpaired surrogates are replaced with a single byte
+			} else {
+				size += 2;
+			}
+		}
+		return size;
+	}
+
+	static void putUtf8(ByteBuffer buffer, String str) {
+		int length = str.length();
+		for (int i = 0; i < length; i++) {
+			char c = str.charAt(i);
+			if (c < 0x80) {
+				buffer.put((byte) c);
+			} else if (c < 0x800) {
+				buffer.put((byte) (0xc0 | c >> 6));
+				buffer.put((byte) (0x80 | c & 0x3f));
+			} else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(str.charAt(i + 1))) {
+				int cp = Character.toCodePoint(c, str.charAt(++i));
+				buffer.put((byte) (0xf0 | cp >> 18));
+				buffer.put((byte) (0x80 | cp >> 12 & 0x3f));
+				buffer.put((byte) (0x80 | cp >> 6 & 0x3f));
+				buffer.put((byte) (0x80 | cp & 0x3f));
+			} else if (Character.isSurrogate(c)) {
+				buffer.put((byte) '?');
+			} else {
+				buffer.put((byte) (0xe0 | c >> 12));
+				buffer.put((byte) (0x80 | c >> 6 & 0x3f));
+				buffer.put((byte) (0x80 | c & 0x3f));
+			}
+		}
+	}
+
+	private Codecs() { }
+
+	// inner classes
+
+	static final class ListCodec<E> implements BufferCodec<List<E>> {
+
+		private final BufferCodec<E> codec;
+
+		ListCodec(BufferCodec<E> codec) {
+			this.codec = codec;
+		}
+
+		@SuppressWarnings("unchecked")
+		@Override
+		public Class<List<E>> type() {
+			return (Class<List<E>>) (Class<?>) List.class;
+		}
+
+		@Override
+		public int encodedSize(List<E> value) {
+			int size = varIntSize(value.size());
+			for (E e : value) {
+				size += codec.encodedSize(e);
+			}
+			return size;
+		}
+
+		@Override
+		public void encode(List<E> value, ByteBuffer buffer) {
+			putVarInt(buffer, value.size());
+			for (E e : value) {
+				codec.encode(e, buffer);
+			}
+		}
+
+		@Override
+		public List<E> decode(ByteBuffer buffer) {
+			int size = getVarInt(buffer);
+			if (size < 0) throw new IllegalArgumentException("invalid list size");
+			// guard against allocating large lists for corrupt data
+			List<E> list = new ArrayList<>(Math.min(size, buffer.remaining()));
+			for (int i = 0; i < size; i++) {
+				list.add(codec.decode(buffer));
+			}
+			return list;
+		}
+
+	}
+}
@@ -0,0 +1,417 @@
+/*
+ * Copyright 2016 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.fundament;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * The base class for mappings generated by {@link Mapping#compile(Mapping)}.
+ * A class is generated for each distinct sequence of stage classes. Stages
+ * created from functions, such as those returned by
+ * {@link Mapping#fromFunction(Class, Class, java.util.function.Function)},
+ * are replaced by their functions, so that the sequence is that of the
+ * function classes. Each generated class holds the stages of a composite in
+ * individual fields and applies them with straight-line code, so that every
+ * stage is invoked from its own call site. Since the classes of the stages
+ * are fixed for a given generated class, every call site remains
+ * monomorphic.
+ *
+ * Classes are defined as hidden classes where possible, and otherwise with
+ * <code>MethodHandles.Lookup.defineClass</code>; where neither is available,
+ * the composite is returned unchanged. At most a fixed number of generated
+ * classes are retained. The cache of generated classes does not prevent the
+ * classes of the stages from being unloaded; hidden classes are evicted
+ * when the cache is full, while other classes stop being generated once the
+ * limit is reached.
+ *
+ * @author Tom Gibara
+ *
+ * @param <S>
+ *            the type of the input to the function
+ * @param <R>
+ *            the type of the result of the function
+ */
+
+abstract class CompiledMapping<S, R> implements Mapping<S, R> {
+
+	// generated methods must remain well below the 64k code limit
+	private static final int MAX_STAGES = 256;
+
+	private static final String PACKAGE = CompiledMapping.class.getPackage().getName().replace('.', '/');
+	private static final String BASE_NAME = CompiledMapping.class.getName().replace('.', '/');
+	private static final String MAPPING_DESC = "L" + Mapping.class.getName().replace('.', '/') + ";";
+
+	// the maximum number of generated classes that are retained
+	private static final int MAX_SHAPES = 256;
+
+	private static final String FUNCTION_DESC = "Ljava/util/function/Function;";
+
+	// defines classes that can be unloaded once unreachable, available from Java 15
+	private static final Method DEFINE_HIDDEN_CLASS;
+	private static final Object HIDDEN_CLASS_OPTIONS;
+	private static final Method DEFINE_CLASS;
+
+	static {
+		Method method;
+		Object options;
+		try {
+			Class<?> optionType = Class.forName("java.lang.invoke.MethodHandles$Lookup$ClassOption");
+			options = Array.newInstance(optionType, 0);
+			method = MethodHandles.Lookup.class.getMethod("defineHiddenClass", byte[].class, boolean.class, options.getClass());
+		} catch (ClassNotFoundException | NoSuchMethodException | SecurityException e) {
+			method = null;
+			options = null;
+		}
+		DEFINE_HIDDEN_CLASS = method;
+		HIDDEN_CLASS_OPTIONS = options;
+		try {
+			method = MethodHandles.Lookup.class.getMethod("defineClass", byte[].class);
+		} catch (NoSuchMethodException | SecurityException e) {
+			method = null;
+		}
+		DEFINE_CLASS = method;
+	}
+
+	private static final AtomicInteger counter = new AtomicInteger();
+
+	// shapes for which no class could be generated map to UNAVAILABLE, guarded by itself
+	private static final Shapes constructors = new Shapes();
+	private static final Constructor<?> UNAVAILABLE;
+
+	static {
+		try {
+			UNAVAILABLE = Object.class.getConstructor();
+		} catch (NoSuchMethodException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	static <S, R> Mapping<S, R> compile(Mapping<S, R> mapping) {
+		if (mapping instanceof CompiledMapping) return mapping;
+		Mapping[] stages;
+		if (mapping instanceof Composition.Chain) {
+			stages = ((Composition.Chain) mapping).stages;
+		} else if (mapping instanceof Composition.BijectiveChain) {
+			stages = ((Composition.BijectiveChain) mapping).stages;
+		} else {
+			// there is nothing to fuse
+			return mapping;
+		}
+		if (DEFINE_CLASS == null && DEFINE_HIDDEN_CLASS == null) return mapping;
+		if (stages.length < 2 || stages.length > MAX_STAGES) return mapping;
+
+		// mappings that merely apply a function are replaced by the function, so that the
+		// call sites are specialized on functions, rather than the classes that wrap them
+		Function[] functions = new Function[stages.length];
+		for (int i = 0; i < stages.length; i++) {
+			functions[i] = function(stages[i]);
+		}
+		Shape shape = new Shape(functions);
+		Constructor<?> constructor;
+		synchronized (constructors) {
+			constructor = constructors.get(shape);
+			if (constructor == null) {
+				constructors.purge();
+				// classes that cannot be unloaded are never evicted, so stop generating them at the limit
+				if (DEFINE_HIDDEN_CLASS == null && counter.get() >= MAX_SHAPES) return mapping;
+				constructor = generate(stages.length);
+				constructors.put(shape, constructor);
+			}
+		}
+		if (constructor == UNAVAILABLE) return mapping;
+		try {
+			return (Mapping<S, R>) constructor.newInstance(mapping, functions);
+		} catch (ReflectiveOperationException e) {
+			return mapping;
+		}
+	}
+
+	private static Function<?, ?> function(Mapping<?, ?> stage) {
+		Function<?, ?> fn = stage;
+		while (fn instanceof Composition.Delegating) {
+			fn = ((Composition.Delegating) fn).function();
+		}
+		return fn;
+	}
+
+	private static Constructor<?> generate(int stageCount) {
+		String name = BASE_NAME + "$Shape" + counter.incrementAndGet();
+		try {
+			byte[] bytes = classBytes(name, stageCount);
+			Class<?> clss;
+			if (DEFINE_HIDDEN_CLASS != null) {
+				MethodHandles.Lookup lookup = (MethodHandles.Lookup) DEFINE_HIDDEN_CLASS.invoke(MethodHandles.lookup(), bytes, true, HIDDEN_CLASS_OPTIONS);
+				clss = lookup.lookupClass();
+			} else {
+				clss = (Class<?>) DEFINE_CLASS.invoke(MethodHandles.lookup(), bytes);
+			}
+			return clss.getConstructor(Mapping.class, Function[].class);
+		} catch (ReflectiveOperationException | SecurityException | LinkageError e) {
+			return UNAVAILABLE;
+		}
+	}
+
+	// generates a class that extends this class, with a field per stage
+	private static byte[] classBytes(String name, int stageCount) {
+		ConstantPool pool = new ConstantPool();
+		int thisClass = pool.classRef(name);
+		int superClass = pool.classRef(BASE_NAME);
+		int superInit = pool.memberRef(10, superClass, "<init>", "(" + MAPPING_DESC + ")V");
+		int apply = pool.memberRef(11, pool.classRef("java/util/function/Function"), "apply", "(Ljava/lang/Object;)Ljava/lang/Object;");
+		int[] fields = new int[stageCount];
+		for (int i = 0; i < stageCount; i++) {
+			fields[i] = pool.memberRef(9, thisClass, "s" + i, FUNCTION_DESC);
+		}
+		int code = pool.utf8("Code");
+		int initName = pool.utf8("<init>");
+		int initDesc = pool.utf8("(" + MAPPING_DESC + "[" + FUNCTION_DESC + ")V");
+		int applyName = pool.utf8("apply");
+		int applyDesc = pool.utf8("(Ljava/lang/Object;)Ljava/lang/Object;");
+		int fieldDesc = pool.utf8(FUNCTION_DESC);
+		int[] fieldNames = new int[stageCount];
+		for (int i = 0; i < stageCount; i++) {
+			fieldNames[i] = pool.utf8("s" + i);
+		}
+
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			DataOutputStream out = new DataOutputStream(bytes);
+			out.writeInt(0xcafebabe);
+			out.writeShort(0);
+			out.writeShort(52); // java 8
+			pool.write(out);
+			out.writeShort(0x0030); // final, super
+			out.writeShort(thisClass);
+			out.writeShort(superClass);
+			out.writeShort(0); // interfaces
+
+			out.writeShort(stageCount);
+			for (int i = 0; i < stageCount; i++) {
+				out.writeShort(0x0012); // private, final
+				out.writeShort(fieldNames[i]);
+				out.writeShort(fieldDesc);
+				out.writeShort(0); // attributes
+			}
+
+			out.writeShort(2);
+
+			// constructor: super(source); s0 = stages[0]; s1 = stages[1]; ...
+			ByteArrayOutputStream init = new ByteArrayOutputStream();
+			DataOutputStream ins = new DataOutputStream(init);
+			ins.writeByte(0x2a); // aload_0
+			ins.writeByte(0x2b); // aload_1
+			ins.writeByte(0xb7); // invokespecial
+			ins.writeShort(superInit);
+			for (int i = 0; i < stageCount; i++) {
+				ins.writeByte(0x2a); // aload_0
+				ins.writeByte(0x2c); // aload_2
+				if (i <= 5) {
+					ins.writeByte(0x03 + i); // iconst_i
+				} else {
+					ins.writeByte(0x11); // sipush
+					ins.writeShort(i);
+				}
+				ins.writeByte(0x32); // aaload
+				ins.writeByte(0xb5); // putfield
+				ins.writeShort(fields[i]);
+			}
+			ins.writeByte(0xb1); // return
+			writeMethod(out, 0x0001, initName, initDesc, code, 3, 3, init.toByteArray());
+
+			// apply: return s(n-1).apply( ... s1.apply(s0.apply(value)))
+			ByteArrayOutputStream body = new ByteArrayOutputStream();
+			DataOutputStream ops = new DataOutputStream(body);
+			ops.writeByte(0x2b); // aload_1
+			for (int i = 0; i < stageCount; i++) {
+				ops.writeByte(0x2a); // aload_0
+				ops.writeByte(0xb4); // getfield
+				ops.writeShort(fields[i]);
+				ops.writeByte(0x5f); // swap
+				ops.writeByte(0xb9); // invokeinterface
+				ops.writeShort(apply);
+				ops.writeByte(2);
+				ops.writeByte(0);
+			}
+			ops.writeByte(0xb0); // areturn
+			writeMethod(out, 0x0001, applyName, applyDesc, code, 2, 2, body.toByteArray());
+
+			out.writeShort(0); // attributes
+			out.flush();
+			return bytes.toByteArray();
+		} catch (IOException e) {
+			// not possible with a byte array stream
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static void writeMethod(DataOutputStream out, int access, int name, int desc, int codeAttr, int maxStack, int maxLocals, byte[] code) throws IOException {
+		out.writeShort(access);
+		out.writeShort(name);
+		out.writeShort(desc);
+		out.writeShort(1); // attributes
+		out.writeShort(codeAttr);
+		out.writeInt(12 + code.length);
+		out.writeShort(maxStack);
+		out.writeShort(maxLocals);
+		out.writeInt(code.length);
+		out.write(code);
+		out.writeShort(0); // exception table
+		out.writeShort(0); // attributes
+	}
+
+	private final Mapping<S, R> source;
+
+	CompiledMapping(Mapping<S, R> source) {
+		this.source = source;
+	}
+
+	@Override public Class<S> domainType()          { return source.domainType();    }
+	@Override public Class<R> rangeType()           { return source.rangeType();     }
+	@Override public boolean isInDomain(Object obj) { return source.isInDomain(obj); }
+
+	// inner classes
+
+	// identifies a sequence of function classes without preventing them from being unloaded
+	private static final class Shape {
+
+		private final WeakReference<Class<?>>[] classes;
+		private final int hashCode;
+
+		@SuppressWarnings("unchecked")
+		Shape(Function<?, ?>[] functions) {
+			classes = (WeakReference<Class<?>>[]) new WeakReference<?>[functions.length];
+			int h = functions.length;
+			for (int i = 0; i < functions.length; i++) {
+				Class<?> clss = functions[i].getClass();
+				classes[i] = new WeakReference<>(clss);
+				h = h * 31 + clss.hashCode();
+			}
+			hashCode = h;
+		}
+
+		boolean isCleared() {
+			for (WeakReference<Class<?>> ref : classes) {
+				if (ref.get() == null) return true;
+			}
+			return false;
+		}
+
+		@Override
+		public int hashCode() {
+			return hashCode;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (obj == this) return true;
+			if (!(obj instanceof Shape)) return false;
+			Shape that = (Shape) obj;
+			if (this.hashCode != that.hashCode) return false;
+			if (this.classes.length != that.classes.length) return false;
+			for (int i = 0; i < classes.length; i++) {
+				Class<?> clss = this.classes[i].get();
+				if (clss == null || clss != that.classes[i].get()) return false;
+			}
+			return true;
+		}
+
+	}
+
+	// a least-recently-used cache of generated constructors
+	private static final class Shapes extends LinkedHashMap<Shape, Constructor<?>> {
+
+		private static final long serialVersionUID = 1L;
+
+		Shapes() {
+			super(16, 0.75f, true);
+		}
+
+		// removes the shapes of any unloaded classes
+		void purge() {
+			keySet().removeIf(Shape::isCleared);
+		}
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Shape, Constructor<?>> eldest) {
+			return size() > MAX_SHAPES;
+		}
+
+	}
+
+	private static final class ConstantPool {
+
+		private final Map<List<Object>, Integer> indices = new HashMap<>();
+		private final List<List<Object>> entries = new ArrayList<>();
+
+		int utf8(String str) {
+			return index(1, str);
+		}
+
+		int classRef(String name) {
+			return index(7, utf8(name));
+		}
+
+		// tag 9 is a field, 10 a method, 11 an interface method
+		int memberRef(int tag, int classRef, String name, String desc) {
+			int nameAndType = index(12, utf8(name), utf8(desc));
+			return index(tag, classRef, nameAndType);
+		}
+
+		void write(DataOutputStream out) throws IOException {
+			out.writeShort(entries.size() + 1);
+			for (List<Object> entry : entries) {
+				int tag = (Integer) entry.get(0);
+				out.writeByte(tag);
+				if (tag == 1) {
+					out.writeUTF((String) entry.get(1));
+				} else {
+					for (int i = 1; i < entry.size(); i++) {
+						out.writeShort((Integer) entry.get(i));
+					}
+				}
+			}
+		}
+
+		private int index(Object... entry) {
+			List<Object> key = Arrays.asList(entry);
+			Integer index = indices.get(key);
+			if (index == null) {
+				entries.add(key);
+				index = entries.size();
+				indices.put(key, index);
+			}
+			return index;
+		}
+
+	}
+}
@@ -0,0 +1,456 @@
+/*
+ * Copyright 2016 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.fundament;
+
+import java.util.Arrays;
+import java.util.Spliterator;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+
+/**
+ * Supports the composition of mappings and bijections. Composites are
+ * flattened into a single node that applies an array of stages in turn.
+ * During composition, identities are dropped and adjacent stages that invert
+ * each other are cancelled. The domain and range of a composite are always
+ * taken from the mappings that were originally composed, even if cancellation
+ * removes them from the stages that are applied.
+ *
+ * @author Tom Gibara
+ */
+
+final class Composition {
+
+	@SuppressWarnings("rawtypes")
+	private static final Mapping[] NO_STAGES = {};
+
+	// composition
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	static <S, T, R> Mapping<S, R> compose(Mapping<T, R> after, Mapping<S, T> before) {
+		Mapping domainSource = before instanceof Chain ? ((Chain) before).domainSource : before;
+		Mapping rangeSource = after instanceof Chain ? ((Chain) after).rangeSource : after;
+		Mapping[] stages = normalize(stages(before), stages(after), Mapping[]::new);
+		return new Chain<>(domainSource, rangeSource, stages);
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	static <S, T, R> Bijection<S, R> compose(Bijection<T, R> after, Bijection<S, T> before) {
+		Bijection domainSource = before instanceof BijectiveChain ? ((BijectiveChain) before).domainSource : before;
+		Bijection rangeSource = after instanceof BijectiveChain ? ((BijectiveChain) after).rangeSource : after;
+		Bijection[] stages = normalize(stages(before), stages(after), Bijection[]::new);
+		return new BijectiveChain<>(domainSource, rangeSource, stages);
+	}
+
+	// inversion
+
+	@SuppressWarnings("unchecked")
+	static <T, R> Bijection<R, T> invert(Bijection<T, R> bijection) {
+		if (bijection instanceof Inverting) return (Bijection<R, T>) ((Inverting) bijection).inverted();
+		return bijection.inverse();
+	}
+
+	static boolean areInverse(Mapping<?, ?> a, Mapping<?, ?> b) {
+		return
+				a instanceof Inverting && ((Inverting) a).inverted() == b ||
+				b instanceof Inverting && ((Inverting) b).inverted() == a;
+	}
+
+	// helper methods
+
+	@SuppressWarnings("rawtypes")
+	private static Mapping[] stages(Mapping mapping) {
+		if (mapping instanceof Identity) return NO_STAGES;
+		if (mapping instanceof Chain) return ((Chain) mapping).stages;
+		if (mapping instanceof BijectiveChain) return ((BijectiveChain) mapping).stages;
+		return new Mapping[] { mapping };
+	}
+
+	@SuppressWarnings("rawtypes")
+	private static <M extends Mapping> M[] normalize(Mapping[] first, Mapping[] second, IntFunction<M[]> cons) {
+		M[] stages = cons.apply(first.length + second.length);
+		int count = 0;
+		for (Mapping[] source : new Mapping[][] { first, second }) {
+			for (Mapping stage : source) {
+				if (stage instanceof Identity) continue;
+				if (count > 0 && areInverse(stages[count - 1], stage)) {
+					stages[--count] = null;
+				} else {
+					@SuppressWarnings("unchecked")
+					M m = (M) stage;
+					stages[count++] = m;
+				}
+			}
+		}
+		return count == stages.length ? stages : Arrays.copyOf(stages, count);
+	}
+
+	// applies the stages one block at a time so that each stage processes the whole block before the next
+
+	@SuppressWarnings("rawtypes")
+	private static void applyAll(Mapping[] stages, Object[] src, Object[] dst, int off, int len) {
+		Bulk.checkRange(src, src == null ? 0 : src.length, dst, dst == null ? 0 : dst.length, off, len);
+		pipe(new Pipeline(stages, false, Math.min(len, Bulk.BLOCK_SIZE)), src, dst, off, len);
+	}
+
+	@SuppressWarnings("rawtypes")
+	private static void disapplyAll(Bijection[] stages, Object[] src, Object[] dst, int off, int len) {
+		Bulk.checkRange(src, src == null ? 0 : src.length, dst, dst == null ? 0 : dst.length, off, len);
+		pipe(new Pipeline(stages, true, Math.min(len, Bulk.BLOCK_SIZE)), src, dst, off, len);
+	}
+
+	private static void pipe(Pipeline pipeline, Object[] src, Object[] dst, int off, int len) {
+		Object[] input = pipeline.input;
+		for (int from = off, lim = off + len; from < lim; from += input.length) {
+			int count = Math.min(input.length, lim - from);
+			System.arraycopy(src, from, input, 0, count);
+			System.arraycopy(pipeline.apply(count), 0, dst, from, count);
+		}
+	}
+
+	@SuppressWarnings("rawtypes")
+	private static Bulk.Block block(Mapping[] stages) {
+		Pipeline pipeline = new Pipeline(stages, false, Bulk.BLOCK_SIZE);
+		return (values, count) -> {
+			System.arraycopy(values, 0, pipeline.input, 0, count);
+			System.arraycopy(pipeline.apply(count), 0, values, 0, count);
+		};
+	}
+
+	private Composition() { }
+
+	// inner classes
+
+	// applies stages to blocks held in arrays of the types that the stages declare,
+	// since stages may override applyAll/disapplyAll with typed arrays
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	private static final class Pipeline {
+
+		private final Mapping[] stages;
+		private final boolean inverse;
+		// the arrays passed to each step as src and dst, shared between steps where the types permit
+		private final Object[][] srcs;
+		private final Object[][] dsts;
+		final Object[] input;
+
+		Pipeline(Mapping[] stages, boolean inverse, int size) {
+			int length = stages.length;
+			this.stages = stages;
+			this.inverse = inverse;
+			srcs = new Object[length][];
+			dsts = new Object[length][];
+			Object[] current = null;
+			for (int step = 0; step < length; step++) {
+				Mapping stage = stage(step);
+				Class<?> from = inverse ? ((Bijection) stage).rangeType() : stage.domainType();
+				Class<?> to = inverse ? stage.domainType() : stage.rangeType();
+				if (current == null || !from.isAssignableFrom(current.getClass().getComponentType())) {
+					current = Bulk.newArray(from, size);
+				}
+				srcs[step] = current;
+				if (!to.isAssignableFrom(current.getClass().getComponentType())) {
+					current = Bulk.newArray(to, size);
+				}
+				dsts[step] = current;
+			}
+			input = length == 0 ? new Object[size] : srcs[0];
+		}
+
+		Object[] apply(int count) {
+			Object[] current = input;
+			for (int step = 0; step < stages.length; step++) {
+				Object[] src = srcs[step];
+				if (src != current) System.arraycopy(current, 0, src, 0, count);
+				Mapping stage = stage(step);
+				if (inverse) {
+					((Bijection) stage).disapplyAll(src, dsts[step], 0, count);
+				} else {
+					stage.applyAll(src, dsts[step], 0, count);
+				}
+				current = dsts[step];
+			}
+			return current;
+		}
+
+		private Mapping stage(int step) {
+			return stages[inverse ? stages.length - 1 - step : step];
+		}
+
+	}
+
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	static final class Chain<S, R> implements Mapping<S, R> {
+
+		final Mapping<S, ?> domainSource;
+		final Mapping<?, R> rangeSource;
+		final Mapping[] stages;
+
+		Chain(Mapping<S, ?> domainSource, Mapping<?, R> rangeSource, Mapping[] stages) {
+			this.domainSource = domainSource;
+			this.rangeSource = rangeSource;
+			this.stages = stages;
+		}
+
+		@Override
+		public R apply(S s) {
+			Object value = s;
+			for (Mapping stage : stages) {
+				value = stage.apply(value);
+			}
+			return (R) value;
+		}
+
+		@Override
+		public void applyAll(S[] src, R[] dst, int off, int len) {
+			Composition.applyAll(stages, src, dst, off, len);
+		}
+
+		@Override
+		public void applyAll(Spliterator<? extends S> src, Consumer<? super R> dst) {
+			Bulk.blocks(src, dst, block(stages));
+		}
+
+		@Override public Class<S> domainType()          { return domainSource.domainType();    }
+		@Override public Class<R> rangeType()           { return rangeSource.rangeType();      }
+		@Override public boolean isInDomain(Object obj) { return domainSource.isInDomain(obj); }
+
+	}
+
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	static final class BijectiveChain<S, R> implements Bijection<S, R> {
+
+		final Bijection<S, ?> domainSource;
+		final Bijection<?, R> rangeSource;
+		final Bijection[] stages;
+		// lazily populated, no synchronization required since the inverse is equivalent
+		private BijectiveChain<R, S> inverse;
+
+		BijectiveChain(Bijection<S, ?> domainSource, Bijection<?, R> rangeSource, Bijection[] stages) {
+			this.domainSource = domainSource;
+			this.rangeSource = rangeSource;
+			this.stages = stages;
+		}
+
+		@Override
+		public R apply(S s) {
+			Object value = s;
+			for (Bijection stage : stages) {
+				value = stage.apply(value);
+			}
+			return (R) value;
+		}
+
+		@Override
+		public S disapply(R r) {
+			Object value = r;
+			for (int i = stages.length - 1; i >= 0; i--) {
+				value = stages[i].disapply(value);
+			}
+			return (S) value;
+		}
+
+		@Override
+		public void applyAll(S[] src, R[] dst, int off, int len) {
+			Composition.applyAll(stages, src, dst, off, len);
+		}
+
+		@Override
+		public void applyAll(Spliterator<? extends S> src, Consumer<? super R> dst) {
+			Bulk.blocks(src, dst, block(stages));
+		}
+
+		@Override
+		public void disapplyAll(R[] src, S[] dst, int off, int len) {
+			Composition.disapplyAll(stages, src, dst, off, len);
+		}
+
+		@Override
+		public Bijection<R, S> inverse() {
+			BijectiveChain<R, S> inverse = this.inverse;
+			if (inverse == null) {
+				int length = stages.length;
+				Bijection[] inverted = new Bijection[length];
+				for (int i = 0; i < length; i++) {
+					inverted[length - 1 - i] = invert(stages[i]);
+				}
+				inverse = new BijectiveChain<>(invert(rangeSource), invert(domainSource), inverted);
+				inverse.inverse = this;
+				this.inverse = inverse;
+			}
+			return inverse;
+		}
+
+		@Override public Class<S> domainType()          { return domainSource.domainType();    }
+		@Override public Class<R> rangeType()           { return rangeSource.rangeType();      }
+		@Override public boolean isInDomain(Object obj) { return domainSource.isInDomain(obj); }
+		@Override public boolean isInRange(Object obj)  { return rangeSource.isInRange(obj);   }
+
+	}
+
+	static final class Inverse<R, T> implements Bijection<R, T>, Inverting {
+
+		final Bijection<T, R> bijection;
+
+		Inverse(Bijection<T, R> bijection) {
+			this.bijection = bijection;
+		}
+
+		@Override public T apply(R r)                   { return bijection.disapply(r);     }
+		@Override public R disapply(T t)                { return bijection.apply(t);        }
+		@Override public Bijection<T, R> inverse()      { return bijection;                 }
+		@Override public Bijection<?, ?> inverted()     { return bijection;                 }
+		@Override public Class<R> domainType()          { return bijection.rangeType();     }
+		@Override public Class<T> rangeType()           { return bijection.domainType();    }
+		@Override public boolean isInDomain(Object obj) { return bijection.isInRange(obj);  }
+		@Override public boolean isInRange(Object obj)  { return bijection.isInDomain(obj); }
+
+		@Override public void applyAll(R[] src, T[] dst, int off, int len)    { bijection.disapplyAll(src, dst, off, len); }
+		@Override public void disapplyAll(T[] src, R[] dst, int off, int len) { bijection.applyAll(src, dst, off, len);    }
+
+	}
+
+	static final class IntInverse implements IntBijection, Inverting {
+
+		final IntBijection bijection;
+
+		IntInverse(IntBijection bijection) {
+			this.bijection = bijection;
+		}
+
+		@Override public int applyAsInt(int i)          { return bijection.disapplyAsInt(i); }
+		@Override public int disapplyAsInt(int i)       { return bijection.applyAsInt(i);    }
+		@Override public IntBijection inverse()         { return bijection;                  }
+		@Override public Bijection<?, ?> inverted()     { return bijection;                  }
+		@Override public boolean isInDomain(int i)      { return bijection.isInRange(i);     }
+		@Override public boolean isInRange(int i)       { return bijection.isInDomain(i);    }
+
+		@Override public void applyAll(int[] src, int[] dst, int off, int len)    { bijection.disapplyAll(src, dst, off, len); }
+		@Override public void disapplyAll(int[] src, int[] dst, int off, int len) { bijection.applyAll(src, dst, off, len);    }
+
+	}
+
+	static final class LongInverse implements LongBijection, Inverting {
+
+		final LongBijection bijection;
+
+		LongInverse(LongBijection bijection) {
+			this.bijection = bijection;
+		}
+
+		@Override public long applyAsLong(long l)       { return bijection.disapplyAsLong(l); }
+		@Override public long disapplyAsLong(long l)    { return bijection.applyAsLong(l);    }
+		@Override public LongBijection inverse()        { return bijection;                   }
+		@Override public Bijection<?, ?> inverted()     { return bijection;                   }
+		@Override public boolean isInDomain(long l)     { return bijection.isInRange(l);      }
+		@Override public boolean isInRange(long l)      { return bijection.isInDomain(l);     }
+
+		@Override public void applyAll(long[] src, long[] dst, int off, int len)    { bijection.disapplyAll(src, dst, off, len); }
+		@Override public void disapplyAll(long[] src, long[] dst, int off, int len) { bijection.applyAll(src, dst, off, len);    }
+
+	}
+
+	static final class Identity<T> implements Bijection<T, T> {
+
+		private final Class<T> domainType;
+
+		Identity(Class<T> domainType) {
+			this.domainType = domainType;
+		}
+
+		@Override public Class<T> domainType()     { return domainType; }
+		@Override public Class<T> rangeType()      { return domainType; }
+		@Override public T apply(T t)              { return t;          }
+		@Override public T disapply(T t)           { return t;          }
+		@Override public Bijection<T, T> inverse() { return this;       }
+
+		@Override public <S> Bijection<S, T> compose(Bijection<S, T> before) { return before; }
+		@Override public <S> Mapping<S, T> compose(Mapping<S, T> before)     { return before; }
+
+		@Override
+		public void applyAll(T[] src, T[] dst, int off, int len) {
+			Bulk.checkRange(src, src == null ? 0 : src.length, dst, dst == null ? 0 : dst.length, off, len);
+			if (src != dst) System.arraycopy(src, off, dst, off, len);
+		}
+
+		@Override
+		public void disapplyAll(T[] src, T[] dst, int off, int len) {
+			applyAll(src, dst, off, len);
+		}
+
+	}
+
+	// implemented by bijections that do no more than invert another bijection
+	interface Inverting {
+
+		Bijection<?, ?> inverted();
+
+	}
+
+	// implemented by mappings that do no more than apply a function
+	interface Delegating {
+
+		Function<?, ?> function();
+
+	}
+
+	static final class FunctionMapping<T, R> implements Mapping<T, R>, Delegating {
+
+		private final Class<T> domainType;
+		private final Class<R> rangeType;
+		private final Function<T, R> fn;
+
+		FunctionMapping(Class<T> domainType, Class<R> rangeType, Function<T, R> fn) {
+			this.domainType = domainType;
+			this.rangeType = rangeType;
+			this.fn = fn;
+		}
+
+		@Override public R apply(T t)              { return fn.apply(t); }
+		@Override public Class<T> domainType()     { return domainType;  }
+		@Override public Class<R> rangeType()      { return rangeType;   }
+		@Override public Function<?, ?> function() { return fn;          }
+
+	}
+
+	static final class FunctionBijection<T, R> implements Bijection<T, R>, Delegating {
+
+		private final Class<T> domainType;
+		private final Class<R> rangeType;
+		private final Function<T, R> fn;
+		private final Function<R, T> inv;
+		private Bijection<R, T> inverse;
+
+		FunctionBijection(Class<T> domainType, Class<R> rangeType, Function<T, R> fn, Function<R, T> inv) {
+			this.domainType = domainType;
+			this.rangeType = rangeType;
+			this.fn = fn;
+			this.inv = inv;
+		}
+
+		@Override public R apply(T t)              { return fn.apply(t);  }
+		@Override public T disapply(R r)           { return inv.apply(r); }
+		@Override public Class<T> domainType()     { return domainType;   }
+		@Override public Class<R> rangeType()      { return rangeType;    }
+		@Override public Function<?, ?> function() { return fn;           }
+
+		@Override
+		public Bijection<R, T> inverse() {
+			if (inverse == null) inverse = Bijection.super.inverse();
+			return inverse;
+		}
+
+	}
+}
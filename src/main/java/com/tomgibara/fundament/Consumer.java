@@ -16,6 +16,9 @@
  */
 package com.tomgibara.fundament;
 
+import java.util.List;
+import java.util.concurrent.ThreadFactory;
+
 /**
  * A basic functional interface for consuming values.
  *
@@ -27,6 +30,33 @@ package com.tomgibara.fundament;
 @FunctionalInterface
 public interface Consumer<T> {
 
+	/**
+	 * Creates a consumer that partitions values by key over a number of
+	 * downstream consumers, each of which is called from its own thread.
+	 * Values with equal keys are consumed by the same downstream consumer in
+	 * the order they were supplied.
+	 *
+	 * @param <T>
+	 *            the type of value consumed
+	 * @param <K>
+	 *            the type of key by which values are partitioned
+	 * @param keys
+	 *            obtains the key of each value
+	 * @param consumers
+	 *            the downstream consumers, one per shard
+	 * @param queueCapacity
+	 *            the number of values that may be queued for each shard
+	 * @param factory
+	 *            creates a thread for each shard
+	 * @return a partitioning consumer that must be closed after use
+	 * @throws IllegalArgumentException
+	 *             if no consumers are supplied or the capacity is not positive
+	 */
+
+	static <T, K> PartitionedConsumer<T, K> partitioned(Mapping<T, K> keys, List<? extends Consumer<? super T>> consumers, int queueCapacity, ThreadFactory factory) {
+		return new PartitionedConsumer<>(keys, consumers, queueCapacity, factory);
+	}
+
 	/**
 	 * Consumes the supplied value. Implementations that fail to accept a
 	 * supplied value (including null) should throw an
@@ -0,0 +1,261 @@
+/*
+ * Copyright 2016 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.fundament;
+
+import java.util.Arrays;
+
+/**
+ * A base class for implementing {@link Mutability} over state that is stored
+ * in chunks. Copies share chunks with the object from which they were made,
+ * so that {@link #mutableCopy()} and {@link #immutableCopy()} are constant
+ * time operations; a chunk is only copied when it is first written to by an
+ * object that does not own it.
+ *
+ * Ownership is tracked with tokens: every mutable object has a unique token,
+ * and every chunk, together with the table that holds the chunks, records
+ * the token of the object that last copied it. Copying an object replaces
+ * its token, so that neither the object nor its copy owns any of the chunks
+ * they share. Immutable views do not hold chunks; they read the chunks of the
+ * object they view, and so reflect its subsequent mutations.
+ *
+ * Subclasses access state exclusively through {@link #readChunk(int)} and
+ * {@link #writeChunk(int)}, implement {@link #copyChunk(Object)} to copy
+ * individual chunks, and implement {@link #derive(Derivation)} to create
+ * copies and views, typically by calling the protected constructor
+ * {@link #CopyOnWriteMutability(CopyOnWriteMutability, Derivation)}.
+ *
+ * As with other mutable objects, instances are not safe for concurrent
+ * mutation. However, since copies never mutate shared chunks, an immutable
+ * copy may be read by any number of threads while the object from which it
+ * was copied continues to be modified.
+ *
+ * @author Tom Gibara
+ *
+ * @param <T>
+ *            the type of the implementing class
+ * @param <C>
+ *            the type of chunk in which state is stored
+ */
+
+public abstract class CopyOnWriteMutability<T, C> implements Mutability<T> {
+
+	/**
+	 * The ways in which one object may be derived from another.
+	 */
+
+	protected enum Derivation {
+
+		/**
+		 * A mutable copy, as returned by {@link Mutability#mutableCopy()}.
+		 */
+
+		MUTABLE_COPY,
+
+		/**
+		 * An immutable copy, as returned by {@link Mutability#immutableCopy()}.
+		 */
+
+		IMMUTABLE_COPY,
+
+		/**
+		 * An immutable view, as returned by {@link Mutability#immutableView()}.
+		 */
+
+		IMMUTABLE_VIEW
+
+	}
+
+	// non-null for views, which hold no chunks of their own
+	private final CopyOnWriteMutability<T, C> viewed;
+	// null for views
+	private Table table;
+	// null for immutable objects
+	private Object token;
+
+	/**
+	 * Creates an object with state stored in the supplied chunks. The object
+	 * takes ownership of the array and the chunks it contains.
+	 *
+	 * @param chunks
+	 *            the chunks in which state is stored
+	 * @param mutable
+	 *            whether the object is mutable
+	 */
+
+	protected CopyOnWriteMutability(C[] chunks, boolean mutable) {
+		if (chunks == null) throw new IllegalArgumentException("null chunks");
+		viewed = null;
+		token = mutable ? new Object() : null;
+		table = new Table(chunks, token);
+	}
+
+	/**
+	 * Creates an object derived from another object.
+	 *
+	 * @param source
+	 *            the object from which the new object is derived
+	 * @param derivation
+	 *            how the new object is derived
+	 */
+
+	protected CopyOnWriteMutability(CopyOnWriteMutability<T, C> source, Derivation derivation) {
+		if (source == null) throw new IllegalArgumentException("null source");
+		if (derivation == null) throw new IllegalArgumentException("null derivation");
+		// the object which holds the chunks
+		CopyOnWriteMutability<T, C> holder = source.viewed == null ? source : source.viewed;
+		if (derivation == Derivation.IMMUTABLE_VIEW) {
+			viewed = holder;
+			table = null;
+			token = null;
+		} else {
+			viewed = null;
+			table = holder.table;
+			token = derivation == Derivation.MUTABLE_COPY ? new Object() : null;
+			// the holder no longer has exclusive ownership of its chunks
+			if (holder.token != null) holder.token = new Object();
+		}
+	}
+
+	/**
+	 * Creates a new object derived from this object. Implementations will
+	 * typically call
+	 * {@link #CopyOnWriteMutability(CopyOnWriteMutability, Derivation)}.
+	 *
+	 * @param derivation
+	 *            how the new object is to be derived
+	 * @return a new object
+	 */
+
+	protected abstract T derive(Derivation derivation);
+
+	/**
+	 * Copies a chunk, so that it may be modified without changing the state
+	 * of any other object.
+	 *
+	 * @param chunk
+	 *            the chunk to copy
+	 * @return a copy of the chunk
+	 */
+
+	protected abstract C copyChunk(C chunk);
+
+	/**
+	 * The number of chunks in which the object stores its state.
+	 *
+	 * @return the number of chunks
+	 */
+
+	protected final int chunkCount() {
+		return currentTable().chunks.length;
+	}
+
+	/**
+	 * A chunk of state for reading. The returned chunk must not be modified.
+	 *
+	 * @param index
+	 *            the index of the chunk
+	 * @return the chunk
+	 */
+
+	@SuppressWarnings("unchecked")
+	protected final C readChunk(int index) {
+		return (C) currentTable().chunks[index];
+	}
+
+	/**
+	 * A chunk of state for writing. The chunk is copied if it is shared with
+	 * any other object.
+	 *
+	 * @param index
+	 *            the index of the chunk
+	 * @return a chunk owned exclusively by this object
+	 * @throws IllegalStateException
+	 *             if the object is not mutable
+	 */
+
+	@SuppressWarnings("unchecked")
+	protected final C writeChunk(int index) {
+		Object token = this.token;
+		if (token == null) throw new IllegalStateException("immutable");
+		Table table = this.table;
+		if (table.owner != token) {
+			table = table.copy(token);
+			this.table = table;
+		}
+		Object chunk = table.chunks[index];
+		if (table.owners[index] != token) {
+			chunk = copyChunk((C) chunk);
+			table.chunks[index] = chunk;
+			table.owners[index] = token;
+		}
+		return (C) chunk;
+	}
+
+	@Override
+	public boolean isMutable() {
+		return token != null;
+	}
+
+	@Override
+	public T mutableCopy() {
+		return derive(Derivation.MUTABLE_COPY);
+	}
+
+	@Override
+	public T immutableCopy() {
+		return derive(Derivation.IMMUTABLE_COPY);
+	}
+
+	@Override
+	public T immutableView() {
+		return derive(Derivation.IMMUTABLE_VIEW);
+	}
+
+	private Table currentTable() {
+		return viewed == null ? table : viewed.table;
+	}
+
+	// inner classes
+
+	private static final class Table {
+
+		final Object[] chunks;
+		// the token of the object that copied each chunk
+		final Object[] owners;
+		// the token of the object that copied this table
+		final Object owner;
+
+		Table(Object[] chunks, Object owner) {
+			this.chunks = chunks;
+			this.owners = new Object[chunks.length];
+			this.owner = owner;
+			if (owner != null) Arrays.fill(owners, owner);
+		}
+
+		private Table(Object[] chunks, Object[] owners, Object owner) {
+			this.chunks = chunks;
+			this.owners = owners;
+			this.owner = owner;
+		}
+
+		Table copy(Object owner) {
+			return new Table(chunks.clone(), owners.clone(), owner);
+		}
+
+	}
+
+}
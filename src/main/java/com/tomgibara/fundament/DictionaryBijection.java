@@ -0,0 +1,305 @@
+/*
+ * Copyright 2016 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.fundament;
+
+import java.lang.reflect.Array;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A bijection that assigns dense integer ids to values as they are first
+ * encountered. Ids are allocated sequentially from zero, so the range of the
+ * bijection grows with its domain. Instances are safe for concurrent use.
+ *
+ * Values are indexed by a striped open-addressing hash table; lookups of
+ * values that already have an id never lock, and the assignment of new ids
+ * only locks the stripe into which the value hashes. Values are recorded
+ * against their ids in an append-only chunked array, so that the bijection
+ * can be inverted without locking. A read-optimized immutable copy of the
+ * bijection can be obtained with {@link #snapshot()}.
+ *
+ * Instances are obtained via {@link Bijection#dictionary(Class)}.
+ *
+ * @author Tom Gibara
+ *
+ * @param <T>
+ *            the type of value being encoded
+ */
+
+public class DictionaryBijection<T> implements ToIntBijection<T> {
+
+	private static final int CHUNK_BITS = 10;
+	private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+	private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+	// assumes compressed references
+	private static final int REF_BYTES = 4;
+	private static final int ARRAY_HEADER_BYTES = 16;
+
+	private static int spread(int h) {
+		h ^= h >>> 16;
+		h *= 0x85ebca6b;
+		return h ^ (h >>> 13);
+	}
+
+	private final Class<T> domainType;
+	private final Stripe[] stripes;
+	private final int stripeMask;
+	private final int stripeBits;
+	private final AtomicInteger nextId = new AtomicInteger();
+	// each element is an AtomicReferenceArray of values, indexed by id
+	private volatile Object[] chunks = new Object[1];
+	private Bijection<Integer, T> inverse;
+
+	DictionaryBijection(Class<T> domainType, int expectedSize) {
+		if (expectedSize < 0) throw new IllegalArgumentException("negative expectedSize");
+		this.domainType = domainType;
+		int count = Integer.highestOneBit(Math.min(64, 4 * Runtime.getRuntime().availableProcessors()) * 2 - 1);
+		stripes = new Stripe[count];
+		stripeMask = count - 1;
+		stripeBits = Integer.numberOfTrailingZeros(count);
+		int capacity = Math.max(8, Integer.highestOneBit(Math.max(1, expectedSize / count * 2) * 2 - 1));
+		for (int i = 0; i < count; i++) {
+			stripes[i] = new Stripe(capacity, stripeBits);
+		}
+	}
+
+	@Override public Class<T> domainType()          { return domainType;                                }
+	@Override public boolean isInDomain(Object obj) { return obj != null && domainType.isInstance(obj); }
+
+	@Override
+	public Bijection<Integer, T> inverse() {
+		if (inverse == null) inverse = ToIntBijection.super.inverse();
+		return inverse;
+	}
+
+	/**
+	 * Returns the id of the value, assigning it a new id if it has not been
+	 * encountered before.
+	 *
+	 * @param t
+	 *            a non-null value
+	 * @return the id of the value
+	 * @throws IllegalArgumentException
+	 *             if the value is null
+	 */
+
+	@Override
+	public int applyAsInt(T t) {
+		if (t == null) throw new IllegalArgumentException("null value");
+		int hash = spread(t.hashCode());
+		Stripe stripe = stripes[hash & stripeMask];
+		int slot = hash >>> stripeBits;
+		int id = stripe.table.find(t, slot);
+		return id < 0 ? stripe.add(this, t, slot) : id;
+	}
+
+	@Override
+	public T disapply(int i) {
+		if (i < 0 || i >= nextId.get()) throw new IllegalArgumentException("not in range");
+		Object obj = chunk(chunks, i).get(i & CHUNK_MASK);
+		if (obj == null) throw new IllegalArgumentException("not in range");
+		return domainType.cast(obj);
+	}
+
+	@Override
+	public boolean isInRange(int i) {
+		return i >= 0 && i < nextId.get() && chunk(chunks, i).get(i & CHUNK_MASK) != null;
+	}
+
+	/**
+	 * The id previously assigned to a value. Unlike
+	 * {@link #applyAsInt(Object)}, this method never assigns a new id.
+	 *
+	 * @param obj
+	 *            any object, possibly null
+	 * @return the id of the object, or -1 if no id has been assigned to it
+	 */
+
+	public int idOf(Object obj) {
+		if (!isInDomain(obj)) return -1;
+		int hash = spread(obj.hashCode());
+		return stripes[hash & stripeMask].table.find(obj, hash >>> stripeBits);
+	}
+
+	/**
+	 * The number of ids that have been assigned.
+	 *
+	 * @return the number of distinct values encoded by the bijection
+	 */
+
+	public int size() {
+		return nextId.get();
+	}
+
+	/**
+	 * An estimate of the memory used by the bijection per assigned id,
+	 * excluding the memory occupied by the values themselves. The estimate
+	 * assumes compressed object references.
+	 *
+	 * @return the estimated number of bytes per id, or zero if no ids have
+	 *         been assigned
+	 */
+
+	public double estimatedBytesPerEntry() {
+		int size = nextId.get();
+		if (size == 0) return 0.0;
+		long bytes = 0L;
+		for (Stripe stripe : stripes) {
+			int capacity = stripe.table.keys.length();
+			bytes += 2 * ARRAY_HEADER_BYTES + (long) capacity * (REF_BYTES + 4);
+		}
+		Object[] chunks = this.chunks;
+		bytes += ARRAY_HEADER_BYTES + (long) chunks.length * REF_BYTES;
+		for (Object chunk : chunks) {
+			if (chunk != null) bytes += ARRAY_HEADER_BYTES + CHUNK_SIZE * REF_BYTES;
+		}
+		return (double) bytes / size;
+	}
+
+	/**
+	 * An immutable copy of the bijection, indexed by a perfect hash. The
+	 * snapshot contains every id assigned before this method was called.
+	 * Applying the snapshot to a value that has not been assigned an id
+	 * raises an exception, instead of assigning a new id.
+	 *
+	 * @return a snapshot of the ids assigned so far
+	 * @see Bijection#ordinal(Object[])
+	 */
+
+	public ToIntBijection<T> snapshot() {
+		int size = nextId.get();
+		@SuppressWarnings("unchecked")
+		T[] values = (T[]) Array.newInstance(domainType, size);
+		Object[] chunks = this.chunks;
+		for (int i = 0; i < size; i++) {
+			AtomicReferenceArray<Object> chunk = chunk(chunks, i);
+			Object obj;
+			// an id may have been allocated by a thread that has yet to record its value
+			while ((obj = chunk.get(i & CHUNK_MASK)) == null) Thread.yield();
+			values[i] = domainType.cast(obj);
+		}
+		return Bijection.ordinal(values);
+	}
+
+	// called with the lock of the stripe held
+	private int allocate(Object obj) {
+		int id;
+		do {
+			id = nextId.get();
+			if (id == Integer.MAX_VALUE) throw new IllegalStateException("ids exhausted");
+			// the chunk is published before the id so that readers never observe an id without its chunk
+			int index = id >>> CHUNK_BITS;
+			Object[] chunks = this.chunks;
+			if (index >= chunks.length || chunks[index] == null) growChunks(index);
+		} while (!nextId.compareAndSet(id, id + 1));
+		chunk(chunks, id).set(id & CHUNK_MASK, obj);
+		return id;
+	}
+
+	private synchronized void growChunks(int index) {
+		Object[] chunks = this.chunks;
+		if (index >= chunks.length) {
+			Object[] grown = new Object[Math.max(index + 1, chunks.length * 2)];
+			System.arraycopy(chunks, 0, grown, 0, chunks.length);
+			chunks = grown;
+		}
+		if (chunks[index] == null) {
+			// the directory is copied so that existing readers never observe a partial update
+			if (chunks == this.chunks) chunks = chunks.clone();
+			chunks[index] = new AtomicReferenceArray<Object>(CHUNK_SIZE);
+		}
+		this.chunks = chunks;
+	}
+
+	// the directory must have been read after the id was observed in nextId
+	@SuppressWarnings("unchecked")
+	private static AtomicReferenceArray<Object> chunk(Object[] chunks, int id) {
+		return (AtomicReferenceArray<Object>) chunks[id >>> CHUNK_BITS];
+	}
+
+	// inner classes
+
+	private static final class Stripe {
+
+		volatile Table table;
+		private int count = 0;
+
+		Stripe(int capacity, int stripeBits) {
+			table = new Table(capacity, stripeBits);
+		}
+
+		synchronized int add(DictionaryBijection<?> owner, Object obj, int slot) {
+			Table table = this.table;
+			int id = table.find(obj, slot);
+			if (id >= 0) return id;
+			if (count + 1 > table.threshold) {
+				table = table.grow();
+				this.table = table;
+			}
+			id = owner.allocate(obj);
+			table.insert(obj, slot, id);
+			count++;
+			return id;
+		}
+
+	}
+
+	// tables are only modified by the thread holding the lock on the stripe
+	private static final class Table {
+
+		final AtomicReferenceArray<Object> keys;
+		final int[] ids;
+		final int mask;
+		final int threshold;
+		private final int stripeBits;
+
+		Table(int capacity, int stripeBits) {
+			this.stripeBits = stripeBits;
+			keys = new AtomicReferenceArray<>(capacity);
+			ids = new int[capacity];
+			mask = capacity - 1;
+			threshold = capacity * 3 / 4;
+		}
+
+		int find(Object obj, int slot) {
+			for (int i = slot & mask; ; i = (i + 1) & mask) {
+				Object key = keys.get(i);
+				if (key == null) return -1;
+				// the id is written before the key is published
+				if (key.equals(obj)) return ids[i];
+			}
+		}
+
+		void insert(Object obj, int slot, int id) {
+			int i = slot & mask;
+			while (keys.get(i) != null) i = (i + 1) & mask;
+			ids[i] = id;
+			keys.set(i, obj);
+		}
+
+		Table grow() {
+			Table grown = new Table(keys.length() * 2, stripeBits);
+			for (int i = 0; i < ids.length; i++) {
+				Object key = keys.get(i);
+				if (key != null) grown.insert(key, spread(key.hashCode()) >>> stripeBits, ids[i]);
+			}
+			return grown;
+		}
+
+	}
+}
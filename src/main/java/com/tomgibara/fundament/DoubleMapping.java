@@ -0,0 +1,143 @@
+/*
+ * Copyright 2016 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.fundament;
+
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * A mapping from <code>double</code> values to <code>double</code> values
+ * that can be applied without boxing. The boxed methods of {@link Mapping}
+ * are implemented in terms of the primitive methods so that instances remain
+ * usable wherever a <code>Mapping&lt;Double, Double&gt;</code> is expected.
+ *
+ * @author Tom Gibara
+ */
+
+@FunctionalInterface
+public interface DoubleMapping extends Mapping<Double, Double> {
+
+	/**
+	 * Defines a double mapping with an operator.
+	 *
+	 * @param op
+	 *            a double unary operator
+	 * @return a mapping based on the operator
+	 */
+
+	static DoubleMapping fromOperator(DoubleUnaryOperator op) {
+		if (op == null) throw new IllegalArgumentException("null op");
+		return d -> op.applyAsDouble(d);
+	}
+
+	/**
+	 * Adapts a generic mapping over doubles into a double mapping. If the
+	 * supplied mapping is already a double mapping, it is returned unchanged.
+	 *
+	 * @param mapping
+	 *            a mapping over doubles
+	 * @return a double mapping that applies the supplied mapping
+	 */
+
+	static DoubleMapping fromMapping(Mapping<Double, Double> mapping) {
+		if (mapping == null) throw new IllegalArgumentException("null mapping");
+		if (mapping instanceof DoubleMapping) return (DoubleMapping) mapping;
+		return new DoubleMapping() {
+			@Override public double applyAsDouble(double d) { return mapping.apply(d);        }
+			@Override public boolean isInDomain(Object obj) { return mapping.isInDomain(obj); }
+			@Override public boolean isInDomain(double d)   { return mapping.isInDomain(d);   }
+		};
+	}
+
+	/**
+	 * Applies the mapping to a double value.
+	 *
+	 * @param d
+	 *            a value in the domain of the mapping
+	 * @return the mapped value
+	 */
+
+	double applyAsDouble(double d);
+
+	/**
+	 * Evaluates whether the supplied value is a valid parameter for the
+	 * {@link #applyAsDouble(double)} method. The default implementation
+	 * returns true for all values.
+	 *
+	 * @param d
+	 *            the value being tested
+	 * @return true if the mapping may be applied to the value
+	 */
+
+	default boolean isInDomain(double d) { return true; }
+
+	@Override default Double apply(Double d)        { return applyAsDouble(d); }
+	@Override default Class<Double> domainType()    { return Double.class;     }
+	@Override default Class<Double> rangeType()     { return Double.class;     }
+
+	@Override
+	default boolean isInDomain(Object obj) {
+		return obj instanceof Double && isInDomain(((Double) obj).doubleValue());
+	}
+
+	/**
+	 * Applies the mapping to a range of double values, storing the results at the
+	 * same indices in a destination array. The default implementation applies
+	 * the mapping to each value in turn.
+	 *
+	 * @param src
+	 *            the values to which the mapping is applied
+	 * @param dst
+	 *            the array into which the results are written
+	 * @param off
+	 *            the index of the first value
+	 * @param len
+	 *            the number of values to be mapped
+	 * @throws IllegalArgumentException
+	 *             if either array is null or the range exceeds either array
+	 */
+
+	default void applyAll(double[] src, double[] dst, int off, int len) {
+		Bulk.checkRange(src, src == null ? 0 : src.length, dst, dst == null ? 0 : dst.length, off, len);
+		for (int i = off, lim = off + len; i < lim; i++) {
+			dst[i] = applyAsDouble(src[i]);
+		}
+	}
+
+	/**
+	 * Composes two double mappings into a single double mapping, first
+	 * applying the 'before' mapping, and then this mapping.
+	 *
+	 * @param before
+	 *            the mapping to be applied first
+	 * @return the composite mapping
+	 */
+
+	default DoubleMapping composeDouble(DoubleMapping before) {
+		if (before == null) throw new IllegalArgumentException("null before");
+		return new DoubleMapping() {
+			@Override public double applyAsDouble(double d) { return DoubleMapping.this.applyAsDouble(before.applyAsDouble(d)); }
+			@Override public boolean isInDomain(double d)   { return before.isInDomain(d);                                      }
+
+			@Override
+			public void applyAll(double[] src, double[] dst, int off, int len) {
+				before.applyAll(src, dst, off, len);
+				DoubleMapping.this.applyAll(dst, dst, off, len);
+			}
+		};
+	}
+
+}
@@ -0,0 +1,237 @@
+/*
+ * Copyright 2016 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.fundament;
+
+import java.util.function.IntUnaryOperator;
+
+/**
+ * A bijection over <code>int</code> values that can be applied in both
+ * directions without boxing. The boxed methods of {@link Bijection} are
+ * implemented in terms of the primitive methods so that instances remain
+ * usable wherever a <code>Bijection&lt;Integer, Integer&gt;</code> is
+ * expected.
+ *
+ * @author Tom Gibara
+ *
+ * @see IntMapping
+ */
+
+public interface IntBijection extends IntMapping, Bijection<Integer, Integer> {
+
+	/**
+	 * The identity bijection on int values.
+	 *
+	 * @return an identity bijection over ints
+	 */
+
+	static IntBijection identity() {
+		return new IntBijection() {
+			@Override public int applyAsInt(int i)    { return i;    }
+			@Override public int disapplyAsInt(int i) { return i;    }
+			@Override public IntBijection inverse()   { return this; }
+
+			@Override public IntBijection compose(IntBijection before) { return before; }
+			@Override public IntMapping composeInt(IntMapping before)  { return before; }
+		};
+	}
+
+	/**
+	 * Generates an int bijection from a pair of operators.
+	 *
+	 * @param fn
+	 *            provides the implementation of {@link #applyAsInt(int)}
+	 * @param inv
+	 *            provides the implementation of {@link #disapplyAsInt(int)}
+	 * @return the operator pair as a bijection
+	 */
+
+	static IntBijection fromOperators(IntUnaryOperator fn, IntUnaryOperator inv) {
+		if (fn == null) throw new IllegalArgumentException("null fn");
+		if (inv == null) throw new IllegalArgumentException("null inv");
+		return new IntBijection() {
+			private IntBijection inverse;
+
+			@Override public int applyAsInt(int i)    { return fn.applyAsInt(i);  }
+			@Override public int disapplyAsInt(int i) { return inv.applyAsInt(i); }
+
+			@Override
+			public IntBijection inverse() {
+				if (inverse == null) inverse = IntBijection.super.inverse();
+				return inverse;
+			}
+		};
+	}
+
+	/**
+	 * Adapts a generic bijection over integers into an int bijection. If the
+	 * supplied bijection is already an int bijection, it is returned
+	 * unchanged.
+	 *
+	 * @param bijection
+	 *            a bijection over integers
+	 * @return an int bijection that applies the supplied bijection
+	 */
+
+	static IntBijection fromBijection(Bijection<Integer, Integer> bijection) {
+		if (bijection == null) throw new IllegalArgumentException("null bijection");
+		if (bijection instanceof IntBijection) return (IntBijection) bijection;
+		return new IntBijection() {
+			private IntBijection inverse;
+
+			@Override public int applyAsInt(int i)          { return bijection.apply(i);        }
+			@Override public int disapplyAsInt(int i)       { return bijection.disapply(i);     }
+			@Override public boolean isInDomain(Object obj) { return bijection.isInDomain(obj); }
+			@Override public boolean isInDomain(int i)      { return bijection.isInDomain(i);   }
+			@Override public boolean isInRange(Object obj)  { return bijection.isInRange(obj);  }
+			@Override public boolean isInRange(int i)       { return bijection.isInRange(i);    }
+
+			@Override
+			public IntBijection inverse() {
+				if (inverse == null) inverse = IntBijection.super.inverse();
+				return inverse;
+			}
+		};
+	}
+
+	/**
+	 * Inverts the function defined by {@link #applyAsInt(int)}.
+	 *
+	 * @param i
+	 *            a value in the range of the bijection
+	 * @return the value in the domain that maps to <code>i</code>
+	 */
+
+	int disapplyAsInt(int i);
+
+	/**
+	 * Evaluates whether the supplied value is a valid parameter for the
+	 * {@link #disapplyAsInt(int)} method. The default implementation returns
+	 * true for all values.
+	 *
+	 * @param i
+	 *            the value being tested
+	 * @return true if the inverse may be applied to the value
+	 */
+
+	default boolean isInRange(int i) { return true; }
+
+	@Override default Integer disapply(Integer i) { return disapplyAsInt(i); }
+
+	@Override
+	default boolean isInRange(Object obj) {
+		return obj instanceof Integer && isInRange(((Integer) obj).intValue());
+	}
+
+	/**
+	 * Inverts the bijection over a range of int values, storing the results at
+	 * the same indices in a destination array. The default implementation
+	 * disapplies the bijection to each value in turn.
+	 *
+	 * @param src
+	 *            the values to which the inverse is applied
+	 * @param dst
+	 *            the array into which the results are written
+	 * @param off
+	 *            the index of the first value
+	 * @param len
+	 *            the number of values to be mapped
+	 * @throws IllegalArgumentException
+	 *             if either array is null or the range exceeds either array
+	 */
+
+	default void disapplyAll(int[] src, int[] dst, int off, int len) {
+		Bulk.checkRange(src, src == null ? 0 : src.length, dst, dst == null ? 0 : dst.length, off, len);
+		for (int i = off, lim = off + len; i < lim; i++) {
+			dst[i] = disapplyAsInt(src[i]);
+		}
+	}
+
+	/**
+	 * Composes two int bijections into a single int bijection, first applying
+	 * the 'before' bijection, and then this bijection.
+	 *
+	 * @param before
+	 *            the bijection to be applied first
+	 * @return the composite bijection
+	 */
+
+	default IntBijection compose(IntBijection before) {
+		if (before == null) throw new IllegalArgumentException("null before");
+		return new IntBijection() {
+			private IntBijection inverse;
+
+			@Override public int applyAsInt(int i)     { return IntBijection.this.applyAsInt(before.applyAsInt(i));       }
+			@Override public int disapplyAsInt(int i)  { return before.disapplyAsInt(IntBijection.this.disapplyAsInt(i)); }
+			@Override public boolean isInDomain(int i) { return before.isInDomain(i);                                     }
+			@Override public boolean isInRange(int i)  { return IntBijection.this.isInRange(i);                           }
+
+			@Override
+			public void applyAll(int[] src, int[] dst, int off, int len) {
+				before.applyAll(src, dst, off, len);
+				IntBijection.this.applyAll(dst, dst, off, len);
+			}
+
+			@Override
+			public void disapplyAll(int[] src, int[] dst, int off, int len) {
+				IntBijection.this.disapplyAll(src, dst, off, len);
+				before.disapplyAll(dst, dst, off, len);
+			}
+
+			@Override
+			public IntBijection inverse() {
+				if (inverse == null) inverse = IntBijection.super.inverse();
+				return inverse;
+			}
+		};
+	}
+
+	/**
+	 * Composes a bijection to ints with this bijection, first applying the
+	 * 'before' bijection, and then this bijection.
+	 *
+	 * @param <S>
+	 *            the domain type
+	 * @param before
+	 *            the bijection to be applied first
+	 * @return the composite bijection
+	 */
+
+	default <S> ToIntBijection<S> compose(ToIntBijection<S> before) {
+		if (before == null) throw new IllegalArgumentException("null before");
+		return new ToIntBijection<S>() {
+			private Bijection<Integer, S> inverse;
+
+			@Override public int applyAsInt(S s)            { return IntBijection.this.applyAsInt(before.applyAsInt(s));  }
+			@Override public S disapply(int i)              { return before.disapply(IntBijection.this.disapplyAsInt(i)); }
+			@Override public Class<S> domainType()          { return before.domainType();                                 }
+			@Override public boolean isInDomain(Object obj) { return before.isInDomain(obj);                              }
+			@Override public boolean isInRange(int i)       { return IntBijection.this.isInRange(i);                      }
+
+			@Override
+			public Bijection<Integer, S> inverse() {
+				if (inverse == null) inverse = ToIntBijection.super.inverse();
+				return inverse;
+			}
+		};
+	}
+
+	@Override
+	default IntBijection inverse() {
+		return new Composition.IntInverse(this);
+	}
+
+}
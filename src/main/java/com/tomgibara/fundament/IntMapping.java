@@ -0,0 +1,162 @@
+/*
+ * Copyright 2016 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.fundament;
+
+import java.util.function.IntUnaryOperator;
+
+/**
+ * A mapping from <code>int</code> values to <code>int</code> values that can
+ * be applied without boxing. The boxed methods of {@link Mapping} are
+ * implemented in terms of the primitive methods so that instances remain
+ * usable wherever a <code>Mapping&lt;Integer, Integer&gt;</code> is expected.
+ *
+ * @author Tom Gibara
+ *
+ * @see IntBijection
+ */
+
+@FunctionalInterface
+public interface IntMapping extends Mapping<Integer, Integer> {
+
+	/**
+	 * Defines an int mapping with an operator.
+	 *
+	 * @param op
+	 *            an int unary operator
+	 * @return a mapping based on the operator
+	 */
+
+	static IntMapping fromOperator(IntUnaryOperator op) {
+		if (op == null) throw new IllegalArgumentException("null op");
+		return i -> op.applyAsInt(i);
+	}
+
+	/**
+	 * Adapts a generic mapping over integers into an int mapping. If the
+	 * supplied mapping is already an int mapping, it is returned unchanged.
+	 *
+	 * @param mapping
+	 *            a mapping over integers
+	 * @return an int mapping that applies the supplied mapping
+	 */
+
+	static IntMapping fromMapping(Mapping<Integer, Integer> mapping) {
+		if (mapping == null) throw new IllegalArgumentException("null mapping");
+		if (mapping instanceof IntMapping) return (IntMapping) mapping;
+		return new IntMapping() {
+			@Override public int applyAsInt(int i)          { return mapping.apply(i);        }
+			@Override public boolean isInDomain(Object obj) { return mapping.isInDomain(obj); }
+			@Override public boolean isInDomain(int i)      { return mapping.isInDomain(i);   }
+		};
+	}
+
+	/**
+	 * Applies the mapping to an int value.
+	 *
+	 * @param i
+	 *            a value in the domain of the mapping
+	 * @return the mapped value
+	 */
+
+	int applyAsInt(int i);
+
+	/**
+	 * Evaluates whether the supplied value is a valid parameter for the
+	 * {@link #applyAsInt(int)} method. The default implementation returns
+	 * true for all values.
+	 *
+	 * @param i
+	 *            the value being tested
+	 * @return true if the mapping may be applied to the value
+	 */
+
+	default boolean isInDomain(int i) { return true; }
+
+	@Override default Integer apply(Integer i)       { return applyAsInt(i); }
+	@Override default Class<Integer> domainType()    { return Integer.class; }
+	@Override default Class<Integer> rangeType()     { return Integer.class; }
+
+	@Override
+	default boolean isInDomain(Object obj) {
+		return obj instanceof Integer && isInDomain(((Integer) obj).intValue());
+	}
+
+	/**
+	 * Applies the mapping to a range of int values, storing the results at the
+	 * same indices in a destination array. The default implementation applies
+	 * the mapping to each value in turn.
+	 *
+	 * @param src
+	 *            the values to which the mapping is applied
+	 * @param dst
+	 *            the array into which the results are written
+	 * @param off
+	 *            the index of the first value
+	 * @param len
+	 *            the number of values to be mapped
+	 * @throws IllegalArgumentException
+	 *             if either array is null or the range exceeds either array
+	 */
+
+	default void applyAll(int[] src, int[] dst, int off, int len) {
+		Bulk.checkRange(src, src == null ? 0 : src.length, dst, dst == null ? 0 : dst.length, off, len);
+		for (int i = off, lim = off + len; i < lim; i++) {
+			dst[i] = applyAsInt(src[i]);
+		}
+	}
+
+	/**
+	 * Composes two int mappings into a single int mapping, first applying the
+	 * 'before' mapping, and then this mapping.
+	 *
+	 * @param before
+	 *            the mapping to be applied first
+	 * @return the composite mapping
+	 */
+
+	default IntMapping composeInt(IntMapping before) {
+		if (before == null) throw new IllegalArgumentException("null before");
+		return new IntMapping() {
+			@Override public int applyAsInt(int i)     { return IntMapping.this.applyAsInt(before.applyAsInt(i)); }
+			@Override public boolean isInDomain(int i) { return before.isInDomain(i);                             }
+
+			@Override
+			public void applyAll(int[] src, int[] dst, int off, int len) {
+				before.applyAll(src, dst, off, len);
+				IntMapping.this.applyAll(dst, dst, off, len);
+			}
+		};
+	}
+
+	/**
+	 * Composes a long-to-int mapping with this mapping, first applying the
+	 * 'before' mapping, and then this mapping.
+	 *
+	 * @param before
+	 *            the mapping to be applied first
+	 * @return the composite mapping
+	 */
+
+	default LongToIntMapping composeLong(LongToIntMapping before) {
+		if (before == null) throw new IllegalArgumentException("null before");
+		return new LongToIntMapping() {
+			@Override public int applyAsInt(long l)     { return IntMapping.this.applyAsInt(before.applyAsInt(l)); }
+			@Override public boolean isInDomain(long l) { return before.isInDomain(l);                             }
+		};
+	}
+
+}
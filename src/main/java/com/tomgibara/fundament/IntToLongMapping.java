@@ -0,0 +1,157 @@
+/*
+ * Copyright 2016 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.fundament;
+
+import java.util.function.IntToLongFunction;
+
+/**
+ * A mapping from <code>int</code> values to <code>long</code> values that can
+ * be applied without boxing. The boxed methods of {@link Mapping} are
+ * implemented in terms of the primitive methods so that instances remain
+ * usable wherever a <code>Mapping&lt;Integer, Long&gt;</code> is expected.
+ *
+ * @author Tom Gibara
+ *
+ * @see LongToIntMapping
+ */
+
+@FunctionalInterface
+public interface IntToLongMapping extends Mapping<Integer, Long> {
+
+	/**
+	 * Defines an int-to-long mapping with a function.
+	 *
+	 * @param fn
+	 *            an int-to-long function
+	 * @return a mapping based on the function
+	 */
+
+	static IntToLongMapping fromFunction(IntToLongFunction fn) {
+		if (fn == null) throw new IllegalArgumentException("null fn");
+		return i -> fn.applyAsLong(i);
+	}
+
+	/**
+	 * Adapts a generic mapping from integers to longs into an int-to-long
+	 * mapping. If the supplied mapping is already an int-to-long mapping, it
+	 * is returned unchanged.
+	 *
+	 * @param mapping
+	 *            a mapping from integers to longs
+	 * @return an int-to-long mapping that applies the supplied mapping
+	 */
+
+	static IntToLongMapping fromMapping(Mapping<Integer, Long> mapping) {
+		if (mapping == null) throw new IllegalArgumentException("null mapping");
+		if (mapping instanceof IntToLongMapping) return (IntToLongMapping) mapping;
+		return new IntToLongMapping() {
+			@Override public long applyAsLong(int i)        { return mapping.apply(i);        }
+			@Override public boolean isInDomain(Object obj) { return mapping.isInDomain(obj); }
+			@Override public boolean isInDomain(int i)      { return mapping.isInDomain(i);   }
+		};
+	}
+
+	/**
+	 * Applies the mapping to an int value.
+	 *
+	 * @param i
+	 *            a value in the domain of the mapping
+	 * @return the mapped value
+	 */
+
+	long applyAsLong(int i);
+
+	/**
+	 * Evaluates whether the supplied value is a valid parameter for the
+	 * {@link #applyAsLong(int)} method. The default implementation returns
+	 * true for all values.
+	 *
+	 * @param i
+	 *            the value being tested
+	 * @return true if the mapping may be applied to the value
+	 */
+
+	default boolean isInDomain(int i) { return true; }
+
+	@Override default Long apply(Integer i)          { return applyAsLong(i); }
+	@Override default Class<Integer> domainType()    { return Integer.class;  }
+	@Override default Class<Long> rangeType()        { return Long.class;     }
+
+	@Override
+	default boolean isInDomain(Object obj) {
+		return obj instanceof Integer && isInDomain(((Integer) obj).intValue());
+	}
+
+	/**
+	 * Applies the mapping to a range of int values, storing the results at the
+	 * same indices in a destination array. The default implementation applies
+	 * the mapping to each value in turn.
+	 *
+	 * @param src
+	 *            the values to which the mapping is applied
+	 * @param dst
+	 *            the array into which the results are written
+	 * @param off
+	 *            the index of the first value
+	 * @param len
+	 *            the number of values to be mapped
+	 * @throws IllegalArgumentException
+	 *             if either array is null or the range exceeds either array
+	 */
+
+	default void applyAll(int[] src, long[] dst, int off, int len) {
+		Bulk.checkRange(src, src == null ? 0 : src.length, dst, dst == null ? 0 : dst.length, off, len);
+		for (int i = off, lim = off + len; i < lim; i++) {
+			dst[i] = applyAsLong(src[i]);
+		}
+	}
+
+	/**
+	 * Composes an int mapping with this mapping, first applying the 'before'
+	 * mapping, and then this mapping.
+	 *
+	 * @param before
+	 *            the mapping to be applied first
+	 * @return the composite mapping
+	 */
+
+	default IntToLongMapping composeInt(IntMapping before) {
+		if (before == null) throw new IllegalArgumentException("null before");
+		return new IntToLongMapping() {
+			@Override public long applyAsLong(int i)   { return IntToLongMapping.this.applyAsLong(before.applyAsInt(i)); }
+			@Override public boolean isInDomain(int i) { return before.isInDomain(i);                                    }
+		};
+	}
+
+	/**
+	 * Composes a long-to-int mapping with this mapping, first applying the
+	 * 'before' mapping, and then this mapping.
+	 *
+	 * @param before
+	 *            the mapping to be applied first
+	 * @return the composite mapping
+	 */
+
+	default LongMapping composeLong(LongToIntMapping before) {
+		if (before == null) throw new IllegalArgumentException("null before");
+		return new LongMapping() {
+			@Override public long applyAsLong(long l)   { return IntToLongMapping.this.applyAsLong(before.applyAsInt(l)); }
+			@Override public boolean isInDomain(long l) { return before.isInDomain(l);                                    }
+		};
+	}
+
+}
@@ -0,0 +1,207 @@
+/*
+ * Copyright 2016 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.fundament;
+
+import java.util.function.LongUnaryOperator;
+
+/**
+ * A bijection over <code>long</code> values that can be applied in both
+ * directions without boxing. The boxed methods of {@link Bijection} are
+ * implemented in terms of the primitive methods so that instances remain
+ * usable wherever a <code>Bijection&lt;Long, Long&gt;</code> is
+ * expected.
+ *
+ * @author Tom Gibara
+ *
+ * @see LongMapping
+ */
+
+public interface LongBijection extends LongMapping, Bijection<Long, Long> {
+
+	/**
+	 * The identity bijection on long values.
+	 *
+	 * @return an identity bijection over longs
+	 */
+
+	static LongBijection identity() {
+		return new LongBijection() {
+			@Override public long applyAsLong(long l)    { return l;    }
+			@Override public long disapplyAsLong(long l) { return l;    }
+			@Override public LongBijection inverse()     { return this; }
+
+			@Override public LongBijection compose(LongBijection before) { return before; }
+			@Override public LongMapping composeLong(LongMapping before) { return before; }
+		};
+	}
+
+	/**
+	 * Generates a long bijection from a pair of operators.
+	 *
+	 * @param fn
+	 *            provides the implementation of {@link #applyAsLong(long)}
+	 * @param inv
+	 *            provides the implementation of {@link #disapplyAsLong(long)}
+	 * @return the operator pair as a bijection
+	 */
+
+	static LongBijection fromOperators(LongUnaryOperator fn, LongUnaryOperator inv) {
+		if (fn == null) throw new IllegalArgumentException("null fn");
+		if (inv == null) throw new IllegalArgumentException("null inv");
+		return new LongBijection() {
+			private LongBijection inverse;
+
+			@Override public long applyAsLong(long l)    { return fn.applyAsLong(l);  }
+			@Override public long disapplyAsLong(long l) { return inv.applyAsLong(l); }
+
+			@Override
+			public LongBijection inverse() {
+				if (inverse == null) inverse = LongBijection.super.inverse();
+				return inverse;
+			}
+		};
+	}
+
+	/**
+	 * Adapts a generic bijection over longs into a long bijection. If the
+	 * supplied bijection is already a long bijection, it is returned
+	 * unchanged.
+	 *
+	 * @param bijection
+	 *            a bijection over longs
+	 * @return a long bijection that applies the supplied bijection
+	 */
+
+	static LongBijection fromBijection(Bijection<Long, Long> bijection) {
+		if (bijection == null) throw new IllegalArgumentException("null bijection");
+		if (bijection instanceof LongBijection) return (LongBijection) bijection;
+		return new LongBijection() {
+			private LongBijection inverse;
+
+			@Override public long applyAsLong(long l)       { return bijection.apply(l);        }
+			@Override public long disapplyAsLong(long l)    { return bijection.disapply(l);     }
+			@Override public boolean isInDomain(Object obj) { return bijection.isInDomain(obj); }
+			@Override public boolean isInDomain(long l)     { return bijection.isInDomain(l);   }
+			@Override public boolean isInRange(Object obj)  { return bijection.isInRange(obj);  }
+			@Override public boolean isInRange(long l)      { return bijection.isInRange(l);    }
+
+			@Override
+			public LongBijection inverse() {
+				if (inverse == null) inverse = LongBijection.super.inverse();
+				return inverse;
+			}
+		};
+	}
+
+	/**
+	 * Inverts the function defined by {@link #applyAsLong(long)}.
+	 *
+	 * @param l
+	 *            a value in the range of the bijection
+	 * @return the value in the domain that maps to <code>l</code>
+	 */
+
+	long disapplyAsLong(long l);
+
+	/**
+	 * Evaluates whether the supplied value is a valid parameter for the
+	 * {@link #disapplyAsLong(long)} method. The default implementation returns
+	 * true for all values.
+	 *
+	 * @param l
+	 *            the value being tested
+	 * @return true if the inverse may be applied to the value
+	 */
+
+	default boolean isInRange(long l) { return true; }
+
+	@Override default Long disapply(Long l) { return disapplyAsLong(l); }
+
+	@Override
+	default boolean isInRange(Object obj) {
+		return obj instanceof Long && isInRange(((Long) obj).longValue());
+	}
+
+	/**
+	 * Inverts the bijection over a range of long values, storing the results at
+	 * the same indices in a destination array. The default implementation
+	 * disapplies the bijection to each value in turn.
+	 *
+	 * @param src
+	 *            the values to which the inverse is applied
+	 * @param dst
+	 *            the array into which the results are written
+	 * @param off
+	 *            the index of the first value
+	 * @param len
+	 *            the number of values to be mapped
+	 * @throws IllegalArgumentException
+	 *             if either array is null or the range exceeds either array
+	 */
+
+	default void disapplyAll(long[] src, long[] dst, int off, int len) {
+		Bulk.checkRange(src, src == null ? 0 : src.length, dst, dst == null ? 0 : dst.length, off, len);
+		for (int i = off, lim = off + len; i < lim; i++) {
+			dst[i] = disapplyAsLong(src[i]);
+		}
+	}
+
+	/**
+	 * Composes two long bijections into a single long bijection, first applying
+	 * the 'before' bijection, and then this bijection.
+	 *
+	 * @param before
+	 *            the bijection to be applied first
+	 * @return the composite bijection
+	 */
+
+	default LongBijection compose(LongBijection before) {
+		if (before == null) throw new IllegalArgumentException("null before");
+		return new LongBijection() {
+			private LongBijection inverse;
+
+			@Override public long applyAsLong(long l)    { return LongBijection.this.applyAsLong(before.applyAsLong(l));       }
+			@Override public long disapplyAsLong(long l) { return before.disapplyAsLong(LongBijection.this.disapplyAsLong(l)); }
+			@Override public boolean isInDomain(long l)  { return before.isInDomain(l);                                        }
+			@Override public boolean isInRange(long l)   { return LongBijection.this.isInRange(l);                             }
+
+			@Override
+			public void applyAll(long[] src, long[] dst, int off, int len) {
+				before.applyAll(src, dst, off, len);
+				LongBijection.this.applyAll(dst, dst, off, len);
+			}
+
+			@Override
+			public void disapplyAll(long[] src, long[] dst, int off, int len) {
+				LongBijection.this.disapplyAll(src, dst, off, len);
+				before.disapplyAll(dst, dst, off, len);
+			}
+
+			@Override
+			public LongBijection inverse() {
+				if (inverse == null) inverse = LongBijection.super.inverse();
+				return inverse;
+			}
+		};
+	}
+
+	@Override
+	default LongBijection inverse() {
+		return new Composition.LongInverse(this);
+	}
+
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright 2016 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.fundament;
+
+import java.util.function.LongUnaryOperator;
+
+/**
+ * A mapping from <code>long</code> values to <code>long</code> values that
+ * can be applied without boxing. The boxed methods of {@link Mapping} are
+ * implemented in terms of the primitive methods so that instances remain
+ * usable wherever a <code>Mapping&lt;Long, Long&gt;</code> is expected.
+ *
+ * @author Tom Gibara
+ *
+ * @see LongBijection
+ */
+
+@FunctionalInterface
+public interface LongMapping extends Mapping<Long, Long> {
+
+	/**
+	 * Defines a long mapping with an operator.
+	 *
+	 * @param op
+	 *            a long unary operator
+	 * @return a mapping based on the operator
+	 */
+
+	static LongMapping fromOperator(LongUnaryOperator op) {
+		if (op == null) throw new IllegalArgumentException("null op");
+		return l -> op.applyAsLong(l);
+	}
+
+	/**
+	 * Adapts a generic mapping over longs into a long mapping. If the supplied
+	 * mapping is already a long mapping, it is returned unchanged.
+	 *
+	 * @param mapping
+	 *            a mapping over longs
+	 * @return a long mapping that applies the supplied mapping
+	 */
+
+	static LongMapping fromMapping(Mapping<Long, Long> mapping) {
+		if (mapping == null) throw new IllegalArgumentException("null mapping");
+		if (mapping instanceof LongMapping) return (LongMapping) mapping;
+		return new LongMapping() {
+			@Override public long applyAsLong(long l)       { return mapping.apply(l);        }
+			@Override public boolean isInDomain(Object obj) { return mapping.isInDomain(obj); }
+			@Override public boolean isInDomain(long l)     { return mapping.isInDomain(l);   }
+		};
+	}
+
+	/**
+	 * Applies the mapping to a long value.
+	 *
+	 * @param l
+	 *            a value in the domain of the mapping
+	 * @return the mapped value
+	 */
+
+	long applyAsLong(long l);
+
+	/**
+	 * Evaluates whether the supplied value is a valid parameter for the
+	 * {@link #applyAsLong(long)} method. The default implementation returns
+	 * true for all values.
+	 *
+	 * @param l
+	 *            the value being tested
+	 * @return true if the mapping may be applied to the value
+	 */
+
+	default boolean isInDomain(long l) { return true; }
+
+	@Override default Long apply(Long l)          { return applyAsLong(l); }
+	@Override default Class<Long> domainType()    { return Long.class;     }
+	@Override default Class<Long> rangeType()     { return Long.class;     }
+
+	@Override
+	default boolean isInDomain(Object obj) {
+		return obj instanceof Long && isInDomain(((Long) obj).longValue());
+	}
+
+	/**
+	 * Applies the mapping to a range of long values, storing the results at the
+	 * same indices in a destination array. The default implementation applies
+	 * the mapping to each value in turn.
+	 *
+	 * @param src
+	 *            the values to which the mapping is applied
+	 * @param dst
+	 *            the array into which the results are written
+	 * @param off
+	 *            the index of the first value
+	 * @param len
+	 *            the number of values to be mapped
+	 * @throws IllegalArgumentException
+	 *             if either array is null or the range exceeds either array
+	 */
+
+	default void applyAll(long[] src, long[] dst, int off, int len) {
+		Bulk.checkRange(src, src == null ? 0 : src.length, dst, dst == null ? 0 : dst.length, off, len);
+		for (int i = off, lim = off + len; i < lim; i++) {
+			dst[i] = applyAsLong(src[i]);
+		}
+	}
+
+	/**
+	 * Composes two long mappings into a single long mapping, first applying
+	 * the 'before' mapping, and then this mapping.
+	 *
+	 * @param before
+	 *            the mapping to be applied first
+	 * @return the composite mapping
+	 */
+
+	default LongMapping composeLong(LongMapping before) {
+		if (before == null) throw new IllegalArgumentException("null before");
+		return new LongMapping() {
+			@Override public long applyAsLong(long l)   { return LongMapping.this.applyAsLong(before.applyAsLong(l)); }
+			@Override public boolean isInDomain(long l) { return before.isInDomain(l);                                }
+
+			@Override
+			public void applyAll(long[] src, long[] dst, int off, int len) {
+				before.applyAll(src, dst, off, len);
+				LongMapping.this.applyAll(dst, dst, off, len);
+			}
+		};
+	}
+
+	/**
+	 * Composes an int-to-long mapping with this mapping, first applying the
+	 * 'before' mapping, and then this mapping.
+	 *
+	 * @param before
+	 *            the mapping to be applied first
+	 * @return the composite mapping
+	 */
+
+	default IntToLongMapping composeInt(IntToLongMapping before) {
+		if (before == null) throw new IllegalArgumentException("null before");
+		return new IntToLongMapping() {
+			@Override public long applyAsLong(int i)   { return LongMapping.this.applyAsLong(before.applyAsLong(i)); }
+			@Override public boolean isInDomain(int i) { return before.isInDomain(i);                                }
+		};
+	}
+
+}
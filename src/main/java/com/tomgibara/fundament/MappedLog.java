@@ -0,0 +1,415 @@
+/*
+ * Copyright 2016 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.fundament;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.zip.CRC32;
+
+/**
+ * A durable, append-only log of values stored in memory-mapped segment files.
+ * Values are appended via {@link #append(Object)}, or the consumer returned
+ * by {@link #appender()}, and replayed via the producer returned by
+ * {@link #replay(long)}.
+ *
+ * Each value is stored as a record comprising a four byte length, a four
+ * byte CRC-32 checksum of the length and payload, and the payload. When
+ * values are encoded with a {@link BufferCodec}, they are encoded directly
+ * into, and decoded directly from, the mapped segment without intermediate
+ * copies. When a {@link Bijection} to byte arrays is used instead, each
+ * record is copied once.
+ *
+ * Records are located by offsets which increase across segments; a new
+ * segment is started whenever a record will not fit into the current
+ * segment. Mapped segments are written to storage by the operating system
+ * at its discretion, or explicitly, either by calling {@link #force()} or by
+ * specifying a force interval when the log is opened.
+ *
+ * When a log is opened, the last segment is scanned and any incomplete or
+ * corrupt records at its end, as may be left by a crash, are discarded.
+ *
+ * Appending is synchronized; replaying is safe for concurrent use with
+ * appending, but each replaying producer should be confined to a single
+ * thread.
+ *
+ * @author Tom Gibara
+ *
+ * @param <T>
+ *            the type of value logged
+ */
+
+public final class MappedLog<T> implements AutoCloseable {
+
+	private static final int HEADER_SIZE = 8;
+	private static final String SUFFIX = ".log";
+
+	/**
+	 * Opens a log in which values are encoded with a buffer codec. The
+	 * directory is created if it does not exist.
+	 *
+	 * @param <T>
+	 *            the type of value logged
+	 * @param directory
+	 *            the directory containing the segment files
+	 * @param codec
+	 *            encodes and decodes values
+	 * @param segmentSize
+	 *            the size of each segment file in bytes
+	 * @param forceInterval
+	 *            the number of values appended between forced writes to
+	 *            storage, or zero to only force writes explicitly
+	 * @return the opened log
+	 * @throws IOException
+	 *             if the log could not be opened
+	 */
+
+	public static <T> MappedLog<T> open(Path directory, BufferCodec<T> codec, long segmentSize, int forceInterval) throws IOException {
+		if (codec == null) throw new IllegalArgumentException("null codec");
+		return new MappedLog<>(directory, codec, null, segmentSize, forceInterval);
+	}
+
+	/**
+	 * Opens a log in which values are encoded as byte arrays. The directory is
+	 * created if it does not exist.
+	 *
+	 * @param <T>
+	 *            the type of value logged
+	 * @param directory
+	 *            the directory containing the segment files
+	 * @param bijection
+	 *            encodes and decodes values
+	 * @param segmentSize
+	 *            the size of each segment file in bytes
+	 * @param forceInterval
+	 *            the number of values appended between forced writes to
+	 *            storage, or zero to only force writes explicitly
+	 * @return the opened log
+	 * @throws IOException
+	 *             if the log could not be opened
+	 */
+
+	public static <T> MappedLog<T> open(Path directory, Bijection<T, byte[]> bijection, long segmentSize, int forceInterval) throws IOException {
+		if (bijection == null) throw new IllegalArgumentException("null bijection");
+		return new MappedLog<>(directory, null, bijection, segmentSize, forceInterval);
+	}
+
+	private static String fileName(long base) {
+		return String.format("%020d%s", base, SUFFIX);
+	}
+
+	private static int checksum(ByteBuffer buffer, int position, int length) {
+		CRC32 crc = new CRC32();
+		crc.update(window(buffer, position, position + 4));
+		crc.update(window(buffer, position + HEADER_SIZE, position + HEADER_SIZE + length));
+		return (int) crc.getValue();
+	}
+
+	// a view of part of a buffer, positioned via Buffer for compatibility with Java 8
+	private static ByteBuffer window(ByteBuffer buffer, int from, int to) {
+		ByteBuffer b = buffer.duplicate();
+		((Buffer) b).limit(to).position(from);
+		return b;
+	}
+
+	private final Path directory;
+	private final BufferCodec<T> codec;
+	private final Bijection<T, byte[]> bijection;
+	private final long segmentSize;
+	private final int forceInterval;
+	private final ConcurrentNavigableMap<Long, Segment> segments = new ConcurrentSkipListMap<>();
+
+	// guarded by this
+	private Segment current;
+	private int position;
+	private int unforced = 0;
+	private boolean closed = false;
+
+	// the offset following the last complete record
+	private volatile long end;
+
+	private MappedLog(Path directory, BufferCodec<T> codec, Bijection<T, byte[]> bijection, long segmentSize, int forceInterval) throws IOException {
+		if (directory == null) throw new IllegalArgumentException("null directory");
+		if (segmentSize <= HEADER_SIZE) throw new IllegalArgumentException("segmentSize too small");
+		if (segmentSize > Integer.MAX_VALUE) throw new IllegalArgumentException("segmentSize too large");
+		if (forceInterval < 0) throw new IllegalArgumentException("negative forceInterval");
+		this.directory = directory;
+		this.codec = codec;
+		this.bijection = bijection;
+		this.segmentSize = segmentSize;
+		this.forceInterval = forceInterval;
+
+		Files.createDirectories(directory);
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+			for (Path path : stream) {
+				String name = path.getFileName().toString();
+				long base;
+				try {
+					base = Long.parseLong(name.substring(0, name.length() - SUFFIX.length()));
+				} catch (NumberFormatException e) {
+					continue;
+				}
+				segments.put(base, new Segment(base, path, Files.size(path)));
+			}
+		}
+		if (segments.isEmpty()) {
+			current = newSegment(0L);
+			position = 0;
+		} else {
+			current = segments.lastEntry().getValue();
+			position = recover(current);
+		}
+		end = current.base + position;
+	}
+
+	/**
+	 * Appends a value to the log.
+	 *
+	 * @param value
+	 *            the value to append
+	 * @return the offset of the record, from which it may be replayed
+	 * @throws IOException
+	 *             if a new segment could not be created
+	 * @throws IllegalArgumentException
+	 *             if the encoded value is too large to fit in a segment
+	 * @throws IllegalStateException
+	 *             if the log has been closed
+	 */
+
+	public synchronized long append(T value) throws IOException {
+		if (closed) throw new IllegalStateException("closed");
+		byte[] bytes = null;
+		int length;
+		if (codec == null) {
+			bytes = bijection.apply(value);
+			length = bytes.length;
+		} else {
+			length = codec.encodedSize(value);
+		}
+		if (length > segmentSize - HEADER_SIZE) throw new IllegalArgumentException("value too large");
+		if (position + HEADER_SIZE + length > current.size) {
+			// the remainder of the segment is left zeroed, which marks its end
+			current = newSegment(current.base + position);
+			position = 0;
+		}
+		ByteBuffer buffer = current.buffer;
+		buffer.putInt(position, length);
+		ByteBuffer payload = window(buffer, position + HEADER_SIZE, position + HEADER_SIZE + length);
+		if (codec == null) {
+			payload.put(bytes);
+		} else {
+			codec.encode(value, payload);
+			if (payload.hasRemaining()) throw new IllegalStateException("codec size mismatch");
+		}
+		buffer.putInt(position + 4, checksum(buffer, position, length));
+		long offset = current.base + position;
+		position += HEADER_SIZE + length;
+		end = current.base + position;
+		if (forceInterval > 0 && ++unforced >= forceInterval) force();
+		return offset;
+	}
+
+	/**
+	 * A consumer that appends values to the log. Failures to create segments
+	 * are reported as an <code>UncheckedIOException</code>.
+	 *
+	 * @return a consumer that appends to this log
+	 */
+
+	public Consumer<T> appender() {
+		return value -> {
+			try {
+				append(value);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		};
+	}
+
+	/**
+	 * Forces any appended values to be written to storage.
+	 */
+
+	public synchronized void force() {
+		if (closed) return;
+		current.buffer.force();
+		unforced = 0;
+	}
+
+	/**
+	 * The offset at which the next record will be appended. Replaying from
+	 * this offset produces only values that are subsequently appended.
+	 *
+	 * @return the end offset of the log
+	 */
+
+	public long endOffset() {
+		return end;
+	}
+
+	/**
+	 * The offset of the first record in the log.
+	 *
+	 * @return the start offset of the log
+	 */
+
+	public long startOffset() {
+		return segments.firstKey();
+	}
+
+	/**
+	 * A producer that replays the values in the log, starting with the record
+	 * at the specified offset. When the producer reaches the end of the log,
+	 * it produces null; values appended subsequently will be produced by
+	 * later calls.
+	 *
+	 * @param offset
+	 *            the offset of a record, as returned by {@link #append(Object)},
+	 *            or the start or end offset of the log
+	 * @return a producer of logged values
+	 * @throws IllegalArgumentException
+	 *             if the offset lies outside the log
+	 */
+
+	public Producer<T> replay(long offset) {
+		if (offset < startOffset() || offset > end) throw new IllegalArgumentException("invalid offset");
+		return new Replay(offset);
+	}
+
+	/**
+	 * Forces any appended values to storage and closes the segment files.
+	 * Closing a log that is already closed has no effect.
+	 *
+	 * @throws IOException
+	 *             if a segment file could not be closed
+	 */
+
+	@Override
+	public synchronized void close() throws IOException {
+		if (closed) return;
+		current.buffer.force();
+		closed = true;
+		IOException failure = null;
+		for (Segment segment : segments.values()) {
+			try {
+				segment.channel.close();
+			} catch (IOException e) {
+				if (failure == null) failure = e;
+			}
+		}
+		if (failure != null) throw failure;
+	}
+
+	private Segment newSegment(long base) throws IOException {
+		if (current != null) current.buffer.force();
+		// an empty segment that is too small for a record is replaced
+		Segment previous = segments.get(base);
+		if (previous != null) previous.channel.close();
+		Segment segment = new Segment(base, directory.resolve(fileName(base)), segmentSize);
+		segments.put(base, segment);
+		return segment;
+	}
+
+	// returns the position following the last valid record, zeroing anything after it
+	private static int recover(Segment segment) {
+		ByteBuffer buffer = segment.buffer;
+		int position = 0;
+		while (position + HEADER_SIZE <= segment.size) {
+			int length = buffer.getInt(position);
+			int crc = buffer.getInt(position + 4);
+			if (length == 0 && crc == 0) break;
+			if (length < 0 || position + HEADER_SIZE + (long) length > segment.size) break;
+			if (checksum(buffer, position, length) != crc) break;
+			position += HEADER_SIZE + length;
+		}
+		for (int i = position; i < segment.size; i++) {
+			if (buffer.get(i) != 0) buffer.put(i, (byte) 0);
+		}
+		return position;
+	}
+
+	// inner classes
+
+	private static final class Segment {
+
+		final long base;
+		final int size;
+		final FileChannel channel;
+		final MappedByteBuffer buffer;
+
+		Segment(long base, Path path, long size) throws IOException {
+			this.base = base;
+			this.size = (int) size;
+			channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+			buffer = channel.map(MapMode.READ_WRITE, 0L, size);
+		}
+
+	}
+
+	private final class Replay implements Producer<T> {
+
+		private Segment segment;
+		private ByteBuffer buffer;
+		private int position;
+
+		Replay(long offset) {
+			Map.Entry<Long, Segment> entry = segments.floorEntry(offset);
+			segment = entry.getValue();
+			buffer = segment.buffer.duplicate();
+			position = (int) (offset - segment.base);
+		}
+
+		@Override
+		public T produce() {
+			long offset = segment.base + position;
+			if (offset >= end) return null;
+			if (position + HEADER_SIZE > segment.size || buffer.getInt(position) == 0 && buffer.getInt(position + 4) == 0) {
+				// the segment is exhausted, records continue in the next segment
+				Segment next = segments.get(offset);
+				if (next == null || next == segment) throw new IllegalStateException("missing segment at " + offset);
+				segment = next;
+				buffer = next.buffer.duplicate();
+				position = 0;
+			}
+			int length = buffer.getInt(position);
+			if (length < 0 || position + HEADER_SIZE + (long) length > segment.size || checksum(buffer, position, length) != buffer.getInt(position + 4)) {
+				throw new IllegalStateException("corrupt record at " + offset);
+			}
+			int start = position + HEADER_SIZE;
+			position = start + length;
+			if (codec == null) {
+				byte[] bytes = new byte[length];
+				window(buffer, start, start + length).get(bytes);
+				return bijection.disapply(bytes);
+			}
+			return codec.decode(window(buffer, start, start + length));
+		}
+
+	}
+
+}
@@ -16,6 +16,7 @@
  */
 package com.tomgibara.fundament;
 
+import java.util.Spliterator;
 import java.util.function.Function;
 import java.util.function.UnaryOperator;
 
@@ -49,11 +50,7 @@ public interface Mapping<T, R> extends Function<T, R> {
 	static <T> Mapping<T,T> fromUnaryOperator(Class<T> domainType, UnaryOperator<T> op) {
 		if (domainType == null) throw new IllegalArgumentException("null domainType");
 		if (op == null) throw new IllegalArgumentException("null op");
-		return new Mapping<T, T>() {
-			@Override public T apply(T t)          { return op.apply(t); }
-			@Override public Class<T> domainType() { return domainType;  }
-			@Override public Class<T> rangeType()  { return domainType;  }
-		};
+		return new Composition.FunctionMapping<>(domainType, domainType, op);
 	}
 
 	/**
@@ -78,11 +75,36 @@ public interface Mapping<T, R> extends Function<T, R> {
 		if (domainType == null) throw new IllegalArgumentException("null domainType");
 		if (rangeType == null) throw new IllegalArgumentException("null rangeType");
 		if (fn == null) throw new IllegalArgumentException("null fn");
-		return new Mapping<T, R>() {
-			@Override public R apply(T t)          { return fn.apply(t); }
-			@Override public Class<T> domainType() { return domainType;  }
-			@Override public Class<R> rangeType()  { return rangeType;   }
-		};
+		return new Composition.FunctionMapping<>(domainType, rangeType, fn);
+	}
+
+	/**
+	 * Fuses a composite mapping into a single class that applies each stage
+	 * from its own call site. Long pipelines produced by repeated composition
+	 * are otherwise applied by a loop over their stages, where the call site
+	 * quickly becomes megamorphic and the stages cannot be inlined. A class
+	 * is generated for each distinct sequence of stage classes and is reused
+	 * by every pipeline with the same shape; stages created from functions
+	 * are identified by the classes of their functions. A bounded number of
+	 * classes is retained, and pipelines are returned unchanged if no class
+	 * can be generated for them.
+	 *
+	 * Mappings that are not composites are returned unchanged, as are all
+	 * mappings on platforms which do not support the definition of classes at
+	 * runtime. The returned mapping is never a bijection.
+	 *
+	 * @param <T>
+	 *            the domain type
+	 * @param <R>
+	 *            the range type
+	 * @param mapping
+	 *            a mapping, typically produced by composition
+	 * @return a mapping equivalent to the supplied mapping
+	 */
+
+	static <T,R> Mapping<T, R> compile(Mapping<T, R> mapping) {
+		if (mapping == null) throw new IllegalArgumentException("null mapping");
+		return CompiledMapping.compile(mapping);
 	}
 
 	/**
@@ -115,7 +137,8 @@ public interface Mapping<T, R> extends Function<T, R> {
 
 	/**
 	 * Composes two mappings into a single mapping, first applying the 'before'
-	 * mapping, and then this mapping.
+	 * mapping, and then this mapping. Composites are flattened so that
+	 * repeated composition does not lead to deeply nested mappings.
 	 *
 	 * @param <S>
 	 *            the domain type
@@ -130,11 +153,118 @@ public interface Mapping<T, R> extends Function<T, R> {
 	public default <S> Mapping<S, R> compose(Mapping<S, T> before) {
 		if (before == null) throw new IllegalArgumentException("null before");
 		if (!domainType().isAssignableFrom(before.rangeType())) throw new IllegalArgumentException("mismatched domain and range");
-		return new Mapping<S, R>() {
-			@Override public R apply(S s)                   { return Mapping.this.apply(before.apply(s)); }
-			@Override public Class<S> domainType()          { return before.domainType();                 }
-			@Override public Class<R> rangeType()           { return Mapping.this.rangeType();            }
-			@Override public boolean isInDomain(Object obj) { return before.isInDomain(obj);              }
-		};
+		return Composition.compose(this, before);
+	}
+
+	/**
+	 * A mapping that caches the values of this mapping. At most
+	 * <code>capacity</code> values are retained; when this is exceeded, values
+	 * are evicted according to a segmented LRU policy. The returned mapping
+	 * is safe for concurrent use if this mapping is, and reports the
+	 * effectiveness of the cache.
+	 *
+	 * @param capacity
+	 *            the maximum number of values to cache
+	 * @return a caching mapping over the same domain and range
+	 * @throws IllegalArgumentException
+	 *             if the capacity is not positive
+	 */
+
+	default CachingMapping<T, R> cached(int capacity) {
+		return new CachingMapping<>(this, capacity);
+	}
+
+	/**
+	 * Applies the mapping to a range of values, storing the results at the
+	 * same indices in a destination array. The source and destination arrays
+	 * may be the same array. The default implementation simply applies the
+	 * mapping to each value in turn; implementations may override this method
+	 * to reduce the per-value overhead of applying the mapping.
+	 *
+	 * @param src
+	 *            the values to which the mapping is applied
+	 * @param dst
+	 *            the array into which the results are written
+	 * @param off
+	 *            the index of the first value
+	 * @param len
+	 *            the number of values to be mapped
+	 * @throws IllegalArgumentException
+	 *             if either array is null or the range exceeds either array
+	 */
+
+	default void applyAll(T[] src, R[] dst, int off, int len) {
+		Bulk.checkRange(src, src == null ? 0 : src.length, dst, dst == null ? 0 : dst.length, off, len);
+		for (int i = off, lim = off + len; i < lim; i++) {
+			dst[i] = apply(src[i]);
+		}
+	}
+
+	/**
+	 * Applies the mapping to every value in an array. The results are
+	 * returned in a new array having the range type as its component type.
+	 *
+	 * @param src
+	 *            the values to which the mapping is applied
+	 * @return an array containing the mapped values
+	 */
+
+	default R[] applyAll(T[] src) {
+		if (src == null) throw new IllegalArgumentException("null src");
+		R[] dst = Bulk.newArray(rangeType(), src.length);
+		applyAll(src, dst, 0, src.length);
+		return dst;
+	}
+
+	/**
+	 * Applies the mapping to every value in an array, dividing the work
+	 * between the threads of the common fork-join pool. The results are
+	 * returned in a new array having the range type as its component type.
+	 * Implementations must be safe for concurrent use if this method is called.
+	 *
+	 * @param src
+	 *            the values to which the mapping is applied
+	 * @param threshold
+	 *            the number of values below which the work will not be split
+	 * @return an array containing the mapped values
+	 */
+
+	default R[] applyAllParallel(T[] src, int threshold) {
+		if (src == null) throw new IllegalArgumentException("null src");
+		Bulk.checkThreshold(threshold);
+		R[] dst = Bulk.newArray(rangeType(), src.length);
+		Bulk.parallel(src.length, threshold, (off, len) -> applyAll(src, dst, off, len));
+		return dst;
+	}
+
+	/**
+	 * Applies the mapping to every value supplied by an iterable, passing the
+	 * results to a consumer.
+	 *
+	 * @param src
+	 *            the values to which the mapping is applied
+	 * @param dst
+	 *            consumes the results of the mapping
+	 */
+
+	default void applyAll(Iterable<? extends T> src, Consumer<? super R> dst) {
+		if (src == null) throw new IllegalArgumentException("null src");
+		applyAll(src.spliterator(), dst);
+	}
+
+	/**
+	 * Applies the mapping to every value remaining in a spliterator, passing
+	 * the results to a consumer.
+	 *
+	 * @param src
+	 *            the values to which the mapping is applied
+	 * @param dst
+	 *            consumes the results of the mapping
+	 */
+
+	default void applyAll(Spliterator<? extends T> src, Consumer<? super R> dst) {
+		if (src == null) throw new IllegalArgumentException("null src");
+		if (dst == null) throw new IllegalArgumentException("null dst");
+		src.forEachRemaining(t -> dst.consume(apply(t)));
 	}
 }
@@ -0,0 +1,238 @@
+/*
+ * Copyright 2016 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.fundament;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * A producer that retains the value of another producer. Instances are safe
+ * for concurrent use and ensure that at most one thread at a time computes a
+ * value; no lock is taken, threads that require a value which is being
+ * computed simply await its completion. If the computation of a value fails,
+ * the exception is raised in every thread awaiting it and the value is
+ * recomputed on the next call to {@link #produce()}.
+ *
+ * Three policies are supported:
+ *
+ * <ul>
+ * <li>memoized values are computed once and retained indefinitely,
+ * <li>expiring values are recomputed on the first call after they have been
+ * retained for a fixed period,
+ * <li>refreshing values are recomputed in the background once they have been
+ * retained for a fixed period. Callers continue to receive the retained value
+ * until the recomputation completes, and if it fails, the retained value
+ * continues to be produced until a subsequent refresh succeeds.
+ * </ul>
+ *
+ * Instances are obtained via {@link Producer#memoized(Producer)},
+ * {@link Producer#expiring(Producer, long, java.util.concurrent.TimeUnit)} and
+ * {@link Producer#refreshing(Producer, long, java.util.concurrent.TimeUnit)}.
+ *
+ * @author Tom Gibara
+ *
+ * @param <T>
+ *            the type of value produced
+ */
+
+public final class MemoizingProducer<T> implements Producer<T> {
+
+	private final Producer<T> producer;
+	private final long ttl;
+	private final long refreshAfter;
+	private final Executor executor;
+	private final LongSupplier clock;
+
+	private final AtomicReference<Entry<T>> current = new AtomicReference<>();
+	private final AtomicBoolean refreshing = new AtomicBoolean();
+
+	private final LongAdder refreshes = new LongAdder();
+	private final LongAdder failures = new LongAdder();
+	private final LongAdder totalLatency = new LongAdder();
+	private volatile long lastLatency = -1L;
+
+	// durations are measured in nanoseconds, Long.MAX_VALUE indicates no limit
+	MemoizingProducer(Producer<T> producer, long ttl, long refreshAfter, Executor executor, LongSupplier clock) {
+		if (producer == null) throw new IllegalArgumentException("null producer");
+		if (clock == null) throw new IllegalArgumentException("null clock");
+		this.producer = producer;
+		this.ttl = ttl;
+		this.refreshAfter = refreshAfter;
+		this.executor = executor;
+		this.clock = clock;
+	}
+
+	@Override
+	public T produce() {
+		while (true) {
+			Entry<T> entry = current.get();
+			if (entry != null) {
+				CompletableFuture<T> future = entry.future;
+				if (!future.isDone()) return await(future);
+				if (!future.isCompletedExceptionally()) {
+					long now = clock.getAsLong();
+					long age = now - entry.time;
+					if (age < ttl) {
+						if (age >= refreshAfter && now - entry.attempted >= refreshAfter) refresh(entry);
+						return future.join();
+					}
+				}
+			}
+			// the value is absent, failed or expired
+			Entry<T> replacement = new Entry<>();
+			if (current.compareAndSet(entry, replacement)) return compute(replacement);
+		}
+	}
+
+	/**
+	 * The number of times a value has been successfully computed.
+	 *
+	 * @return the number of values computed
+	 */
+
+	public long refreshCount() {
+		return refreshes.sum();
+	}
+
+	/**
+	 * The number of times the computation of a value has failed.
+	 *
+	 * @return the number of failed computations
+	 */
+
+	public long failureCount() {
+		return failures.sum();
+	}
+
+	/**
+	 * The time taken by the most recent successful computation, as measured by
+	 * the clock of the producer.
+	 *
+	 * @return the latency of the last computation in nanoseconds, or -1 if no
+	 *         value has been computed
+	 */
+
+	public long lastRefreshLatency() {
+		return lastLatency;
+	}
+
+	/**
+	 * The mean time taken by successful computations, as measured by the clock
+	 * of the producer.
+	 *
+	 * @return the mean computation latency in nanoseconds, or -1 if no value
+	 *         has been computed
+	 */
+
+	public double meanRefreshLatency() {
+		long count = refreshes.sum();
+		return count == 0L ? -1.0 : totalLatency.sum() / (double) count;
+	}
+
+	/**
+	 * The time for which the value currently retained by the producer has been
+	 * retained.
+	 *
+	 * @return the age of the retained value in nanoseconds, or -1 if no value
+	 *         is currently retained
+	 */
+
+	public long staleness() {
+		Entry<T> entry = current.get();
+		if (entry == null || !entry.future.isDone() || entry.future.isCompletedExceptionally()) return -1L;
+		return clock.getAsLong() - entry.time;
+	}
+
+	private T compute(Entry<T> entry) {
+		long start = clock.getAsLong();
+		T value;
+		try {
+			value = producer.produce();
+		} catch (RuntimeException | Error e) {
+			failures.increment();
+			entry.future.completeExceptionally(e);
+			throw e;
+		}
+		record(entry, start, value);
+		return value;
+	}
+
+	private void refresh(Entry<T> entry) {
+		if (!refreshing.compareAndSet(false, true)) return;
+		try {
+			executor.execute(() -> {
+				try {
+					long start = clock.getAsLong();
+					Entry<T> replacement = new Entry<>();
+					record(replacement, start, producer.produce());
+					current.compareAndSet(entry, replacement);
+				} catch (RuntimeException e) {
+					failures.increment();
+					// defer the next attempt
+					entry.attempted = clock.getAsLong();
+				} finally {
+					refreshing.set(false);
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			failures.increment();
+			entry.attempted = clock.getAsLong();
+			refreshing.set(false);
+		}
+	}
+
+	private void record(Entry<T> entry, long start, T value) {
+		long finish = clock.getAsLong();
+		long latency = finish - start;
+		// the time is published by the completion of the future
+		entry.time = finish;
+		entry.attempted = finish;
+		entry.future.complete(value);
+		refreshes.increment();
+		totalLatency.add(latency);
+		lastLatency = latency;
+	}
+
+	private static <T> T await(CompletableFuture<T> future) {
+		try {
+			return future.join();
+		} catch (CompletionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+			if (cause instanceof Error) throw (Error) cause;
+			throw e;
+		}
+	}
+
+	// inner classes
+
+	private static final class Entry<T> {
+
+		final CompletableFuture<T> future = new CompletableFuture<>();
+		long time;
+		// the time at which the value was computed or last failed to refresh
+		volatile long attempted;
+
+	}
+
+}
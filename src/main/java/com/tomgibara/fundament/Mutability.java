@@ -76,7 +76,9 @@ public interface Mutability<T> {
 	 * An immutable view of this object. The view will exhibit the same state as
 	 * this object, and mutations of the state of this object will be reflected
 	 * in the view, but mutation via calls on the returned view will be
-	 * prohibited.
+	 * prohibited. Unless the implementation states otherwise, the view is no
+	 * safer for concurrent use than the object itself; implementations may
+	 * use a {@link SeqLock} to support readers on other threads.
 	 *
 	 * @return an immutable view of this object
 	 */
@@ -0,0 +1,319 @@
+/*
+ * Copyright 2016 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.fundament;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.StampedLock;
+
+import com.tomgibara.fundament.Channel.Backpressure;
+import com.tomgibara.fundament.Channel.WaitStrategy;
+
+/**
+ * A consumer that distributes values over a number of shards, each of which
+ * passes values to its own downstream consumer on its own thread. Values are
+ * routed to shards by a key, obtained from each value via a {@link Mapping},
+ * so that values with equal keys are always consumed by the same downstream
+ * consumer in the order in which they were supplied.
+ *
+ * Keys are assigned to shards by jump consistent hashing. When a shard is
+ * added, see {@link #addShard(Consumer)}, only the keys that move to the new
+ * shard change shard. To preserve ordering, adding a shard waits for every
+ * value that has already been supplied to be consumed before any further
+ * values are routed.
+ *
+ * If a downstream consumer throws an exception or error, its shard stops
+ * consuming and the throwable is reported as the cause of an
+ * <code>IllegalStateException</code> by subsequent attempts to route values to
+ * the shard and by {@link #close()}.
+ *
+ * Instances are obtained via
+ * {@link Consumer#partitioned(Mapping, List, int, ThreadFactory)}.
+ *
+ * @author Tom Gibara
+ *
+ * @param <T>
+ *            the type of value consumed
+ * @param <K>
+ *            the type of key by which values are partitioned
+ */
+
+public final class PartitionedConsumer<T, K> implements Consumer<T>, AutoCloseable {
+
+	// assigns a key to one of a number of buckets, see Lamping and Veach
+	static int jumpHash(long key, int buckets) {
+		long b = -1L;
+		long j = 0L;
+		while (j < buckets) {
+			b = j;
+			key = key * 2862933555777941757L + 1L;
+			j = (long) ((b + 1L) * ((double) (1L << 31) / (double) ((key >>> 33) + 1L)));
+		}
+		return (int) b;
+	}
+
+	private final Mapping<T, K> keys;
+	private final int queueCapacity;
+	private final ThreadFactory factory;
+	// guards the shards, only exclusively held while shards are changed
+	private final StampedLock lock = new StampedLock();
+	private volatile List<Shard> shards;
+	private volatile boolean closed = false;
+
+	PartitionedConsumer(Mapping<T, K> keys, List<? extends Consumer<? super T>> consumers, int queueCapacity, ThreadFactory factory) {
+		if (keys == null) throw new IllegalArgumentException("null keys");
+		if (consumers == null) throw new IllegalArgumentException("null consumers");
+		if (consumers.isEmpty()) throw new IllegalArgumentException("no consumers");
+		if (queueCapacity < 1) throw new IllegalArgumentException("non-positive queueCapacity");
+		if (factory == null) throw new IllegalArgumentException("null factory");
+		this.keys = keys;
+		this.queueCapacity = queueCapacity;
+		this.factory = factory;
+		List<Shard> shards = new ArrayList<>(consumers.size());
+		for (Consumer<? super T> consumer : consumers) {
+			shards.add(newShard(consumer));
+		}
+		this.shards = Collections.unmodifiableList(shards);
+		for (Shard shard : shards) {
+			shard.thread.start();
+		}
+	}
+
+	/**
+	 * Routes a value to the shard for its key, waiting if the queue of that
+	 * shard is full.
+	 *
+	 * @throws IllegalStateException
+	 *             if the consumer has been closed or the shard has failed
+	 */
+
+	@Override
+	public void consume(T value) {
+		K key = keys.apply(value);
+		long hash = (key == null ? 0L : key.hashCode()) * 0x9e3779b97f4a7c15L;
+		long stamp = lock.readLock();
+		try {
+			if (closed) throw new IllegalStateException("closed");
+			List<Shard> shards = this.shards;
+			shards.get(jumpHash(hash, shards.size())).enqueue(value);
+		} finally {
+			lock.unlockRead(stamp);
+		}
+	}
+
+	/**
+	 * Adds a shard, which immediately begins to receive the values for the
+	 * keys that are reassigned to it. This method blocks routing while it
+	 * waits for all previously supplied values to be consumed.
+	 *
+	 * @param consumer
+	 *            the downstream consumer for the new shard
+	 * @throws IllegalStateException
+	 *             if the consumer has been closed
+	 */
+
+	public void addShard(Consumer<? super T> consumer) {
+		if (consumer == null) throw new IllegalArgumentException("null consumer");
+		long stamp = lock.writeLock();
+		try {
+			if (closed) throw new IllegalStateException("closed");
+			awaitQuiescence();
+			List<Shard> shards = new ArrayList<>(this.shards);
+			Shard shard = newShard(consumer);
+			shards.add(shard);
+			shard.thread.start();
+			this.shards = Collections.unmodifiableList(shards);
+		} finally {
+			lock.unlockWrite(stamp);
+		}
+	}
+
+	/**
+	 * The number of shards over which values are partitioned.
+	 *
+	 * @return the number of shards
+	 */
+
+	public int shardCount() {
+		return shards.size();
+	}
+
+	/**
+	 * The number of values waiting to be consumed by each shard.
+	 *
+	 * @return the queue depth of each shard, indexed by shard
+	 */
+
+	public int[] queueDepths() {
+		List<Shard> shards = this.shards;
+		int[] depths = new int[shards.size()];
+		for (int i = 0; i < depths.length; i++) {
+			depths[i] = shards.get(i).channel.size();
+		}
+		return depths;
+	}
+
+	/**
+	 * The number of values consumed by each shard.
+	 *
+	 * @return the number of values consumed, indexed by shard
+	 */
+
+	public long[] consumedCounts() {
+		List<Shard> shards = this.shards;
+		long[] counts = new long[shards.size()];
+		for (int i = 0; i < counts.length; i++) {
+			counts[i] = shards.get(i).consumed;
+		}
+		return counts;
+	}
+
+	/**
+	 * The skew in the number of values routed to each shard, defined as the
+	 * ratio of the greatest number of values routed to any shard to the mean.
+	 * A value of one indicates that values are evenly distributed.
+	 *
+	 * @return the skew in the distribution of values, or one if no values
+	 *         have been routed
+	 */
+
+	public double skew() {
+		List<Shard> shards = this.shards;
+		long max = 0L;
+		long total = 0L;
+		for (Shard shard : shards) {
+			long count = shard.enqueued.sum();
+			max = Math.max(max, count);
+			total += count;
+		}
+		return total == 0L ? 1.0 : max * shards.size() / (double) total;
+	}
+
+	/**
+	 * Waits for all supplied values to be consumed and stops the shard
+	 * threads. Closing a consumer that is already closed has no effect.
+	 *
+	 * @throws IllegalStateException
+	 *             if a downstream consumer failed, with the failure as its
+	 *             cause
+	 */
+
+	@Override
+	public void close() {
+		long stamp = lock.writeLock();
+		List<Shard> shards;
+		try {
+			if (closed) return;
+			closed = true;
+			shards = this.shards;
+		} finally {
+			lock.unlockWrite(stamp);
+		}
+		boolean interrupted = false;
+		for (Shard shard : shards) {
+			LockSupport.unpark(shard.thread);
+			while (shard.thread.isAlive()) {
+				try {
+					shard.thread.join();
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+		}
+		if (interrupted) Thread.currentThread().interrupt();
+		for (Shard shard : shards) {
+			shard.checkFailure();
+		}
+	}
+
+	private Shard newShard(Consumer<? super T> consumer) {
+		Shard shard = new Shard(consumer);
+		Thread thread = factory.newThread(shard::run);
+		if (thread == null) throw new IllegalArgumentException("factory returned null thread");
+		shard.thread = thread;
+		return shard;
+	}
+
+	// called with the write lock held
+	private void awaitQuiescence() {
+		for (Shard shard : shards) {
+			for (int attempts = 0; shard.consumed != shard.enqueued.sum() && shard.failure == null; ) {
+				attempts = WaitStrategy.PARK.idle(attempts);
+			}
+		}
+	}
+
+	// inner classes
+
+	private final class Shard {
+
+		final Channel<T> channel = Channel.mpsc(queueCapacity, WaitStrategy.PARK, Backpressure.FAIL);
+		final Consumer<? super T> consumer;
+		final LongAdder enqueued = new LongAdder();
+		// only written by the shard thread
+		volatile long consumed = 0L;
+		volatile boolean sleeping = false;
+		volatile Throwable failure = null;
+		Thread thread;
+
+		Shard(Consumer<? super T> consumer) {
+			this.consumer = consumer;
+		}
+
+		void enqueue(T value) {
+			checkFailure();
+			for (int attempts = 0; !channel.offer(value); ) {
+				checkFailure();
+				attempts = WaitStrategy.PARK.idle(attempts);
+			}
+			enqueued.increment();
+			if (sleeping) LockSupport.unpark(thread);
+		}
+
+		void checkFailure() {
+			Throwable failure = this.failure;
+			if (failure != null) throw new IllegalStateException("shard failed", failure);
+		}
+
+		void run() {
+			try {
+				while (true) {
+					T value = channel.poll();
+					if (value != null) {
+						consumer.consume(value);
+						consumed++;
+						continue;
+					}
+					if (closed && channel.size() == 0 && consumed == enqueued.sum()) break;
+					sleeping = true;
+					// check again to avoid missing a wake-up, producers unpark the thread after enqueuing
+					if (channel.size() == 0 && !closed) LockSupport.park(this);
+					sleeping = false;
+				}
+			} catch (Throwable t) {
+				// errors are recorded too, since producers wait on the shard until it fails
+				failure = t;
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright 2016 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.fundament;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Indexes a fixed array of distinct values using a minimal-probe perfect hash
+ * (hash and displace). Every lookup evaluates the hash code of the value once
+ * and probes a single slot, so lookups take constant time in the worst case,
+ * unless distinct values share an identical hash code, in which case they are
+ * chained.
+ *
+ * @author Tom Gibara
+ */
+
+final class PerfectIndex {
+
+	// the average number of hashes assigned to each bucket
+	private static final int BUCKET_LOAD = 4;
+	// the number of seeds tried for a bucket before the table is enlarged
+	private static final int MAX_SEEDS = 1 << 12;
+	private static final int GOLDEN = 0x9e3779b9;
+
+	private static final int[] NO_INTS = {};
+
+	private static int mix(int h) {
+		h ^= h >>> 16;
+		h *= 0x85ebca6b;
+		h ^= h >>> 13;
+		h *= 0xc2b2ae35;
+		h ^= h >>> 16;
+		return h;
+	}
+
+	private static int slot(int hash, int seed, int mask) {
+		return mix(hash ^ seed * GOLDEN) & mask;
+	}
+
+	private static int capacity(int size) {
+		return size <= 1 ? 1 : Integer.highestOneBit(size - 1) << 1;
+	}
+
+	private final Object[] values;
+	private final int bucketMask;
+	private final int slotMask;
+	private final int[] seeds;
+	// records the index + 1 of the value that occupies each slot
+	private final int[] slots;
+	// records the index + 1 of the next value having the same hash code
+	private final int[] chain;
+
+	PerfectIndex(Object[] values) {
+		this.values = values;
+		int length = values.length;
+		int[] hashes = new int[length];
+		int[] chain = new int[length];
+		// group values by hash code, detecting duplicates as we go
+		Map<Integer, Integer> heads = new HashMap<>();
+		boolean chained = false;
+		for (int i = 0; i < length; i++) {
+			int hash = Objects.hashCode(values[i]);
+			hashes[i] = hash;
+			Integer head = heads.putIfAbsent(hash, i);
+			if (head == null) continue;
+			chained = true;
+			for (int j = head; ; j = chain[j] - 1) {
+				if (Objects.equals(values[i], values[j])) throw new IllegalArgumentException("duplicate value: " + values[i]);
+				if (chain[j] == 0) {
+					chain[j] = i + 1;
+					break;
+				}
+			}
+		}
+		this.chain = chained ? chain : NO_INTS;
+
+		int count = heads.size();
+		int bucketCount = capacity((count + BUCKET_LOAD - 1) / BUCKET_LOAD);
+		bucketMask = bucketCount - 1;
+		// distribute the distinct hashes over the buckets
+		int[][] buckets = new int[bucketCount][];
+		int[] sizes = new int[bucketCount];
+		for (int head : heads.values()) {
+			int b = mix(hashes[head]) & bucketMask;
+			int[] bucket = buckets[b];
+			if (bucket == null) {
+				buckets[b] = bucket = new int[BUCKET_LOAD];
+			} else if (sizes[b] == bucket.length) {
+				buckets[b] = bucket = Arrays.copyOf(bucket, bucket.length * 2);
+			}
+			bucket[sizes[b]++] = head;
+		}
+		// place the largest buckets first
+		Integer[] order = new Integer[bucketCount];
+		for (int i = 0; i < bucketCount; i++) order[i] = i;
+		Arrays.sort(order, (a, b) -> sizes[b] - sizes[a]);
+
+		int slotCount = capacity(count * 2);
+		int[] seeds;
+		int[] slots;
+		outer: while (true) {
+			int mask = slotCount - 1;
+			seeds = new int[bucketCount];
+			slots = new int[slotCount];
+			for (int b : order) {
+				int size = sizes[b];
+				if (size == 0) break;
+				int[] bucket = buckets[b];
+				if (!place(bucket, size, hashes, seeds, slots, b, mask)) {
+					slotCount <<= 1;
+					continue outer;
+				}
+			}
+			break;
+		}
+		slotMask = slotCount - 1;
+		this.seeds = seeds;
+		this.slots = slots;
+	}
+
+	// finds a seed that places every hash in the bucket in a distinct empty slot
+	private static boolean place(int[] bucket, int size, int[] hashes, int[] seeds, int[] slots, int b, int mask) {
+		search: for (int seed = 1; seed <= MAX_SEEDS; seed++) {
+			for (int i = 0; i < size; i++) {
+				int s = slot(hashes[bucket[i]], seed, mask);
+				if (slots[s] != 0) {
+					// clear the slots we provisionally occupied
+					for (int j = 0; j < i; j++) slots[slot(hashes[bucket[j]], seed, mask)] = 0;
+					continue search;
+				}
+				slots[s] = bucket[i] + 1;
+			}
+			seeds[b] = seed;
+			return true;
+		}
+		return false;
+	}
+
+	int size() {
+		return values.length;
+	}
+
+	int indexOf(Object value) {
+		int hash = Objects.hashCode(value);
+		int seed = seeds[mix(hash) & bucketMask];
+		if (seed == 0) return -1;
+		int index = slots[slot(hash, seed, slotMask)] - 1;
+		if (index < 0) return -1;
+		if (Objects.equals(values[index], value)) return index;
+		if (chain.length == 0) return -1;
+		for (index = chain[index] - 1; index >= 0; index = chain[index] - 1) {
+			if (Objects.equals(values[index], value)) return index;
+		}
+		return -1;
+	}
+
+}
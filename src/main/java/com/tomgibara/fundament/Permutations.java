@@ -0,0 +1,234 @@
+/*
+ * Copyright 2016 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.fundament;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Applies permutations to {@link Transposable} objects in bulk. A
+ * permutation of <i>n</i> elements is specified by an int array containing
+ * each of the values 0 to <i>n</i>-1 exactly once. The permutation is
+ * decomposed into its cycles, each of which is applied with one fewer
+ * transposition than its length, so that a permutation with <i>c</i> cycles
+ * is applied with at most <i>n</i>-<i>c</i> transpositions.
+ *
+ * Cycles are found without allocation by temporarily negating the entries of
+ * the permutation array; the array is restored before any method returns,
+ * but must not be accessed by other threads during the call. Cycles are
+ * applied in order of their smallest index, and each cycle is walked from
+ * that index, so that transpositions for adjacent short cycles touch nearby
+ * elements. Every transposition is applied to each of the supplied targets
+ * in turn, so that several objects, such as the parallel arrays of a
+ * structure, are permuted in lockstep.
+ *
+ * If the supplied array is not a permutation, an
+ * <code>IllegalArgumentException</code> is raised before any transposition
+ * is made.
+ *
+ * @author Tom Gibara
+ * @see Sorting
+ */
+
+public final class Permutations {
+
+	/**
+	 * Applies a permutation to one or more targets. On return, the element
+	 * at index <i>i</i> of each target is the element that was previously at
+	 * index <code>perm[i]</code>. This is the permutation obtained by
+	 * recording, for each position in a sorted order, the index of the
+	 * element that occupies it.
+	 *
+	 * @param perm
+	 *            a permutation
+	 * @param targets
+	 *            the objects to be permuted in lockstep
+	 */
+
+	public static void apply(int[] perm, Transposable... targets) {
+		checkArgs(perm, targets);
+		mark(perm, null);
+		try {
+			for (int s = 0; s < perm.length; s++) {
+				if (perm[s] < 0) gather(perm, s, targets);
+			}
+		} finally {
+			// only does work if a target failed, leaving cycles marked
+			unmark(perm);
+		}
+	}
+
+	/**
+	 * Applies the inverse of a permutation to one or more targets, without
+	 * computing the inverse. On return, the element at index
+	 * <code>perm[i]</code> of each target is the element that was previously
+	 * at index <i>i</i>.
+	 *
+	 * @param perm
+	 *            a permutation
+	 * @param targets
+	 *            the objects to be permuted in lockstep
+	 */
+
+	public static void applyInverse(int[] perm, Transposable... targets) {
+		checkArgs(perm, targets);
+		mark(perm, null);
+		try {
+			for (int s = 0; s < perm.length; s++) {
+				if (perm[s] < 0) scatter(perm, s, targets);
+			}
+		} finally {
+			// only does work if a target failed, leaving cycles marked
+			unmark(perm);
+		}
+	}
+
+	/**
+	 * Applies a permutation to one or more targets as per
+	 * {@link #apply(int[], Transposable...)}, dividing its cycles between the
+	 * threads of the common fork-join pool. The targets must support
+	 * concurrent transpositions over disjoint pairs of indices, as is the
+	 * case for transpositions that only swap array elements. This method
+	 * allocates an array to record the start of each cycle, and only benefits
+	 * permutations that have many cycles.
+	 *
+	 * @param perm
+	 *            a permutation
+	 * @param threshold
+	 *            the number of cycles below which the work will not be split
+	 * @param targets
+	 *            the objects to be permuted in lockstep
+	 */
+
+	public static void applyParallel(int[] perm, int threshold, Transposable... targets) {
+		checkArgs(perm, targets);
+		Bulk.checkThreshold(threshold);
+		int[][] holder = { new int[16] };
+		int count = mark(perm, holder);
+		int[] starts = holder[0];
+		// failures are recorded rather than thrown so that no cycle is still being walked when the permutation is unmarked
+		AtomicReference<Throwable> failure = new AtomicReference<>();
+		Bulk.parallel(count, threshold, (off, len) -> {
+			try {
+				for (int i = off, lim = off + len; i < lim && failure.get() == null; i++) {
+					gather(perm, starts[i], targets);
+				}
+			} catch (Throwable t) {
+				if (!failure.compareAndSet(null, t) && failure.get() != t) failure.get().addSuppressed(t);
+			}
+		});
+		Throwable t = failure.get();
+		if (t != null) {
+			unmark(perm);
+			if (t instanceof RuntimeException) throw (RuntimeException) t;
+			if (t instanceof Error) throw (Error) t;
+			throw new RuntimeException(t);
+		}
+	}
+
+	/**
+	 * The number of cycles in a permutation, including cycles of length one.
+	 * The permutation can be applied with <code>perm.length</code> less this
+	 * number of transpositions.
+	 *
+	 * @param perm
+	 *            a permutation
+	 * @return the number of cycles
+	 */
+
+	public static int cycleCount(int[] perm) {
+		if (perm == null) throw new IllegalArgumentException("null perm");
+		int count = mark(perm, null);
+		unmark(perm);
+		return count;
+	}
+
+	// private helper methods
+
+	private static void checkArgs(int[] perm, Transposable[] targets) {
+		if (perm == null) throw new IllegalArgumentException("null perm");
+		if (targets == null) throw new IllegalArgumentException("null targets");
+		for (Transposable target : targets) {
+			if (target == null) throw new IllegalArgumentException("null target");
+		}
+	}
+
+	// negates every entry, verifying the array is a permutation and returning the number of cycles
+	// the start of each cycle is recorded in the first element of starts, if it is not null
+	private static int mark(int[] perm, int[][] starts) {
+		int n = perm.length;
+		// negative entries would be mistaken for marks, so entries are checked before any is negated
+		for (int i = 0; i < n; i++) {
+			int p = perm[i];
+			if (p < 0 || p >= n) throw new IllegalArgumentException("not a permutation");
+		}
+		int count = 0;
+		for (int s = 0; s < n; s++) {
+			if (perm[s] < 0) continue;
+			int j = s;
+			do {
+				int next = perm[j];
+				// a marked entry means a value is repeated
+				if (next < 0) {
+					unmark(perm);
+					throw new IllegalArgumentException("not a permutation");
+				}
+				perm[j] = ~next;
+				j = next;
+			} while (j != s);
+			if (starts != null) {
+				if (count == starts[0].length) starts[0] = Arrays.copyOf(starts[0], count * 2);
+				starts[0][count] = s;
+			}
+			count++;
+		}
+		return count;
+	}
+
+	private static void unmark(int[] perm) {
+		for (int i = 0; i < perm.length; i++) {
+			if (perm[i] < 0) perm[i] = ~perm[i];
+		}
+	}
+
+	// applies the marked cycle starting at s, unmarking it
+	private static void gather(int[] perm, int s, Transposable[] targets) {
+		int i = s;
+		int j = perm[i] = ~perm[i];
+		while (j != s) {
+			for (Transposable target : targets) {
+				target.transpose(i, j);
+			}
+			i = j;
+			j = perm[i] = ~perm[i];
+		}
+	}
+
+	// applies the inverse of the marked cycle starting at s, unmarking it
+	private static void scatter(int[] perm, int s, Transposable[] targets) {
+		int j = perm[s] = ~perm[s];
+		while (j != s) {
+			for (Transposable target : targets) {
+				target.transpose(s, j);
+			}
+			j = perm[j] = ~perm[j];
+		}
+	}
+
+	private Permutations() { }
+
+}
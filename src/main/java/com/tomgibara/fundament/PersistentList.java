@@ -0,0 +1,758 @@
+/*
+ * Copyright 2016 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.fundament;
+
+import java.util.AbstractList;
+import java.util.Collection;
+import java.util.RandomAccess;
+
+/**
+ * A list that shares structure with its copies. The list is stored in a
+ * relaxed radix balanced (RRB) trie of width 32 with a separate tail. Nodes
+ * built by appending are strict, and are indexed by the bits of the index
+ * alone; nodes produced by concatenation and splitting are relaxed, and
+ * record the cumulative sizes of their children. Indexed reads and writes,
+ * and appending or removing the last element, touch O(log n) nodes. Lists
+ * are concatenated, and elements inserted or removed at arbitrary positions,
+ * by splitting and joining tries in O(log n) node operations. Copies in
+ * either direction are made in constant time.
+ *
+ * Mutable lists behave as transient builders: each mutable list holds an
+ * ownership token, and nodes created by the list are marked with its token
+ * so that subsequent writes to them are made in place. Copying a list, via
+ * {@link #mutableCopy()} or {@link #immutableCopy()}, replaces the token of
+ * the list, so that nodes shared with the copy are copied before they are
+ * next modified. In particular, {@link #immutable()} freezes the state of a
+ * mutable list in constant time. Immutable views reflect the current state
+ * of the list from which they were obtained.
+ *
+ * Adding another persistent list with {@link #addAll(Collection)} or
+ * {@link #addAll(int, Collection)} shares the nodes of that list, instead of
+ * copying its elements. The list may contain null elements. Mutating an
+ * immutable list raises an <code>UnsupportedOperationException</code>.
+ *
+ * @author Tom Gibara
+ *
+ * @param <E>
+ *            the type of element in the list
+ */
+
+public final class PersistentList<E> extends AbstractList<E> implements Mutability<PersistentList<E>>, Transposable, RandomAccess {
+
+	private static final int BITS = 5;
+	private static final int WIDTH = 1 << BITS;
+	private static final int MASK = WIDTH - 1;
+	// the number of nodes beyond the optimum permitted when rebalancing a seam
+	private static final int EXTRA = 2;
+
+	/**
+	 * An empty immutable list.
+	 *
+	 * @param <E>
+	 *            the type of element in the list
+	 * @return an empty list
+	 */
+
+	public static <E> PersistentList<E> empty() {
+		return new PersistentList<>(false);
+	}
+
+	/**
+	 * An immutable list containing the elements of the supplied collection in
+	 * iteration order.
+	 *
+	 * @param <E>
+	 *            the type of element in the list
+	 * @param elements
+	 *            the elements of the list
+	 * @return a list containing the elements
+	 */
+
+	public static <E> PersistentList<E> copyOf(Collection<? extends E> elements) {
+		if (elements == null) throw new IllegalArgumentException("null elements");
+		PersistentList<E> list = new PersistentList<>(true);
+		list.addAll(elements);
+		list.token = null;
+		return list;
+	}
+
+	// the number of children of an internal node
+	private static int count(Node node) {
+		int count = WIDTH;
+		while (count > 0 && node.array[count - 1] == null) count--;
+		return count;
+	}
+
+	// the child of a node that contains an index relative to the node
+	private static int slot(Node node, int level, int index) {
+		int slot = index >>> level;
+		int[] sizes = node.sizes;
+		if (sizes != null) while (sizes[slot] <= index) slot++;
+		return slot;
+	}
+
+	// the number of elements preceding a child of a node
+	private static int offset(Node node, int level, int slot) {
+		if (slot == 0) return 0;
+		return node.sizes == null ? slot << level : node.sizes[slot - 1];
+	}
+
+	// the cumulative sizes of the children of a node containing the given number of elements
+	private static int[] sizes(Node node, int level, int size) {
+		if (node.sizes != null) return node.sizes;
+		int count = count(node);
+		int[] sizes = new int[WIDTH];
+		for (int i = 0; i < count; i++) {
+			sizes[i] = (int) Math.min((long) (i + 1) << level, size);
+		}
+		return sizes;
+	}
+
+	// the number of elements in a strict node, all of whose leaves are full
+	private static int strictSize(Node node, int level) {
+		int count = count(node);
+		if (level == BITS) return count << BITS;
+		return ((count - 1) << level) + strictSize((Node) node.array[count - 1], level - BITS);
+	}
+
+	// non-null for views
+	private final PersistentList<E> viewed;
+	// null for immutable lists
+	private Object token;
+	private int size;
+	// the number of elements in the trie, which precede those in the tail
+	private int tailOffset;
+	private int shift;
+	private Node root;
+	private Node tail;
+
+	private PersistentList(boolean mutable) {
+		viewed = null;
+		token = mutable ? new Object() : null;
+		size = 0;
+		tailOffset = 0;
+		shift = BITS;
+		root = new Node(null);
+		tail = new Node(null);
+	}
+
+	private PersistentList(PersistentList<E> source, boolean mutable, boolean view) {
+		PersistentList<E> holder = source.viewed == null ? source : source.viewed;
+		if (view) {
+			viewed = holder;
+			token = null;
+		} else {
+			viewed = null;
+			token = mutable ? new Object() : null;
+			size = holder.size;
+			tailOffset = holder.tailOffset;
+			shift = holder.shift;
+			root = holder.root;
+			tail = holder.tail;
+			// the holder no longer has exclusive ownership of its nodes
+			if (holder.token != null) holder.token = new Object();
+		}
+	}
+
+	// mutability
+
+	@Override
+	public boolean isMutable() {
+		return token != null;
+	}
+
+	@Override
+	public PersistentList<E> mutableCopy() {
+		return new PersistentList<>(this, true, false);
+	}
+
+	@Override
+	public PersistentList<E> immutableCopy() {
+		return new PersistentList<>(this, false, false);
+	}
+
+	@Override
+	public PersistentList<E> immutableView() {
+		return new PersistentList<>(this, false, true);
+	}
+
+	// transposable
+
+	@Override
+	public void transpose(int i, int j) {
+		checkIndex(i);
+		checkIndex(j);
+		if (i == j) return;
+		checkMutable();
+		Object tmp = get(i);
+		update(i, get(j));
+		update(j, tmp);
+	}
+
+	// list
+
+	@Override
+	public int size() {
+		return holder().size;
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public E get(int index) {
+		PersistentList<E> holder = holder();
+		if (index < 0 || index >= holder.size) throw new IndexOutOfBoundsException("index " + index + " out of bounds for size " + holder.size);
+		if (index >= holder.tailOffset) return (E) holder.tail.array[index - holder.tailOffset];
+		Node node = holder.root;
+		for (int level = holder.shift; level > 0; level -= BITS) {
+			int slot = index >>> level;
+			int[] sizes = node.sizes;
+			if (sizes == null) {
+				index -= slot << level;
+			} else {
+				while (sizes[slot] <= index) slot++;
+				if (slot > 0) index -= sizes[slot - 1];
+			}
+			node = (Node) node.array[slot];
+		}
+		return (E) node.array[index];
+	}
+
+	@Override
+	public E set(int index, E element) {
+		checkIndex(index);
+		checkMutable();
+		E previous = get(index);
+		update(index, element);
+		return previous;
+	}
+
+	@Override
+	public boolean add(E element) {
+		checkMutable();
+		int tailSize = size - tailOffset;
+		if (tailSize < WIDTH) {
+			editableTail().array[tailSize] = element;
+		} else {
+			pushTail(tail, WIDTH);
+			tail = new Node(token);
+			tail.array[0] = element;
+		}
+		size++;
+		modCount++;
+		return true;
+	}
+
+	@Override
+	public void add(int index, E element) {
+		checkPositionIndex(index);
+		if (index == size) {
+			add(element);
+			return;
+		}
+		checkMutable();
+		Node leaf = new Node(token);
+		leaf.array[0] = element;
+		Node node = new Node(token, new Object[WIDTH], new int[WIDTH]);
+		node.array[0] = leaf;
+		node.sizes[0] = 1;
+		splice(index, index, node, BITS, 1);
+		modCount++;
+	}
+
+	@Override
+	public boolean addAll(Collection<? extends E> c) {
+		return addAll(size(), c);
+	}
+
+	@Override
+	public boolean addAll(int index, Collection<? extends E> c) {
+		checkPositionIndex(index);
+		checkMutable();
+		boolean persistent = c instanceof PersistentList;
+		if (index == size && !persistent) {
+			// the collection may be a view of this list
+			Object[] elements = c.toArray();
+			for (Object e : elements) {
+				@SuppressWarnings("unchecked")
+				E element = (E) e;
+				add(element);
+			}
+			return elements.length > 0;
+		}
+		PersistentList<? extends E> inserted;
+		if (persistent) {
+			// the copy shares the nodes of the list, which may be this list
+			inserted = ((PersistentList<? extends E>) c).mutableCopy();
+		} else {
+			PersistentList<E> list = new PersistentList<>(true);
+			for (E e : c) list.add(e);
+			inserted = list;
+		}
+		if (inserted.size == 0) return false;
+		inserted.flatten();
+		splice(index, index, inserted.root, inserted.shift, inserted.size);
+		modCount++;
+		return true;
+	}
+
+	@Override
+	public E remove(int index) {
+		checkIndex(index);
+		checkMutable();
+		E removed = get(index);
+		if (index < size - 1) {
+			splice(index, index + 1, null, BITS, 0);
+		} else if (size - tailOffset > 1) {
+			editableTail().array[--size - tailOffset] = null;
+		} else if (--size == 0) {
+			clearTrie();
+		} else {
+			// the last leaf of the trie becomes the tail
+			pullTail();
+		}
+		modCount++;
+		return removed;
+	}
+
+	@Override
+	public void clear() {
+		checkMutable();
+		clearTrie();
+		modCount++;
+	}
+
+	@Override
+	protected void removeRange(int fromIndex, int toIndex) {
+		checkMutable();
+		if (fromIndex == toIndex) return;
+		splice(fromIndex, toIndex, null, BITS, 0);
+		modCount++;
+	}
+
+	// private utility methods
+
+	private PersistentList<E> holder() {
+		return viewed == null ? this : viewed;
+	}
+
+	private void checkIndex(int index) {
+		int size = size();
+		if (index < 0 || index >= size) throw new IndexOutOfBoundsException("index " + index + " out of bounds for size " + size);
+	}
+
+	private void checkPositionIndex(int index) {
+		int size = size();
+		if (index < 0 || index > size) throw new IndexOutOfBoundsException("index " + index + " out of bounds for size " + size);
+	}
+
+	private void checkMutable() {
+		if (token == null) throw new UnsupportedOperationException("immutable");
+	}
+
+	private void clearTrie() {
+		size = 0;
+		tailOffset = 0;
+		shift = BITS;
+		root = new Node(token);
+		tail = new Node(token);
+	}
+
+	private void update(int index, Object element) {
+		if (index >= tailOffset) {
+			editableTail().array[index - tailOffset] = element;
+		} else {
+			root = update(shift, root, index, element);
+		}
+	}
+
+	// ensures every node on the path to the index is owned by this list
+	private Node update(int level, Node node, int index, Object element) {
+		Node edited = editable(node);
+		if (level == 0) {
+			edited.array[index] = element;
+		} else {
+			int slot = slot(edited, level, index);
+			int offset = offset(edited, level, slot);
+			edited.array[slot] = update(level - BITS, (Node) edited.array[slot], index - offset, element);
+		}
+		return edited;
+	}
+
+	private Node editable(Node node) {
+		if (node.edit == token) return node;
+		return new Node(token, node.array.clone(), node.sizes == null ? null : node.sizes.clone());
+	}
+
+	private Node editableRelaxed(Node node, int level) {
+		if (node.sizes != null) return editable(node);
+		return new Node(token, node.array.clone(), sizes(node, level, strictSize(node, level)));
+	}
+
+	private Node editableTail() {
+		Node node = editable(tail);
+		tail = node;
+		return node;
+	}
+
+	// appends a leaf to the trie, adding a level if the root is full
+	private void pushTail(Node leaf, int leafSize) {
+		Node node = pushLeaf(shift, root, leaf, leafSize);
+		if (node == null) {
+			boolean relaxed = root.sizes != null || leafSize < WIDTH;
+			node = new Node(token, new Object[WIDTH], relaxed ? new int[WIDTH] : null);
+			node.array[0] = root;
+			node.array[1] = newPath(shift, leaf, leafSize);
+			if (relaxed) {
+				node.sizes[0] = tailOffset;
+				node.sizes[1] = tailOffset + leafSize;
+			}
+			shift += BITS;
+		}
+		root = node;
+		tailOffset += leafSize;
+	}
+
+	// appends a leaf to the right edge of a subtree, returning null if it has no room
+	// strict nodes only ever contain full leaves, so a partial leaf relaxes its path
+	private Node pushLeaf(int level, Node node, Node leaf, int leafSize) {
+		int count = count(node);
+		Node child = level > BITS && count > 0 ? pushLeaf(level - BITS, (Node) node.array[count - 1], leaf, leafSize) : null;
+		if (child == null && count == WIDTH) return null;
+		Node edited = node.sizes == null && leafSize == WIDTH ? editable(node) : editableRelaxed(node, level);
+		if (child != null) {
+			edited.array[count - 1] = child;
+			if (edited.sizes != null) edited.sizes[count - 1] += leafSize;
+		} else {
+			edited.array[count] = newPath(level - BITS, leaf, leafSize);
+			if (edited.sizes != null) edited.sizes[count] = (count == 0 ? 0 : edited.sizes[count - 1]) + leafSize;
+		}
+		return edited;
+	}
+
+	private Node newPath(int level, Node leaf, int leafSize) {
+		if (level == 0) return leaf;
+		Node node = new Node(token, new Object[WIDTH], leafSize == WIDTH ? null : new int[WIDTH]);
+		node.array[0] = newPath(level - BITS, leaf, leafSize);
+		if (node.sizes != null) node.sizes[0] = leafSize;
+		return node;
+	}
+
+	// moves the last leaf of the non-empty trie into the tail
+	private void pullTail() {
+		Node node = root;
+		int leafSize = WIDTH;
+		for (int level = shift; level > 0; level -= BITS) {
+			int count = count(node);
+			if (level == BITS && node.sizes != null) leafSize = node.sizes[count - 1] - (count == 1 ? 0 : node.sizes[count - 2]);
+			node = (Node) node.array[count - 1];
+		}
+		root = popLeaf(shift, root, leafSize);
+		if (root == null) {
+			root = new Node(token);
+			shift = BITS;
+		} else {
+			collapse();
+		}
+		tail = new Node(token, node.array.clone(), null);
+		tailOffset -= leafSize;
+	}
+
+	// removes the last leaf of a subtree, returning null if the subtree becomes empty
+	private Node popLeaf(int level, Node node, int leafSize) {
+		int count = count(node);
+		Node child = level > BITS ? popLeaf(level - BITS, (Node) node.array[count - 1], leafSize) : null;
+		if (child == null && count == 1) return null;
+		Node edited = editable(node);
+		edited.array[count - 1] = child;
+		if (edited.sizes != null) edited.sizes[count - 1] = child == null ? 0 : edited.sizes[count - 1] - leafSize;
+		return edited;
+	}
+
+	// removes levels from the root that have a single child
+	private void collapse() {
+		while (shift > BITS && count(root) == 1) {
+			root = (Node) root.array[0];
+			shift -= BITS;
+		}
+	}
+
+	// moves the tail into the trie so that the trie holds every element
+	private void flatten() {
+		if (size == tailOffset) return;
+		pushTail(tail, size - tailOffset);
+		tail = new Node(token);
+	}
+
+	// replaces the elements of a flattened list between two indices with those of a trie
+	private void splice(int from, int to, Node node, int level, int length) {
+		flatten();
+		Node root = this.root;
+		int shift = this.shift;
+		int size = this.size;
+		Node right;
+		if (to == size) right = null;
+		else if (to == 0) right = root;
+		else right = drop(shift, root, to, size);
+		if (from == 0) {
+			clearTrie();
+		} else if (from < size) {
+			this.root = take(shift, root, from);
+			tailOffset = from;
+			collapse();
+		}
+		if (length > 0) concat(node, level, length);
+		if (right != null) concat(right, shift, size - to);
+		this.size = tailOffset;
+		if (this.size > 0) pullTail();
+	}
+
+	// appends a non-empty trie to the flattened list
+	private void concat(Node node, int level, int length) {
+		while (level > BITS && count(node) == 1) {
+			node = (Node) node.array[0];
+			level -= BITS;
+		}
+		if (tailOffset == 0) {
+			root = node;
+			shift = level;
+		} else {
+			root = merge(shift, root, tailOffset, level, node, length);
+			shift = Math.max(shift, level) + BITS;
+			collapse();
+		}
+		tailOffset += length;
+	}
+
+	// the first n elements of a subtree, where n is positive
+	private Node take(int level, Node node, int n) {
+		if (level == 0) {
+			Node leaf = new Node(token);
+			System.arraycopy(node.array, 0, leaf.array, 0, n);
+			return leaf;
+		}
+		int slot = slot(node, level, n - 1);
+		int offset = offset(node, level, slot);
+		// a prefix of a strict node remains strict if its leaves remain full
+		boolean strict = node.sizes == null && (n & MASK) == 0;
+		Node taken = new Node(token, new Object[WIDTH], strict ? null : new int[WIDTH]);
+		System.arraycopy(node.array, 0, taken.array, 0, slot);
+		taken.array[slot] = take(level - BITS, (Node) node.array[slot], n - offset);
+		if (!strict) {
+			for (int i = 0; i < slot; i++) {
+				taken.sizes[i] = offset(node, level, i + 1);
+			}
+			taken.sizes[slot] = n;
+		}
+		return taken;
+	}
+
+	// the elements of a subtree of the given size from index n, where n is positive
+	private Node drop(int level, Node node, int n, int size) {
+		if (level == 0) {
+			Node leaf = new Node(token);
+			System.arraycopy(node.array, n, leaf.array, 0, size - n);
+			return leaf;
+		}
+		int[] sizes = sizes(node, level, size);
+		int count = count(node);
+		int slot = slot(node, level, n);
+		int offset = slot == 0 ? 0 : sizes[slot - 1];
+		Node child = (Node) node.array[slot];
+		Node dropped = new Node(token, new Object[WIDTH], new int[WIDTH]);
+		dropped.array[0] = n == offset ? child : drop(level - BITS, child, n - offset, sizes[slot] - offset);
+		System.arraycopy(node.array, slot + 1, dropped.array, 1, count - slot - 1);
+		for (int i = slot; i < count; i++) {
+			dropped.sizes[i - slot] = sizes[i] - n;
+		}
+		return dropped;
+	}
+
+	// concatenates two non-empty subtrees, returning a node one level above the higher of them
+	private Node merge(int aLevel, Node a, int aSize, int bLevel, Node b, int bSize) {
+		if (aLevel == 0) return mergeLeaves(a, aSize, b, bSize);
+		int[] aSizes = aLevel < bLevel ? null : sizes(a, aLevel, aSize);
+		int[] bSizes = bLevel < aLevel ? null : sizes(b, bLevel, bSize);
+		if (aLevel > bLevel) {
+			int last = count(a) - 1;
+			int offset = last == 0 ? 0 : aSizes[last - 1];
+			Node mid = merge(aLevel - BITS, (Node) a.array[last], aSize - offset, bLevel, b, bSize);
+			return rebalance(aLevel, a, aSizes, last, mid, null, null);
+		}
+		if (aLevel < bLevel) {
+			Node mid = merge(aLevel, a, aSize, bLevel - BITS, (Node) b.array[0], bSizes[0]);
+			return rebalance(bLevel, null, null, 0, mid, b, bSizes);
+		}
+		int last = count(a) - 1;
+		int offset = last == 0 ? 0 : aSizes[last - 1];
+		Node mid = merge(aLevel - BITS, (Node) a.array[last], aSize - offset, bLevel - BITS, (Node) b.array[0], bSizes[0]);
+		return rebalance(aLevel, a, aSizes, last, mid, b, bSizes);
+	}
+
+	// combines two leaves beneath a new node, filling the first leaf
+	private Node mergeLeaves(Node a, int aSize, Node b, int bSize) {
+		Node node = new Node(token, new Object[WIDTH], new int[WIDTH]);
+		int total = aSize + bSize;
+		if (total <= WIDTH) {
+			Node leaf = new Node(token);
+			System.arraycopy(a.array, 0, leaf.array, 0, aSize);
+			System.arraycopy(b.array, 0, leaf.array, aSize, bSize);
+			node.array[0] = leaf;
+			node.sizes[0] = total;
+		} else if (aSize == WIDTH) {
+			node.array[0] = a;
+			node.array[1] = b;
+			node.sizes[0] = WIDTH;
+			node.sizes[1] = total;
+		} else {
+			int moved = WIDTH - aSize;
+			Node left = new Node(token);
+			System.arraycopy(a.array, 0, left.array, 0, aSize);
+			System.arraycopy(b.array, 0, left.array, aSize, moved);
+			Node right = new Node(token);
+			System.arraycopy(b.array, moved, right.array, 0, bSize - moved);
+			node.array[0] = left;
+			node.array[1] = right;
+			node.sizes[0] = WIDTH;
+			node.sizes[1] = total;
+		}
+		return node;
+	}
+
+	// redistributes the children either side of a seam, so that no more than EXTRA nodes are
+	// used beyond the minimum, and returns them beneath a node one level above the given level
+	private Node rebalance(int level, Node a, int[] aSizes, int aCount, Node mid, Node b, int[] bSizes) {
+		int childLevel = level - BITS;
+		Node[] nodes = new Node[3 * WIDTH];
+		int[] nodeSizes = new int[3 * WIDTH];
+		int n = 0;
+		for (int i = 0; i < aCount; i++, n++) {
+			nodes[n] = (Node) a.array[i];
+			nodeSizes[n] = aSizes[i] - (i == 0 ? 0 : aSizes[i - 1]);
+		}
+		for (int i = 0, count = count(mid); i < count; i++, n++) {
+			nodes[n] = (Node) mid.array[i];
+			nodeSizes[n] = mid.sizes[i] - (i == 0 ? 0 : mid.sizes[i - 1]);
+		}
+		for (int i = 1, count = b == null ? 0 : count(b); i < count; i++, n++) {
+			nodes[n] = (Node) b.array[i];
+			nodeSizes[n] = bSizes[i] - bSizes[i - 1];
+		}
+
+		// plan how many slots each node will have, merging underfull nodes into their successors
+		int[] counts = new int[n + 1];
+		int[] planned = new int[n + 1];
+		int slots = 0;
+		for (int i = 0; i < n; i++) {
+			counts[i] = childLevel == 0 ? nodeSizes[i] : count(nodes[i]);
+			planned[i] = counts[i];
+			slots += counts[i];
+		}
+		int optimal = (slots + WIDTH - 1) >> BITS;
+		int planCount = n;
+		while (planCount > optimal + EXTRA) {
+			int i = 0;
+			while (planned[i] > WIDTH - EXTRA / 2) i++;
+			int remaining = planned[i];
+			while (remaining > 0) {
+				int merged = Math.min(remaining + planned[i + 1], WIDTH);
+				remaining += planned[i + 1] - merged;
+				planned[i++] = merged;
+			}
+			System.arraycopy(planned, i + 1, planned, i, planCount - i - 1);
+			planned[--planCount] = 0;
+		}
+
+		// build the planned nodes, reusing those that are unchanged
+		Node[] built = new Node[planCount];
+		int[] builtSizes = new int[planCount];
+		int[][] childSizes = childLevel == 0 ? null : new int[n][];
+		for (int k = 0, j = 0, pos = 0; k < planCount; k++) {
+			int want = planned[k];
+			if (pos == 0 && counts[j] == want) {
+				built[k] = nodes[j];
+				builtSizes[k] = nodeSizes[j++];
+				continue;
+			}
+			Node node = new Node(token, new Object[WIDTH], childLevel == 0 ? null : new int[WIDTH]);
+			int filled = 0;
+			int total = 0;
+			while (filled < want) {
+				Node source = nodes[j];
+				int moved = Math.min(want - filled, counts[j] - pos);
+				System.arraycopy(source.array, pos, node.array, filled, moved);
+				if (childLevel == 0) {
+					total += moved;
+				} else {
+					if (childSizes[j] == null) childSizes[j] = sizes(source, childLevel, nodeSizes[j]);
+					int[] sizes = childSizes[j];
+					for (int i = 0; i < moved; i++) {
+						int p = pos + i;
+						total += sizes[p] - (p == 0 ? 0 : sizes[p - 1]);
+						node.sizes[filled + i] = total;
+					}
+				}
+				filled += moved;
+				pos += moved;
+				if (pos == counts[j]) {
+					j++;
+					pos = 0;
+				}
+			}
+			built[k] = node;
+			builtSizes[k] = total;
+		}
+
+		// at most two nodes are needed to hold the rebalanced children
+		Node top = new Node(token, new Object[WIDTH], new int[WIDTH]);
+		int total = 0;
+		for (int k = 0, t = 0; k < planCount; k += WIDTH, t++) {
+			int end = Math.min(k + WIDTH, planCount);
+			Node node = new Node(token, new Object[WIDTH], new int[WIDTH]);
+			for (int i = k; i < end; i++) {
+				node.array[i - k] = built[i];
+				total += builtSizes[i];
+				node.sizes[i - k] = total - (t == 0 ? 0 : top.sizes[t - 1]);
+			}
+			top.array[t] = node;
+			top.sizes[t] = total;
+		}
+		return top;
+	}
+
+	// inner classes
+
+	private static final class Node {
+
+		// the token of the list that created the node
+		final Object edit;
+		final Object[] array;
+		// cumulative sizes of the children, null for strict nodes
+		final int[] sizes;
+
+		Node(Object edit) {
+			this(edit, new Object[WIDTH], null);
+		}
+
+		Node(Object edit, Object[] array, int[] sizes) {
+			this.edit = edit;
+			this.array = array;
+			this.sizes = sizes;
+		}
+
+	}
+
+}
@@ -0,0 +1,519 @@
+/*
+ * Copyright 2016 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.fundament;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * A map that shares structure with its copies. The map is stored in a hash
+ * array mapped trie, so that lookups and updates touch O(log n) nodes, and
+ * copies in either direction are made in constant time.
+ *
+ * Mutable maps behave as transient builders, in the same way as
+ * {@link PersistentList}: nodes created by a mutable map are marked with its
+ * ownership token and are subsequently modified in place, until the map is
+ * copied. In particular, {@link #immutable()} freezes the state of a mutable
+ * map in constant time. Immutable views reflect the current state of the map
+ * from which they were obtained.
+ *
+ * The map supports null keys and values. Mutating an immutable map, or
+ * removing entries through an iterator, raises an
+ * <code>UnsupportedOperationException</code>.
+ *
+ * @author Tom Gibara
+ *
+ * @param <K>
+ *            the type of key
+ * @param <V>
+ *            the type of value
+ */
+
+public final class PersistentMap<K, V> extends AbstractMap<K, V> implements Mutability<PersistentMap<K, V>> {
+
+	private static final int BITS = 5;
+	private static final int MASK = (1 << BITS) - 1;
+
+	/**
+	 * An empty immutable map.
+	 *
+	 * @param <K>
+	 *            the type of key
+	 * @param <V>
+	 *            the type of value
+	 * @return an empty map
+	 */
+
+	public static <K, V> PersistentMap<K, V> empty() {
+		return new PersistentMap<>(false);
+	}
+
+	/**
+	 * An immutable map containing the entries of the supplied map.
+	 *
+	 * @param <K>
+	 *            the type of key
+	 * @param <V>
+	 *            the type of value
+	 * @param map
+	 *            the entries of the map
+	 * @return a map containing the entries
+	 */
+
+	public static <K, V> PersistentMap<K, V> copyOf(Map<? extends K, ? extends V> map) {
+		if (map == null) throw new IllegalArgumentException("null map");
+		PersistentMap<K, V> copy = new PersistentMap<>(true);
+		copy.putAll(map);
+		copy.token = null;
+		return copy;
+	}
+
+	private static int hash(Object key) {
+		int h = key.hashCode();
+		return h ^ (h >>> 16);
+	}
+
+	// non-null for views
+	private final PersistentMap<K, V> viewed;
+	// null for immutable maps
+	private Object token;
+	private Node root;
+	private int size;
+	private boolean hasNull;
+	private V nullValue;
+	// set by node operations to indicate whether the size of the map changed
+	private boolean resized;
+
+	private PersistentMap(boolean mutable) {
+		viewed = null;
+		token = mutable ? new Object() : null;
+	}
+
+	private PersistentMap(PersistentMap<K, V> source, boolean mutable, boolean view) {
+		PersistentMap<K, V> holder = source.viewed == null ? source : source.viewed;
+		if (view) {
+			viewed = holder;
+			token = null;
+		} else {
+			viewed = null;
+			token = mutable ? new Object() : null;
+			root = holder.root;
+			size = holder.size;
+			hasNull = holder.hasNull;
+			nullValue = holder.nullValue;
+			// the holder no longer has exclusive ownership of its nodes
+			if (holder.token != null) holder.token = new Object();
+		}
+	}
+
+	// mutability
+
+	@Override
+	public boolean isMutable() {
+		return token != null;
+	}
+
+	@Override
+	public PersistentMap<K, V> mutableCopy() {
+		return new PersistentMap<>(this, true, false);
+	}
+
+	@Override
+	public PersistentMap<K, V> immutableCopy() {
+		return new PersistentMap<>(this, false, false);
+	}
+
+	@Override
+	public PersistentMap<K, V> immutableView() {
+		return new PersistentMap<>(this, false, true);
+	}
+
+	// map
+
+	@Override
+	public int size() {
+		return holder().size;
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		PersistentMap<K, V> holder = holder();
+		if (key == null) return holder.hasNull;
+		return holder.root != null && holder.root.find(0, hash(key), key) != null;
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public V get(Object key) {
+		PersistentMap<K, V> holder = holder();
+		if (key == null) return holder.nullValue;
+		if (holder.root == null) return null;
+		Object[] entry = holder.root.find(0, hash(key), key);
+		return entry == null ? null : (V) entry[0];
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public V put(K key, V value) {
+		checkMutable();
+		if (key == null) {
+			V previous = nullValue;
+			if (!hasNull) size++;
+			hasNull = true;
+			nullValue = value;
+			return previous;
+		}
+		int hash = hash(key);
+		V previous = null;
+		if (root != null) {
+			Object[] entry = root.find(0, hash, key);
+			if (entry != null) {
+				previous = (V) entry[0];
+				if (previous == value) return previous;
+			}
+		} else {
+			root = new BitmapNode(token, 0, new Object[0]);
+		}
+		resized = false;
+		root = root.put(this, 0, hash, key, value);
+		if (resized) size++;
+		return previous;
+	}
+
+	@Override
+	public V remove(Object key) {
+		checkMutable();
+		if (key == null) {
+			if (!hasNull) return null;
+			V previous = nullValue;
+			hasNull = false;
+			nullValue = null;
+			size--;
+			return previous;
+		}
+		if (root == null) return null;
+		V previous = get(key);
+		resized = false;
+		root = root.remove(this, 0, hash(key), key);
+		if (resized) size--;
+		return previous;
+	}
+
+	@Override
+	public void clear() {
+		checkMutable();
+		root = null;
+		size = 0;
+		hasNull = false;
+		nullValue = null;
+	}
+
+	@Override
+	public Set<Map.Entry<K, V>> entrySet() {
+		return new AbstractSet<Map.Entry<K, V>>() {
+			@Override public int size()                           { return PersistentMap.this.size(); }
+			@Override public Iterator<Map.Entry<K, V>> iterator() { return new EntryIterator();         }
+		};
+	}
+
+	// private utility methods
+
+	private PersistentMap<K, V> holder() {
+		return viewed == null ? this : viewed;
+	}
+
+	private void checkMutable() {
+		if (token == null) throw new UnsupportedOperationException("immutable");
+	}
+
+	private static int bit(int hash, int shift) {
+		return 1 << ((hash >>> shift) & MASK);
+	}
+
+	// creates a node containing two entries with distinct keys
+	private Node pair(int shift, Object k1, Object v1, int h2, Object k2, Object v2) {
+		int h1 = hash(k1);
+		if (h1 == h2) return new CollisionNode(token, h1, new Object[] { k1, v1, k2, v2 });
+		Node node = new BitmapNode(token, 0, new Object[0]);
+		node = node.put(this, shift, h1, k1, v1);
+		return node.put(this, shift, h2, k2, v2);
+	}
+
+	// inner classes
+
+	private static abstract class Node {
+
+		// the token of the map that created the node
+		final Object edit;
+
+		Node(Object edit) {
+			this.edit = edit;
+		}
+
+		// returns the value boxed in an array, or null if the key is absent
+		abstract Object[] find(int shift, int hash, Object key);
+
+		abstract Node put(PersistentMap<?, ?> map, int shift, int hash, Object key, Object value);
+
+		// returns null if the node becomes empty
+		abstract Node remove(PersistentMap<?, ?> map, int shift, int hash, Object key);
+
+		// adds the child nodes and key-value pairs of this node to the supplied deque
+		abstract void expand(Deque<Object> deque);
+
+	}
+
+	// pairs are stored as key followed by value, or null followed by a child node
+	private static final class BitmapNode extends Node {
+
+		int bitmap;
+		Object[] array;
+
+		BitmapNode(Object edit, int bitmap, Object[] array) {
+			super(edit);
+			this.bitmap = bitmap;
+			this.array = array;
+		}
+
+		@Override
+		Object[] find(int shift, int hash, Object key) {
+			int bit = bit(hash, shift);
+			if ((bitmap & bit) == 0) return null;
+			int i = 2 * Integer.bitCount(bitmap & (bit - 1));
+			Object k = array[i];
+			if (k == null) return ((Node) array[i + 1]).find(shift + BITS, hash, key);
+			return key.equals(k) ? new Object[] { array[i + 1] } : null;
+		}
+
+		@Override
+		Node put(PersistentMap<?, ?> map, int shift, int hash, Object key, Object value) {
+			int bit = bit(hash, shift);
+			int i = 2 * Integer.bitCount(bitmap & (bit - 1));
+			if ((bitmap & bit) != 0) {
+				Object k = array[i];
+				Object v = array[i + 1];
+				if (k == null) {
+					Node child = ((Node) v).put(map, shift + BITS, hash, key, value);
+					return child == v ? this : with(map, i + 1, child);
+				}
+				if (key.equals(k)) return v == value ? this : with(map, i + 1, value);
+				map.resized = true;
+				Node child = map.pair(shift + BITS, k, v, hash, key, value);
+				BitmapNode node = editable(map);
+				node.array[i] = null;
+				node.array[i + 1] = child;
+				return node;
+			}
+			map.resized = true;
+			Object[] grown = new Object[array.length + 2];
+			System.arraycopy(array, 0, grown, 0, i);
+			grown[i] = key;
+			grown[i + 1] = value;
+			System.arraycopy(array, i, grown, i + 2, array.length - i);
+			return replace(map, bitmap | bit, grown);
+		}
+
+		@Override
+		Node remove(PersistentMap<?, ?> map, int shift, int hash, Object key) {
+			int bit = bit(hash, shift);
+			if ((bitmap & bit) == 0) return this;
+			int i = 2 * Integer.bitCount(bitmap & (bit - 1));
+			Object k = array[i];
+			Object v = array[i + 1];
+			if (k == null) {
+				Node child = ((Node) v).remove(map, shift + BITS, hash, key);
+				if (child == v) return this;
+				if (child != null) return with(map, i + 1, child);
+			} else if (!key.equals(k)) {
+				return this;
+			} else {
+				map.resized = true;
+			}
+			if (bitmap == bit) return null;
+			Object[] shrunk = new Object[array.length - 2];
+			System.arraycopy(array, 0, shrunk, 0, i);
+			System.arraycopy(array, i + 2, shrunk, i, array.length - i - 2);
+			return replace(map, bitmap ^ bit, shrunk);
+		}
+
+		@Override
+		void expand(Deque<Object> deque) {
+			for (int i = 0; i < array.length; i += 2) {
+				if (array[i] == null) {
+					deque.push(array[i + 1]);
+				} else {
+					deque.push(new SimpleImmutableEntry<>(array[i], array[i + 1]));
+				}
+			}
+		}
+
+		private BitmapNode editable(PersistentMap<?, ?> map) {
+			return edit == map.token ? this : new BitmapNode(map.token, bitmap, array.clone());
+		}
+
+		private BitmapNode with(PersistentMap<?, ?> map, int index, Object obj) {
+			BitmapNode node = editable(map);
+			node.array[index] = obj;
+			return node;
+		}
+
+		private BitmapNode replace(PersistentMap<?, ?> map, int bitmap, Object[] array) {
+			if (edit != map.token) return new BitmapNode(map.token, bitmap, array);
+			this.bitmap = bitmap;
+			this.array = array;
+			return this;
+		}
+
+	}
+
+	// stores pairs with keys that have identical hashes
+	private static final class CollisionNode extends Node {
+
+		final int hash;
+		Object[] array;
+
+		CollisionNode(Object edit, int hash, Object[] array) {
+			super(edit);
+			this.hash = hash;
+			this.array = array;
+		}
+
+		@Override
+		Object[] find(int shift, int hash, Object key) {
+			int i = indexOf(key);
+			return i < 0 ? null : new Object[] { array[i + 1] };
+		}
+
+		@Override
+		Node put(PersistentMap<?, ?> map, int shift, int hash, Object key, Object value) {
+			if (hash != this.hash) {
+				// nest this node in a bitmap node that can also hold the new key
+				BitmapNode node = new BitmapNode(map.token, bit(this.hash, shift), new Object[] { null, this });
+				return node.put(map, shift, hash, key, value);
+			}
+			int i = indexOf(key);
+			if (i >= 0) {
+				if (array[i + 1] == value) return this;
+				CollisionNode node = editable(map);
+				node.array[i + 1] = value;
+				return node;
+			}
+			map.resized = true;
+			Object[] grown = new Object[array.length + 2];
+			System.arraycopy(array, 0, grown, 0, array.length);
+			grown[array.length] = key;
+			grown[array.length + 1] = value;
+			return replace(map, grown);
+		}
+
+		@Override
+		Node remove(PersistentMap<?, ?> map, int shift, int hash, Object key) {
+			int i = indexOf(key);
+			if (i < 0) return this;
+			map.resized = true;
+			if (array.length == 2) return null;
+			Object[] shrunk = new Object[array.length - 2];
+			System.arraycopy(array, 0, shrunk, 0, i);
+			System.arraycopy(array, i + 2, shrunk, i, array.length - i - 2);
+			return replace(map, shrunk);
+		}
+
+		@Override
+		void expand(Deque<Object> deque) {
+			for (int i = 0; i < array.length; i += 2) {
+				deque.push(new SimpleImmutableEntry<>(array[i], array[i + 1]));
+			}
+		}
+
+		private int indexOf(Object key) {
+			for (int i = 0; i < array.length; i += 2) {
+				if (Objects.equals(key, array[i])) return i;
+			}
+			return -1;
+		}
+
+		private CollisionNode editable(PersistentMap<?, ?> map) {
+			return edit == map.token ? this : new CollisionNode(map.token, hash, array.clone());
+		}
+
+		private CollisionNode replace(PersistentMap<?, ?> map, Object[] array) {
+			if (edit != map.token) return new CollisionNode(map.token, hash, array);
+			this.array = array;
+			return this;
+		}
+
+	}
+
+	// iterates over a snapshot of the map's entries
+	private final class EntryIterator implements Iterator<Map.Entry<K, V>> {
+
+		private final Deque<Object> deque = new ArrayDeque<>();
+		private Map.Entry<K, V> next;
+		private Map.Entry<K, V> last;
+
+		EntryIterator() {
+			PersistentMap<K, V> holder = holder();
+			if (holder.root != null) deque.push(holder.root);
+			if (holder.hasNull) next = new SimpleImmutableEntry<>(null, holder.nullValue);
+			else advance();
+		}
+
+		@Override
+		public boolean hasNext() {
+			return next != null;
+		}
+
+		@Override
+		public Map.Entry<K, V> next() {
+			if (next == null) throw new NoSuchElementException();
+			Map.Entry<K, V> entry = next;
+			advance();
+			return last = entry;
+		}
+
+		// safe because removal only edits nodes on the path to the key, all of which have been expanded
+		@Override
+		public void remove() {
+			if (last == null) throw new IllegalStateException();
+			PersistentMap.this.remove(last.getKey());
+			last = null;
+		}
+
+		@SuppressWarnings("unchecked")
+		private void advance() {
+			while (!deque.isEmpty()) {
+				Object obj = deque.pop();
+				if (obj instanceof Node) {
+					((Node) obj).expand(deque);
+				} else {
+					next = (Map.Entry<K, V>) obj;
+					return;
+				}
+			}
+			next = null;
+		}
+
+	}
+
+}
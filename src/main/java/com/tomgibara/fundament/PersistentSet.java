@@ -0,0 +1,92 @@
+/*
+ * Copyright 2016 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.fundament;
+
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.Iterator;
+
+/**
+ * A set that shares structure with its copies. The set is backed by a
+ * {@link PersistentMap} and shares its performance characteristics; in
+ * particular, copies in either direction are made in constant time.
+ *
+ * The set supports null elements. Mutating an immutable set raises an
+ * <code>UnsupportedOperationException</code>.
+ *
+ * @author Tom Gibara
+ *
+ * @param <E>
+ *            the type of element
+ */
+
+public final class PersistentSet<E> extends AbstractSet<E> implements Mutability<PersistentSet<E>> {
+
+	/**
+	 * An empty immutable set.
+	 *
+	 * @param <E>
+	 *            the type of element
+	 * @return an empty set
+	 */
+
+	public static <E> PersistentSet<E> empty() {
+		return new PersistentSet<>(PersistentMap.empty());
+	}
+
+	/**
+	 * An immutable set containing the elements of the supplied collection.
+	 *
+	 * @param <E>
+	 *            the type of element
+	 * @param coll
+	 *            the elements of the set
+	 * @return a set containing the elements
+	 */
+
+	public static <E> PersistentSet<E> copyOf(Collection<? extends E> coll) {
+		if (coll == null) throw new IllegalArgumentException("null coll");
+		PersistentMap<E, Boolean> map = PersistentMap.<E, Boolean>empty().mutableCopy();
+		for (E e : coll) {
+			map.put(e, Boolean.TRUE);
+		}
+		return new PersistentSet<>(map.immutable());
+	}
+
+	private final PersistentMap<E, Boolean> map;
+
+	private PersistentSet(PersistentMap<E, Boolean> map) {
+		this.map = map;
+	}
+
+	// mutability
+
+	@Override public boolean isMutable()              { return map.isMutable();                          }
+	@Override public PersistentSet<E> mutableCopy()   { return new PersistentSet<>(map.mutableCopy());   }
+	@Override public PersistentSet<E> immutableCopy() { return new PersistentSet<>(map.immutableCopy()); }
+	@Override public PersistentSet<E> immutableView() { return new PersistentSet<>(map.immutableView()); }
+
+	// set
+
+	@Override public int size()                 { return map.size();                       }
+	@Override public boolean contains(Object o) { return map.containsKey(o);               }
+	@Override public boolean add(E e)           { return map.put(e, Boolean.TRUE) == null; }
+	@Override public boolean remove(Object o)   { return map.remove(o) != null;            }
+	@Override public void clear()               { map.clear();                             }
+	@Override public Iterator<E> iterator()     { return map.keySet().iterator();          }
+
+}
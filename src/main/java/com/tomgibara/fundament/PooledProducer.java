@@ -0,0 +1,348 @@
+/*
+ * Copyright 2016 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.fundament;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A producer that recycles the values it produces. Values are returned to
+ * the pool via {@link #release(Object)}, or the consumer returned by
+ * {@link #releaser()}, at which point they are reset and made available to
+ * subsequent calls to {@link #produce()}. When the pool is empty, values are
+ * obtained from an underlying producer.
+ *
+ * Each thread that produces values keeps a small cache of the values it
+ * releases, which it consults before a shared pool of bounded capacity;
+ * neither is guarded by a lock. Values released by threads that have not
+ * produced from the pool, and values that overflow a thread's cache, are
+ * offered to the shared pool, and are discarded if it is full. The pool
+ * therefore retains at most its capacity in shared values, plus, for each
+ * thread that produces values, the lesser of its capacity and eight cached
+ * values; a thread's cache is reclaimed when the thread terminates.
+ *
+ * In debug mode, the pool tracks every value it produces. Releasing a value
+ * that was not produced by the pool, or that has already been released,
+ * raises an exception, and values that are garbage collected without having
+ * been released are counted as leaks. Debug mode is substantially slower and
+ * is not intended for production use.
+ *
+ * Instances are obtained via {@link Producer#pooled(Producer, Consumer, int)}.
+ *
+ * @author Tom Gibara
+ *
+ * @param <T>
+ *            the type of value produced
+ */
+
+public final class PooledProducer<T> implements Producer<T> {
+
+	private static final int LOCAL_CAPACITY = 8;
+
+	private final Producer<T> factory;
+	private final Consumer<T> reset;
+	private final int localCapacity;
+	private final AtomicReferenceArray<T> slots;
+	private final AtomicInteger pooled = new AtomicInteger();
+	private final ThreadLocal<Local> locals = ThreadLocal.withInitial(Local::new);
+	private final Tracking tracking;
+
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder discards = new LongAdder();
+
+	PooledProducer(Producer<T> factory, Consumer<T> reset, int capacity, boolean debug) {
+		if (factory == null) throw new IllegalArgumentException("null factory");
+		if (reset == null) throw new IllegalArgumentException("null reset");
+		if (capacity < 0) throw new IllegalArgumentException("negative capacity");
+		this.factory = factory;
+		this.reset = reset;
+		localCapacity = Math.min(LOCAL_CAPACITY, capacity);
+		slots = new AtomicReferenceArray<>(capacity);
+		tracking = debug ? new Tracking() : null;
+	}
+
+	/**
+	 * Produces a value, recycling a previously released value if one is
+	 * available.
+	 *
+	 * @return a value which should be released when it is no longer needed
+	 */
+
+	@Override
+	public T produce() {
+		T t = locals.get().producing().pop();
+		if (t == null) t = take();
+		if (t == null) {
+			misses.increment();
+			t = factory.produce();
+			if (t == null) throw new IllegalStateException("null produced");
+		} else {
+			hits.increment();
+		}
+		if (tracking != null) tracking.produced(t);
+		return t;
+	}
+
+	/**
+	 * Returns a value to the pool. The value is reset before it is made
+	 * available for reuse. The value must not be used by the caller after it
+	 * has been released.
+	 *
+	 * @param value
+	 *            a value previously produced by this pool
+	 * @throws IllegalArgumentException
+	 *             if the value is null, or in debug mode, if the value was not
+	 *             produced by this pool or has already been released
+	 */
+
+	public void release(T value) {
+		if (value == null) throw new IllegalArgumentException("null value");
+		if (tracking != null) tracking.released(value);
+		reset.consume(value);
+		// values released on other threads are shared rather than stranded in a cache that is never consulted
+		if (locals.get().push(value)) return;
+		if (!offer(value)) discards.increment();
+	}
+
+	/**
+	 * A consumer that releases values to this pool.
+	 *
+	 * @return a consumer equivalent to {@link #release(Object)}
+	 */
+
+	public Consumer<T> releaser() {
+		return this::release;
+	}
+
+	/**
+	 * The number of values produced by recycling a released value.
+	 *
+	 * @return the number of pool hits
+	 */
+
+	public long hitCount() {
+		return hits.sum();
+	}
+
+	/**
+	 * The number of values produced by the underlying producer because no
+	 * released value was available.
+	 *
+	 * @return the number of pool misses
+	 */
+
+	public long missCount() {
+		return misses.sum();
+	}
+
+	/**
+	 * The number of released values that were discarded because the pool was
+	 * at capacity.
+	 *
+	 * @return the number of discarded values
+	 */
+
+	public long discardCount() {
+		return discards.sum();
+	}
+
+	/**
+	 * Whether the pool is tracking values to detect misuse.
+	 *
+	 * @return true if the pool was created in debug mode
+	 */
+
+	public boolean isDebug() {
+		return tracking != null;
+	}
+
+	/**
+	 * The number of values that have been produced but not released. Only
+	 * available in debug mode.
+	 *
+	 * @return the number of outstanding values
+	 * @throws IllegalStateException
+	 *             if the pool is not in debug mode
+	 */
+
+	public int outstandingCount() {
+		if (tracking == null) throw new IllegalStateException("not debug");
+		return tracking.outstanding();
+	}
+
+	/**
+	 * The number of values that were garbage collected without being
+	 * released. Only available in debug mode. Since leaks are detected after
+	 * garbage collection, the count may lag behind the actual number of leaked
+	 * values.
+	 *
+	 * @return the number of leaked values detected
+	 * @throws IllegalStateException
+	 *             if the pool is not in debug mode
+	 */
+
+	public long leakCount() {
+		if (tracking == null) throw new IllegalStateException("not debug");
+		return tracking.leaks();
+	}
+
+	// takes a value from the shared slots
+	private T take() {
+		if (pooled.get() == 0) return null;
+		int capacity = slots.length();
+		int start = probe(capacity);
+		for (int i = 0; i < capacity; i++) {
+			int index = (start + i) % capacity;
+			T t = slots.get(index);
+			if (t != null && slots.compareAndSet(index, t, null)) {
+				pooled.decrementAndGet();
+				return t;
+			}
+		}
+		return null;
+	}
+
+	// offers a value to the shared slots
+	private boolean offer(T t) {
+		int capacity = slots.length();
+		if (pooled.get() >= capacity) return false;
+		int start = probe(capacity);
+		for (int i = 0; i < capacity; i++) {
+			int index = (start + i) % capacity;
+			if (slots.get(index) == null && slots.compareAndSet(index, null, t)) {
+				pooled.incrementAndGet();
+				return true;
+			}
+		}
+		return false;
+	}
+
+	// spreads threads over the slots to reduce contention
+	private static int probe(int capacity) {
+		int h = (int) Thread.currentThread().getId() * 0x9e3779b9;
+		return (h >>> 1) % capacity;
+	}
+
+	// inner classes
+
+	private final class Local {
+
+		// null until the thread produces a value
+		private Object[] values = null;
+		private int size = 0;
+
+		Local producing() {
+			if (values == null) values = new Object[localCapacity];
+			return this;
+		}
+
+		@SuppressWarnings("unchecked")
+		T pop() {
+			if (size == 0) return null;
+			T t = (T) values[--size];
+			values[size] = null;
+			return t;
+		}
+
+		boolean push(T t) {
+			if (values == null || size == values.length) return false;
+			values[size++] = t;
+			return true;
+		}
+
+	}
+
+	private static final class Tracking {
+
+		private final ReferenceQueue<Object> queue = new ReferenceQueue<>();
+		// outstanding values, indexed by identity hash code
+		private final Map<Integer, List<Tracker>> trackers = new HashMap<>();
+		private int outstanding = 0;
+		private long leaks = 0L;
+
+		synchronized void produced(Object obj) {
+			expunge();
+			trackers.computeIfAbsent(System.identityHashCode(obj), h -> new ArrayList<>(1)).add(new Tracker(obj, queue));
+			outstanding++;
+		}
+
+		synchronized void released(Object obj) {
+			expunge();
+			int hash = System.identityHashCode(obj);
+			List<Tracker> list = trackers.get(hash);
+			if (list != null) {
+				for (Iterator<Tracker> i = list.iterator(); i.hasNext(); ) {
+					Tracker tracker = i.next();
+					if (tracker.get() == obj) {
+						i.remove();
+						if (list.isEmpty()) trackers.remove(hash);
+						// a cleared reference is never enqueued
+						tracker.clear();
+						outstanding--;
+						return;
+					}
+				}
+			}
+			throw new IllegalArgumentException("value not produced by pool or already released");
+		}
+
+		synchronized int outstanding() {
+			expunge();
+			return outstanding;
+		}
+
+		synchronized long leaks() {
+			expunge();
+			return leaks;
+		}
+
+		private void expunge() {
+			for (Reference<?> ref; (ref = queue.poll()) != null; ) {
+				Tracker tracker = (Tracker) ref;
+				List<Tracker> list = trackers.get(tracker.hash);
+				if (list != null && list.remove(tracker)) {
+					if (list.isEmpty()) trackers.remove(tracker.hash);
+					outstanding--;
+					leaks++;
+				}
+			}
+		}
+
+	}
+
+	private static final class Tracker extends WeakReference<Object> {
+
+		final int hash;
+
+		Tracker(Object obj, ReferenceQueue<Object> queue) {
+			super(obj, queue);
+			hash = System.identityHashCode(obj);
+		}
+
+	}
+
+}
@@ -0,0 +1,319 @@
+/*
+ * Copyright 2016 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.fundament;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A producer that computes values ahead of demand on a background thread.
+ * Values are obtained in batches from an underlying producer, via
+ * {@link Producer#produceAll(Object[], int, int)}, and stored in a bounded ring
+ * buffer from which any number of threads may take them without locking.
+ *
+ * The buffer is filled until it holds a high watermark of values; the
+ * background thread then waits until consumption has reduced the number of
+ * buffered values to a low watermark before filling it again. Callers only
+ * wait when the buffer is empty, and the time they spend waiting is recorded
+ * so that the buffer can be sized appropriately, see
+ * {@link #latencyPercentile(double)}.
+ *
+ * The underlying producer is only ever called from the background thread. If
+ * it fails, prefetching stops and, once the buffered values are exhausted,
+ * calls to {@link #produce()} raise an exception with the failure as its
+ * cause. The producer must be closed to stop the background thread; any
+ * values remaining in the buffer are then discarded.
+ *
+ * Instances are obtained via {@link Producer#prefetching(Producer, int)}.
+ *
+ * @author Tom Gibara
+ *
+ * @param <T>
+ *            the type of value produced
+ */
+
+public final class PrefetchingProducer<T> implements Producer<T>, AutoCloseable {
+
+	private static final int SPINS = 64;
+	private static final long PARK_NANOS = 10_000L;
+
+	private final Producer<T> source;
+	private final int lowWatermark;
+	private final int highWatermark;
+	private final Object[] buffer;
+	private final int mask;
+	private final Thread thread;
+
+	// the index of the next value to be taken, advanced by consumers
+	private final AtomicLong head = new AtomicLong();
+	// the index at which the next value will be stored, advanced only by the background thread
+	private volatile long tail = 0L;
+	private volatile boolean sleeping = false;
+	private volatile boolean closed = false;
+	private volatile Throwable failure = null;
+
+	// stalls are binned by the base 2 logarithm of their duration
+	private final LongAdder immediate = new LongAdder();
+	private final AtomicLongArray stalls = new AtomicLongArray(64);
+
+	PrefetchingProducer(Producer<T> source, int lowWatermark, int highWatermark, ThreadFactory factory) {
+		if (source == null) throw new IllegalArgumentException("null source");
+		if (lowWatermark < 0) throw new IllegalArgumentException("negative lowWatermark");
+		if (highWatermark <= lowWatermark) throw new IllegalArgumentException("highWatermark not greater than lowWatermark");
+		if (highWatermark > 1 << 30) throw new IllegalArgumentException("highWatermark too large");
+		if (factory == null) throw new IllegalArgumentException("null factory");
+		this.source = source;
+		this.lowWatermark = lowWatermark;
+		this.highWatermark = highWatermark;
+		int capacity = Integer.highestOneBit(highWatermark * 2 - 1);
+		buffer = new Object[capacity];
+		mask = capacity - 1;
+		thread = factory.newThread(this::fill);
+		if (thread == null) throw new IllegalArgumentException("factory returned null thread");
+		thread.start();
+	}
+
+	@Override
+	public T produce() {
+		T value = poll();
+		if (value != null) {
+			immediate.increment();
+			return value;
+		}
+		long start = System.nanoTime();
+		for (int spins = 0; ; spins++) {
+			value = poll();
+			if (value != null) break;
+			checkState();
+			if (spins < SPINS) {
+				Thread.yield();
+			} else {
+				LockSupport.parkNanos(this, PARK_NANOS);
+			}
+		}
+		long nanos = System.nanoTime() - start;
+		stalls.incrementAndGet(64 - Long.numberOfLeadingZeros(Math.max(nanos, 1L)) - 1);
+		return value;
+	}
+
+	/**
+	 * Produces a number of values into an array, taking as many values from
+	 * the buffer at once as are available.
+	 */
+
+	@Override
+	public void produceAll(T[] values, int off, int len) {
+		if (values == null) throw new IllegalArgumentException("null values");
+		if (off < 0) throw new IllegalArgumentException("negative off");
+		if (len < 0) throw new IllegalArgumentException("negative len");
+		if (off + len > values.length) throw new IllegalArgumentException("range exceeds values");
+		while (len > 0) {
+			int count = take(values, off, len);
+			if (count == 0) {
+				values[off] = produce();
+				count = 1;
+			}
+			off += count;
+			len -= count;
+		}
+	}
+
+	/**
+	 * Takes a value from the buffer without waiting.
+	 *
+	 * @return a prefetched value, or null if the buffer is empty
+	 * @throws IllegalStateException
+	 *             if the producer has been closed
+	 */
+
+	@SuppressWarnings("unchecked")
+	public T poll() {
+		if (closed) checkState();
+		while (true) {
+			long h = head.get();
+			if (h >= tail) return null;
+			Object value = buffer[(int) h & mask];
+			if (head.compareAndSet(h, h + 1)) {
+				wake(h + 1);
+				return (T) value;
+			}
+		}
+	}
+
+	/**
+	 * The number of values currently held in the buffer.
+	 *
+	 * @return the number of prefetched values
+	 */
+
+	public int size() {
+		return (int) Math.max(0L, tail - head.get());
+	}
+
+	/**
+	 * The latency of calls to {@link #produce()} at a specified percentile.
+	 * Latencies are only measured for calls that find the buffer empty, and
+	 * are recorded with a precision of a power of two.
+	 *
+	 * @param percentile
+	 *            a percentile in the range [0,100]
+	 * @return an upper bound on the latency at the percentile in nanoseconds,
+	 *         zero if the percentile falls among calls that did not wait, or
+	 *         -1 if no calls have been recorded
+	 * @throws IllegalArgumentException
+	 *             if the percentile is out of range
+	 */
+
+	public long latencyPercentile(double percentile) {
+		if (!(percentile >= 0.0 && percentile <= 100.0)) throw new IllegalArgumentException("invalid percentile");
+		long[] counts = new long[64];
+		long total = immediate.sum();
+		for (int i = 0; i < counts.length; i++) {
+			counts[i] = stalls.get(i);
+			total += counts[i];
+		}
+		if (total == 0L) return -1L;
+		long rank = (long) Math.ceil(percentile / 100.0 * total);
+		long seen = immediate.sum();
+		if (rank <= seen) return 0L;
+		for (int i = 0; i < counts.length; i++) {
+			seen += counts[i];
+			if (seen >= rank) return i == 62 ? Long.MAX_VALUE : (1L << (i + 1)) - 1L;
+		}
+		return Long.MAX_VALUE;
+	}
+
+	/**
+	 * The number of calls to {@link #produce()} that found the buffer empty.
+	 *
+	 * @return the number of times a caller waited for a value
+	 */
+
+	public long stallCount() {
+		long count = 0L;
+		for (int i = 0; i < stalls.length(); i++) {
+			count += stalls.get(i);
+		}
+		return count;
+	}
+
+	/**
+	 * Stops the background thread and waits for it to terminate. Values that
+	 * remain in the buffer are discarded. Closing a producer that is already
+	 * closed has no effect.
+	 */
+
+	@Override
+	public void close() {
+		closed = true;
+		LockSupport.unpark(thread);
+		if (thread == Thread.currentThread()) return;
+		boolean interrupted = false;
+		while (thread.isAlive()) {
+			try {
+				thread.join();
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if (interrupted) Thread.currentThread().interrupt();
+	}
+
+	/**
+	 * Whether the producer has been closed.
+	 *
+	 * @return true if the producer has been closed
+	 */
+
+	public boolean isClosed() {
+		return closed;
+	}
+
+	@SuppressWarnings("unchecked")
+	private int take(T[] values, int off, int len) {
+		if (closed) checkState();
+		while (true) {
+			long h = head.get();
+			int count = (int) Math.min(tail - h, len);
+			if (count <= 0) return 0;
+			for (int i = 0; i < count; i++) {
+				values[off + i] = (T) buffer[(int) (h + i) & mask];
+			}
+			if (head.compareAndSet(h, h + count)) {
+				wake(h + count);
+				return count;
+			}
+		}
+	}
+
+	// called with the new head after values have been taken
+	private void wake(long h) {
+		if (sleeping && tail - h <= lowWatermark) LockSupport.unpark(thread);
+	}
+
+	private void checkState() {
+		Throwable failure = this.failure;
+		if (failure != null) throw new IllegalStateException("prefetching failed", failure);
+		if (closed) throw new IllegalStateException("closed");
+	}
+
+	// called from the background thread to make values available to consumers
+	private void publish(T[] batch, long t, int count) {
+		for (int i = 0; i < count; i++) {
+			T value = batch[i];
+			if (value == null) throw new IllegalStateException("null produced");
+			buffer[(int) (t + i) & mask] = value;
+			batch[i] = null;
+		}
+		tail = t + count;
+	}
+
+	// the body of the background thread
+	@SuppressWarnings("unchecked")
+	private void fill() {
+		T[] batch = (T[]) new Object[highWatermark];
+		try {
+			while (!closed) {
+				long t = tail;
+				int count = (int) (highWatermark - (t - head.get()));
+				if (count > 0) {
+					try {
+						source.produceAll(batch, 0, count);
+					} catch (RuntimeException | Error e) {
+						// values produced before the failure remain available
+						int produced = 0;
+						while (produced < count && batch[produced] != null) produced++;
+						publish(batch, t, produced);
+						throw e;
+					}
+					publish(batch, t, count);
+				}
+				sleeping = true;
+				while (!closed && tail - head.get() > lowWatermark) {
+					LockSupport.park(this);
+				}
+				sleeping = false;
+			}
+		} catch (RuntimeException | Error e) {
+			failure = e;
+		}
+	}
+
+}
@@ -16,6 +16,11 @@
  */
 package com.tomgibara.fundament;
 
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
 /**
  * A basic functional interface for producing values. Similar in spirit to a
  * zero argument function; a <code>Function</code> on <code>Void</code> but
@@ -29,10 +34,241 @@ package com.tomgibara.fundament;
 @FunctionalInterface
 public interface Producer<T> {
 
+	/**
+	 * A producer that computes the value of the supplied producer once, and
+	 * produces it thereafter.
+	 *
+	 * @param <T>
+	 *            the type of value produced
+	 * @param producer
+	 *            the producer of the value
+	 * @return a memoizing producer
+	 */
+
+	static <T> MemoizingProducer<T> memoized(Producer<T> producer) {
+		return new MemoizingProducer<>(producer, Long.MAX_VALUE, Long.MAX_VALUE, null, System::nanoTime);
+	}
+
+	/**
+	 * A producer that retains the value of the supplied producer for a fixed
+	 * period, after which the value is recomputed on demand.
+	 *
+	 * @param <T>
+	 *            the type of value produced
+	 * @param producer
+	 *            the producer of the value
+	 * @param ttl
+	 *            the period for which a value is retained
+	 * @param unit
+	 *            the unit of the period
+	 * @return an expiring producer
+	 */
+
+	static <T> MemoizingProducer<T> expiring(Producer<T> producer, long ttl, TimeUnit unit) {
+		return expiring(producer, ttl, unit, System::nanoTime);
+	}
+
+	/**
+	 * A producer that retains the value of the supplied producer for a fixed
+	 * period, as measured by the supplied clock.
+	 *
+	 * @param <T>
+	 *            the type of value produced
+	 * @param producer
+	 *            the producer of the value
+	 * @param ttl
+	 *            the period for which a value is retained
+	 * @param unit
+	 *            the unit of the period
+	 * @param clock
+	 *            supplies the current time in nanoseconds
+	 * @return an expiring producer
+	 * @throws IllegalArgumentException
+	 *             if the period is not positive
+	 * @see #expiring(Producer, long, TimeUnit)
+	 */
+
+	static <T> MemoizingProducer<T> expiring(Producer<T> producer, long ttl, TimeUnit unit, LongSupplier clock) {
+		if (ttl < 1L) throw new IllegalArgumentException("non-positive ttl");
+		if (unit == null) throw new IllegalArgumentException("null unit");
+		return new MemoizingProducer<>(producer, unit.toNanos(ttl), Long.MAX_VALUE, null, clock);
+	}
+
+	/**
+	 * A producer that recomputes the value of the supplied producer in the
+	 * background once it has been retained for a fixed period. Only the first
+	 * call to {@link #produce()} waits for a value to be computed.
+	 *
+	 * @param <T>
+	 *            the type of value produced
+	 * @param producer
+	 *            the producer of the value
+	 * @param refreshAfter
+	 *            the period after which a value is recomputed
+	 * @param unit
+	 *            the unit of the period
+	 * @return a refreshing producer
+	 */
+
+	static <T> MemoizingProducer<T> refreshing(Producer<T> producer, long refreshAfter, TimeUnit unit) {
+		return refreshing(producer, refreshAfter, unit, Async.defaultExecutor(), System::nanoTime);
+	}
+
+	/**
+	 * A producer that recomputes the value of the supplied producer on an
+	 * executor once it has been retained for a fixed period, as measured by
+	 * the supplied clock.
+	 *
+	 * @param <T>
+	 *            the type of value produced
+	 * @param producer
+	 *            the producer of the value
+	 * @param refreshAfter
+	 *            the period after which a value is recomputed
+	 * @param unit
+	 *            the unit of the period
+	 * @param executor
+	 *            the executor on which values are recomputed
+	 * @param clock
+	 *            supplies the current time in nanoseconds
+	 * @return a refreshing producer
+	 * @throws IllegalArgumentException
+	 *             if the period is not positive
+	 * @see #refreshing(Producer, long, TimeUnit)
+	 */
+
+	static <T> MemoizingProducer<T> refreshing(Producer<T> producer, long refreshAfter, TimeUnit unit, Executor executor, LongSupplier clock) {
+		if (refreshAfter < 1L) throw new IllegalArgumentException("non-positive refreshAfter");
+		if (unit == null) throw new IllegalArgumentException("null unit");
+		if (executor == null) throw new IllegalArgumentException("null executor");
+		return new MemoizingProducer<>(producer, Long.MAX_VALUE, unit.toNanos(refreshAfter), executor, clock);
+	}
+
+	/**
+	 * A producer that prefetches values from the supplied producer on a daemon
+	 * thread. The buffer is refilled when it has been drained to a quarter of
+	 * its capacity.
+	 *
+	 * @param <T>
+	 *            the type of value produced
+	 * @param source
+	 *            the producer of values, only called from the background thread
+	 * @param capacity
+	 *            the maximum number of values prefetched
+	 * @return a prefetching producer that must be closed after use
+	 * @throws IllegalArgumentException
+	 *             if the capacity is not positive
+	 */
+
+	static <T> PrefetchingProducer<T> prefetching(Producer<T> source, int capacity) {
+		if (capacity < 1) throw new IllegalArgumentException("non-positive capacity");
+		return prefetching(source, capacity / 4, capacity, r -> {
+			Thread thread = new Thread(r, "fundament-prefetch");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * A producer that prefetches values from the supplied producer on a thread
+	 * created by the supplied factory. Values are prefetched until the number
+	 * of buffered values reaches the high watermark, and prefetching resumes
+	 * when it falls to the low watermark.
+	 *
+	 * @param <T>
+	 *            the type of value produced
+	 * @param source
+	 *            the producer of values, only called from the background thread
+	 * @param lowWatermark
+	 *            the number of buffered values at which prefetching resumes
+	 * @param highWatermark
+	 *            the number of buffered values at which prefetching pauses
+	 * @param factory
+	 *            creates the background thread
+	 * @return a prefetching producer that must be closed after use
+	 * @throws IllegalArgumentException
+	 *             if the watermarks are negative or not correctly ordered
+	 * @see #prefetching(Producer, int)
+	 */
+
+	static <T> PrefetchingProducer<T> prefetching(Producer<T> source, int lowWatermark, int highWatermark, ThreadFactory factory) {
+		return new PrefetchingProducer<>(source, lowWatermark, highWatermark, factory);
+	}
+
+	/**
+	 * A producer that recycles values, obtaining new values from the supplied
+	 * producer only when no released values are available.
+	 *
+	 * @param <T>
+	 *            the type of value produced
+	 * @param factory
+	 *            produces new values for the pool
+	 * @param reset
+	 *            restores released values to a reusable state
+	 * @param capacity
+	 *            the maximum number of released values shared between threads
+	 * @return a pooling producer
+	 * @throws IllegalArgumentException
+	 *             if either function is null or the capacity is negative
+	 */
+
+	static <T> PooledProducer<T> pooled(Producer<T> factory, Consumer<T> reset, int capacity) {
+		return new PooledProducer<>(factory, reset, capacity, false);
+	}
+
+	/**
+	 * A producer that recycles values, optionally tracking the values it
+	 * produces to detect leaks and invalid releases.
+	 *
+	 * @param <T>
+	 *            the type of value produced
+	 * @param factory
+	 *            produces new values for the pool
+	 * @param reset
+	 *            restores released values to a reusable state
+	 * @param capacity
+	 *            the maximum number of released values shared between threads
+	 * @param debug
+	 *            whether values should be tracked
+	 * @return a pooling producer
+	 * @throws IllegalArgumentException
+	 *             if either function is null or the capacity is negative
+	 * @see #pooled(Producer, Consumer, int)
+	 */
+
+	static <T> PooledProducer<T> pooled(Producer<T> factory, Consumer<T> reset, int capacity, boolean debug) {
+		return new PooledProducer<>(factory, reset, capacity, debug);
+	}
+
 	/**
 	 * Produces a value.
 	 *
 	 * @return the value produced.
 	 */
 	T produce();
+
+	/**
+	 * Produces a number of values into an array. Implementations that can
+	 * produce values more efficiently in batches should override this method.
+	 * The default implementation calls {@link #produce()} for each value.
+	 *
+	 * @param values
+	 *            the array into which values are produced
+	 * @param off
+	 *            the index at which the first value is stored
+	 * @param len
+	 *            the number of values to produce
+	 * @throws IllegalArgumentException
+	 *             if the array is null or the range exceeds the array
+	 */
+
+	default void produceAll(T[] values, int off, int len) {
+		if (values == null) throw new IllegalArgumentException("null values");
+		if (off < 0) throw new IllegalArgumentException("negative off");
+		if (len < 0) throw new IllegalArgumentException("negative len");
+		if (off + len > values.length) throw new IllegalArgumentException("range exceeds values");
+		for (int i = off, lim = off + len; i < lim; i++) {
+			values[i] = produce();
+		}
+	}
 }
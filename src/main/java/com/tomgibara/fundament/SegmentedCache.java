@@ -0,0 +1,187 @@
+/*
+ * Copyright 2016 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.fundament;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * A bounded concurrent cache that supports {@link CachingMapping}. Keys are
+ * distributed over a number of independently locked stripes, each of which
+ * applies a segmented LRU eviction policy: new entries enter a probationary
+ * segment and are promoted to a protected segment when they are accessed a
+ * second time. Values are held as futures so that, for any key, only a single
+ * computation is ever in flight.
+ *
+ * @author Tom Gibara
+ */
+
+final class SegmentedCache<K, V> {
+
+	// the minimum number of entries we want to have per stripe
+	private static final int MIN_STRIPE_CAPACITY = 16;
+	private static final int MAX_STRIPES = 64;
+
+	private static int hash(Object key) {
+		int h = key == null ? 0 : key.hashCode();
+		return h ^ (h >>> 16);
+	}
+
+	private final Stripe<K, V>[] stripes;
+	private final int mask;
+
+	final LongAdder hits = new LongAdder();
+	final LongAdder misses = new LongAdder();
+	final LongAdder evictions = new LongAdder();
+
+	@SuppressWarnings("unchecked")
+	SegmentedCache(int capacity) {
+		int count = Integer.highestOneBit(Math.max(1, Math.min(capacity / MIN_STRIPE_CAPACITY, MAX_STRIPES)));
+		int stripeCapacity = (capacity + count - 1) / count;
+		stripes = (Stripe<K, V>[]) new Stripe<?, ?>[count];
+		for (int i = 0; i < count; i++) {
+			stripes[i] = new Stripe<>(stripeCapacity);
+		}
+		mask = count - 1;
+	}
+
+	V get(K key, Function<? super K, ? extends V> fn) {
+		Stripe<K, V> stripe = stripes[hash(key) & mask];
+		CompletableFuture<V> future;
+		boolean computing;
+		synchronized (stripe) {
+			future = stripe.lookup(key);
+			computing = future == null;
+			if (computing) {
+				future = new CompletableFuture<>();
+				evictions.add(stripe.insert(key, future));
+			}
+		}
+		if (!computing) {
+			hits.increment();
+			return join(future);
+		}
+		misses.increment();
+		V value;
+		try {
+			value = fn.apply(key);
+		} catch (RuntimeException | Error e) {
+			synchronized (stripe) {
+				stripe.remove(key, future);
+			}
+			future.completeExceptionally(e);
+			throw e;
+		}
+		future.complete(value);
+		return value;
+	}
+
+	void put(K key, V value) {
+		Stripe<K, V> stripe = stripes[hash(key) & mask];
+		synchronized (stripe) {
+			if (stripe.contains(key)) return;
+			evictions.add(stripe.insert(key, CompletableFuture.completedFuture(value)));
+		}
+	}
+
+	long size() {
+		long size = 0L;
+		for (Stripe<K, V> stripe : stripes) {
+			synchronized (stripe) {
+				size += stripe.size();
+			}
+		}
+		return size;
+	}
+
+	private static <V> V join(CompletableFuture<V> future) {
+		try {
+			return future.join();
+		} catch (CompletionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+			if (cause instanceof Error) throw (Error) cause;
+			throw e;
+		}
+	}
+
+	// all methods must be called while holding the stripe's lock
+	private static final class Stripe<K, V> {
+
+		private final int capacity;
+		private final int protectedCapacity;
+		private final LinkedHashMap<K, CompletableFuture<V>> probation = new LinkedHashMap<>();
+		private final LinkedHashMap<K, CompletableFuture<V>> protect = new LinkedHashMap<>(16, 0.75f, true);
+
+		Stripe(int capacity) {
+			this.capacity = capacity;
+			this.protectedCapacity = capacity * 4 / 5;
+		}
+
+		CompletableFuture<V> lookup(K key) {
+			CompletableFuture<V> future = protect.get(key);
+			if (future != null) return future;
+			future = probation.get(key);
+			if (future == null || protectedCapacity == 0) return future;
+			// promote the entry, demoting the least recently used protected entry if necessary
+			probation.remove(key);
+			protect.put(key, future);
+			if (protect.size() > protectedCapacity) {
+				Map.Entry<K, CompletableFuture<V>> eldest = eldest(protect);
+				probation.put(eldest.getKey(), eldest.getValue());
+			}
+			return future;
+		}
+
+		boolean contains(K key) {
+			return protect.containsKey(key) || probation.containsKey(key);
+		}
+
+		// returns the number of evictions
+		int insert(K key, CompletableFuture<V> future) {
+			probation.put(key, future);
+			int evicted = 0;
+			while (size() > capacity) {
+				eldest(probation.isEmpty() ? protect : probation);
+				evicted++;
+			}
+			return evicted;
+		}
+
+		void remove(K key, CompletableFuture<V> future) {
+			if (!probation.remove(key, future)) protect.remove(key, future);
+		}
+
+		int size() {
+			return probation.size() + protect.size();
+		}
+
+		// removes and returns the eldest entry
+		private Map.Entry<K, CompletableFuture<V>> eldest(LinkedHashMap<K, CompletableFuture<V>> map) {
+			Iterator<Map.Entry<K, CompletableFuture<V>>> it = map.entrySet().iterator();
+			Map.Entry<K, CompletableFuture<V>> entry = it.next();
+			it.remove();
+			return entry;
+		}
+
+	}
+}
@@ -0,0 +1,178 @@
+/*
+ * Copyright 2016 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.fundament;
+
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Supplier;
+
+/**
+ * Coordinates a single writer with any number of readers without requiring
+ * the readers to lock. Reads are performed optimistically against a version
+ * stamp and are repeated if a write overlapped them; only readers that
+ * repeatedly lose the race with the writer fall back to taking a read lock.
+ *
+ * This is intended to support {@link Mutability} implementations whose
+ * immutable views may be read on threads other than the one mutating the
+ * underlying object. The implementation performs each mutation via
+ * {@link #write(Runnable)} and each read of its state, including reads made
+ * through its views, via {@link #read(Supplier)} or {@link #copy(Runnable)}.
+ *
+ * Because an optimistic read may observe a partially written state, the code
+ * it executes must be free of side effects other than writing to buffers
+ * owned by the reader, and must not loop on the state it reads. Exceptions
+ * and errors raised during a read that overlapped a write are discarded and
+ * the read is repeated; only those raised by a consistent read are
+ * propagated. Readers that arrive while a write is in progress wait for it to
+ * complete before making an optimistic attempt. As
+ * with <code>StampedLock</code>, reads within a write, or writes within a
+ * read, are not supported.
+ *
+ * @author Tom Gibara
+ */
+
+public final class SeqLock {
+
+	// the number of optimistic attempts made before a reader takes the read lock
+	private static final int OPTIMISTIC_ATTEMPTS = 4;
+
+	/**
+	 * Creates a new lock.
+	 *
+	 * @return a new lock
+	 */
+
+	public static SeqLock create() {
+		return new SeqLock();
+	}
+
+	private final StampedLock lock = new StampedLock();
+	private final LongAdder retries = new LongAdder();
+	private final LongAdder fallbacks = new LongAdder();
+
+	private SeqLock() { }
+
+	/**
+	 * Performs a mutation that will not be observed by readers until it is
+	 * complete. Writers are excluded from each other, but are expected to be
+	 * rare relative to reads.
+	 *
+	 * @param mutation
+	 *            modifies the state guarded by this lock
+	 */
+
+	public void write(Runnable mutation) {
+		if (mutation == null) throw new IllegalArgumentException("null mutation");
+		long stamp = lock.writeLock();
+		try {
+			mutation.run();
+		} finally {
+			lock.unlockWrite(stamp);
+		}
+	}
+
+	/**
+	 * Reads a value from the guarded state. The supplier may be called
+	 * multiple times, and only a value computed from a consistent state is
+	 * returned.
+	 *
+	 * @param <R>
+	 *            the type of value read
+	 * @param reader
+	 *            computes a value from the guarded state
+	 * @return the value computed from a consistent state
+	 */
+
+	public <R> R read(Supplier<R> reader) {
+		if (reader == null) throw new IllegalArgumentException("null reader");
+		for (int attempt = 0; attempt < OPTIMISTIC_ATTEMPTS; ) {
+			long stamp = lock.tryOptimisticRead();
+			if (stamp == 0L) {
+				// a write is in progress, so wait for it without spending an attempt
+				Thread.yield();
+				continue;
+			}
+			attempt++;
+			R result;
+			try {
+				result = reader.get();
+			} catch (Throwable t) {
+				// an inconsistent read may fail arbitrarily, eg. allocating an array with a torn length
+				if (lock.validate(stamp)) throw t;
+				retries.increment();
+				continue;
+			}
+			if (lock.validate(stamp)) return result;
+			retries.increment();
+		}
+		fallbacks.increment();
+		long stamp = lock.readLock();
+		try {
+			return reader.get();
+		} finally {
+			lock.unlockRead(stamp);
+		}
+	}
+
+	/**
+	 * Copies a consistent snapshot of the guarded state into a buffer owned
+	 * by the caller. The copier may be called multiple times, and must
+	 * overwrite whatever it wrote on a previous call; on return, the buffer
+	 * holds the state as it was at a single point in time.
+	 *
+	 * @param copier
+	 *            copies the guarded state into a buffer
+	 */
+
+	public void copy(Runnable copier) {
+		if (copier == null) throw new IllegalArgumentException("null copier");
+		read(() -> { copier.run(); return null; });
+	}
+
+	/**
+	 * Whether a write is currently in progress.
+	 *
+	 * @return true if a writer holds the lock
+	 */
+
+	public boolean isWriting() {
+		return lock.isWriteLocked();
+	}
+
+	/**
+	 * The number of optimistic reads that were repeated because they
+	 * overlapped a write.
+	 *
+	 * @return the number of repeated reads
+	 */
+
+	public long retryCount() {
+		return retries.sum();
+	}
+
+	/**
+	 * The number of reads that fell back to taking a read lock after their
+	 * optimistic attempts were exhausted.
+	 *
+	 * @return the number of locked reads
+	 */
+
+	public long fallbackCount() {
+		return fallbacks.sum();
+	}
+
+}
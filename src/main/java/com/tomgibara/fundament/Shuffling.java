@@ -0,0 +1,277 @@
+/*
+ * Copyright 2016 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.fundament;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Shuffles the elements of any {@link Transposable} in place. Every shuffle
+ * draws its randomness from a {@link Source}, so that a shuffle is
+ * reproducible from the seed of its source. Shuffles are uniform: each
+ * permutation of the shuffled elements is equally likely, given a source of
+ * uniformly random values.
+ *
+ * All ranges are specified by an inclusive lower index and an exclusive
+ * upper index.
+ *
+ * @author Tom Gibara
+ * @see Sorting
+ * @see Permutations
+ */
+
+public final class Shuffling {
+
+	/**
+	 * A source of random values that can be split into independent sources
+	 * for use on other threads. No state is shared between a source and the
+	 * sources split from it.
+	 */
+
+	public interface Source {
+
+		/**
+		 * A source of random values produced by a
+		 * <code>SplittableRandom</code> initialized with the supplied seed.
+		 *
+		 * @param seed
+		 *            the seed from which values are generated
+		 * @return a seeded source
+		 */
+
+		static Source seeded(long seed) {
+			return from(new SplittableRandom(seed));
+		}
+
+		/**
+		 * A source of random values produced by the supplied generator.
+		 *
+		 * @param random
+		 *            a splittable generator
+		 * @return a source of the generator's values
+		 */
+
+		static Source from(SplittableRandom random) {
+			if (random == null) throw new IllegalArgumentException("null random");
+			return new Source() {
+				@Override public long nextLong()        { return random.nextLong();     }
+				@Override public int nextInt(int bound) { return random.nextInt(bound); }
+				@Override public Source split()         { return from(random.split());  }
+			};
+		}
+
+		/**
+		 * A uniformly random long value.
+		 *
+		 * @return a random value
+		 */
+
+		long nextLong();
+
+		/**
+		 * A uniformly random int value between zero (inclusive) and the
+		 * bound (exclusive). The default implementation derives the value
+		 * from {@link #nextLong()} without bias.
+		 *
+		 * @param bound
+		 *            the upper bound on the value, must be positive
+		 * @return a random value less than the bound
+		 */
+
+		default int nextInt(int bound) {
+			if (bound < 1) throw new IllegalArgumentException("non-positive bound");
+			int bits;
+			int value;
+			do {
+				bits = (int) (nextLong() >>> 33);
+				value = bits % bound;
+			} while (bits - value + (bound - 1) < 0);
+			return value;
+		}
+
+		/**
+		 * Creates a new source that produces values independent of those of
+		 * this source. Splitting changes the state of this source.
+		 *
+		 * @return a new source
+		 */
+
+		Source split();
+
+	}
+
+	/**
+	 * Shuffles a range of elements with a Fisher-Yates shuffle.
+	 *
+	 * @param t
+	 *            the elements to be shuffled
+	 * @param from
+	 *            the index of the first element in the range
+	 * @param to
+	 *            the index after the last element in the range
+	 * @param source
+	 *            the source of random values
+	 */
+
+	public static void shuffle(Transposable t, int from, int to, Source source) {
+		checkArgs(t, from, to, source);
+		fisherYates(t, source, from, to);
+	}
+
+	/**
+	 * Shuffles just enough of a range of elements to select a uniformly
+	 * random sample. On return, the first <code>count</code> elements of the
+	 * range are a random sample of the elements in the range, in random order.
+	 * At most <code>count</code> random values are drawn from the source.
+	 *
+	 * @param t
+	 *            the elements to be shuffled
+	 * @param from
+	 *            the index of the first element in the range
+	 * @param count
+	 *            the number of elements to select
+	 * @param to
+	 *            the index after the last element in the range
+	 * @param source
+	 *            the source of random values
+	 */
+
+	public static void partialShuffle(Transposable t, int from, int count, int to, Source source) {
+		checkArgs(t, from, to, source);
+		if (count < 0) throw new IllegalArgumentException("negative count");
+		if (count > to - from) throw new IllegalArgumentException("count exceeds range");
+		for (int i = from, lim = from + Math.min(count, to - from - 1); i < lim; i++) {
+			t.transpose(i, i + source.nextInt(to - i));
+		}
+	}
+
+	/**
+	 * Shuffles a range of elements by dividing it into blocks that are
+	 * shuffled on the threads of the common fork-join pool, and then merging
+	 * shuffled blocks with the MergeShuffle algorithm, which preserves
+	 * uniformity. The source is split in a fixed order as the range is
+	 * divided, so that the result depends only on the state of the source and
+	 * the threshold, and not on the number of threads that perform the work.
+	 *
+	 * The transposable must support concurrent transpositions over disjoint
+	 * pairs of indices, as is the case for transpositions that only swap array
+	 * elements.
+	 *
+	 * @param t
+	 *            the elements to be shuffled
+	 * @param from
+	 *            the index of the first element in the range
+	 * @param to
+	 *            the index after the last element in the range
+	 * @param source
+	 *            the source of random values
+	 * @param threshold
+	 *            the number of elements below which the work will not be
+	 *            split
+	 */
+
+	public static void parallelShuffle(Transposable t, int from, int to, Source source, int threshold) {
+		checkArgs(t, from, to, source);
+		Bulk.checkThreshold(threshold);
+		if (to - from <= threshold) {
+			fisherYates(t, source, from, to);
+		} else {
+			ForkJoinPool.commonPool().invoke(new ShuffleTask(t, source, from, to, threshold));
+		}
+	}
+
+	// private helper methods
+
+	private static void checkArgs(Transposable t, int from, int to, Source source) {
+		if (t == null) throw new IllegalArgumentException("null t");
+		if (source == null) throw new IllegalArgumentException("null source");
+		if (from < 0) throw new IllegalArgumentException("negative from");
+		if (to < from) throw new IllegalArgumentException("to less than from");
+	}
+
+	private static void fisherYates(Transposable t, Source source, int from, int to) {
+		for (int i = to - 1; i > from; i--) {
+			t.transpose(i, from + source.nextInt(i - from + 1));
+		}
+	}
+
+	// merges two adjacent shuffled ranges into a single shuffled range
+	private static void merge(Transposable t, Source source, int lo, int mid, int hi) {
+		int i = lo;
+		int j = mid;
+		long bits = 0L;
+		int available = 0;
+		while (true) {
+			if (available == 0) {
+				bits = source.nextLong();
+				available = 64;
+			}
+			boolean right = (bits & 1L) != 0L;
+			bits >>>= 1;
+			available--;
+			if (right) {
+				if (j == hi) break;
+				t.transpose(i, j++);
+			} else if (i == j) {
+				break;
+			}
+			i++;
+		}
+		// insert the elements remaining from one side at random positions
+		for (; i < hi; i++) {
+			t.transpose(i, lo + source.nextInt(i - lo + 1));
+		}
+	}
+
+	private Shuffling() { }
+
+	private static final class ShuffleTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final Transposable t;
+		private final Source source;
+		private final int from;
+		private final int to;
+		private final int threshold;
+
+		ShuffleTask(Transposable t, Source source, int from, int to, int threshold) {
+			this.t = t;
+			this.source = source;
+			this.from = from;
+			this.to = to;
+			this.threshold = threshold;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from <= threshold) {
+				fisherYates(t, source, from, to);
+			} else {
+				int mid = from + ((to - from) >>> 1);
+				// split in a fixed order so that the outcome is independent of scheduling
+				Source left = source.split();
+				Source right = source.split();
+				invokeAll(new ShuffleTask(t, left, from, mid, threshold), new ShuffleTask(t, right, mid, to, threshold));
+				merge(t, source, from, mid, to);
+			}
+		}
+
+	}
+
+}
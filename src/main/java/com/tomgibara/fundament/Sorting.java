@@ -0,0 +1,394 @@
+/*
+ * Copyright 2016 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.fundament;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntBinaryOperator;
+
+/**
+ * Sorts and selects the elements of any {@link Transposable} in place. The
+ * elements are ordered by an index comparator: a function that compares the
+ * elements currently at two indices, returning a negative value, zero, or a
+ * positive value as the first is less than, equal to, or greater than the
+ * second. Because the elements are only ever accessed through the comparator
+ * and moved through transpositions, several parallel arrays, or records
+ * stored off-heap, can be sorted together without boxing and without
+ * allocating an array of indices.
+ *
+ * All ranges are specified by an inclusive lower index and an exclusive
+ * upper index. Apart from {@link #stableSort(Transposable, int, int, IntBinaryOperator)},
+ * the methods of this class do not preserve the order of equal elements.
+ *
+ * @author Tom Gibara
+ */
+
+public final class Sorting {
+
+	// ranges at most this size are insertion sorted
+	private static final int INSERTION_THRESHOLD = 16;
+	// the size of the blocks that are insertion sorted before stable merging
+	private static final int STABLE_BLOCK_SIZE = 20;
+
+	/**
+	 * Sorts a range of elements using an introsort: a quicksort that falls
+	 * back to heapsort if it recurses too deeply, so that sorting takes
+	 * O(n log n) time in the worst case.
+	 *
+	 * @param t
+	 *            the elements to be sorted
+	 * @param from
+	 *            the index of the first element in the range
+	 * @param to
+	 *            the index after the last element in the range
+	 * @param comparator
+	 *            compares the elements at two indices
+	 */
+
+	public static void sort(Transposable t, int from, int to, IntBinaryOperator comparator) {
+		checkArgs(t, from, to, comparator);
+		introsort(t, comparator, from, to - 1, depthLimit(to - from));
+	}
+
+	/**
+	 * Sorts a range of elements, preserving the order of equal elements. The
+	 * sort is performed in place, without any auxiliary storage, by
+	 * symmetrically merging insertion sorted blocks; it performs O(n log n)
+	 * comparisons and O(n log n log n) transpositions.
+	 *
+	 * @param t
+	 *            the elements to be sorted
+	 * @param from
+	 *            the index of the first element in the range
+	 * @param to
+	 *            the index after the last element in the range
+	 * @param comparator
+	 *            compares the elements at two indices
+	 */
+
+	public static void stableSort(Transposable t, int from, int to, IntBinaryOperator comparator) {
+		checkArgs(t, from, to, comparator);
+		int blockSize = STABLE_BLOCK_SIZE;
+		int a = from;
+		while (to - a > blockSize) {
+			insertionSort(t, comparator, a, a + blockSize - 1);
+			a += blockSize;
+		}
+		insertionSort(t, comparator, a, to - 1);
+		while (blockSize < to - from) {
+			a = from;
+			while ((long) to - a >= 2L * blockSize) {
+				symMerge(t, comparator, a, a + blockSize, a + 2 * blockSize);
+				a += 2 * blockSize;
+			}
+			if (to - a > blockSize) symMerge(t, comparator, a, a + blockSize, to);
+			if (blockSize > Integer.MAX_VALUE / 2) break;
+			blockSize *= 2;
+		}
+	}
+
+	/**
+	 * Partially sorts a range of elements so that the smallest elements are
+	 * sorted at the start of the range. On return, the elements between
+	 * <code>from</code> and <code>mid</code> are the smallest elements of the
+	 * range in sorted order; the order of the remaining elements is
+	 * unspecified.
+	 *
+	 * @param t
+	 *            the elements to be sorted
+	 * @param from
+	 *            the index of the first element in the range
+	 * @param mid
+	 *            the index after the last element to be sorted
+	 * @param to
+	 *            the index after the last element in the range
+	 * @param comparator
+	 *            compares the elements at two indices
+	 */
+
+	public static void partialSort(Transposable t, int from, int mid, int to, IntBinaryOperator comparator) {
+		checkArgs(t, from, to, comparator);
+		if (mid < from) throw new IllegalArgumentException("mid less than from");
+		if (mid > to) throw new IllegalArgumentException("mid greater than to");
+		if (mid == from) return;
+		if (mid < to) select(t, comparator, from, to - 1, mid - 1);
+		introsort(t, comparator, from, mid - 1, depthLimit(mid - from));
+	}
+
+	/**
+	 * Moves the element that would occupy the nth position of a sorted range
+	 * into that position. On return, no element before the nth position is
+	 * greater than it, and no element after it is less than it. Selection
+	 * takes linear time on average.
+	 *
+	 * @param t
+	 *            the elements from which an element is selected
+	 * @param from
+	 *            the index of the first element in the range
+	 * @param n
+	 *            the index at which the selected element is placed
+	 * @param to
+	 *            the index after the last element in the range
+	 * @param comparator
+	 *            compares the elements at two indices
+	 */
+
+	public static void select(Transposable t, int from, int n, int to, IntBinaryOperator comparator) {
+		checkArgs(t, from, to, comparator);
+		if (n < from) throw new IllegalArgumentException("n less than from");
+		if (n >= to) throw new IllegalArgumentException("n not less than to");
+		select(t, comparator, from, to - 1, n);
+	}
+
+	/**
+	 * Sorts a range of elements using a quicksort that divides the work
+	 * between the threads of the common fork-join pool. The comparator must
+	 * be safe for concurrent use, and the transposable must support
+	 * concurrent transpositions over disjoint pairs of indices, as is the
+	 * case for transpositions that only swap array elements.
+	 *
+	 * @param t
+	 *            the elements to be sorted
+	 * @param from
+	 *            the index of the first element in the range
+	 * @param to
+	 *            the index after the last element in the range
+	 * @param comparator
+	 *            compares the elements at two indices
+	 * @param threshold
+	 *            the number of elements below which the work will not be
+	 *            split
+	 */
+
+	public static void parallelSort(Transposable t, int from, int to, IntBinaryOperator comparator, int threshold) {
+		checkArgs(t, from, to, comparator);
+		Bulk.checkThreshold(threshold);
+		int length = to - from;
+		if (length <= threshold) {
+			introsort(t, comparator, from, to - 1, depthLimit(length));
+		} else {
+			ForkJoinPool.commonPool().invoke(new SortTask(t, comparator, from, to - 1, depthLimit(length), threshold));
+		}
+	}
+
+	// package scoped methods
+
+	static void checkArgs(Transposable t, int from, int to, Object comparator) {
+		if (t == null) throw new IllegalArgumentException("null t");
+		if (comparator == null) throw new IllegalArgumentException("null comparator");
+		if (from < 0) throw new IllegalArgumentException("negative from");
+		if (to < from) throw new IllegalArgumentException("to less than from");
+	}
+
+	// private helper methods - all ranges are inclusive
+
+	private static int depthLimit(int length) {
+		return 2 * (32 - Integer.numberOfLeadingZeros(length));
+	}
+
+	private static void introsort(Transposable t, IntBinaryOperator c, int lo, int hi, int depth) {
+		while (hi - lo >= INSERTION_THRESHOLD) {
+			if (depth-- == 0) {
+				heapsort(t, c, lo, hi);
+				return;
+			}
+			int p = partition(t, c, lo, hi);
+			// recurse into the smaller part to bound the stack depth
+			if (p - lo < hi - p) {
+				introsort(t, c, lo, p - 1, depth);
+				lo = p + 1;
+			} else {
+				introsort(t, c, p + 1, hi, depth);
+				hi = p - 1;
+			}
+		}
+		insertionSort(t, c, lo, hi);
+	}
+
+	private static void select(Transposable t, IntBinaryOperator c, int lo, int hi, int n) {
+		int depth = depthLimit(hi - lo + 1);
+		while (hi - lo >= INSERTION_THRESHOLD) {
+			if (depth-- == 0) {
+				heapsort(t, c, lo, hi);
+				return;
+			}
+			int p = partition(t, c, lo, hi);
+			if (p == n) return;
+			if (n < p) {
+				hi = p - 1;
+			} else {
+				lo = p + 1;
+			}
+		}
+		insertionSort(t, c, lo, hi);
+	}
+
+	// partitions about the median of three elements, returning the final index of the pivot
+	private static int partition(Transposable t, IntBinaryOperator c, int lo, int hi) {
+		int mid = lo + ((hi - lo) >>> 1);
+		if (c.applyAsInt(mid, lo) < 0) t.transpose(mid, lo);
+		if (c.applyAsInt(hi, lo) < 0) t.transpose(hi, lo);
+		if (c.applyAsInt(hi, mid) < 0) t.transpose(hi, mid);
+		t.transpose(lo, mid);
+		int i = lo;
+		int j = hi + 1;
+		while (true) {
+			while (c.applyAsInt(++i, lo) < 0) if (i == hi) break;
+			while (c.applyAsInt(lo, --j) < 0) if (j == lo) break;
+			if (i >= j) break;
+			t.transpose(i, j);
+		}
+		t.transpose(lo, j);
+		return j;
+	}
+
+	private static void insertionSort(Transposable t, IntBinaryOperator c, int lo, int hi) {
+		for (int i = lo + 1; i <= hi; i++) {
+			for (int j = i; j > lo && c.applyAsInt(j, j - 1) < 0; j--) {
+				t.transpose(j, j - 1);
+			}
+		}
+	}
+
+	private static void heapsort(Transposable t, IntBinaryOperator c, int lo, int hi) {
+		int n = hi - lo + 1;
+		for (int k = n / 2 - 1; k >= 0; k--) {
+			sink(t, c, lo, k, n);
+		}
+		while (n > 1) {
+			t.transpose(lo, lo + --n);
+			sink(t, c, lo, 0, n);
+		}
+	}
+
+	private static void sink(Transposable t, IntBinaryOperator c, int lo, int k, int n) {
+		while (2 * k + 1 < n) {
+			int j = 2 * k + 1;
+			if (j + 1 < n && c.applyAsInt(lo + j, lo + j + 1) < 0) j++;
+			if (c.applyAsInt(lo + k, lo + j) >= 0) break;
+			t.transpose(lo + k, lo + j);
+			k = j;
+		}
+	}
+
+	// merges the sorted ranges [a, m) and [m, b) stably, using only transpositions
+	private static void symMerge(Transposable t, IntBinaryOperator c, int a, int m, int b) {
+		if (m - a == 1) {
+			int i = m;
+			int j = b;
+			while (i < j) {
+				int h = (i + j) >>> 1;
+				if (c.applyAsInt(h, a) < 0) i = h + 1; else j = h;
+			}
+			for (int k = a; k < i - 1; k++) {
+				t.transpose(k, k + 1);
+			}
+			return;
+		}
+		if (b - m == 1) {
+			int i = a;
+			int j = m;
+			while (i < j) {
+				int h = (i + j) >>> 1;
+				if (c.applyAsInt(m, h) >= 0) i = h + 1; else j = h;
+			}
+			for (int k = m; k > i; k--) {
+				t.transpose(k, k - 1);
+			}
+			return;
+		}
+		int mid = (a + b) >>> 1;
+		long n = (long) mid + m;
+		int start;
+		int r;
+		if (m > mid) {
+			start = (int) (n - b);
+			r = mid;
+		} else {
+			start = a;
+			r = m;
+		}
+		int p = (int) (n - 1);
+		while (start < r) {
+			int h = (start + r) >>> 1;
+			if (c.applyAsInt(p - h, h) >= 0) start = h + 1; else r = h;
+		}
+		int end = (int) (n - start);
+		if (start < m && m < end) rotate(t, start, m, end);
+		if (a < start && start < mid) symMerge(t, c, a, start, mid);
+		if (mid < end && end < b) symMerge(t, c, mid, end, b);
+	}
+
+	// exchanges the ranges [a, m) and [m, b)
+	private static void rotate(Transposable t, int a, int m, int b) {
+		int i = m - a;
+		int j = b - m;
+		while (i != j) {
+			if (i > j) {
+				swapRange(t, m - i, m, j);
+				i -= j;
+			} else {
+				swapRange(t, m - i, m + j - i, i);
+				j -= i;
+			}
+		}
+		swapRange(t, m - i, m, i);
+	}
+
+	private static void swapRange(Transposable t, int a, int b, int n) {
+		for (int i = 0; i < n; i++) {
+			t.transpose(a + i, b + i);
+		}
+	}
+
+	private Sorting() { }
+
+	private static final class SortTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final Transposable t;
+		private final IntBinaryOperator c;
+		private final int lo;
+		private final int hi;
+		private final int depth;
+		private final int threshold;
+
+		SortTask(Transposable t, IntBinaryOperator c, int lo, int hi, int depth, int threshold) {
+			this.t = t;
+			this.c = c;
+			this.lo = lo;
+			this.hi = hi;
+			this.depth = depth;
+			this.threshold = threshold;
+		}
+
+		@Override
+		protected void compute() {
+			if (hi - lo < threshold) {
+				introsort(t, c, lo, hi, depth);
+			} else if (depth == 0) {
+				heapsort(t, c, lo, hi);
+			} else {
+				int p = partition(t, c, lo, hi);
+				invokeAll(new SortTask(t, c, lo, p - 1, depth - 1, threshold), new SortTask(t, c, p + 1, hi, depth - 1, threshold));
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright 2016 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.fundament;
+
+/**
+ * A bijection from objects to <code>int</code> values that can be applied in
+ * both directions without boxing. The boxed methods of {@link Bijection} are
+ * implemented in terms of the primitive methods so that instances remain
+ * usable wherever a <code>Bijection&lt;T, Integer&gt;</code> is expected.
+ *
+ * @author Tom Gibara
+ *
+ * @param <T>
+ *            the type of the input to the function
+ * @see Bijection#ordinal(Object[])
+ * @see Bijection#ofEnum(Class)
+ */
+
+public interface ToIntBijection<T> extends Bijection<T, Integer> {
+
+	/**
+	 * Applies the bijection to a value.
+	 *
+	 * @param t
+	 *            a value in the domain of the bijection
+	 * @return the int to which the value maps
+	 */
+
+	int applyAsInt(T t);
+
+	/**
+	 * Inverts the function defined by {@link #applyAsInt(Object)}.
+	 *
+	 * @param i
+	 *            a value in the range of the bijection
+	 * @return the value in the domain that maps to <code>i</code>
+	 */
+
+	T disapply(int i);
+
+	/**
+	 * Evaluates whether the supplied value is a valid parameter for the
+	 * {@link #disapply(int)} method. The default implementation returns true
+	 * for all values.
+	 *
+	 * @param i
+	 *            the value being tested
+	 * @return true if the inverse may be applied to the value
+	 */
+
+	default boolean isInRange(int i) { return true; }
+
+	@Override default Integer apply(T t)          { return applyAsInt(t);         }
+	@Override default T disapply(Integer i)       { return disapply(i.intValue()); }
+	@Override default Class<Integer> rangeType()  { return Integer.class;          }
+
+	@Override
+	default boolean isInRange(Object obj) {
+		return obj instanceof Integer && isInRange(((Integer) obj).intValue());
+	}
+
+	/**
+	 * Applies the bijection to a range of values, storing the resulting ints
+	 * at the same indices in a destination array.
+	 *
+	 * @param src
+	 *            the values to which the bijection is applied
+	 * @param dst
+	 *            the array into which the results are written
+	 * @param off
+	 *            the index of the first value
+	 * @param len
+	 *            the number of values to be mapped
+	 * @throws IllegalArgumentException
+	 *             if either array is null or the range exceeds either array
+	 */
+
+	default void applyAll(T[] src, int[] dst, int off, int len) {
+		Bulk.checkRange(src, src == null ? 0 : src.length, dst, dst == null ? 0 : dst.length, off, len);
+		for (int i = off, lim = off + len; i < lim; i++) {
+			dst[i] = applyAsInt(src[i]);
+		}
+	}
+
+	/**
+	 * Inverts the bijection over a range of ints, storing the results at the
+	 * same indices in a destination array.
+	 *
+	 * @param src
+	 *            the values to which the inverse is applied
+	 * @param dst
+	 *            the array into which the results are written
+	 * @param off
+	 *            the index of the first value
+	 * @param len
+	 *            the number of values to be mapped
+	 * @throws IllegalArgumentException
+	 *             if either array is null or the range exceeds either array
+	 */
+
+	default void disapplyAll(int[] src, T[] dst, int off, int len) {
+		Bulk.checkRange(src, src == null ? 0 : src.length, dst, dst == null ? 0 : dst.length, off, len);
+		for (int i = off, lim = off + len; i < lim; i++) {
+			dst[i] = disapply(src[i]);
+		}
+	}
+
+}
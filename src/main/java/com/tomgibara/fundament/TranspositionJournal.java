@@ -0,0 +1,263 @@
+/*
+ * Copyright 2016 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.fundament;
+
+import java.util.Arrays;
+
+/**
+ * A {@link Transposable} that records the transpositions it passes to an
+ * underlying target, so that they can be undone or repeated. This supports
+ * speculative reordering, in which many transpositions are applied and then
+ * either kept or rolled back to a checkpoint.
+ *
+ * Transpositions are recorded in a single growable long array, without any
+ * allocation per transposition; each journaled transposition occupies 8
+ * bytes, and growing the array may temporarily leave as many bytes again
+ * unused. Transpositions of an index with itself have no effect and are not
+ * recorded. Journals are not safe for concurrent use.
+ *
+ * @author Tom Gibara
+ * @see Permutations
+ */
+
+public final class TranspositionJournal implements Transposable {
+
+	private static final int INITIAL_CAPACITY = 16;
+
+	/**
+	 * Creates a journal that records the transpositions applied to a target.
+	 *
+	 * @param target
+	 *            the object to which transpositions are passed
+	 * @return a new, empty journal
+	 */
+
+	public static TranspositionJournal over(Transposable target) {
+		if (target == null) throw new IllegalArgumentException("null target");
+		return new TranspositionJournal(target);
+	}
+
+	private static long entry(int i, int j) {
+		return ((long) i << 32) | (j & 0xffffffffL);
+	}
+
+	private static int first(long entry) {
+		return (int) (entry >>> 32);
+	}
+
+	private static int second(long entry) {
+		return (int) entry;
+	}
+
+	private final Transposable target;
+	private long[] entries = new long[INITIAL_CAPACITY];
+	private int size = 0;
+
+	private TranspositionJournal(Transposable target) {
+		this.target = target;
+	}
+
+	/**
+	 * The number of transpositions recorded.
+	 *
+	 * @return the size of the journal
+	 */
+
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Marks the current state of the target. The returned value may be
+	 * passed to {@link #rollback(int)} to restore this state, provided that
+	 * the journal has not since been rolled back past it, cleared or
+	 * compacted.
+	 *
+	 * @return a checkpoint
+	 */
+
+	public int checkpoint() {
+		return size;
+	}
+
+	/**
+	 * Restores the target to its state at a checkpoint by applying the
+	 * transpositions recorded since the checkpoint in reverse order. The
+	 * undone transpositions are removed from the journal.
+	 *
+	 * @param checkpoint
+	 *            a value previously returned by {@link #checkpoint()}
+	 */
+
+	public void rollback(int checkpoint) {
+		checkCheckpoint(checkpoint);
+		for (int k = size - 1; k >= checkpoint; k--) {
+			long entry = entries[k];
+			target.transpose(first(entry), second(entry));
+		}
+		size = checkpoint;
+	}
+
+	/**
+	 * Discards every recorded transposition without changing the target.
+	 * This is typically called to accept the changes made since the journal
+	 * was created or last cleared.
+	 */
+
+	public void clear() {
+		size = 0;
+		if (entries.length > INITIAL_CAPACITY) entries = new long[INITIAL_CAPACITY];
+	}
+
+	/**
+	 * Applies every recorded transposition, in order, to another object.
+	 *
+	 * @param other
+	 *            the object to which the transpositions are applied
+	 */
+
+	public void replay(Transposable other) {
+		replay(0, size, other);
+	}
+
+	/**
+	 * Applies the transpositions recorded between two checkpoints, in order,
+	 * to another object.
+	 *
+	 * @param from
+	 *            the earlier checkpoint
+	 * @param to
+	 *            the later checkpoint
+	 * @param other
+	 *            the object to which the transpositions are applied
+	 */
+
+	public void replay(int from, int to, Transposable other) {
+		if (other == null) throw new IllegalArgumentException("null other");
+		checkCheckpoint(from);
+		checkCheckpoint(to);
+		if (from > to) throw new IllegalArgumentException("from exceeds to");
+		for (int k = from; k < to; k++) {
+			long entry = entries[k];
+			other.transpose(first(entry), second(entry));
+		}
+	}
+
+	/**
+	 * The permutation effected by the recorded transpositions, in the form
+	 * accepted by {@link Permutations#apply(int[], Transposable...)}: element
+	 * <i>i</i> of the returned array is the index at which the element now at
+	 * index <i>i</i> was located before the recorded transpositions.
+	 *
+	 * @param length
+	 *            the length of the permutation, which must exceed every
+	 *            recorded index
+	 * @return the recorded permutation
+	 */
+
+	public int[] toPermutation(int length) {
+		if (length < 0) throw new IllegalArgumentException("negative length");
+		int[] perm = new int[length];
+		for (int i = 0; i < length; i++) {
+			perm[i] = i;
+		}
+		for (int k = 0; k < size; k++) {
+			long entry = entries[k];
+			int i = first(entry);
+			int j = second(entry);
+			if (i >= length || j >= length) throw new IllegalArgumentException("length does not exceed recorded indices");
+			int p = perm[i];
+			perm[i] = perm[j];
+			perm[j] = p;
+		}
+		return perm;
+	}
+
+	/**
+	 * Replaces the recorded transpositions with the fewest transpositions
+	 * that effect the same permutation; this is one fewer than the length
+	 * of each of the permutation's cycles, so at most one fewer than the
+	 * number of distinct indices recorded. Rollback and replay behave as
+	 * before, but existing checkpoints other than zero become invalid.
+	 */
+
+	public void compact() {
+		// the permutation is computed over the distinct indices only, so that memory is proportional to the journal
+		int[] indices = new int[2 * size];
+		for (int k = 0; k < size; k++) {
+			long entry = entries[k];
+			indices[2 * k] = first(entry);
+			indices[2 * k + 1] = second(entry);
+		}
+		Arrays.sort(indices);
+		int length = 0;
+		for (int k = 0; k < indices.length; k++) {
+			if (k == 0 || indices[k] != indices[k - 1]) indices[length++] = indices[k];
+		}
+		int[] perm = new int[length];
+		for (int r = 0; r < length; r++) {
+			perm[r] = r;
+		}
+		for (int k = 0; k < size; k++) {
+			long entry = entries[k];
+			int i = Arrays.binarySearch(indices, 0, length, first(entry));
+			int j = Arrays.binarySearch(indices, 0, length, second(entry));
+			int p = perm[i];
+			perm[i] = perm[j];
+			perm[j] = p;
+		}
+		size = 0;
+		for (int s = 0; s < length; s++) {
+			if (perm[s] == s) continue;
+			int i = s;
+			int j = perm[i];
+			perm[i] = i;
+			while (j != s) {
+				append(indices[i], indices[j]);
+				i = j;
+				j = perm[i];
+				perm[i] = i;
+			}
+		}
+		if (entries.length > Math.max(INITIAL_CAPACITY, 2 * size)) entries = Arrays.copyOf(entries, Math.max(INITIAL_CAPACITY, size));
+	}
+
+	// transposable
+
+	@Override
+	public void transpose(int i, int j) {
+		if (i == j) return;
+		target.transpose(i, j);
+		append(i, j);
+	}
+
+	// private helper methods
+
+	private void append(int i, int j) {
+		if (size == entries.length) {
+			if (size == Integer.MAX_VALUE - 8) throw new IllegalStateException("journal full");
+			entries = Arrays.copyOf(entries, (int) Math.min(Integer.MAX_VALUE - 8, 2L * size));
+		}
+		entries[size++] = entry(i, j);
+	}
+
+	private void checkCheckpoint(int checkpoint) {
+		if (checkpoint < 0) throw new IllegalArgumentException("negative checkpoint");
+		if (checkpoint > size) throw new IllegalArgumentException("invalid checkpoint");
+	}
+
+}
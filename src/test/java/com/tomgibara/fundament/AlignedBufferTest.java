@@ -0,0 +1,119 @@
+/*
+ * Copyright 2016 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.fundament;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.StandardOpenOption;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class AlignedBufferTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testAllocation() {
+		AlignedAllocator allocator = AlignedAllocator.create(AlignedAllocator.CACHE_LINE, 4096);
+		AlignedBuffer a = allocator.allocate(100);
+		AlignedBuffer b = allocator.allocate(64);
+		AlignedBuffer c = allocator.allocate(10000);
+		assertEquals(128, a.size());
+		assertEquals(64, b.size());
+		assertEquals(10048, c.size());
+		assertTrue(a.isAligned());
+		assertTrue(b.isAligned());
+		assertTrue(c.isAligned());
+		assertSame(a, a.aligned());
+		assertEquals(2, allocator.slabCount());
+
+		a.buffer().putLong(0, 42L);
+		a.release();
+		AlignedBuffer d = allocator.allocate(128);
+		assertEquals(1L, allocator.reuseCount());
+		assertEquals(42L, d.buffer().getLong(0));
+		try {
+			a.buffer();
+			fail();
+		} catch (IllegalStateException e) {
+			/* expected */
+		}
+	}
+
+	@Test
+	public void testAlignedCopy() {
+		ByteBuffer raw = ByteBuffer.allocateDirect(256);
+		for (int i = 0; i < 256; i++) {
+			raw.put(i, (byte) i);
+		}
+		int position = AlignedBuffer.alignmentOffset(raw, 64) == 0L ? 1 : 0;
+		((Buffer) raw).position(position);
+		AlignedBuffer unaligned = AlignedBuffer.wrap(raw, 64);
+		assertEquals(256 - position, unaligned.size());
+		assertFalse(unaligned.isAligned());
+		AlignedBuffer aligned = unaligned.aligned();
+		assertNotSame(unaligned, aligned);
+		assertTrue(aligned.isAligned());
+		assertEquals(256, aligned.size());
+		ByteBuffer expected = unaligned.buffer();
+		ByteBuffer actual = aligned.buffer();
+		for (int i = 0; i < 256; i++) {
+			assertEquals(i < unaligned.size() ? expected.get(i) : 0, actual.get(i));
+		}
+	}
+
+	@Test
+	public void testChannels() throws Exception {
+		File file = folder.newFile();
+		AlignedAllocator allocator = AlignedAllocator.create(AlignedAllocator.PAGE, 4 * AlignedAllocator.PAGE);
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			AlignedBuffer out = allocator.allocate(2 * AlignedAllocator.PAGE);
+			ByteBuffer b = out.buffer();
+			while (b.hasRemaining()) b.putInt(b.position());
+			out.writeTo(channel, AlignedAllocator.PAGE);
+			assertEquals(3 * AlignedAllocator.PAGE, channel.size());
+
+			AlignedBuffer in = allocator.allocate(4 * AlignedAllocator.PAGE);
+			assertEquals(2 * AlignedAllocator.PAGE, in.readFrom(channel, AlignedAllocator.PAGE));
+			assertEquals(AlignedAllocator.PAGE - 4, in.buffer().getInt(AlignedAllocator.PAGE - 4));
+
+			AlignedBuffer mapped = AlignedBuffer.map(channel, MapMode.READ_ONLY, AlignedAllocator.PAGE, AlignedAllocator.PAGE);
+			assertTrue(mapped.isAligned());
+			assertEquals(8, mapped.buffer().getInt(8));
+			try {
+				AlignedBuffer.map(channel, MapMode.READ_ONLY, 1, AlignedAllocator.PAGE);
+				fail();
+			} catch (IllegalArgumentException e) {
+				/* expected */
+			}
+		}
+	}
+
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright 2016 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.fundament;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class ArrayAlignerTest {
+
+	// a fixed length bit array stored at an arbitrary offset
+	private static final class Bits implements Alignable<Bits> {
+
+		private final long[] words;
+		private final int length;
+		private long offset;
+		private ArrayAligner aligner = null;
+
+		Bits(long[] words, long offset, int length) {
+			this.words = words;
+			this.offset = offset;
+			this.length = length;
+		}
+
+		boolean get(int index) {
+			long i = aligner == null ? index + offset : aligner.index(index);
+			return (words[(int) (i >> 6)] & (1L << i)) != 0L;
+		}
+
+		@Override
+		public boolean isAligned() {
+			return offset == 0L;
+		}
+
+		@Override
+		public Bits alignedCopy() {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public boolean alignIncrementally(long budget) {
+			if (offset == 0L) return true;
+			if (aligner == null) aligner = ArrayAligner.forBits(words, offset, length);
+			if (!aligner.step(budget)) return false;
+			offset = 0L;
+			aligner = null;
+			return true;
+		}
+
+		@Override
+		public double alignmentProgress() {
+			return aligner == null ? (offset == 0L ? 1.0 : 0.0) : aligner.progress();
+		}
+
+	}
+
+	@Test
+	public void testBitsReadableThroughout() {
+		Random random = new Random(0L);
+		for (int offset : new int[] { 0, 1, 63, 64, 65, 200 }) {
+			long[] words = new long[40];
+			for (int i = 0; i < words.length; i++) {
+				words[i] = random.nextLong();
+			}
+			int length = words.length * 64 - offset - random.nextInt(100);
+			Bits bits = new Bits(words, offset, length);
+			boolean[] expected = new boolean[length];
+			for (int i = 0; i < length; i++) {
+				expected[i] = bits.get(i);
+			}
+			double progress = bits.alignmentProgress();
+			while (!bits.alignIncrementally(100)) {
+				assertTrue(bits.alignmentProgress() > progress);
+				progress = bits.alignmentProgress();
+				for (int i = 0; i < length; i++) {
+					assertEquals(expected[i], bits.get(i));
+				}
+			}
+			assertTrue(bits.isAligned());
+			assertEquals(1.0, bits.alignmentProgress(), 0.0);
+			for (int i = 0; i < length; i++) {
+				assertEquals(expected[i], bits.get(i));
+			}
+			// bits beyond the data are cleared by shifting
+			int last = (length - 1) >> 6;
+			if (offset > 0) assertEquals(0L, words[last] & ~(-1L >>> (63 - ((length - 1) & 63))));
+		}
+	}
+
+	@Test
+	public void testElements() {
+		String[] strs = { "x", "x", "x", "a", "b", "c", "d", "e" };
+		ArrayAligner aligner = ArrayAligner.forElements(strs, 3, 5);
+		assertFalse(aligner.step(2));
+		assertEquals(0, aligner.index(0));
+		assertEquals(1, aligner.index(1));
+		assertEquals(5, aligner.index(2));
+		assertEquals(0.4, aligner.progress(), 0.0);
+		assertTrue(aligner.step(10));
+		assertTrue(aligner.isComplete());
+		assertArrayEquals(new String[] { "a", "b", "c", "d", "e", "c", "d", "e" }, strs);
+	}
+
+	@Test
+	public void testDefaults() {
+		Alignable<Object> unaligned = new Alignable<Object>() {
+			@Override public boolean isAligned()  { return false;        }
+			@Override public Object alignedCopy() { return new Object(); }
+		};
+		assertFalse(unaligned.alignIncrementally(1));
+		assertFalse(unaligned.alignInPlace());
+		assertEquals(0.0, unaligned.alignmentProgress(), 0.0);
+	}
+
+}
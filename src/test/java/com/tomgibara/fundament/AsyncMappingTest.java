@@ -0,0 +1,109 @@
+/*
+ * Copyright 2016 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.fundament;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class AsyncMappingTest {
+
+	@Test
+	public void testCompose() throws Exception {
+		Mapping<String, Integer> f = Mapping.fromFunction(String.class, Integer.class, s -> Integer.parseInt(s));
+		Mapping<Integer, Integer> g = Mapping.fromUnaryOperator(Integer.class, i -> 2 * i + 1);
+		AsyncMapping<Integer, Integer> ag = AsyncMapping.fromMapping(g);
+		AsyncMapping<String, Integer> h = ag.compose(AsyncMapping.fromMapping(f));
+		assertEquals(String.class, h.domainType());
+		assertEquals(Integer.class, h.rangeType());
+		assertTrue(h.isInDomain("1"));
+		assertFalse(h.isInDomain(1));
+		assertEquals(5, h.applyAsync("2").toCompletableFuture().get().intValue());
+		assertEquals(7, ag.compose(f).applyAsync("3").toCompletableFuture().get().intValue());
+
+		CompletableFuture<Integer> failed = ag.compose(f).applyAsync("x").toCompletableFuture();
+		try {
+			failed.get();
+			fail();
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof NumberFormatException);
+		}
+	}
+
+	@Test
+	public void testDefaultExecutorBounded() {
+		// runtimes without virtual threads fall back to a fixed pool
+		if (!(Async.defaultExecutor() instanceof ThreadPoolExecutor)) return;
+		ThreadPoolExecutor executor = (ThreadPoolExecutor) Async.defaultExecutor();
+		assertEquals(Runtime.getRuntime().availableProcessors(), executor.getMaximumPoolSize());
+	}
+
+	@Test
+	public void testConcurrencyLimit() throws Exception {
+		AtomicInteger active = new AtomicInteger();
+		AtomicInteger peak = new AtomicInteger();
+		Mapping<Integer, Integer> slow = Mapping.fromUnaryOperator(Integer.class, i -> {
+			int count = active.incrementAndGet();
+			peak.accumulateAndGet(count, Math::max);
+			try {
+				Thread.sleep(2);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			active.decrementAndGet();
+			return i + 1;
+		});
+		ExecutorService executor = Executors.newFixedThreadPool(16);
+		try {
+			AsyncMapping<Integer, Integer> m = AsyncMapping.fromMapping(slow, executor, 3);
+			List<CompletableFuture<Integer>> futures = new ArrayList<>();
+			for (int i = 0; i < 100; i++) {
+				futures.add(m.applyAsync(i).toCompletableFuture());
+			}
+			for (int i = 0; i < 100; i++) {
+				assertEquals(i + 1, futures.get(i).get().intValue());
+			}
+			assertTrue(peak.get() <= 3);
+		} finally {
+			executor.shutdown();
+			executor.awaitTermination(10, TimeUnit.SECONDS);
+		}
+	}
+
+	@Test
+	public void testRejection() throws Exception {
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		executor.shutdown();
+		AsyncMapping<Integer, Integer> m = AsyncMapping.fromMapping(Mapping.fromUnaryOperator(Integer.class, i -> i), executor, 2);
+		assertTrue(m.applyAsync(1).toCompletableFuture().isCompletedExceptionally());
+		assertTrue(m.applyAsync(2).toCompletableFuture().isCompletedExceptionally());
+	}
+
+}
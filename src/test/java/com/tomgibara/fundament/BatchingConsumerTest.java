@@ -0,0 +1,223 @@
+/*
+ * Copyright 2016 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.fundament;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.tomgibara.fundament.BatchingConsumer.Limits;
+import com.tomgibara.fundament.BatchingConsumer.Sink;
+
+public class BatchingConsumerTest {
+
+	private static final class RecordingSink implements Sink<String> {
+
+		final List<List<String>> batches = new ArrayList<>();
+		boolean closed = false;
+		boolean failing = false;
+
+		@Override
+		public synchronized void write(String[] values, int off, int len) throws IOException {
+			if (failing) throw new IOException("failed");
+			batches.add(new ArrayList<>(Arrays.asList(values).subList(off, off + len)));
+			notifyAll();
+		}
+
+		@Override
+		public void close() {
+			closed = true;
+		}
+
+		synchronized int size() {
+			return batches.size();
+		}
+
+	}
+
+	@Test
+	public void testSynchronous() throws IOException {
+		RecordingSink sink = new RecordingSink();
+		Limits<String> limits = Limits.ofCount(3).bytes(5, String::length);
+		BatchingConsumer<String> c = BatchingConsumer.synchronous(String.class, limits, sink);
+		c.consume("a");
+		c.consume("b");
+		c.consume("c");
+		assertEquals(1, sink.size());
+		c.consume("dddd");
+		c.consume("ee");
+		assertEquals(2, sink.size());
+		c.consume("f");
+		assertEquals(1, c.bufferedCount());
+		c.flush();
+		c.close();
+		assertTrue(sink.closed);
+		assertEquals(Arrays.asList(Arrays.asList("a", "b", "c"), Arrays.asList("dddd", "ee"), Arrays.asList("f")), sink.batches);
+		try {
+			c.consume("g");
+			fail();
+		} catch (IllegalStateException e) {
+			/* expected */
+		}
+	}
+
+	@Test
+	public void testSynchronousFailure() throws IOException {
+		RecordingSink sink = new RecordingSink();
+		BatchingConsumer<String> c = BatchingConsumer.synchronous(String.class, Limits.ofCount(2), sink);
+		sink.failing = true;
+		c.consume("a");
+		try {
+			c.consume("b");
+			fail();
+		} catch (UncheckedIOException e) {
+			/* expected */
+		}
+		try {
+			c.flush();
+			fail();
+		} catch (IOException e) {
+			/* expected */
+		}
+	}
+
+	@Test
+	public void testBackground() throws Exception {
+		RecordingSink sink = new RecordingSink();
+		BatchingConsumer<String> c = BatchingConsumer.background(String.class, Limits.ofCount(10).linger(20, TimeUnit.MILLISECONDS), sink, Thread::new);
+		for (int i = 0; i < 25; i++) {
+			c.consume(Integer.toString(i));
+		}
+		// the final partial batch is written once its linger time expires
+		synchronized (sink) {
+			long deadline = System.currentTimeMillis() + 5000;
+			while (sink.batches.size() < 3 && System.currentTimeMillis() < deadline) sink.wait(100);
+		}
+		assertEquals(3, sink.size());
+		assertEquals(5, sink.batches.get(2).size());
+		c.consume("x");
+		c.close();
+		assertTrue(sink.closed);
+		assertEquals(4, sink.size());
+	}
+
+	@Test
+	public void testBackgroundFailure() throws Exception {
+		RecordingSink sink = new RecordingSink();
+		sink.failing = true;
+		BatchingConsumer<String> c = BatchingConsumer.background(String.class, Limits.ofCount(1), sink, Thread::new);
+		try {
+			for (int i = 0; i < 100; i++) {
+				c.consume("a");
+			}
+			fail();
+		} catch (UncheckedIOException e) {
+			/* expected */
+		}
+		try {
+			c.close();
+			fail();
+		} catch (IOException e) {
+			/* expected */
+		}
+	}
+
+	@Test
+	public void testSlowBackgroundSink() throws Exception {
+		List<String> written = new ArrayList<>();
+		Sink<String> sink = new Sink<String>() {
+			@Override
+			public void write(String[] values, int off, int len) throws IOException {
+				try {
+					Thread.sleep(200L);
+				} catch (InterruptedException e) {
+					throw new IOException(e);
+				}
+				synchronized (written) {
+					written.addAll(Arrays.asList(values).subList(off, off + len));
+				}
+			}
+			@Override
+			public void close() { }
+		};
+		BatchingConsumer<String> c = BatchingConsumer.background(String.class, Limits.ofCount(1), sink, Thread::new);
+		// the third value is handed off while the first batch is still being written
+		c.consume("a");
+		c.consume("b");
+		c.consume("c");
+		c.close();
+		assertEquals(Arrays.asList("a", "b", "c"), written);
+	}
+
+	@Test(timeout = 30000L)
+	public void testConcurrentProducers() throws Exception {
+		int threads = 4;
+		int perThread = 50;
+		List<String> written = new ArrayList<>();
+		Sink<String> sink = (values, off, len) -> {
+			if (len < 1 || len > 2) throw new IOException("invalid batch length " + len);
+			try {
+				Thread.sleep(5L);
+			} catch (InterruptedException e) {
+				throw new IOException(e);
+			}
+			synchronized (written) {
+				written.addAll(Arrays.asList(values).subList(off, off + len));
+			}
+		};
+		BatchingConsumer<String> c = BatchingConsumer.background(String.class, Limits.ofCount(2), sink, Thread::new);
+		List<Thread> producers = new ArrayList<>();
+		for (int t = 0; t < threads; t++) {
+			int id = t;
+			producers.add(new Thread(() -> {
+				for (int i = 0; i < perThread; i++) {
+					c.consume(id + ":" + i);
+				}
+			}));
+		}
+		for (Thread producer : producers) producer.start();
+		for (Thread producer : producers) producer.join(10000L);
+		for (Thread producer : producers) assertTrue(!producer.isAlive());
+		c.close();
+		assertEquals(threads * perThread, written.size());
+		assertEquals(threads * perThread, new HashSet<>(written).size());
+	}
+
+	@Test
+	public void testBackgroundError() throws Exception {
+		Sink<String> sink = (values, off, len) -> { throw new AssertionError("sink error"); };
+		BatchingConsumer<String> c = BatchingConsumer.background(String.class, Limits.ofCount(1), sink, Thread::new);
+		c.consume("a");
+		try {
+			c.close();
+			fail();
+		} catch (IOException e) {
+			assertTrue(e.getCause() instanceof AssertionError);
+		}
+	}
+
+}
@@ -17,9 +17,17 @@
 package com.tomgibara.fundament;
 
 import static java.lang.Integer.parseInt;
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import org.junit.Assert;
 import org.junit.Test;
@@ -112,4 +120,133 @@ public class BijectionTest {
 		Bijection<Integer, String> c = i.compose(f.inverse());
 		assertEquals(f.inverse().apply(3), c.apply(3));
 	}
+
+	@Test
+	public void testNormalization() {
+		Bijection<Integer, Integer> c = f.compose(f.inverse());
+		assertEquals(5, c.apply(5).intValue());
+		assertEquals(0, ((Composition.BijectiveChain<?, ?>) c).stages.length);
+		// domain is retained from the original bijections
+		assertTrue(c.isInDomain(5));
+		assertFalse(c.isInDomain(-5));
+
+		Bijection<Integer, Integer> i = Bijection.identity(Integer.class);
+		Bijection<String, Integer> h = g.compose(g.inverse()).compose(i).compose(g).compose(f).compose(Bijection.identity(String.class));
+		assertEquals(2, ((Composition.BijectiveChain<?, ?>) h).stages.length);
+		assertEquals(7, h.apply("3").intValue());
+		assertEquals("3", h.disapply(7));
+
+		assertSame(h.inverse(), h.inverse());
+		assertSame(h, h.inverse().inverse());
+		assertEquals("3", h.inverse().apply(7));
+		assertSame(g, g.inverse().inverse());
+
+		// the inverses of bijections provided by the package are cached
+		Bijection<String, Integer> p = Bijection.fromFunctions(String.class, Integer.class, Integer::parseInt, Object::toString);
+		assertSame(p.inverse(), p.inverse());
+		Bijection<String, Integer> a = Bijection.fromArrays(new String[] { "one", "two" }, new Integer[] { 1, 2 });
+		assertSame(a.inverse(), a.inverse());
+		assertEquals(0, ((Composition.BijectiveChain<?, ?>) a.inverse().compose(a)).stages.length);
+	}
+
+	@Test
+	public void testBulk() {
+		Bijection<String, Integer> h = g.compose(f);
+		String[] src = { "0", "1", "2", "3" };
+		Integer[] dst = h.applyAll(src);
+		assertArrayEquals(new Integer[] { 1, 3, 5, 7 }, dst);
+		assertArrayEquals(src, h.disapplyAll(dst));
+		assertArrayEquals(src, h.disapplyAllParallel(dst, 1));
+		assertArrayEquals(src, h.inverse().applyAll(dst));
+		assertArrayEquals(dst, h.inverse().disapplyAll(src));
+	}
+
+	@Test
+	public void testTypedBulkStages() {
+		// overrides the bulk methods with typed arrays, which fail if passed Object[]
+		Bijection<String, Integer> typed = new Bijection<String, Integer>() {
+			@Override public Class<Integer> rangeType() { return Integer.class; }
+			@Override public Class<String> domainType() { return String.class;  }
+			@Override public Integer apply(String t)    { return parseInt(t);   }
+			@Override public String disapply(Integer r) { return r.toString();  }
+			@Override
+			public void applyAll(String[] src, Integer[] dst, int off, int len) {
+				for (int i = off; i < off + len; i++) dst[i] = parseInt(src[i]);
+			}
+			@Override
+			public void disapplyAll(Integer[] src, String[] dst, int off, int len) {
+				for (int i = off; i < off + len; i++) dst[i] = src[i].toString();
+			}
+		};
+		Bijection<String, Integer> h = g.compose(typed);
+		String[] src = { "0", "1", "2", "3" };
+		Integer[] dst = { 1, 3, 5, 7 };
+		assertArrayEquals(dst, h.applyAll(src));
+		assertArrayEquals(src, h.disapplyAll(dst));
+		assertArrayEquals(src, h.inverse().applyAll(dst));
+		assertArrayEquals(dst, h.inverse().disapplyAll(src));
+		Bijection<Integer, String> k = typed.inverse().compose(g);
+		assertArrayEquals(new String[] { "1", "3", "5", "7" }, k.applyAll(new Integer[] { 0, 1, 2, 3 }));
+		List<Integer> list = new ArrayList<>();
+		h.applyAll(Arrays.asList(src), list::add);
+		assertEquals(Arrays.asList(dst), list);
+	}
+
+	@Test
+	public void testOfEnum() {
+		ToIntBijection<TimeUnit> b = Bijection.ofEnum(TimeUnit.class);
+		assertEquals(TimeUnit.class, b.domainType());
+		for (TimeUnit unit : TimeUnit.values()) {
+			assertEquals(unit.ordinal(), b.applyAsInt(unit));
+			assertSame(unit, b.disapply(unit.ordinal()));
+		}
+		assertFalse(b.isInRange(TimeUnit.values().length));
+		assertFalse(b.isInRange(-1));
+	}
+
+	@Test
+	public void testOrdinal() {
+		int size = 5000;
+		String[] values = new String[size];
+		for (int i = 0; i < size; i++) {
+			values[i] = "v" + i;
+		}
+		// include values with colliding hash codes
+		values[0] = "Aa";
+		values[1] = "BB";
+		ToIntBijection<String> b = Bijection.ordinal(values);
+		assertEquals(String.class, b.domainType());
+		for (int i = 0; i < size; i++) {
+			assertEquals(i, b.applyAsInt(values[i]));
+			assertEquals(values[i], b.disapply(i));
+		}
+		assertFalse(b.isInDomain("missing"));
+		assertFalse(b.isInDomain("C#"));
+		assertTrue(b.isInDomain("BB"));
+		assertFalse(b.isInRange(size));
+		try {
+			b.applyAsInt("missing");
+			fail();
+		} catch (IllegalArgumentException e) {
+			/* expected */
+		}
+	}
+
+	@Test
+	public void testFromArrays() {
+		Bijection<String, Integer> b = Bijection.fromArrays(new String[] { "one", "two", "three" }, new Integer[] { 1, 2, 3 });
+		assertEquals(String.class, b.domainType());
+		assertEquals(Integer.class, b.rangeType());
+		assertEquals(2, b.apply("two").intValue());
+		assertEquals("three", b.disapply(3));
+		assertTrue(b.isInRange(1));
+		assertFalse(b.isInRange(4));
+		assertFalse(b.isInDomain("four"));
+		try {
+			Bijection.fromArrays(new String[] { "one", "two" }, new Integer[] { 1, 1 });
+			fail();
+		} catch (IllegalArgumentException e) {
+			/* expected */
+		}
+	}
 }
@@ -0,0 +1,138 @@
+/*
+ * Copyright 2016 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.fundament;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+import java.nio.Buffer;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+public class BufferCodecTest {
+
+	private static final class Point {
+		final int x;
+		final String label;
+		Point(int x, String label) { this.x = x; this.label = label; }
+		@Override public boolean equals(Object obj) {
+			if (!(obj instanceof Point)) return false;
+			Point that = (Point) obj;
+			return this.x == that.x && this.label.equals(that.label);
+		}
+		@Override public int hashCode() { return x + label.hashCode(); }
+	}
+
+	private static <T> void assertRoundTrip(BufferCodec<T> codec, T value) {
+		for (ByteBuffer buffer : new ByteBuffer[] { ByteBuffer.allocate(100), ByteBuffer.allocateDirect(100) }) {
+			buffer.position(3);
+			codec.encode(value, buffer);
+			assertEquals(3 + codec.encodedSize(value), buffer.position());
+			buffer.flip().position(3);
+			assertEquals(value, codec.decode(buffer));
+			assertFalse(buffer.hasRemaining());
+		}
+	}
+
+	@Test
+	public void testPrimitives() {
+		assertRoundTrip(BufferCodec.ints(), -7);
+		assertRoundTrip(BufferCodec.longs(), Long.MIN_VALUE);
+		assertRoundTrip(BufferCodec.doubles(), Math.PI);
+		for (int i : new int[] { 0, 1, -1, 63, -64, 64, 1 << 20, Integer.MAX_VALUE, Integer.MIN_VALUE }) {
+			assertRoundTrip(BufferCodec.varInts(), i);
+			assertRoundTrip(BufferCodec.varLongs(), (long) i << 20);
+		}
+		assertRoundTrip(BufferCodec.varLongs(), Long.MAX_VALUE);
+		assertRoundTrip(BufferCodec.varLongs(), Long.MIN_VALUE);
+		assertEquals(1, BufferCodec.varInts().encodedSize(-1));
+		assertEquals(5, BufferCodec.varInts().encodedSize(Integer.MIN_VALUE));
+	}
+
+	@Test
+	public void testStrings() {
+		BufferCodec<String> codec = BufferCodec.utf8();
+		for (String str : new String[] { "", "ascii", "café", "€100", "😀 smile" }) {
+			assertRoundTrip(codec, str);
+			assertEquals(str.getBytes(java.nio.charset.StandardCharsets.UTF_8).length + 1, codec.encodedSize(str));
+		}
+	}
+
+	@Test
+	public void testTruncatedString() {
+		BufferCodec<String> codec = BufferCodec.utf8();
+		for (ByteBuffer buffer : new ByteBuffer[] { ByteBuffer.allocate(16), ByteBuffer.allocateDirect(16) }) {
+			codec.encode("truncated", buffer);
+			// the limit falls within the string's bytes
+			((Buffer) buffer).flip();
+			((Buffer) buffer).limit(buffer.limit() - 1);
+			try {
+				codec.decode(buffer);
+				fail();
+			} catch (BufferUnderflowException e) {
+				/* expected */
+			}
+		}
+	}
+
+	@Test
+	public void testCompound() {
+		BufferCodec<Point> points = BufferCodec.tuple(Point.class, p -> p.x, BufferCodec.varInts(), p -> p.label, BufferCodec.utf8(), Point::new);
+		BufferCodec<List<Point>> codec = BufferCodec.list(points);
+		assertRoundTrip(codec, Arrays.asList(new Point(1, "one"), new Point(-2, "minus two")));
+
+		BufferCodec<Boolean> booleans = BufferCodec.varInts().compose(Bijection.fromFunctions(Boolean.class, Integer.class, b -> b ? 1 : 0, i -> i != 0));
+		assertRoundTrip(booleans, true);
+		assertEquals(Boolean.class, booleans.type());
+	}
+
+	@Test
+	public void testBatch() {
+		BufferCodec<String> codec = BufferCodec.utf8();
+		String[] values = { "a", "bb", "ccc" };
+		assertEquals(9, codec.encodedSize(values, 0, 3));
+		ByteBuffer buffer = ByteBuffer.allocateDirect(9);
+		assertEquals(9, codec.encodeAll(values, 0, 3, buffer));
+		buffer.flip();
+		String[] decoded = new String[3];
+		codec.decodeAll(buffer, decoded, 0, 3);
+		assertEquals(Arrays.asList(values), Arrays.asList(decoded));
+
+		Bijection<String, ByteBuffer> b = codec.asBijection();
+		ByteBuffer encoded = b.apply("xyz");
+		assertEquals(4, encoded.remaining());
+		assertEquals("xyz", b.disapply(encoded));
+		assertEquals(0, encoded.position());
+	}
+
+	@Test
+	public void testLittleEndianBijection() {
+		BufferCodec<Integer> codec = BufferCodec.ints();
+		ByteBuffer buffer = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+		codec.encode(1, buffer);
+		buffer.flip();
+		assertEquals(Integer.valueOf(1), codec.asBijection().disapply(buffer));
+		assertEquals(0, buffer.position());
+	}
+
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2016 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.fundament;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class CachingMappingTest {
+
+	@Test
+	public void testStatistics() {
+		AtomicInteger count = new AtomicInteger();
+		Mapping<Integer, String> m = Mapping.fromFunction(Integer.class, String.class, i -> { count.incrementAndGet(); return i.toString(); });
+		CachingMapping<Integer, String> c = m.cached(100);
+		assertEquals(Integer.class, c.domainType());
+		assertEquals(String.class, c.rangeType());
+		assertTrue(c.isInDomain(1));
+		assertFalse(c.isInDomain("1"));
+
+		assertEquals("1", c.apply(1));
+		assertEquals("1", c.apply(1));
+		assertEquals("2", c.apply(2));
+		assertEquals(2, count.get());
+		assertEquals(1, c.hitCount());
+		assertEquals(2, c.missCount());
+		assertEquals(0, c.evictionCount());
+		assertEquals(2, c.size());
+	}
+
+	@Test
+	public void testEviction() {
+		CachingMapping<Integer, Integer> c = Mapping.fromUnaryOperator(Integer.class, i -> i + 1).cached(40);
+		// a frequently used value should survive a scan
+		for (int i = 0; i < 1000; i++) {
+			c.apply(-1);
+			assertEquals(i + 1, c.apply(i).intValue());
+		}
+		assertTrue(c.size() <= 40);
+		assertEquals(1000 + 1 - c.size(), c.evictionCount());
+		long misses = c.missCount();
+		c.apply(-1);
+		assertEquals(misses, c.missCount());
+	}
+
+	@Test
+	public void testFailure() {
+		AtomicInteger count = new AtomicInteger();
+		CachingMapping<Integer, Integer> c = Mapping.fromUnaryOperator(Integer.class, i -> {
+			if (count.incrementAndGet() == 1) throw new IllegalStateException();
+			return i;
+		}).cached(10);
+		try {
+			c.apply(1);
+			fail();
+		} catch (IllegalStateException e) {
+			/* expected */
+		}
+		assertEquals(1, c.apply(1).intValue());
+		assertEquals(1, c.size());
+	}
+
+	@Test
+	public void testSingleComputation() throws InterruptedException {
+		AtomicInteger count = new AtomicInteger();
+		CountDownLatch latch = new CountDownLatch(1);
+		CachingMapping<Integer, Integer> c = Mapping.fromUnaryOperator(Integer.class, i -> {
+			count.incrementAndGet();
+			try {
+				latch.await();
+			} catch (InterruptedException e) {
+				throw new RuntimeException(e);
+			}
+			return i * 2;
+		}).cached(10);
+		int threads = 8;
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		AtomicInteger total = new AtomicInteger();
+		for (int i = 0; i < threads; i++) {
+			executor.execute(() -> total.addAndGet(c.apply(21)));
+		}
+		Thread.sleep(50L);
+		latch.countDown();
+		executor.shutdown();
+		assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+		assertEquals(1, count.get());
+		assertEquals(threads * 42, total.get());
+	}
+
+	@Test
+	public void testBijection() {
+		AtomicInteger count = new AtomicInteger();
+		Bijection<Integer, String> b = Bijection.fromFunctions(Integer.class, String.class,
+				i -> { count.incrementAndGet(); return i.toString(); },
+				s -> { count.incrementAndGet(); return Integer.valueOf(s); });
+		CachingBijection<Integer, String> c = b.cached(10);
+		assertEquals("7", c.apply(7));
+		assertEquals(7, c.disapply("7").intValue());
+		assertEquals(1, count.get());
+		assertEquals(8, c.disapply("8").intValue());
+		assertEquals("8", c.inverse().disapply(8));
+		assertEquals(2, count.get());
+		assertEquals(2, c.hitCount());
+		assertEquals(2, c.missCount());
+		assertTrue(c.isInRange("x"));
+		assertFalse(c.isInRange(1));
+	}
+
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright 2016 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.fundament;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.tomgibara.fundament.Channel.Backpressure;
+import com.tomgibara.fundament.Channel.WaitStrategy;
+
+public class ChannelTest {
+
+	@Test
+	public void testBasic() {
+		Channel<Integer> c = Channel.mpmc(3, WaitStrategy.SPIN, Backpressure.FAIL);
+		assertEquals(4, c.capacity());
+		assertNull(c.poll());
+		for (int i = 0; i < 4; i++) {
+			assertTrue(c.offer(i));
+		}
+		assertFalse(c.offer(4));
+		assertEquals(4, c.size());
+		try {
+			c.writer().consume(4);
+			fail();
+		} catch (IllegalArgumentException e) {
+			/* expected */
+		}
+		assertEquals(0, c.reader().produce().intValue());
+		List<Integer> list = new ArrayList<>();
+		assertEquals(2, c.drain(list::add, 2));
+		assertEquals(3, c.poll().intValue());
+		assertNull(c.poll());
+		assertEquals(0, c.size());
+		assertEquals(2, list.size());
+	}
+
+	@Test
+	public void testDrop() {
+		Channel<String> c = Channel.mpsc(2, WaitStrategy.YIELD, Backpressure.DROP);
+		Consumer<String> writer = c.writer();
+		writer.consume("a");
+		writer.consume("b");
+		writer.consume("c");
+		assertEquals(1, c.droppedCount());
+		assertEquals("a", c.poll());
+		assertEquals("b", c.poll());
+		assertNull(c.poll());
+	}
+
+	@Test
+	public void testMpmc() throws Exception {
+		testConcurrent(Channel.mpmc(64, WaitStrategy.PARK, Backpressure.BLOCK), 4);
+	}
+
+	@Test
+	public void testMpsc() throws Exception {
+		testConcurrent(Channel.mpsc(64, WaitStrategy.YIELD, Backpressure.BLOCK), 1);
+	}
+
+	private void testConcurrent(Channel<Integer> c, int readers) throws Exception {
+		int writers = 4;
+		int perWriter = 20000;
+		int total = writers * perWriter;
+		ExecutorService executor = Executors.newFixedThreadPool(writers + readers);
+		try {
+			for (int w = 0; w < writers; w++) {
+				int base = w * perWriter;
+				executor.submit(() -> {
+					Consumer<Integer> writer = c.writer();
+					for (int i = 0; i < perWriter; i++) writer.consume(base + i);
+				});
+			}
+			List<Future<long[]>> futures = new ArrayList<>();
+			for (int r = 0; r < readers; r++) {
+				futures.add(executor.submit(() -> {
+					Producer<Integer> reader = c.reader();
+					long[] result = new long[2];
+					for (int i = 0; i < total / readers; i++) {
+						result[0]++;
+						result[1] += reader.produce();
+					}
+					return result;
+				}));
+			}
+			long count = 0L;
+			long sum = 0L;
+			for (Future<long[]> future : futures) {
+				long[] result = future.get();
+				count += result[0];
+				sum += result[1];
+			}
+			assertEquals(total, count);
+			assertEquals((long) total * (total - 1) / 2, sum);
+		} finally {
+			executor.shutdown();
+			executor.awaitTermination(10, TimeUnit.SECONDS);
+		}
+	}
+
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2016 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.fundament;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class CopyOnWriteMutabilityTest extends MutabilityContract<CopyOnWriteMutabilityTest.Bits> {
+
+	// a fixed size bit set stored in chunks of 64 longs
+	static final class Bits extends CopyOnWriteMutability<Bits, long[]> {
+
+		private static final int CHUNK_BITS = 12;
+
+		static int copies = 0;
+
+		private static long[][] newChunks(int size) {
+			long[][] chunks = new long[(size + (1 << CHUNK_BITS) - 1) >> CHUNK_BITS][];
+			for (int i = 0; i < chunks.length; i++) {
+				chunks[i] = new long[1 << (CHUNK_BITS - 6)];
+			}
+			return chunks;
+		}
+
+		final int size;
+
+		Bits(int size) {
+			super(newChunks(size), true);
+			this.size = size;
+		}
+
+		private Bits(Bits source, Derivation derivation) {
+			super(source, derivation);
+			size = source.size;
+		}
+
+		boolean get(int i) {
+			return (readChunk(i >> CHUNK_BITS)[(i >> 6) & 63] & (1L << i)) != 0L;
+		}
+
+		void flip(int i) {
+			writeChunk(i >> CHUNK_BITS)[(i >> 6) & 63] ^= 1L << i;
+		}
+
+		long[] toLongs() {
+			long[] longs = new long[chunkCount() * 64];
+			for (int i = 0; i < chunkCount(); i++) {
+				System.arraycopy(readChunk(i), 0, longs, i * 64, 64);
+			}
+			return longs;
+		}
+
+		@Override
+		protected Bits derive(Derivation derivation) {
+			return new Bits(this, derivation);
+		}
+
+		@Override
+		protected long[] copyChunk(long[] chunk) {
+			copies++;
+			return chunk.clone();
+		}
+
+	}
+
+	@Override
+	protected Bits newMutable() {
+		Bits bits = new Bits(100000);
+		for (int i = 0; i < bits.size; i += 7) {
+			bits.flip(i);
+		}
+		return bits;
+	}
+
+	@Override
+	protected void mutate(Bits bits, Random random) {
+		bits.flip(random.nextInt(bits.size));
+	}
+
+	@Override
+	protected Object state(Bits bits) {
+		return Arrays.toString(bits.toLongs());
+	}
+
+	@Test
+	public void testChunksCopiedOnWrite() {
+		Bits bits = newMutable();
+		Bits.copies = 0;
+		Bits copy = bits.mutableCopy();
+		assertEquals(0, Bits.copies);
+		copy.flip(0);
+		copy.flip(1);
+		assertEquals(1, Bits.copies);
+		bits.flip(0);
+		assertEquals(2, Bits.copies);
+		assertEquals(true, bits.get(7));
+		assertEquals(false, bits.get(0));
+		assertEquals(true, copy.get(1));
+	}
+
+}
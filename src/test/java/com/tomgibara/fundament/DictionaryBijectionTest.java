@@ -0,0 +1,165 @@
+/*
+ * Copyright 2016 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.fundament;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+
+public class DictionaryBijectionTest {
+
+	@Test
+	public void testBasic() {
+		DictionaryBijection<String> d = Bijection.dictionary(String.class);
+		assertEquals(String.class, d.domainType());
+		assertEquals(Integer.class, d.rangeType());
+		assertEquals(0, d.size());
+		assertEquals(0.0, d.estimatedBytesPerEntry(), 0.0);
+		assertEquals(-1, d.idOf("a"));
+		assertEquals(0, d.applyAsInt("a"));
+		assertEquals(1, d.applyAsInt("b"));
+		assertEquals(0, d.applyAsInt("a"));
+		assertEquals(0, d.idOf("a"));
+		assertEquals(2, d.size());
+		assertEquals("b", d.disapply(1));
+		assertTrue(d.isInRange(1));
+		assertFalse(d.isInRange(2));
+		assertFalse(d.isInDomain(null));
+		try {
+			d.disapply(2);
+			fail();
+		} catch (IllegalArgumentException e) {
+			/* expected */
+		}
+		try {
+			d.applyAsInt(null);
+			fail();
+		} catch (IllegalArgumentException e) {
+			/* expected */
+		}
+	}
+
+	@Test
+	public void testGrowth() {
+		DictionaryBijection<Integer> d = Bijection.dictionary(Integer.class);
+		int size = 10000;
+		for (int i = 0; i < size; i++) {
+			assertEquals(i, d.applyAsInt(i * 7));
+		}
+		for (int i = 0; i < size; i++) {
+			assertEquals(i, d.applyAsInt(i * 7));
+			assertEquals(i * 7, d.disapply(i).intValue());
+		}
+		assertTrue(d.estimatedBytesPerEntry() > 0.0);
+
+		ToIntBijection<Integer> s = d.snapshot();
+		d.applyAsInt(-1);
+		assertFalse(s.isInDomain(-1));
+		assertFalse(s.isInRange(size));
+		for (int i = 0; i < size; i++) {
+			assertEquals(i, s.applyAsInt(i * 7));
+			assertEquals(i * 7, s.disapply(i).intValue());
+		}
+	}
+
+	@Test
+	public void testConcurrency() throws Exception {
+		DictionaryBijection<String> d = Bijection.dictionary(String.class);
+		int threads = 8;
+		int size = 5000;
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			Future<?>[] futures = new Future<?>[threads];
+			for (int t = 0; t < threads; t++) {
+				int offset = t;
+				futures[t] = executor.submit(() -> {
+					for (int i = 0; i < size; i++) {
+						String value = Integer.toString((i * 31 + offset) % size);
+						assertEquals(value, d.disapply(d.applyAsInt(value)));
+					}
+				});
+			}
+			for (Future<?> future : futures) future.get();
+		} finally {
+			executor.shutdown();
+			executor.awaitTermination(10, TimeUnit.SECONDS);
+		}
+		assertEquals(size, d.size());
+		Set<Integer> ids = new HashSet<>();
+		for (int i = 0; i < size; i++) {
+			ids.add(d.idOf(Integer.toString(i)));
+		}
+		assertEquals(size, ids.size());
+		assertFalse(ids.contains(-1));
+	}
+
+	@Test
+	public void testConcurrentReadsAcrossChunks() throws Exception {
+		DictionaryBijection<Integer> d = Bijection.dictionary(Integer.class);
+		int writers = 4;
+		int readers = 4;
+		int size = 20000; // spans many chunks
+		AtomicBoolean done = new AtomicBoolean();
+		ExecutorService executor = Executors.newFixedThreadPool(writers + readers);
+		try {
+			Future<?>[] futures = new Future<?>[writers + readers];
+			for (int t = 0; t < writers; t++) {
+				int offset = t;
+				futures[t] = executor.submit(() -> {
+					for (int i = offset; i < size; i += writers) d.applyAsInt(i);
+				});
+			}
+			for (int t = writers; t < writers + readers; t++) {
+				futures[t] = executor.submit(() -> {
+					while (!done.get()) {
+						int id = d.size() - 1;
+						if (id < 0) continue;
+						if (d.isInRange(id)) assertTrue(d.disapply(id) != null);
+						try {
+							d.disapply(id);
+						} catch (IllegalArgumentException e) {
+							/* the value may not have been recorded yet */
+						}
+						assertTrue(d.snapshot().isInRange(id));
+					}
+				});
+			}
+			for (int t = 0; t < writers; t++) futures[t].get();
+			done.set(true);
+			for (Future<?> future : futures) future.get();
+		} finally {
+			executor.shutdown();
+			executor.awaitTermination(10, TimeUnit.SECONDS);
+		}
+		assertEquals(size, d.size());
+		for (int i = 0; i < size; i++) {
+			assertEquals(i, d.disapply(d.idOf(i)).intValue());
+		}
+	}
+
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2016 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.fundament;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class IntBijectionTest {
+
+	final IntBijection f = new IntBijection() {
+		@Override public int applyAsInt(int i)     { return i * 2 + 1;    }
+		@Override public int disapplyAsInt(int i)  { return (i - 1) / 2;  }
+		@Override public boolean isInDomain(int i) { return i >= 0;       }
+		@Override public boolean isInRange(int i)  { return (i & 1) == 1; }
+	};
+
+	final IntBijection g = IntBijection.fromOperators(i -> i + 3, i -> i - 3);
+
+	@Test
+	public void testPrimitive() {
+		assertEquals(7, f.applyAsInt(3));
+		assertEquals(3, f.disapplyAsInt(7));
+		assertTrue(f.isInDomain(0));
+		assertFalse(f.isInDomain(-1));
+		assertTrue(f.isInRange(7));
+		assertFalse(f.isInRange(6));
+	}
+
+	@Test
+	public void testBoxed() {
+		Bijection<Integer, Integer> b = f;
+		assertEquals(Integer.class, b.domainType());
+		assertEquals(Integer.class, b.rangeType());
+		assertEquals(7, b.apply(3).intValue());
+		assertEquals(3, b.disapply(7).intValue());
+		assertTrue(b.isInDomain((Object) 0));
+		assertFalse(b.isInDomain((Object) (-1)));
+		assertFalse(b.isInDomain("0"));
+		assertFalse(b.isInRange((Object) 6));
+		assertSame(f, IntBijection.fromBijection(b));
+	}
+
+	@Test
+	public void testComposite() {
+		IntBijection h = g.compose(f);
+		assertEquals(10, h.applyAsInt(3));
+		assertEquals(3, h.disapplyAsInt(10));
+		assertFalse(h.isInDomain(-1));
+
+		IntBijection i = h.inverse();
+		assertEquals(3, i.applyAsInt(10));
+		assertEquals(10, i.disapplyAsInt(3));
+		assertFalse(i.isInRange(-1));
+		assertSame(h, i.inverse());
+
+		assertSame(f, IntBijection.identity().compose(f));
+	}
+
+	@Test
+	public void testCachedInverse() {
+		assertSame(g.inverse(), g.inverse());
+		assertSame(g, g.inverse().inverse());
+		IntBijection h = g.compose(f);
+		assertSame(h.inverse(), h.inverse());
+
+		// primitive inverses cancel when composed as generic bijections
+		Bijection<Integer, Integer> b = g;
+		Bijection<Integer, Integer> c = b.compose(g.inverse());
+		assertEquals(0, ((Composition.BijectiveChain<?, ?>) c).stages.length);
+		assertEquals(5, c.apply(5).intValue());
+		Bijection<Integer, Integer> i = g.inverse();
+		Bijection<Integer, Integer> d = i.compose(b).compose(f);
+		assertEquals(1, ((Composition.BijectiveChain<?, ?>) d).stages.length);
+		assertSame(f, ((Composition.BijectiveChain<?, ?>) d).stages[0]);
+	}
+
+	@Test
+	public void testAdapters() {
+		Bijection<Integer, Integer> b = Bijection.fromUnaryOperators(Integer.class, x -> x * 3, x -> x / 3);
+		IntBijection a = IntBijection.fromBijection(b);
+		assertEquals(12, a.applyAsInt(4));
+		assertEquals(4, a.disapplyAsInt(12));
+
+		IntToLongMapping widen = IntToLongMapping.fromFunction(x -> x * 10_000_000_000L);
+		LongToIntMapping narrow = LongToIntMapping.fromFunction(x -> (int) (x / 10_000_000_000L));
+		IntMapping round = narrow.composeInt(widen);
+		assertEquals(5, round.applyAsInt(5));
+		assertEquals(50_000_000_000L, widen.composeInt(f.inverse().compose(f)).applyAsLong(5));
+		LongMapping lm = widen.composeLong(narrow);
+		assertEquals(30_000_000_000L, lm.applyAsLong(30_000_000_000L));
+		// lambdas are accepted without casts
+		assertEquals(7, IntMapping.fromOperator(x -> x + 1).composeInt(x -> x * 2).applyAsInt(3));
+		assertEquals(40_000_000_000L, widen.composeLong(x -> (int) (x / 2)).applyAsLong(9L));
+	}
+
+
+	@Test
+	public void testBulk() {
+		IntBijection h = g.compose(f);
+		int[] values = { 0, 1, 2, 3 };
+		h.applyAll(values, values, 1, 2);
+		assertArrayEquals(new int[] { 0, 6, 8, 3 }, values);
+		h.inverse().applyAll(values, values, 0, 4);
+		assertArrayEquals(new int[] { -2, 1, 2, 0 }, values);
+	}
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2016 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.fundament;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class MappedLogTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private static final Bijection<String, byte[]> UTF8 = Bijection.fromFunctions(String.class, byte[].class, s -> s.getBytes(StandardCharsets.UTF_8), b -> new String(b, StandardCharsets.UTF_8));
+
+	@Test
+	public void testAppendAndReplay() throws IOException {
+		Path dir = folder.getRoot().toPath();
+		List<Long> offsets = new ArrayList<>();
+		try (MappedLog<String> log = MappedLog.open(dir, BufferCodec.utf8(), 256, 0)) {
+			for (int i = 0; i < 100; i++) {
+				offsets.add(log.append("value " + i));
+			}
+			log.appender().consume("last");
+			log.force();
+
+			Producer<String> replay = log.replay(log.startOffset());
+			for (int i = 0; i < 100; i++) {
+				assertEquals("value " + i, replay.produce());
+			}
+			assertEquals("last", replay.produce());
+			assertNull(replay.produce());
+			log.append("later");
+			assertEquals("later", replay.produce());
+
+			assertEquals("value 50", log.replay(offsets.get(50)).produce());
+			assertNull(log.replay(log.endOffset()).produce());
+		}
+		try (Stream<Path> files = Files.list(dir)) {
+			assertTrue(files.collect(Collectors.toList()).size() > 1);
+		}
+		try (MappedLog<String> log = MappedLog.open(dir, BufferCodec.utf8(), 256, 0)) {
+			Producer<String> replay = log.replay(offsets.get(99));
+			assertEquals("value 99", replay.produce());
+			assertEquals("last", replay.produce());
+			assertEquals("later", replay.produce());
+			assertNull(replay.produce());
+		}
+	}
+
+	@Test
+	public void testTornTail() throws IOException {
+		Path dir = folder.getRoot().toPath();
+		long offset;
+		try (MappedLog<String> log = MappedLog.open(dir, UTF8, 1024, 1)) {
+			log.append("first");
+			offset = log.append("second");
+		}
+		// corrupt the payload of the second record
+		Path file;
+		try (Stream<Path> files = Files.list(dir)) {
+			file = files.findFirst().get();
+		}
+		try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+			raf.seek(offset + 9);
+			raf.write('X');
+		}
+		try (MappedLog<String> log = MappedLog.open(dir, UTF8, 1024, 1)) {
+			assertEquals(offset, log.endOffset());
+			log.append("third");
+			Producer<String> replay = log.replay(0L);
+			assertEquals("first", replay.produce());
+			assertEquals("third", replay.produce());
+			assertNull(replay.produce());
+		}
+	}
+
+}
@@ -17,7 +17,15 @@
 package com.tomgibara.fundament;
 
 import static java.lang.Integer.parseInt;
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 import org.junit.Test;
 
@@ -41,4 +49,76 @@ public class MappingTest {
 		assertEquals(Integer.class, m.rangeType());
 		assertEquals(4, m.apply(2).intValue());
 	}
+
+	@Test
+	public void testBulk() {
+		Mapping<String, Integer> f = Mapping.fromFunction(String.class, Integer.class, s -> parseInt(s));
+		Mapping<Integer, Integer> g = Mapping.fromFunction(Integer.class, Integer.class, i -> 2 * i + 1);
+		Mapping<String, Integer> h = g.compose(f);
+
+		int size = 3000;
+		String[] src = new String[size];
+		Integer[] expected = new Integer[size];
+		for (int i = 0; i < size; i++) {
+			src[i] = Integer.toString(i);
+			expected[i] = 2 * i + 1;
+		}
+
+		assertArrayEquals(expected, h.applyAll(src));
+		assertArrayEquals(expected, h.applyAllParallel(src, 100));
+		assertEquals(Integer[].class, h.applyAllParallel(src, 100).getClass());
+
+		Integer[] dst = new Integer[size];
+		h.applyAll(src, dst, 10, 20);
+		assertEquals(null, dst[9]);
+		assertEquals(21, dst[10].intValue());
+		assertEquals(null, dst[30]);
+
+		List<Integer> list = new ArrayList<>();
+		h.applyAll(Arrays.asList(src), list::add);
+		assertEquals(Arrays.asList(expected), list);
+	}
+
+	@Test
+	public void testCompile() {
+		Mapping<String, Integer> f = Mapping.fromFunction(String.class, Integer.class, s -> parseInt(s));
+		Mapping<Integer, Integer> g = Mapping.fromFunction(Integer.class, Integer.class, i -> 2 * i + 1);
+		Mapping<Integer, String> k = Mapping.fromFunction(Integer.class, String.class, i -> Integer.toString(i));
+		Mapping<String, String> h = k.compose(g).compose(f);
+		Mapping<String, String> c = Mapping.compile(h);
+
+		assertEquals(String.class, c.domainType());
+		assertEquals(String.class, c.rangeType());
+		assertEquals("5", c.apply("2"));
+		assertEquals(c.getClass(), Mapping.compile(k.compose(g).compose(f)).getClass());
+		assertSame(f, Mapping.compile(f));
+		assertSame(c, Mapping.compile(c));
+
+		// the stages are fused rather than applied by the composite
+		assertTrue(c instanceof CompiledMapping);
+		Mapping<Integer, Integer> probe = Mapping.fromUnaryOperator(Integer.class, i -> {
+			for (StackTraceElement element : new Throwable().getStackTrace()) {
+				if (element.getClassName().startsWith(Composition.class.getName())) return -1;
+			}
+			return i;
+		});
+		assertEquals(Integer.valueOf(-1), probe.compose(g).compose(f).apply("1"));
+		assertEquals(Integer.valueOf(3), Mapping.compile(probe.compose(g).compose(f)).apply("1"));
+		// classes are specialized on the functions of stages created by the same factory
+		Mapping<Integer, String> k2 = Mapping.fromFunction(Integer.class, String.class, i -> "#" + i);
+		Mapping<String, String> c2 = Mapping.compile(k2.compose(g).compose(f));
+		assertEquals("#5", c2.apply("2"));
+		assertNotEquals(c.getClass(), c2.getClass());
+
+		Mapping<String, String> u = Mapping.fromUnaryOperator(String.class, s -> Integer.toString(parseInt(s) % 1000 + 3));
+		Mapping<String, String> longer = h;
+		for (int i = 0; i < 20; i++) {
+			longer = i % 3 == 0 ? u.compose(longer) : h.compose(longer);
+		}
+		Mapping<String, String> compiled = Mapping.compile(longer);
+		for (int i = 0; i < 100; i++) {
+			String s = Integer.toString(i);
+			assertEquals(longer.apply(s), compiled.apply(s));
+		}
+	}
 }
@@ -0,0 +1,137 @@
+/*
+ * Copyright 2016 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.fundament;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+public class MemoizingProducerTest {
+
+	@Test
+	public void testMemoized() throws Exception {
+		AtomicInteger count = new AtomicInteger();
+		MemoizingProducer<Object> p = Producer.memoized(() -> {
+			count.incrementAndGet();
+			try {
+				Thread.sleep(20);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			return new Object();
+		});
+		assertEquals(-1L, p.staleness());
+		int threads = 8;
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			@SuppressWarnings("unchecked")
+			Future<Object>[] futures = new Future[threads];
+			for (int i = 0; i < threads; i++) {
+				futures[i] = executor.submit(p::produce);
+			}
+			for (Future<Object> future : futures) {
+				assertSame(p.produce(), future.get());
+			}
+		} finally {
+			executor.shutdown();
+			executor.awaitTermination(10, TimeUnit.SECONDS);
+		}
+		assertEquals(1, count.get());
+		assertEquals(1, p.refreshCount());
+		assertTrue(p.lastRefreshLatency() > 0L);
+		assertTrue(p.staleness() >= 0L);
+	}
+
+	@Test
+	public void testFailureRetried() {
+		AtomicInteger count = new AtomicInteger();
+		MemoizingProducer<Integer> p = Producer.memoized(() -> {
+			if (count.incrementAndGet() == 1) throw new IllegalStateException();
+			return count.get();
+		});
+		try {
+			p.produce();
+			fail();
+		} catch (IllegalStateException e) {
+			/* expected */
+		}
+		assertEquals(2, p.produce().intValue());
+		assertEquals(2, p.produce().intValue());
+		assertEquals(1, p.failureCount());
+	}
+
+	@Test
+	public void testExpiring() {
+		AtomicLong clock = new AtomicLong();
+		AtomicInteger count = new AtomicInteger();
+		MemoizingProducer<Integer> p = Producer.expiring(count::incrementAndGet, 10, TimeUnit.NANOSECONDS, clock::get);
+		assertEquals(1, p.produce().intValue());
+		clock.set(9);
+		assertEquals(1, p.produce().intValue());
+		assertEquals(9, p.staleness());
+		clock.set(10);
+		assertEquals(2, p.produce().intValue());
+		assertEquals(0, p.staleness());
+		assertEquals(2, p.refreshCount());
+	}
+
+	@Test
+	public void testRefreshing() {
+		AtomicLong clock = new AtomicLong();
+		AtomicInteger count = new AtomicInteger();
+		AtomicBoolean failing = new AtomicBoolean();
+		Producer<Integer> source = () -> {
+			if (failing.get()) throw new IllegalStateException();
+			return count.incrementAndGet();
+		};
+		// refreshes run synchronously so that they can be observed immediately
+		MemoizingProducer<Integer> p = Producer.refreshing(source, 10, TimeUnit.NANOSECONDS, Runnable::run, clock::get);
+		assertEquals(1, p.produce().intValue());
+		clock.set(10);
+		// the stale value is returned while the refresh is triggered
+		assertEquals(1, p.produce().intValue());
+		assertEquals(2, p.produce().intValue());
+
+		failing.set(true);
+		clock.set(25);
+		assertEquals(2, p.produce().intValue());
+		assertEquals(1, p.failureCount());
+		// no further attempt is made until the refresh period has elapsed again
+		clock.set(30);
+		assertEquals(2, p.produce().intValue());
+		assertEquals(1, p.failureCount());
+		assertEquals(20, p.staleness());
+
+		failing.set(false);
+		clock.set(35);
+		assertEquals(2, p.produce().intValue());
+		assertEquals(3, p.produce().intValue());
+		assertEquals(3, p.refreshCount());
+	}
+
+}
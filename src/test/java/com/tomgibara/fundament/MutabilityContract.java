@@ -0,0 +1,187 @@
+/*
+ * Copyright 2016 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.fundament;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+
+/**
+ * Checks that an implementation of {@link Mutability} honours its contract
+ * across copies and views. Implementations are tested by extending this
+ * class. Attempts to mutate immutable objects may be rejected with either an
+ * <code>IllegalStateException</code> or an
+ * <code>UnsupportedOperationException</code>.
+ *
+ * @param <T>
+ *            the type under test
+ */
+
+public abstract class MutabilityContract<T extends Mutability<T>> {
+
+	/**
+	 * A new mutable object with some arbitrary state.
+	 */
+
+	protected abstract T newMutable();
+
+	/**
+	 * Modifies the state of a mutable object in a way determined by the
+	 * random number generator. The modification must change the observable
+	 * state of the object.
+	 */
+
+	protected abstract void mutate(T t, Random random);
+
+	/**
+	 * A value that captures the complete observable state of the object and
+	 * that can be compared with equals.
+	 */
+
+	protected abstract Object state(T t);
+
+	@Test
+	public void testMutableCopy() {
+		Random random = new Random(0L);
+		T original = newMutable();
+		assertTrue(original.isMutable());
+		Object before = state(original);
+		T copy = original.mutableCopy();
+		assertTrue(copy.isMutable());
+		assertEquals(before, state(copy));
+
+		mutate(copy, random);
+		assertEquals(before, state(original));
+		Object copied = state(copy);
+		mutate(original, random);
+		assertEquals(copied, state(copy));
+		assertNotEquals(before, state(original));
+	}
+
+	@Test
+	public void testImmutableCopy() {
+		Random random = new Random(1L);
+		T original = newMutable();
+		T copy = original.immutableCopy();
+		assertFalse(copy.isMutable());
+		Object before = state(original);
+		for (int i = 0; i < 10; i++) {
+			mutate(original, random);
+		}
+		assertEquals(before, state(copy));
+		assertSame(copy, copy.immutable());
+		assertSame(original, original.mutable());
+		try {
+			mutate(copy, random);
+			fail();
+		} catch (IllegalStateException | UnsupportedOperationException e) {
+			/* expected */
+		}
+		T mutable = copy.mutable();
+		assertTrue(mutable.isMutable());
+		mutate(mutable, random);
+		assertEquals(before, state(copy));
+	}
+
+	@Test
+	public void testImmutableView() {
+		Random random = new Random(2L);
+		T original = newMutable();
+		T view = original.immutableView();
+		assertFalse(view.isMutable());
+		for (int i = 0; i < 10; i++) {
+			mutate(original, random);
+			assertEquals(state(original), state(view));
+		}
+		T copy = view.immutableCopy();
+		Object copied = state(copy);
+		mutate(original, random);
+		assertEquals(copied, state(copy));
+		assertEquals(state(original), state(view));
+		try {
+			mutate(view, random);
+			fail();
+		} catch (IllegalStateException | UnsupportedOperationException e) {
+			/* expected */
+		}
+	}
+
+	@Test
+	public void testCopyChains() {
+		Random random = new Random(3L);
+		T a = newMutable();
+		T b = a.mutableCopy();
+		mutate(b, random);
+		T c = b.mutableCopy();
+		Object bs = state(b);
+		mutate(c, random);
+		mutate(a, random);
+		assertEquals(bs, state(b));
+		T d = c.immutableCopy().mutableCopy();
+		Object cs = state(c);
+		mutate(d, random);
+		assertEquals(cs, state(c));
+		assertEquals(bs, state(b));
+	}
+
+	@Test
+	public void testConcurrentReaders() throws Exception {
+		T original = newMutable();
+		T copy = original.immutableCopy();
+		Object expected = state(copy);
+		AtomicBoolean done = new AtomicBoolean();
+		int readers = 4;
+		ExecutorService executor = Executors.newFixedThreadPool(readers);
+		try {
+			@SuppressWarnings("unchecked")
+			Future<Boolean>[] futures = new Future[readers];
+			for (int i = 0; i < readers; i++) {
+				futures[i] = executor.submit(() -> {
+					boolean consistent = true;
+					while (!done.get()) {
+						consistent &= expected.equals(state(copy));
+					}
+					return consistent;
+				});
+			}
+			Random random = new Random(4L);
+			for (int i = 0; i < 1000; i++) {
+				mutate(original, random);
+			}
+			done.set(true);
+			for (Future<Boolean> future : futures) {
+				assertTrue(future.get());
+			}
+		} finally {
+			executor.shutdown();
+			executor.awaitTermination(10, TimeUnit.SECONDS);
+		}
+	}
+
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright 2016 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.fundament;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.junit.Test;
+
+public class PartitionedConsumerTest {
+
+	// records the order in which values are consumed for each key
+	private static final class Recorder implements Consumer<int[]> {
+
+		final Map<Integer, List<Integer>> seen;
+
+		Recorder(Map<Integer, List<Integer>> seen) {
+			this.seen = seen;
+		}
+
+		@Override
+		public void consume(int[] value) {
+			seen.computeIfAbsent(value[0], k -> new ArrayList<>()).add(value[1]);
+		}
+
+	}
+
+	@Test
+	public void testJumpHash() {
+		int moved = 0;
+		for (int key = 0; key < 10000; key++) {
+			long hash = key * 0x9e3779b97f4a7c15L;
+			int before = PartitionedConsumer.jumpHash(hash, 10);
+			int after = PartitionedConsumer.jumpHash(hash, 11);
+			assertTrue(before >= 0 && before < 10);
+			if (before != after) {
+				assertEquals(10, after);
+				moved++;
+			}
+		}
+		// roughly one eleventh of keys move
+		assertTrue(moved > 600 && moved < 1200);
+	}
+
+	@Test
+	public void testOrdering() {
+		Map<Integer, List<Integer>> seen = new ConcurrentHashMap<>();
+		Mapping<int[], Integer> keys = Mapping.fromFunction(int[].class, Integer.class, v -> v[0]);
+		List<Recorder> recorders = Arrays.asList(new Recorder(seen), new Recorder(seen), new Recorder(seen));
+		int keyCount = 50;
+		int perKey = 200;
+		try (PartitionedConsumer<int[], Integer> c = Consumer.partitioned(keys, recorders, 16, Thread::new)) {
+			assertEquals(3, c.shardCount());
+			for (int i = 0; i < perKey; i++) {
+				if (i == perKey / 2) {
+					c.addShard(new Recorder(seen));
+					assertEquals(4, c.shardCount());
+				}
+				for (int k = 0; k < keyCount; k++) {
+					c.consume(new int[] { k, i });
+				}
+			}
+			assertTrue(c.skew() >= 1.0);
+			assertEquals(4, c.queueDepths().length);
+			c.close();
+			long total = 0L;
+			for (long count : c.consumedCounts()) total += count;
+			assertEquals(keyCount * perKey, total);
+		}
+		assertEquals(keyCount, seen.size());
+		for (List<Integer> list : seen.values()) {
+			assertEquals(perKey, list.size());
+			for (int i = 0; i < perKey; i++) {
+				assertEquals(i, list.get(i).intValue());
+			}
+		}
+	}
+
+	@Test
+	public void testFailure() {
+		Mapping<Integer, Integer> keys = Mapping.fromUnaryOperator(Integer.class, i -> 0);
+		Consumer<Integer> failing = i -> { throw new IllegalArgumentException(); };
+		PartitionedConsumer<Integer, Integer> c = Consumer.partitioned(keys, Arrays.asList(failing), 4, Thread::new);
+		try {
+			for (int i = 0; i < 1000; i++) {
+				c.consume(i);
+			}
+			fail();
+		} catch (IllegalStateException e) {
+			assertTrue(e.getCause() instanceof IllegalArgumentException);
+		}
+		try {
+			c.close();
+			fail();
+		} catch (IllegalStateException e) {
+			/* expected */
+		}
+	}
+
+	@Test
+	public void testErrorFailure() {
+		Mapping<Integer, Integer> keys = Mapping.fromUnaryOperator(Integer.class, i -> i % 2);
+		Consumer<Integer> failing = i -> { throw new AssertionError(); };
+		PartitionedConsumer<Integer, Integer> c = Consumer.partitioned(keys, Arrays.asList(failing, failing), 4, Thread::new);
+		try {
+			for (int i = 0; i < 1000; i++) {
+				c.consume(i);
+			}
+			fail();
+		} catch (IllegalStateException e) {
+			assertTrue(e.getCause() instanceof AssertionError);
+		}
+		// waiting for the failed shards to drain must not block indefinitely
+		c.addShard(i -> { });
+		try {
+			c.close();
+			fail();
+		} catch (IllegalStateException e) {
+			assertTrue(e.getCause() instanceof AssertionError);
+		}
+	}
+
+	@Test(timeout = 10000L)
+	public void testIdleShardWaits() throws InterruptedException {
+		List<Thread> threads = new ArrayList<>();
+		List<Integer> consumed = new CopyOnWriteArrayList<>();
+		Mapping<Integer, Integer> keys = Mapping.fromUnaryOperator(Integer.class, i -> i);
+		try (PartitionedConsumer<Integer, Integer> c = Consumer.partitioned(keys, Arrays.asList(consumed::add), 16, r -> {
+			Thread thread = new Thread(r);
+			threads.add(thread);
+			return thread;
+		})) {
+			Thread thread = threads.get(0);
+			// an idle shard parks without a timeout
+			while (thread.getState() != Thread.State.WAITING) Thread.sleep(1L);
+			for (int i = 0; i < 10; i++) {
+				c.consume(i);
+				while (consumed.size() == i) Thread.sleep(1L);
+				while (thread.getState() != Thread.State.WAITING) Thread.sleep(1L);
+			}
+		}
+		assertEquals(10, consumed.size());
+	}
+
+}
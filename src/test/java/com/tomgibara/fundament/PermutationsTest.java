@@ -0,0 +1,193 @@
+/*
+ * Copyright 2016 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.fundament;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class PermutationsTest {
+
+	private static int[] randomPerm(Random random, int n) {
+		int[] perm = new int[n];
+		for (int i = 0; i < n; i++) {
+			int j = random.nextInt(i + 1);
+			perm[i] = perm[j];
+			perm[j] = i;
+		}
+		return perm;
+	}
+
+	// an array that counts the transpositions applied to it
+	private static final class Ints implements Transposable {
+
+		final int[] values;
+		int count = 0;
+
+		Ints(int n) {
+			values = new int[n];
+			for (int i = 0; i < n; i++) {
+				values[i] = i * 3;
+			}
+		}
+
+		@Override
+		public void transpose(int i, int j) {
+			int v = values[i];
+			values[i] = values[j];
+			values[j] = v;
+			count++;
+		}
+
+	}
+
+	@Test
+	public void testApply() {
+		Random random = new Random(0L);
+		for (int n : new int[] { 0, 1, 2, 10, 1000 }) {
+			int[] perm = randomPerm(random, n);
+			int[] copy = perm.clone();
+			Ints a = new Ints(n);
+			Ints b = new Ints(n);
+			int[] original = a.values.clone();
+			Permutations.apply(perm, a, b);
+			assertArrayEquals(copy, perm);
+			for (int i = 0; i < n; i++) {
+				assertEquals(original[perm[i]], a.values[i]);
+			}
+			assertArrayEquals(a.values, b.values);
+			assertEquals(n - Permutations.cycleCount(perm), a.count);
+			assertEquals(a.count, b.count);
+
+			Permutations.applyInverse(perm, a);
+			assertArrayEquals(copy, perm);
+			assertArrayEquals(original, a.values);
+		}
+	}
+
+	@Test
+	public void testApplyParallel() {
+		Random random = new Random(1L);
+		int n = 100000;
+		// a permutation with many short cycles
+		int[] perm = new int[n];
+		for (int i = 0; i < n; i += 4) {
+			int[] block = randomPerm(random, Math.min(4, n - i));
+			for (int j = 0; j < block.length; j++) {
+				perm[i + j] = i + block[j];
+			}
+		}
+		Ints a = new Ints(n);
+		Ints b = new Ints(n);
+		Permutations.apply(perm, a);
+		Permutations.applyParallel(perm, 100, b);
+		assertArrayEquals(a.values, b.values);
+	}
+
+	@Test
+	public void testInvalid() {
+		int[] perm = { 1, 2, 0, 4, 4 };
+		Ints a = new Ints(perm.length);
+		try {
+			Permutations.apply(perm, a);
+			fail();
+		} catch (IllegalArgumentException e) {
+			/* expected */
+		}
+		assertArrayEquals(new int[] { 1, 2, 0, 4, 4 }, perm);
+		assertEquals(0, a.count);
+		try {
+			Permutations.applyInverse(new int[] { 0, 2 }, a);
+			fail();
+		} catch (IllegalArgumentException e) {
+			/* expected */
+		}
+	}
+
+	@Test
+	public void testInvalidEntries() {
+		int[][] perms = { { -1 }, { 1, -2 }, { 0, 2 }, { 2, 0, -1 }, { 0, 1, Integer.MIN_VALUE } };
+		Ints a = new Ints(3);
+		for (int[] perm : perms) {
+			int[] copy = perm.clone();
+			try {
+				Permutations.apply(perm, a);
+				fail();
+			} catch (IllegalArgumentException e) {
+				/* expected */
+			}
+			assertArrayEquals(copy, perm);
+			try {
+				Permutations.applyInverse(perm, a);
+				fail();
+			} catch (IllegalArgumentException e) {
+				/* expected */
+			}
+			assertArrayEquals(copy, perm);
+			try {
+				Permutations.applyParallel(perm, 1, a);
+				fail();
+			} catch (IllegalArgumentException e) {
+				/* expected */
+			}
+			assertArrayEquals(copy, perm);
+			try {
+				Permutations.cycleCount(perm);
+				fail();
+			} catch (IllegalArgumentException e) {
+				/* expected */
+			}
+			assertArrayEquals(copy, perm);
+		}
+		assertEquals(0, a.count);
+	}
+
+	@Test
+	public void testFailingTarget() {
+		Random random = new Random(2L);
+		int n = 10000;
+		int[] perm = randomPerm(random, n);
+		int[] copy = perm.clone();
+		Transposable failing = (i, j) -> { if (i == n / 2 || j == n / 2) throw new IllegalStateException(); };
+		try {
+			Permutations.apply(perm, failing);
+			fail();
+		} catch (IllegalStateException e) {
+			/* expected */
+		}
+		assertArrayEquals(copy, perm);
+		try {
+			Permutations.applyInverse(perm, failing);
+			fail();
+		} catch (IllegalStateException e) {
+			/* expected */
+		}
+		assertArrayEquals(copy, perm);
+		try {
+			Permutations.applyParallel(perm, 1, failing);
+			fail();
+		} catch (IllegalStateException e) {
+			/* expected */
+		}
+		assertArrayEquals(copy, perm);
+	}
+
+}
@@ -0,0 +1,224 @@
+/*
+ * Copyright 2016 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.fundament;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class PersistentListTest extends MutabilityContract<PersistentList<Integer>> {
+
+	@Override
+	protected PersistentList<Integer> newMutable() {
+		PersistentList<Integer> list = PersistentList.<Integer>empty().mutableCopy();
+		for (int i = 0; i < 2000; i++) {
+			list.add(i);
+		}
+		return list;
+	}
+
+	@Override
+	protected void mutate(PersistentList<Integer> list, Random random) {
+		switch (random.nextInt(5)) {
+		case 0 : list.add(random.nextInt()); break;
+		case 1 : list.remove(list.size() - 1); break;
+		case 2 : list.add(random.nextInt(list.size()), random.nextInt()); break;
+		case 3 : list.remove(random.nextInt(list.size())); break;
+		default: list.set(random.nextInt(list.size()), list.get(0) - 1); break;
+		}
+	}
+
+	@Override
+	protected Object state(PersistentList<Integer> list) {
+		return new ArrayList<>(list);
+	}
+
+	@Test
+	public void testAgainstArrayList() {
+		Random random = new Random(0L);
+		List<Integer> expected = new ArrayList<>();
+		PersistentList<Integer> list = PersistentList.<Integer>empty().mutable();
+		// grow and shrink across several levels of the trie
+		for (int round = 0; round < 4; round++) {
+			int target = random.nextInt(50000);
+			while (list.size() < target) {
+				int value = random.nextInt();
+				list.add(value);
+				expected.add(value);
+			}
+			while (list.size() > target / 3) {
+				assertEquals(expected.remove(expected.size() - 1), list.remove(list.size() - 1));
+			}
+			for (int i = 0; i < 100 && !list.isEmpty(); i++) {
+				int index = random.nextInt(list.size());
+				list.set(index, i);
+				expected.set(index, i);
+			}
+			PersistentList<Integer> snapshot = list.immutableCopy();
+			list.add(-1);
+			list.set(0, -1);
+			assertEquals(expected, snapshot);
+			list.remove(list.size() - 1);
+			list.set(0, expected.isEmpty() ? null : expected.get(0));
+			assertEquals(expected, list);
+		}
+	}
+
+	@Test
+	public void testCopyOf() {
+		List<String> strs = Arrays.asList("a", null, "c");
+		PersistentList<String> list = PersistentList.copyOf(strs);
+		assertFalse(list.isMutable());
+		assertEquals(strs, list);
+		PersistentList<String> copy = list.mutableCopy();
+		copy.add("d");
+		assertEquals(3, list.size());
+		assertEquals(4, copy.size());
+		assertTrue(PersistentList.empty().isEmpty());
+	}
+
+	@Test
+	public void testTranspose() {
+		PersistentList<Integer> list = newMutable();
+		PersistentList<Integer> copy = list.immutableCopy();
+		list.transpose(0, 1999);
+		assertEquals(1999, (int) list.get(0));
+		assertEquals(0, (int) list.get(1999));
+		assertEquals(0, (int) copy.get(0));
+	}
+
+	@Test
+	public void testSplicingAgainstArrayList() {
+		Random random = new Random(1L);
+		List<Integer> expected = new ArrayList<>();
+		PersistentList<Integer> list = PersistentList.<Integer>empty().mutable();
+		for (int i = 0; i < 20000; i++) {
+			int size = expected.size();
+			int index = random.nextInt(size + 1);
+			switch (size == 0 ? 0 : random.nextInt(10)) {
+			case 0 :
+			case 1 :
+			case 2 :
+				list.add(index, i);
+				expected.add(index, i);
+				break;
+			case 3 :
+			case 4 :
+				if (index == size) index--;
+				assertEquals(expected.remove(index), list.remove(index));
+				break;
+			case 5 : {
+				// insert another persistent list, sharing its nodes
+				List<Integer> elements = new ArrayList<>();
+				for (int j = random.nextInt(200); j > 0; j--) elements.add(random.nextInt());
+				list.addAll(index, PersistentList.copyOf(elements));
+				expected.addAll(index, elements);
+				break;
+			}
+			case 6 : {
+				int to = index + random.nextInt(Math.min(100, size - index) + 1);
+				list.subList(index, to).clear();
+				expected.subList(index, to).clear();
+				break;
+			}
+			case 7 :
+				list.add(i);
+				expected.add(i);
+				break;
+			default :
+				if (index < size) {
+					list.set(index, -i);
+					expected.set(index, -i);
+				}
+			}
+			if (i % 1000 == 0) {
+				assertEquals(expected, list);
+				PersistentList<Integer> snapshot = list.immutableCopy();
+				List<Integer> snapshotted = new ArrayList<>(expected);
+				list.add(0, -1);
+				expected.add(0, -1);
+				assertEquals(expected.remove(expected.size() / 2), list.remove(list.size() / 2));
+				assertEquals(snapshotted, snapshot);
+				assertEquals(expected, list);
+			}
+		}
+		assertEquals(expected, list);
+		while (!list.isEmpty()) {
+			int index = random.nextInt(list.size());
+			assertEquals(expected.remove(index), list.remove(index));
+		}
+		assertEquals(expected, list);
+	}
+
+	@Test
+	public void testConcatenation() {
+		Random random = new Random(2L);
+		List<Integer> expected = new ArrayList<>();
+		PersistentList<Integer> list = PersistentList.<Integer>empty().mutable();
+		for (int round = 0; round < 12; round++) {
+			// appending lists of varying sizes exercises merges across several levels
+			List<Integer> elements = new ArrayList<>();
+			for (int i = random.nextInt(1 << round + 4); i > 0; i--) elements.add(random.nextInt());
+			PersistentList<Integer> other = PersistentList.copyOf(elements);
+			list.addAll(other);
+			expected.addAll(elements);
+			assertEquals(elements, other);
+			assertEquals(expected, list);
+		}
+		PersistentList<Integer> copy = list.immutableCopy();
+		list.addAll(list);
+		expected.addAll(expected);
+		assertEquals(expected, list);
+		assertEquals(expected.subList(0, copy.size()), copy);
+		list.addAll(list.size() / 3, copy);
+		expected.addAll(expected.size() / 3, copy);
+		assertEquals(expected, list);
+		for (int i = 0; i < 1000; i++) {
+			int index = random.nextInt(list.size());
+			list.set(index, i);
+			expected.set(index, i);
+		}
+		assertEquals(expected, list);
+	}
+
+	@Test
+	public void testSharedAddition() {
+		PersistentList<Integer> source = newMutable();
+		PersistentList<Integer> list = newMutable();
+		list.addAll(source);
+		List<Integer> expected = new ArrayList<>(list);
+		// writes to either list must not be visible through the other
+		source.set(0, -1);
+		source.set(1999, -1);
+		source.add(7);
+		assertEquals(expected, list);
+		list.set(2000, -2);
+		list.set(3999, -2);
+		assertEquals(2001, source.size());
+		assertEquals(-1, (int) source.get(0));
+		assertEquals(-1, (int) source.get(1999));
+		assertEquals(7, (int) source.get(2000));
+	}
+
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright 2016 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.fundament;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class PersistentMapTest extends MutabilityContract<PersistentMap<Integer, Integer>> {
+
+	@Override
+	protected PersistentMap<Integer, Integer> newMutable() {
+		PersistentMap<Integer, Integer> map = PersistentMap.<Integer, Integer>empty().mutableCopy();
+		for (int i = 0; i < 2000; i++) {
+			map.put(i, i);
+		}
+		return map;
+	}
+
+	@Override
+	protected void mutate(PersistentMap<Integer, Integer> map, Random random) {
+		Integer key = random.nextInt(4000);
+		if (map.containsKey(key)) {
+			map.remove(key);
+		} else {
+			map.put(key, key);
+		}
+	}
+
+	@Override
+	protected Object state(PersistentMap<Integer, Integer> map) {
+		return new HashMap<>(map);
+	}
+
+	@Test
+	public void testAgainstHashMap() {
+		Random random = new Random(0L);
+		Map<Object, Integer> expected = new HashMap<>();
+		PersistentMap<Object, Integer> map = PersistentMap.<Object, Integer>empty().mutable();
+		PersistentMap<Object, Integer> snapshot = map.immutableCopy();
+		Map<Object, Integer> snapshotted = new HashMap<>();
+		for (int i = 0; i < 100000; i++) {
+			// small key space with colliding hashes to exercise collision nodes
+			Object key = random.nextInt(10) == 0 ? null : new Key(random.nextInt(20000));
+			switch (random.nextInt(3)) {
+			case 0 : assertEquals(expected.remove(key), map.remove(key)); break;
+			default: assertEquals(expected.put(key, i), map.put(key, i)); break;
+			}
+			if (i % 10000 == 0) {
+				assertEquals(snapshotted, snapshot);
+				snapshot = map.immutableCopy();
+				snapshotted = new HashMap<>(expected);
+			}
+		}
+		assertEquals(expected.size(), map.size());
+		assertEquals(expected, map);
+		assertEquals(map, expected);
+		assertEquals(snapshotted, snapshot);
+	}
+
+	@Test
+	public void testCopyOf() {
+		Map<String, String> strs = new HashMap<>();
+		strs.put("a", "A");
+		strs.put(null, "B");
+		strs.put("c", null);
+		PersistentMap<String, String> map = PersistentMap.copyOf(strs);
+		assertFalse(map.isMutable());
+		assertEquals(strs, map);
+		assertTrue(map.containsKey("c"));
+		assertNull(map.get("c"));
+		assertEquals("B", map.get(null));
+	}
+
+	@Test
+	public void testViewRemoval() {
+		Random random = new Random(1L);
+		Map<Object, Integer> expected = new HashMap<>();
+		PersistentMap<Object, Integer> map = PersistentMap.<Object, Integer>empty().mutable();
+		for (int i = 0; i < 5000; i++) {
+			Object key = i == 0 ? null : new Key(random.nextInt(20000));
+			expected.put(key, i);
+			map.put(key, i);
+		}
+		PersistentMap<Object, Integer> snapshot = map.immutableCopy();
+		Map<Object, Integer> snapshotted = new HashMap<>(expected);
+
+		assertEquals(expected.keySet().remove(null), map.keySet().remove(null));
+		assertEquals(expected.values().removeIf(v -> v % 3 == 0), map.values().removeIf(v -> v % 3 == 0));
+		assertEquals(expected, map);
+		assertEquals(expected.entrySet().removeIf(e -> e.getValue() % 5 == 0), map.entrySet().removeIf(e -> e.getValue() % 5 == 0));
+		assertEquals(expected, map);
+		assertEquals(expected.keySet().retainAll(snapshot.keySet()), map.keySet().retainAll(snapshot.keySet()));
+		assertEquals(expected, map);
+		Set<Object> retained = new HashSet<>();
+		for (Object key : expected.keySet()) {
+			if (random.nextBoolean()) retained.add(key);
+		}
+		expected.keySet().retainAll(retained);
+		assertTrue(map.keySet().retainAll(retained));
+		assertEquals(expected.size(), map.size());
+		assertEquals(expected, map);
+		assertEquals(snapshotted, snapshot);
+
+		try {
+			snapshot.keySet().remove(snapshot.keySet().iterator().next());
+			fail();
+		} catch (UnsupportedOperationException e) {
+			/* expected */
+		}
+		try {
+			map.immutableView().values().removeIf(v -> true);
+			fail();
+		} catch (UnsupportedOperationException e) {
+			/* expected */
+		}
+		assertEquals(expected, map);
+	}
+
+	// a key with deliberately poor hashes
+	private static final class Key {
+
+		private final int value;
+
+		Key(int value) {
+			this.value = value;
+		}
+
+		@Override
+		public int hashCode() {
+			return value / 3;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			return obj instanceof Key && ((Key) obj).value == value;
+		}
+
+	}
+
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2016 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.fundament;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class PersistentSetTest extends MutabilityContract<PersistentSet<Integer>> {
+
+	@Override
+	protected PersistentSet<Integer> newMutable() {
+		PersistentSet<Integer> set = PersistentSet.<Integer>empty().mutableCopy();
+		for (int i = 0; i < 2000; i += 2) {
+			set.add(i);
+		}
+		return set;
+	}
+
+	@Override
+	protected void mutate(PersistentSet<Integer> set, Random random) {
+		Integer e = random.nextInt(4000);
+		if (!set.add(e)) set.remove(e);
+	}
+
+	@Override
+	protected Object state(PersistentSet<Integer> set) {
+		return new HashSet<>(set);
+	}
+
+	@Test
+	public void testSetOperations() {
+		PersistentSet<String> set = PersistentSet.copyOf(Arrays.asList("a", "b", null, "a"));
+		assertEquals(3, set.size());
+		assertTrue(set.contains(null));
+		PersistentSet<String> copy = set.mutableCopy();
+		assertFalse(copy.add("b"));
+		assertTrue(copy.remove(null));
+		assertFalse(copy.remove(null));
+		assertEquals(new HashSet<>(Arrays.asList("a", "b")), copy);
+		assertEquals(new HashSet<>(Arrays.asList("a", "b", null)), set);
+	}
+
+	@Test
+	public void testIteratorRemoval() {
+		PersistentSet<Integer> set = newMutable();
+		HashSet<Integer> expected = new HashSet<>(set);
+		assertTrue(set.removeIf(e -> e % 3 == 0));
+		expected.removeIf(e -> e % 3 == 0);
+		assertEquals(expected, set);
+		assertTrue(set.retainAll(Arrays.asList(2, 4, 8, 3000)));
+		assertEquals(new HashSet<>(Arrays.asList(2, 4, 8)), set);
+		Iterator<Integer> it = set.iterator();
+		it.next();
+		it.remove();
+		assertEquals(2, set.size());
+		try {
+			it.remove();
+			fail();
+		} catch (IllegalStateException e) {
+			/* expected */
+		}
+		try {
+			set.immutableCopy().retainAll(Arrays.asList(2));
+			fail();
+		} catch (UnsupportedOperationException e) {
+			/* expected */
+		}
+	}
+
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright 2016 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.fundament;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class PooledProducerTest {
+
+	@Test
+	public void testRecycling() {
+		AtomicInteger created = new AtomicInteger();
+		PooledProducer<StringBuilder> pool = Producer.pooled(() -> { created.incrementAndGet(); return new StringBuilder(); }, sb -> sb.setLength(0), 4);
+		StringBuilder a = pool.produce();
+		StringBuilder b = pool.produce();
+		assertNotSame(a, b);
+		a.append("x");
+		pool.release(a);
+		assertEquals(0, a.length());
+		assertSame(a, pool.produce());
+		pool.releaser().consume(b);
+		assertSame(b, pool.produce());
+		assertEquals(2, created.get());
+		assertEquals(2, pool.hitCount());
+		assertEquals(2, pool.missCount());
+		assertEquals(0, pool.discardCount());
+		try {
+			pool.release(null);
+			fail();
+		} catch (IllegalArgumentException e) {
+			/* expected */
+		}
+	}
+
+	@Test
+	public void testCapacity() {
+		PooledProducer<Object> pool = Producer.pooled(Object::new, o -> {}, 2);
+		Object[] objs = new Object[20];
+		for (int i = 0; i < objs.length; i++) objs[i] = pool.produce();
+		for (Object obj : objs) pool.release(obj);
+		// two values are cached by this thread, two are shared and the rest are discarded
+		assertEquals(16, pool.discardCount());
+	}
+
+	@Test
+	public void testCrossThreadRelease() throws Exception {
+		PooledProducer<Object> pool = Producer.pooled(Object::new, o -> {}, 4);
+		Object[] objs = new Object[6];
+		for (int i = 0; i < objs.length; i++) objs[i] = pool.produce();
+		Thread releaser = new Thread(() -> { for (Object obj : objs) pool.release(obj); });
+		releaser.start();
+		releaser.join();
+		// values released on another thread are available to this one
+		assertEquals(2, pool.discardCount());
+		for (int i = 0; i < 4; i++) pool.produce();
+		assertEquals(4, pool.hitCount());
+	}
+
+	@Test
+	public void testDebug() {
+		PooledProducer<Object> pool = Producer.pooled(Object::new, o -> {}, 2, true);
+		assertTrue(pool.isDebug());
+		Object obj = pool.produce();
+		assertEquals(1, pool.outstandingCount());
+		pool.release(obj);
+		assertEquals(0, pool.outstandingCount());
+		try {
+			pool.release(obj);
+			fail();
+		} catch (IllegalArgumentException e) {
+			/* expected */
+		}
+		try {
+			pool.release(new Object());
+			fail();
+		} catch (IllegalArgumentException e) {
+			/* expected */
+		}
+
+		for (int i = 0; i < 20; i++) pool.produce();
+		for (int i = 0; i < 100 && pool.leakCount() == 0; i++) {
+			System.gc();
+			try {
+				Thread.sleep(10L);
+			} catch (InterruptedException e) {
+				throw new RuntimeException(e);
+			}
+		}
+		assertTrue(pool.leakCount() > 0);
+	}
+
+	@Test
+	public void testConcurrency() throws Exception {
+		AtomicInteger created = new AtomicInteger();
+		PooledProducer<int[]> pool = Producer.pooled(() -> { created.incrementAndGet(); return new int[1]; }, a -> a[0] = 0, 16);
+		int threads = 8;
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			Future<?>[] futures = new Future<?>[threads];
+			for (int t = 0; t < threads; t++) {
+				futures[t] = executor.submit(() -> {
+					for (int i = 0; i < 10000; i++) {
+						int[] a = pool.produce();
+						assertEquals(0, a[0]);
+						a[0] = i + 1;
+						pool.release(a);
+					}
+				});
+			}
+			for (Future<?> future : futures) future.get();
+		} finally {
+			executor.shutdown();
+			executor.awaitTermination(10, TimeUnit.SECONDS);
+		}
+		assertTrue(created.get() <= threads);
+		assertEquals(80000, pool.hitCount() + pool.missCount());
+	}
+
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright 2016 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.fundament;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.BitSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class PrefetchingProducerTest {
+
+	@Test
+	public void testSequence() {
+		AtomicInteger counter = new AtomicInteger();
+		try (PrefetchingProducer<Integer> p = Producer.prefetching(counter::getAndIncrement, 16)) {
+			for (int i = 0; i < 100; i++) {
+				assertEquals(i, p.produce().intValue());
+			}
+			Integer[] values = new Integer[50];
+			p.produceAll(values, 0, 50);
+			for (int i = 0; i < 50; i++) {
+				assertEquals(100 + i, values[i].intValue());
+			}
+			assertTrue(p.size() <= 16);
+			assertTrue(p.latencyPercentile(100.0) >= 0L);
+			assertEquals(0L, p.latencyPercentile(0.0));
+		}
+	}
+
+	@Test
+	public void testConcurrentConsumers() throws Exception {
+		AtomicInteger counter = new AtomicInteger();
+		int threads = 4;
+		int perThread = 5000;
+		BitSet seen = new BitSet();
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try (PrefetchingProducer<Integer> p = Producer.prefetching(counter::getAndIncrement, 64)) {
+			@SuppressWarnings("unchecked")
+			Future<int[]>[] futures = new Future[threads];
+			for (int t = 0; t < threads; t++) {
+				futures[t] = executor.submit(() -> {
+					int[] values = new int[perThread];
+					for (int i = 0; i < perThread; i++) {
+						values[i] = p.produce();
+					}
+					return values;
+				});
+			}
+			for (Future<int[]> future : futures) {
+				for (int value : future.get()) {
+					assertTrue(!seen.get(value));
+					seen.set(value);
+				}
+			}
+		} finally {
+			executor.shutdown();
+			executor.awaitTermination(10, TimeUnit.SECONDS);
+		}
+		assertEquals(threads * perThread, seen.cardinality());
+	}
+
+	@Test
+	public void testFailure() {
+		AtomicInteger counter = new AtomicInteger();
+		Producer<Integer> source = () -> {
+			int i = counter.getAndIncrement();
+			if (i == 10) throw new IllegalStateException("exhausted");
+			return i;
+		};
+		try (PrefetchingProducer<Integer> p = Producer.prefetching(source, 2, 4, Thread::new)) {
+			for (int i = 0; i < 10; i++) {
+				assertEquals(i, p.produce().intValue());
+			}
+			try {
+				p.produce();
+				fail();
+			} catch (IllegalStateException e) {
+				assertNotNull(e.getCause());
+			}
+		}
+	}
+
+	@Test
+	public void testClose() {
+		PrefetchingProducer<Object> p = Producer.prefetching(Object::new, 8);
+		p.produce();
+		p.close();
+		assertTrue(p.isClosed());
+		try {
+			p.produce();
+			fail();
+		} catch (IllegalStateException e) {
+			/* expected */
+		}
+		p.close();
+	}
+
+}
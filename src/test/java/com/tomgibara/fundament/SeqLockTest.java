@@ -0,0 +1,204 @@
+/*
+ * Copyright 2016 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.fundament;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+
+public class SeqLockTest {
+
+	// a mutable object whose views may be read while it is mutated
+	private static final class Counters implements Mutability<Counters> {
+
+		private final SeqLock lock;
+		private final Counters viewed;
+		private long[] values;
+
+		Counters(int size) {
+			lock = SeqLock.create();
+			viewed = null;
+			values = new long[size];
+		}
+
+		private Counters(Counters viewed) {
+			lock = viewed.lock;
+			this.viewed = viewed;
+		}
+
+		// every counter is incremented, and occasionally the array grows
+		void increment() {
+			lock.write(() -> {
+				long[] vs = values.length % 7 == 0 ? new long[values.length + 1] : values;
+				Arrays.fill(vs, values[0] + 1);
+				values = vs;
+			});
+		}
+
+		int size() {
+			Counters c = viewed == null ? this : viewed;
+			return lock.read(() -> c.values.length);
+		}
+
+		// copies as many values as will fit, returning the number copied
+		int copyTo(long[] buffer) {
+			Counters c = viewed == null ? this : viewed;
+			int[] count = new int[1];
+			lock.copy(() -> {
+				long[] vs = c.values;
+				int n = Math.min(vs.length, buffer.length);
+				System.arraycopy(vs, 0, buffer, 0, n);
+				count[0] = n;
+			});
+			return count[0];
+		}
+
+		@Override public boolean isMutable()      { return viewed == null;                     }
+		@Override public Counters mutableCopy()   { throw new UnsupportedOperationException(); }
+		@Override public Counters immutableCopy() { throw new UnsupportedOperationException(); }
+		@Override public Counters immutableView() { return new Counters(this);                 }
+
+	}
+
+	@Test
+	public void testConcurrentViews() throws Exception {
+		Counters counters = new Counters(5);
+		Counters view = counters.immutableView();
+		AtomicBoolean done = new AtomicBoolean();
+		int readers = 4;
+		ExecutorService executor = Executors.newFixedThreadPool(readers);
+		try {
+			List<Future<Boolean>> futures = new ArrayList<>();
+			for (int i = 0; i < readers; i++) {
+				futures.add(executor.submit(() -> {
+					long[] buffer = new long[64];
+					boolean consistent = true;
+					while (!done.get()) {
+						int n = view.copyTo(buffer);
+						for (int j = 1; j < n; j++) {
+							consistent &= buffer[j] == buffer[0];
+						}
+						consistent &= view.size() >= n;
+					}
+					return consistent;
+				}));
+			}
+			for (int i = 0; i < 100000; i++) {
+				counters.increment();
+			}
+			done.set(true);
+			for (Future<Boolean> future : futures) {
+				assertTrue(future.get());
+			}
+		} finally {
+			executor.shutdown();
+			executor.awaitTermination(10, TimeUnit.SECONDS);
+		}
+		long[] buffer = new long[1];
+		assertEquals(1, view.copyTo(buffer));
+		assertEquals(100000L, buffer[0]);
+	}
+
+	@Test
+	public void testReadExceptions() {
+		SeqLock lock = SeqLock.create();
+		try {
+			lock.read(() -> { throw new IllegalStateException(); });
+			fail();
+		} catch (IllegalStateException e) {
+			/* expected */
+		}
+		assertEquals(0L, lock.retryCount());
+		assertEquals(0L, lock.fallbackCount());
+	}
+
+	@Test
+	public void testFallback() throws Exception {
+		SeqLock lock = SeqLock.create();
+		int[] calls = new int[1];
+		// a write overlapping each optimistic read forces the fallback
+		String result = lock.read(() -> {
+			if (calls[0]++ < 4) overlapWrite(lock);
+			return "done";
+		});
+		assertEquals("done", result);
+		assertEquals(4L, lock.retryCount());
+		assertEquals(1L, lock.fallbackCount());
+		assertEquals(5, calls[0]);
+	}
+
+	@Test
+	public void testInconsistentError() {
+		SeqLock lock = SeqLock.create();
+		int[] calls = new int[1];
+		String result = lock.read(() -> {
+			if (calls[0]++ == 0) {
+				// simulates an allocation sized by a torn read
+				overlapWrite(lock);
+				throw new OutOfMemoryError();
+			}
+			return "done";
+		});
+		assertEquals("done", result);
+		assertEquals(1L, lock.retryCount());
+		assertEquals(0L, lock.fallbackCount());
+	}
+
+	@Test
+	public void testReadDuringWrite() throws Exception {
+		SeqLock lock = SeqLock.create();
+		CountDownLatch writing = new CountDownLatch(1);
+		Thread writer = new Thread(() -> lock.write(() -> {
+			writing.countDown();
+			try {
+				Thread.sleep(100L);
+			} catch (InterruptedException e) {
+				throw new RuntimeException(e);
+			}
+		}));
+		writer.start();
+		writing.await();
+		// the reader waits for the write instead of exhausting its attempts
+		assertEquals("done", lock.read(() -> "done"));
+		writer.join();
+		assertEquals(0L, lock.retryCount());
+		assertEquals(0L, lock.fallbackCount());
+	}
+
+	private static void overlapWrite(SeqLock lock) {
+		Thread writer = new Thread(() -> lock.write(() -> { }));
+		writer.start();
+		try {
+			writer.join();
+		} catch (InterruptedException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+}
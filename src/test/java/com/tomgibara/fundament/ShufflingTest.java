@@ -0,0 +1,121 @@
+/*
+ * Copyright 2016 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.fundament;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.tomgibara.fundament.Shuffling.Source;
+
+public class ShufflingTest {
+
+	private interface Shuffle {
+		void shuffle(Transposable t, int length, Source source);
+	}
+
+	private static Transposable transposable(int[] values) {
+		return (i, j) -> {
+			int v = values[i];
+			values[i] = values[j];
+			values[j] = v;
+		};
+	}
+
+	private static int[] identity(int length) {
+		int[] values = new int[length];
+		for (int i = 0; i < length; i++) {
+			values[i] = i;
+		}
+		return values;
+	}
+
+	// checks that every arrangement of the first count elements is equally likely
+	private static void checkUniform(Shuffle shuffle, int length, int count, int outcomes) {
+		int trials = outcomes * 2000;
+		Source source = Source.seeded(0L);
+		Map<String, Integer> counts = new HashMap<>();
+		for (int i = 0; i < trials; i++) {
+			int[] values = identity(length);
+			shuffle.shuffle(transposable(values), length, source);
+			counts.merge(Arrays.toString(Arrays.copyOf(values, count)), 1, Integer::sum);
+		}
+		assertEquals(outcomes, counts.size());
+		for (int c : counts.values()) {
+			assertTrue(Math.abs(c - 2000) < 250);
+		}
+	}
+
+	@Test
+	public void testUniform() {
+		checkUniform((t, n, s) -> Shuffling.shuffle(t, 0, n, s), 4, 4, 24);
+		checkUniform((t, n, s) -> Shuffling.parallelShuffle(t, 0, n, s, 1), 4, 4, 24);
+		checkUniform((t, n, s) -> Shuffling.parallelShuffle(t, 0, n, s, 1), 5, 5, 120);
+		checkUniform((t, n, s) -> Shuffling.partialShuffle(t, 0, 2, n, s), 5, 2, 20);
+	}
+
+	@Test
+	public void testParallelReproducible() {
+		int length = 1000000;
+		int[] a = identity(length);
+		int[] b = identity(length);
+		Shuffling.parallelShuffle(transposable(a), 0, length, Source.seeded(42L), 10000);
+		Shuffling.parallelShuffle(transposable(b), 0, length, Source.seeded(42L), 10000);
+		assertArrayEquals(a, b);
+		assertFalse(Arrays.equals(identity(length), a));
+		Arrays.sort(a);
+		assertArrayEquals(identity(length), a);
+	}
+
+	@Test
+	public void testSubrange() {
+		int[] values = identity(100);
+		Shuffling.shuffle(transposable(values), 10, 90, Source.seeded(1L));
+		for (int i = 0; i < 10; i++) {
+			assertEquals(i, values[i]);
+			assertEquals(90 + i, values[90 + i]);
+		}
+		Arrays.sort(values);
+		assertArrayEquals(identity(100), values);
+	}
+
+	@Test
+	public void testNullSource() {
+		Transposable t = transposable(identity(10));
+		try {
+			Shuffling.shuffle(t, 0, 10, null);
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertEquals("null source", e.getMessage());
+		}
+		try {
+			Shuffling.parallelShuffle(t, 0, 10, null, 4);
+			fail();
+		} catch (IllegalArgumentException e) {
+			assertEquals("null source", e.getMessage());
+		}
+	}
+
+}
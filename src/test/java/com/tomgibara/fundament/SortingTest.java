@@ -0,0 +1,157 @@
+/*
+ * Copyright 2016 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.fundament;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.function.IntBinaryOperator;
+
+import org.junit.Test;
+
+public class SortingTest {
+
+	// keys with a parallel array recording the original index of each key
+	private static final class Pairs implements Transposable {
+
+		final int[] keys;
+		final int[] indices;
+
+		Pairs(Random random, int length, int range) {
+			keys = new int[length];
+			indices = new int[length];
+			for (int i = 0; i < length; i++) {
+				keys[i] = random.nextInt(range);
+				indices[i] = i;
+			}
+		}
+
+		IntBinaryOperator comparator() {
+			return (i, j) -> Integer.compare(keys[i], keys[j]);
+		}
+
+		@Override
+		public void transpose(int i, int j) {
+			int k = keys[i];
+			keys[i] = keys[j];
+			keys[j] = k;
+			int x = indices[i];
+			indices[i] = indices[j];
+			indices[j] = x;
+		}
+
+		// checks that each index still accompanies its original key
+		void checkPaired(int[] original) {
+			for (int i = 0; i < keys.length; i++) {
+				assertEquals(original[indices[i]], keys[i]);
+			}
+		}
+
+	}
+
+	@Test
+	public void testSort() {
+		Random random = new Random(0L);
+		for (int length : new int[] { 0, 1, 2, 15, 16, 17, 100, 1000, 20000 }) {
+			for (int range : new int[] { 2, 100, Integer.MAX_VALUE }) {
+				Pairs pairs = new Pairs(random, length, range);
+				int[] original = pairs.keys.clone();
+				int[] expected = original.clone();
+				Arrays.sort(expected);
+				Sorting.sort(pairs, 0, length, pairs.comparator());
+				assertArrayEquals(expected, pairs.keys);
+				pairs.checkPaired(original);
+			}
+		}
+	}
+
+	@Test
+	public void testSortSubrange() {
+		Pairs pairs = new Pairs(new Random(1L), 1000, 1000);
+		int[] expected = pairs.keys.clone();
+		Arrays.sort(expected, 100, 900);
+		Sorting.sort(pairs, 100, 900, pairs.comparator());
+		assertArrayEquals(expected, pairs.keys);
+	}
+
+	@Test
+	public void testStableSort() {
+		Random random = new Random(2L);
+		for (int length : new int[] { 0, 1, 19, 20, 21, 41, 1000, 10000 }) {
+			Pairs pairs = new Pairs(random, length, 10);
+			int[] original = pairs.keys.clone();
+			Sorting.stableSort(pairs, 0, length, pairs.comparator());
+			pairs.checkPaired(original);
+			for (int i = 1; i < length; i++) {
+				assertTrue(pairs.keys[i - 1] <= pairs.keys[i]);
+				if (pairs.keys[i - 1] == pairs.keys[i]) assertTrue(pairs.indices[i - 1] < pairs.indices[i]);
+			}
+		}
+	}
+
+	@Test
+	public void testPartialSortAndSelect() {
+		Random random = new Random(3L);
+		for (int i = 0; i < 20; i++) {
+			Pairs pairs = new Pairs(random, 5000, 3000);
+			int[] expected = pairs.keys.clone();
+			Arrays.sort(expected);
+			int n = random.nextInt(5000);
+			Sorting.select(pairs, 0, n, 5000, pairs.comparator());
+			assertEquals(expected[n], pairs.keys[n]);
+			for (int j = 0; j < 5000; j++) {
+				assertTrue(j < n ? pairs.keys[j] <= pairs.keys[n] : pairs.keys[j] >= pairs.keys[n]);
+			}
+			Sorting.partialSort(pairs, 0, n, 5000, pairs.comparator());
+			assertArrayEquals(Arrays.copyOf(expected, n), Arrays.copyOf(pairs.keys, n));
+		}
+	}
+
+	@Test
+	public void testParallelSort() {
+		Pairs pairs = new Pairs(new Random(4L), 200000, Integer.MAX_VALUE);
+		int[] original = pairs.keys.clone();
+		int[] expected = original.clone();
+		Arrays.sort(expected);
+		Sorting.parallelSort(pairs, 0, original.length, pairs.comparator(), 1000);
+		assertArrayEquals(expected, pairs.keys);
+		pairs.checkPaired(original);
+	}
+
+	@Test
+	public void testAdversarialInputs() {
+		int length = 50000;
+		int[] sorted = new int[length];
+		int[] reversed = new int[length];
+		int[] organ = new int[length];
+		for (int i = 0; i < length; i++) {
+			sorted[i] = i;
+			reversed[i] = length - i;
+			organ[i] = Math.min(i, length - i);
+		}
+		for (int[] keys : new int[][] { sorted, reversed, organ, new int[length] }) {
+			int[] expected = keys.clone();
+			Arrays.sort(expected);
+			Sorting.sort((i, j) -> { int k = keys[i]; keys[i] = keys[j]; keys[j] = k; }, 0, length, (i, j) -> Integer.compare(keys[i], keys[j]));
+			assertArrayEquals(expected, keys);
+		}
+	}
+
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2016 Tom Gibara
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package com.tomgibara.fundament;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class TranspositionJournalTest {
+
+	private static Transposable transposable(int[] values) {
+		return (i, j) -> {
+			int v = values[i];
+			values[i] = values[j];
+			values[j] = v;
+		};
+	}
+
+	private static int[] identity(int length) {
+		int[] values = new int[length];
+		for (int i = 0; i < length; i++) {
+			values[i] = i;
+		}
+		return values;
+	}
+
+	private static void transposeRandomly(Transposable t, Random random, int length, int count) {
+		for (int k = 0; k < count; k++) {
+			t.transpose(random.nextInt(length), random.nextInt(length));
+		}
+	}
+
+	@Test
+	public void testRollback() {
+		Random random = new Random(0L);
+		int[] values = identity(50);
+		TranspositionJournal journal = TranspositionJournal.over(transposable(values));
+		transposeRandomly(journal, random, 50, 100);
+		int[] saved = values.clone();
+		int checkpoint = journal.checkpoint();
+		transposeRandomly(journal, random, 50, 1000);
+		journal.rollback(checkpoint);
+		assertArrayEquals(saved, values);
+		assertEquals(checkpoint, journal.size());
+		journal.rollback(0);
+		assertArrayEquals(identity(50), values);
+		assertEquals(0, journal.size());
+	}
+
+	@Test
+	public void testReplayAndPermutation() {
+		Random random = new Random(1L);
+		int[] values = identity(50);
+		TranspositionJournal journal = TranspositionJournal.over(transposable(values));
+		transposeRandomly(journal, random, 50, 500);
+		int[] replayed = identity(50);
+		journal.replay(transposable(replayed));
+		assertArrayEquals(values, replayed);
+		int[] permuted = identity(50);
+		Permutations.apply(journal.toPermutation(50), transposable(permuted));
+		assertArrayEquals(values, permuted);
+	}
+
+	@Test
+	public void testCompact() {
+		Random random = new Random(2L);
+		int[] values = identity(50);
+		TranspositionJournal journal = TranspositionJournal.over(transposable(values));
+		transposeRandomly(journal, random, 40, 10000);
+		journal.compact();
+		assertTrue(journal.size() < 40);
+		int[] replayed = identity(50);
+		journal.replay(transposable(replayed));
+		assertArrayEquals(values, replayed);
+		journal.rollback(0);
+		assertArrayEquals(identity(50), values);
+	}
+
+	@Test
+	public void testCompactLargeIndices() {
+		Random random = new Random(3L);
+		// the indices are far too large for a dense permutation to be allocated
+		int[] indices = new int[30];
+		for (int i = 0; i < indices.length; i++) {
+			indices[i] = 500_000_000 + random.nextInt(Integer.MAX_VALUE - 500_000_000);
+		}
+		Map<Integer, Integer> values = new HashMap<>();
+		Transposable sparse = (i, j) -> {
+			Integer v = values.getOrDefault(i, i);
+			values.put(i, values.getOrDefault(j, j));
+			values.put(j, v);
+		};
+		TranspositionJournal journal = TranspositionJournal.over(sparse);
+		for (int k = 0; k < 1000; k++) {
+			journal.transpose(indices[random.nextInt(indices.length)], indices[random.nextInt(indices.length)]);
+		}
+		Map<Integer, Integer> expected = new HashMap<>(values);
+		journal.compact();
+		assertTrue(journal.size() < indices.length);
+		values.clear();
+		journal.replay(sparse);
+		assertEquals(expected, values);
+	}
+
+}